@@ -97,6 +97,11 @@
 #include <sstream>
 #include <locale>
 #include <typeinfo>
+#ifdef LINUX
+#include <time.h>
+#else
+#include <sys/time.h>
+#endif // LINUX
 
 ENABLE_BOOST_FOREACH_ON_CONST_MAP(Column);
 ENABLE_BOOST_FOREACH_ON_CONST_MAP(Index);
@@ -136,6 +141,19 @@ typedef boost::multi_index::multi_index_container<
 /// This class wrapper around a typedef allows forward declaration as in scoped_ptr<EnginePlanSet>.
 class EnginePlanSet : public PlanSet { };
 
+/// Nanoseconds from an arbitrary start, for timing fragments.
+static int64_t fragmentClockNanos() {
+#ifdef LINUX
+    struct timespec now;
+    clock_gettime(CLOCK_MONOTONIC, &now);
+    return static_cast<int64_t>(now.tv_sec) * 1000000000 + now.tv_nsec;
+#else
+    struct timeval now;
+    gettimeofday(&now, NULL);
+    return static_cast<int64_t>(now.tv_sec) * 1000000000 + static_cast<int64_t>(now.tv_usec) * 1000;
+#endif // LINUX
+}
+
 VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
     : m_currentIndexInBatch(0),
       m_allTuplesScanned(0),
@@ -149,6 +167,8 @@ VoltDBEngine::VoltDBEngine(Topend *topend, LogProxy *logProxy)
       m_hashinator(NULL),
       m_isActiveActiveDREnabled(false),
       m_staticParams(MAX_PARAM_COUNT),
+      m_fragmentTimes(NULL),
+      m_fragmentTimesCapacity(0),
       m_pfCount(0),
       m_currentInputDepId(-1),
       m_stringPool(16777216, 2),
@@ -382,6 +402,8 @@ int VoltDBEngine::executePlanFragments(int32_t numFragments,
     m_tuplesProcessedSinceReport = 0;
 
     for (m_currentIndexInBatch = 0; m_currentIndexInBatch < numFragments; ++m_currentIndexInBatch) {
+        const bool timed = m_currentIndexInBatch < m_fragmentTimesCapacity;
+        const int64_t started = timed ? fragmentClockNanos() : 0;
 
         m_usedParamcnt = serialize_in.readShort();
         if (m_usedParamcnt < 0) {
@@ -406,6 +428,10 @@ int VoltDBEngine::executePlanFragments(int32_t numFragments,
             break;
         }
 
+        if (timed) {
+            m_fragmentTimes[m_currentIndexInBatch] = fragmentClockNanos() - started;
+        }
+
         // at the end of each frag, rollup and reset counters
         m_tuplesProcessedInBatch += m_tuplesProcessedInFragment;
         m_tuplesProcessedInFragment = 0;
@@ -210,6 +210,14 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         void setBuffers(char *parameter_buffer, int m_parameterBuffercapacity,
                 char *resultBuffer, int resultBufferCapacity,
                 char *exceptionBuffer, int exceptionBufferCapacity);
+        /**
+         * While set, the nanoseconds spent on fragment i of a batch are written to
+         * fragmentTimes[i], for the first capacity fragments. NULL stops the timing.
+         */
+        void setFragmentTimesBuffer(int64_t *fragmentTimes, int capacity) {
+            m_fragmentTimes = fragmentTimes;
+            m_fragmentTimesCapacity = fragmentTimes == NULL ? 0 : capacity;
+        }
         const char* getParameterBuffer() const { return m_parameterBuffer; }
         /** Returns the size of buffer for passing parameters to EE. */
         int getParameterBufferCapacity() const { return m_parameterBufferCapacity; }
@@ -550,6 +558,11 @@ class __attribute__((visibility("default"))) VoltDBEngine {
         /** size of reused_result_buffer. */
         int m_reusedResultCapacity;
 
+        /** time spent on each fragment of a batch, NULL unless batches are being timed. */
+        int64_t *m_fragmentTimes;
+        /** number of fragments m_fragmentTimes has room for. */
+        int m_fragmentTimesCapacity;
+
         // arrays to hold fragment ids and dep ids from java
         // n.b. these are 8k each, should be boost shared arrays?
         int64_t m_batchFragmentIdsContainer[MAX_BATCH_COUNT];
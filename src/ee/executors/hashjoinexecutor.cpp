@@ -0,0 +1,348 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+#include "hashjoinexecutor.h"
+
+#include "common/debuglog.h"
+#include "common/common.h"
+#include "common/tabletuple.h"
+#include "common/ValuePeeker.hpp"
+#include "executors/aggregateexecutor.h"
+#include "executors/executorutil.h"
+#include "execution/ProgressMonitorProxy.h"
+#include "expressions/abstractexpression.h"
+#include "storage/table.h"
+#include "storage/temptable.h"
+#include "storage/tableiterator.h"
+#include "storage/tabletuplefilter.h"
+#include "storage/TempTableLimits.h"
+#include "plannodes/hashjoinnode.h"
+#include "plannodes/limitnode.h"
+
+#include <limits>
+#include <new>
+#include <vector>
+
+using namespace std;
+using namespace voltdb;
+
+const static int8_t UNMATCHED_TUPLE(TableTupleFilter::ACTIVE_TUPLE);
+const static int8_t MATCHED_TUPLE(TableTupleFilter::ACTIVE_TUPLE + 1);
+
+// Approximate size of a hash table node besides its key:
+// the next pointer, the cached hash, the key pointer and the tuple address.
+const static int HASH_ENTRY_OVERHEAD(static_cast<int>(4 * sizeof(void*)));
+
+namespace {
+
+/**
+ * Charges the memory of the hash table to the temp table limits and gives it
+ * back when the join is done, including when it is aborted by an exception.
+ */
+class HashTableReservation {
+public:
+    HashTableReservation(HashJoinMapType& hash, Pool& pool, TempTableLimits* limits) :
+        m_hash(hash), m_pool(pool), m_limits(limits), m_charged(0), m_chargedBuckets(0) { }
+
+    ~HashTableReservation()
+    {
+        m_hash.clear();
+        m_pool.purge();
+        if (m_limits == NULL) {
+            return;
+        }
+        while (m_charged > 0) {
+            int bytes = static_cast<int>(std::min(m_charged,
+                    static_cast<int64_t>(std::numeric_limits<int>::max())));
+            m_limits->reduceAllocated(bytes);
+            m_charged -= bytes;
+        }
+    }
+
+    // Throws a SQLException when the fragment goes over its temp table memory limit
+    void charge(int bytes)
+    {
+        if (m_limits == NULL) {
+            return;
+        }
+        // The limits count the bytes even when they throw
+        m_charged += bytes;
+        m_limits->increaseAllocated(bytes);
+    }
+
+    // Charge the buckets the hash table has grown by since the last call,
+    // it rehashes into more buckets as the build side is inserted
+    void chargeBuckets()
+    {
+        const size_t buckets = m_hash.bucket_count();
+        if (buckets > m_chargedBuckets) {
+            const size_t grown = buckets - m_chargedBuckets;
+            m_chargedBuckets = buckets;
+            charge(static_cast<int>(grown * sizeof(void*)));
+        }
+    }
+
+private:
+    HashJoinMapType& m_hash;
+    Pool& m_pool;
+    TempTableLimits* m_limits;
+    int64_t m_charged;
+    size_t m_chargedBuckets;
+};
+
+} // namespace
+
+bool HashJoinExecutor::p_init(AbstractPlanNode* abstractNode,
+                              TempTableLimits* limits)
+{
+    VOLT_TRACE("init HashJoin Executor");
+    assert(limits);
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert( ! node->getOuterHashExpressions().empty());
+    assert(node->getOuterHashExpressions().size() == node->getInnerHashExpressions().size());
+
+    // Init parent first
+    if (!AbstractJoinExecutor::p_init(abstractNode, limits)) {
+        return false;
+    }
+
+    m_limits = limits;
+
+    // NULL tuples for left and full joins
+    p_init_null_tuples(node->getInputTable(), node->getInputTable(1));
+
+    return true;
+}
+
+bool HashJoinExecutor::evalKey(const std::vector<AbstractExpression*>& expressions,
+                               const TableTuple& tuple, NValue* key)
+{
+    for (size_t i = 0; i < expressions.size(); i++) {
+        NValue value = expressions[i]->eval(&tuple, NULL);
+        if (value.isNull()) {
+            return false;
+        }
+        // Arithmetic may widen an integral key, hash them all as BIGINT
+        if (isIntegralType(ValuePeeker::peekValueType(value))) {
+            value = value.castAs(VALUE_TYPE_BIGINT);
+        }
+        key[i] = value;
+    }
+    return true;
+}
+
+bool HashJoinExecutor::p_execute(const NValueArray &params) {
+    VOLT_DEBUG("executing HashJoin...");
+
+    HashJoinPlanNode* node = dynamic_cast<HashJoinPlanNode*>(m_abstractNode);
+    assert(node);
+    assert(node->getInputTableCount() == 2);
+
+    // output table must be a temp table
+    assert(m_tmpOutputTable);
+
+    Table* outer_table = node->getInputTable();
+    assert(outer_table);
+
+    Table* inner_table = node->getInputTable(1);
+    assert(inner_table);
+
+    VOLT_TRACE ("input table left:\n %s", outer_table->debug().c_str());
+    VOLT_TRACE ("input table right:\n %s", inner_table->debug().c_str());
+
+    AbstractExpression *preJoinPredicate = node->getPreJoinPredicate();
+    AbstractExpression *joinPredicate = node->getJoinPredicate();
+    AbstractExpression *wherePredicate = node->getWherePredicate();
+    const std::vector<AbstractExpression*>& outerHashExpressions = node->getOuterHashExpressions();
+    const std::vector<AbstractExpression*>& innerHashExpressions = node->getInnerHashExpressions();
+    const size_t keyCount = innerHashExpressions.size();
+
+    // The table filter to keep track of inner tuples that don't match any of outer tuples for FULL joins
+    TableTupleFilter innerTableFilter;
+    if (m_joinType == JOIN_TYPE_FULL) {
+        // Prepopulate the view with all inner tuples
+        innerTableFilter.init(inner_table);
+    }
+
+    LimitPlanNode* limit_node = dynamic_cast<LimitPlanNode*>(node->getInlinePlanNode(PLAN_NODE_TYPE_LIMIT));
+    int limit = CountingPostfilter::NO_LIMIT;
+    int offset = CountingPostfilter::NO_OFFSET;
+    if (limit_node) {
+        limit_node->getLimitAndOffsetByReference(params, limit, offset);
+    }
+
+    int outer_cols = outer_table->columnCount();
+    int inner_cols = inner_table->columnCount();
+    TableTuple outer_tuple(node->getInputTable(0)->schema());
+    TableTuple inner_tuple(node->getInputTable(1)->schema());
+    const TableTuple& null_inner_tuple = m_null_inner_tuple.tuple();
+
+    ProgressMonitorProxy pmp(m_engine, this);
+
+    //
+    // Build the hash table over the inner table. The keys live in the pool,
+    // the values are the addresses of the inner tuples.
+    //
+    HashJoinMapType hash(static_cast<size_t>(inner_table->activeTupleCount()),
+                         HashJoinKeyHasher(keyCount),
+                         HashJoinKeyEqualityChecker(keyCount));
+    HashTableReservation reservation(hash, m_memoryPool, m_limits);
+    reservation.chargeBuckets();
+    const int entrySize = static_cast<int>(keyCount * sizeof(NValue)) + HASH_ENTRY_OVERHEAD;
+
+    NValue* buildKey = NULL;
+    TableIterator iterator1 = inner_table->iterator();
+    while (iterator1.next(inner_tuple)) {
+        pmp.countdownProgress();
+        if (buildKey == NULL) {
+            void* memory = m_memoryPool.allocate(keyCount * sizeof(NValue));
+            buildKey = static_cast<NValue*>(memory);
+            for (size_t i = 0; i < keyCount; i++) {
+                new (&buildKey[i]) NValue();
+            }
+        }
+        if ( ! evalKey(innerHashExpressions, inner_tuple, buildKey)) {
+            // A NULL key matches nothing, the pool space is reused for the next tuple
+            continue;
+        }
+        reservation.charge(entrySize);
+        hash.insert(HashJoinMapType::value_type(buildKey, inner_tuple.address()));
+        reservation.chargeBuckets();
+        buildKey = NULL;
+    }
+
+    //
+    // Probe it with the outer tuples
+    //
+    CountingPostfilter postfilter(m_tmpOutputTable, wherePredicate, limit, offset);
+
+    TableTuple join_tuple;
+    if (m_aggExec != NULL) {
+        VOLT_TRACE("Init inline aggregate...");
+        const TupleSchema * aggInputSchema = node->getTupleSchemaPreAgg();
+        join_tuple = m_aggExec->p_execute_init(params, &pmp, aggInputSchema, m_tmpOutputTable, &postfilter);
+    } else {
+        join_tuple = m_tmpOutputTable->tempTuple();
+    }
+
+    std::vector<NValue> probeKey(keyCount);
+    TableIterator iterator0 = outer_table->iteratorDeletingAsWeGo();
+    while (postfilter.isUnderLimit() && iterator0.next(outer_tuple)) {
+        pmp.countdownProgress();
+
+        join_tuple.setNValues(0, outer_tuple, 0, outer_cols);
+
+        // did this loop body find at least one match for this tuple?
+        bool outerMatch = false;
+        // For outer joins if outer tuple fails pre-join predicate
+        // (join expression based on the outer table only)
+        // it can't match any of inner tuples
+        if ((preJoinPredicate == NULL || preJoinPredicate->eval(&outer_tuple, NULL).isTrue()) &&
+            evalKey(outerHashExpressions, outer_tuple, &probeKey[0])) {
+
+            std::pair<HashJoinMapType::const_iterator, HashJoinMapType::const_iterator> matches =
+                hash.equal_range(&probeKey[0]);
+            for (HashJoinMapType::const_iterator itr = matches.first;
+                 itr != matches.second && postfilter.isUnderLimit(); ++itr) {
+                pmp.countdownProgress();
+                inner_tuple.move(itr->second);
+                // The hash keys matched, apply the rest of the join clauses
+                if (joinPredicate == NULL || joinPredicate->eval(&outer_tuple, &inner_tuple).isTrue()) {
+                    outerMatch = true;
+                    if (m_joinType == JOIN_TYPE_FULL) {
+                        // Mark it as matched
+                        innerTableFilter.updateTuple(inner_tuple, MATCHED_TUPLE);
+                    }
+                    if (postfilter.eval(&outer_tuple, &inner_tuple)) {
+                        join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                        outputTuple(postfilter, join_tuple, pmp);
+                    }
+                }
+            }
+        }
+
+        //
+        // Left Outer Join
+        //
+        if (m_joinType != JOIN_TYPE_INNER && !outerMatch && postfilter.isUnderLimit()) {
+            // Still needs to pass the filter
+            if (postfilter.eval(&outer_tuple, &null_inner_tuple)) {
+                join_tuple.setNValues(outer_cols, null_inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, join_tuple, pmp);
+            }
+        }
+    }
+
+    //
+    // FULL Outer Join. Iterate over the unmatched inner tuples
+    //
+    if (m_joinType == JOIN_TYPE_FULL && postfilter.isUnderLimit()) {
+        // Preset outer columns to null
+        const TableTuple& null_outer_tuple = m_null_outer_tuple.tuple();
+        join_tuple.setNValues(0, null_outer_tuple, 0, outer_cols);
+
+        TableTupleFilter_iter<UNMATCHED_TUPLE> endItr = innerTableFilter.end<UNMATCHED_TUPLE>();
+        for (TableTupleFilter_iter<UNMATCHED_TUPLE> itr = innerTableFilter.begin<UNMATCHED_TUPLE>();
+                itr != endItr && postfilter.isUnderLimit(); ++itr) {
+            uint64_t tupleAddr = innerTableFilter.getTupleAddress(*itr);
+            inner_tuple.move((char *)tupleAddr);
+            assert(inner_tuple.isActive());
+            if (postfilter.eval(&null_outer_tuple, &inner_tuple)) {
+                join_tuple.setNValues(outer_cols, inner_tuple, 0, inner_cols);
+                outputTuple(postfilter, join_tuple, pmp);
+            }
+        }
+    }
+
+    if (m_aggExec != NULL) {
+        m_aggExec->p_execute_finish();
+    }
+
+    cleanupInputTempTable(inner_table);
+    cleanupInputTempTable(outer_table);
+
+    return (true);
+}
@@ -0,0 +1,131 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This file contains original code and/or modifications of original code.
+ * Any modifications made by VoltDB Inc. are licensed under the following
+ * terms and conditions:
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+/* Copyright (C) 2008 by H-Store Project
+ * Brown University
+ * Massachusetts Institute of Technology
+ * Yale University
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#ifndef HSTOREHASHJOINEXECUTOR_H
+#define HSTOREHASHJOINEXECUTOR_H
+
+#include "common/common.h"
+#include "common/NValue.hpp"
+#include "common/Pool.hpp"
+#include "executors/abstractjoinexecutor.h"
+
+#include "boost/unordered_map.hpp"
+
+#include <vector>
+
+namespace voltdb {
+
+/**
+ * Hashes a key of a fixed number of NValues. Integral values are
+ * normalized to BIGINT by the executor before they are hashed.
+ */
+struct HashJoinKeyHasher
+{
+    explicit HashJoinKeyHasher(size_t keyCount = 0) : m_keyCount(keyCount) { }
+
+    size_t operator()(const NValue* key) const
+    {
+        size_t seed = 0;
+        for (size_t i = 0; i < m_keyCount; i++) {
+            key[i].hashCombine(seed);
+        }
+        return seed;
+    }
+
+    size_t m_keyCount;
+};
+
+struct HashJoinKeyEqualityChecker
+{
+    explicit HashJoinKeyEqualityChecker(size_t keyCount = 0) : m_keyCount(keyCount) { }
+
+    bool operator()(const NValue* lhs, const NValue* rhs) const
+    {
+        for (size_t i = 0; i < m_keyCount; i++) {
+            if (lhs[i].compare(rhs[i]) != VALUE_COMPARE_EQUAL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    size_t m_keyCount;
+};
+
+// Maps the hash key of an inner tuple to the address of the tuple
+typedef boost::unordered_multimap<const NValue*,
+                                  char*,
+                                  HashJoinKeyHasher,
+                                  HashJoinKeyEqualityChecker> HashJoinMapType;
+
+/**
+ * Builds a hash table over the inner table and probes it with every outer
+ * tuple. The memory of the hash table is charged to the temp table limits
+ * of the fragment while the join runs.
+ */
+class HashJoinExecutor : public AbstractJoinExecutor {
+    public:
+        HashJoinExecutor(VoltDBEngine *engine, AbstractPlanNode* abstract_node) :
+            AbstractJoinExecutor(engine, abstract_node),
+            m_memoryPool(), m_limits(NULL) { }
+    private:
+
+        bool p_init(AbstractPlanNode*, TempTableLimits* limits);
+        bool p_execute(const NValueArray &params);
+
+        /**
+         * Evaluate the key of a tuple into key. Returns false if a part of
+         * the key is NULL, such a tuple can't match any other.
+         */
+        static bool evalKey(const std::vector<AbstractExpression*>& expressions,
+                            const TableTuple& tuple, NValue* key);
+
+        Pool m_memoryPool;
+        TempTableLimits* m_limits;
+};
+
+}
+
+#endif
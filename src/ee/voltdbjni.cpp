@@ -539,6 +539,30 @@ SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeSetBu
     return org_voltdb_jni_ExecutionEngine_ERRORCODE_SUCCESS;
 }
 
+/**
+ * Sets the buffer the EE writes the time it spends on each fragment of a batch into,
+ * or stops the timing.
+ * @param pointer the VoltDBEngine pointer
+ * @param fragment_times_buffer direct buffer, or null to stop the timing
+ * @param fragment_times_capacity number of fragments the buffer has room for
+ * @return error code
+*/
+SHAREDLIB_JNIEXPORT jint JNICALL Java_org_voltdb_jni_ExecutionEngine_nativeSetFragmentTimesBuffer
+  (JNIEnv *env, jobject obj, jlong engine_ptr, jobject fragment_times_buffer, jint fragment_times_capacity)
+{
+    VOLT_DEBUG("nativeSetFragmentTimesBuffer() start");
+    VoltDBEngine *engine = castToEngine(engine_ptr);
+    if (engine == NULL) {
+        return org_voltdb_jni_ExecutionEngine_ERRORCODE_ERROR;
+    }
+    int64_t *fragmentTimes = NULL;
+    if (fragment_times_buffer != NULL) {
+        fragmentTimes = reinterpret_cast<int64_t*>(env->GetDirectBufferAddress(fragment_times_buffer));
+    }
+    engine->setFragmentTimesBuffer(fragmentTimes, fragment_times_capacity);
+    return org_voltdb_jni_ExecutionEngine_ERRORCODE_SUCCESS;
+}
+
 /**
  * Executes multiple plan fragments with the given parameter sets and gets the results.
  * @param pointer the VoltDBEngine pointer
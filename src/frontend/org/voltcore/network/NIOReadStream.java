@@ -74,6 +74,41 @@ public class NIOReadStream {
         return output;
     }
 
+    /**
+     * Read the big endian int that starts offset bytes into the available data
+     * without consuming anything.
+     */
+    public int peekInt(int offset) {
+        if (m_totalAvailable < offset + 4) {
+            throw new IllegalStateException("Requested int at offset " + offset + "; only have "
+                    + m_totalAvailable + " bytes");
+        }
+
+        int output = 0;
+        int bytesPeeked = 0;
+        for (BBContainer c : m_readBuffers) {
+            final ByteBuffer b = c.b();
+            final int length = b.remaining();
+            if (offset >= length) {
+                offset -= length;
+                continue;
+            }
+            for (; offset < length && bytesPeeked < 4; offset++, bytesPeeked++) {
+                output = (output << 8) | (b.get(b.position() + offset) & 0xff);
+            }
+            if (bytesPeeked == 4) {
+                return output;
+            }
+            offset = 0;
+        }
+        // the rest is in the write buffer, which isn't flipped until it is consumed
+        final ByteBuffer b = m_writeBuffer.b();
+        for (; bytesPeeked < 4; offset++, bytesPeeked++) {
+            output = (output << 8) | (b.get(offset) & 0xff);
+        }
+        return output;
+    }
+
     void getBytes(byte[] output) {
         if (m_totalAvailable < output.length) {
             throw new IllegalStateException("Requested " + output.length + " bytes; only have "
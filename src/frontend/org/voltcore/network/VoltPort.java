@@ -279,6 +279,17 @@ public class VoltPort implements Connection
         setInterests( SelectionKey.OP_READ, 0);
     }
 
+    /**
+     * Stop reading from the connection and close it once everything queued to the
+     * write stream was written, like a hang up by the remote end. Used to send a
+     * last response. Must be called on the network thread after the response was queued.
+     */
+    public void shutdownAfterDrain() {
+        disableReadSelection();
+        m_isShuttingDown = true;
+        enableWriteSelection();
+    }
+
     /** Report the operations the network should next select */
     int interestOps() {
         return m_interestOps;
@@ -26,7 +26,7 @@ public abstract class VoltProtocolHandler implements InputHandler {
     private static AtomicLong m_globalConnectionCounter = new AtomicLong(0);
 
     /** The distinct exception class allows better logging of these unexpected errors. */
-    class BadMessageLength extends IOException {
+    public class BadMessageLength extends IOException {
         private static final long serialVersionUID = 8547352379044459911L;
         public BadMessageLength(String string) {
             super(string);
@@ -41,6 +41,11 @@ public abstract class VoltProtocolHandler implements InputHandler {
 
     private static int MAX_MESSAGE_LENGTH = 52428800;
 
+    /** Upper bound on the bytes of messages copied out of the read stream together */
+    private static final int MAX_BATCH_LENGTH = 1024 * 128;
+    /** Length prefixed messages copied out together and not yet returned, or null */
+    private ByteBuffer m_batch;
+
     public VoltProtocolHandler() {
         m_sequenceId = 0;
         m_connectionId = m_globalConnectionCounter.incrementAndGet();
@@ -52,6 +57,64 @@ public abstract class VoltProtocolHandler implements InputHandler {
 
     @Override
     public ByteBuffer retrieveNextMessage(final NIOReadStream inputStream) throws BadMessageLength {
+        if (batchMessages()) {
+            return retrieveBatchedMessage(inputStream);
+        }
+        return retrieveSingleMessage(inputStream);
+    }
+
+    /**
+     * Handlers that receive many small messages back to back can return true to have all
+     * complete messages buffered in the read stream copied out at once into a single heap
+     * buffer, and returned as slices of it, instead of allocating and copying every message
+     * on its own. The slices share a backing array, so a handler that holds on to any part of
+     * a message for longer than it takes to decode it should copy that part out, or it keeps
+     * the other messages of the batch reachable too.
+     */
+    protected boolean batchMessages() {
+        return false;
+    }
+
+    private ByteBuffer retrieveBatchedMessage(final NIOReadStream inputStream) throws BadMessageLength {
+        if (m_batch == null) {
+            if (m_nextLength != 0) {
+                // the length of a partially received message was already consumed
+                return retrieveSingleMessage(inputStream);
+            }
+
+            final int available = inputStream.dataAvailable();
+            int batchLength = 0;
+            while (batchLength < MAX_BATCH_LENGTH && available - batchLength > (Integer.SIZE/8)) {
+                final int length = inputStream.peekInt(batchLength);
+                checkMessageLength(length);
+                if (available - batchLength - (Integer.SIZE/8) < length) {
+                    break;
+                }
+                batchLength += (Integer.SIZE/8) + length;
+            }
+            if (batchLength == 0) {
+                return retrieveSingleMessage(inputStream);
+            }
+
+            final byte batch[] = new byte[batchLength];
+            inputStream.getBytes(batch);
+            m_batch = ByteBuffer.wrap(batch);
+        }
+
+        final int length = m_batch.getInt();
+        final int end = m_batch.position() + length;
+        m_batch.limit(end);
+        final ByteBuffer result = m_batch.slice();
+        m_batch.limit(m_batch.capacity());
+        m_batch.position(end);
+        if (!m_batch.hasRemaining()) {
+            m_batch = null;
+        }
+        m_sequenceId++;
+        return result;
+    }
+
+    private ByteBuffer retrieveSingleMessage(final NIOReadStream inputStream) throws BadMessageLength {
 
         /*
          * Note that access to the read stream is not synchronized. In this application
@@ -63,16 +126,7 @@ public abstract class VoltProtocolHandler implements InputHandler {
 
         if (m_nextLength == 0 && inputStream.dataAvailable() > (Integer.SIZE/8)) {
             m_nextLength = inputStream.getInt();
-            if (m_nextLength < 1) {
-                throw new BadMessageLength(
-                        "Next message length is " + m_nextLength + " which is less than 1 and is nonsense");
-            }
-            if (m_nextLength > MAX_MESSAGE_LENGTH) {
-                throw new BadMessageLength(
-                        "Next message length is " + m_nextLength + " which is greater then the hard coded " +
-                        "max of " + MAX_MESSAGE_LENGTH + ". Break up the work into smaller chunks (2 megabytes is reasonable) " +
-                        "and send as multiple messages or stored procedure invocations");
-            }
+            checkMessageLength(m_nextLength);
             assert m_nextLength > 0;
         }
         if (m_nextLength > 0 && inputStream.dataAvailable() >= m_nextLength) {
@@ -84,6 +138,19 @@ public abstract class VoltProtocolHandler implements InputHandler {
         return result;
     }
 
+    private void checkMessageLength(int length) throws BadMessageLength {
+        if (length < 1) {
+            throw new BadMessageLength(
+                    "Next message length is " + length + " which is less than 1 and is nonsense");
+        }
+        if (length > MAX_MESSAGE_LENGTH) {
+            throw new BadMessageLength(
+                    "Next message length is " + length + " which is greater then the hard coded " +
+                    "max of " + MAX_MESSAGE_LENGTH + ". Break up the work into smaller chunks (2 megabytes is reasonable) " +
+                    "and send as multiple messages or stored procedure invocations");
+        }
+    }
+
     @Override
     public void started(Connection c) {
     }
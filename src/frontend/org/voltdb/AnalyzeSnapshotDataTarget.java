@@ -0,0 +1,204 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.catalog.Table;
+import org.voltdb.planner.CollectedTableStatistics;
+import org.voltdb.utils.CatalogUtil;
+
+import com.google_voltpatches.common.base.Throwables;
+import com.google_voltpatches.common.util.concurrent.Futures;
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
+/**
+ * Snapshot data target that writes nothing out. Each block of tuples streamed
+ * to it is decoded and folded into value distribution statistics for the table,
+ * one set per partition so that blocks from different sites can be processed
+ * concurrently on the computation service. When the target is closed the
+ * per-partition statistics are merged and handed to the completion callback.
+ */
+public class AnalyzeSnapshotDataTarget implements SnapshotDataTarget {
+
+    /**
+     * Receives the statistics gathered by a target once it is closed.
+     */
+    public interface StatisticsConsumer {
+        public void statisticsCollected(CollectedTableStatistics statistics);
+    }
+
+    private final Table m_table;
+    private final byte[] m_schemaBytes;
+    private final boolean m_needsFinalClose;
+    private final StatisticsConsumer m_consumer;
+    private final Map<Integer, CollectedTableStatistics> m_partitionStatistics =
+            new HashMap<Integer, CollectedTableStatistics>();
+    private final List<ListenableFuture<?>> m_pendingWrites = new ArrayList<ListenableFuture<?>>();
+    private long m_bytesProcessed = 0;
+    private Runnable m_onCloseTask;
+
+    private volatile Throwable m_writeException = null;
+    private volatile IOException m_reportedSerializationFailure = null;
+
+    public AnalyzeSnapshotDataTarget(Table table, StatisticsConsumer consumer) {
+        m_table = table;
+        m_schemaBytes = PrivateVoltTableFactory.getSchemaBytes(CatalogUtil.getVoltTable(table));
+        m_needsFinalClose = !table.getIsreplicated();
+        m_consumer = consumer;
+    }
+
+    @Override
+    public int getHeaderSize() {
+        return 0;
+    }
+
+    @Override
+    public ListenableFuture<?> write(final Callable<BBContainer> tupleData, int tableId) {
+        ListenableFuture<?> future = VoltDB.instance().getComputationService().submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                final BBContainer data = tupleData.call();
+                if (data == null) {
+                    return null;
+                }
+                try {
+                    if (m_writeException != null) {
+                        return null;
+                    }
+                    // blocks start with the partition id, followed by the row count and rows
+                    final ByteBuffer b = data.b();
+                    final int partitionId = b.getInt(b.position());
+                    ByteBuffer buf = ByteBuffer.allocate(m_schemaBytes.length + b.remaining() - 4);
+                    buf.put(m_schemaBytes);
+                    b.position(b.position() + 4);
+                    buf.put(b);
+                    VoltTable rows = PrivateVoltTableFactory.createVoltTableFromBuffer(buf, true);
+
+                    CollectedTableStatistics stats = getPartitionStatistics(partitionId);
+                    synchronized (stats) {
+                        stats.addRows(rows);
+                    }
+                    synchronized (AnalyzeSnapshotDataTarget.this) {
+                        m_bytesProcessed += buf.capacity();
+                    }
+                } catch (Throwable t) {
+                    m_writeException = t;
+                    throw Throwables.propagate(t);
+                } finally {
+                    data.discard();
+                }
+                return null;
+            }
+        });
+        synchronized (this) {
+            m_pendingWrites.add(future);
+        }
+        return future;
+    }
+
+    private synchronized CollectedTableStatistics getPartitionStatistics(int partitionId) {
+        CollectedTableStatistics stats = m_partitionStatistics.get(partitionId);
+        if (stats == null) {
+            stats = new CollectedTableStatistics(m_table);
+            m_partitionStatistics.put(partitionId, stats);
+        }
+        return stats;
+    }
+
+    @Override
+    public void reportSerializationFailure(IOException ex) {
+        m_reportedSerializationFailure = ex;
+    }
+
+    @Override
+    public boolean needsFinalClose() {
+        return m_needsFinalClose;
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        try {
+            List<ListenableFuture<?>> pending;
+            synchronized (this) {
+                pending = new ArrayList<ListenableFuture<?>>(m_pendingWrites);
+                m_pendingWrites.clear();
+            }
+            try {
+                Futures.successfulAsList(pending).get();
+            } catch (ExecutionException e) {
+                // successfulAsList doesn't fail, failed writes are recorded in m_writeException
+            }
+
+            if (m_writeException == null && m_reportedSerializationFailure == null) {
+                CollectedTableStatistics merged = new CollectedTableStatistics(m_table);
+                synchronized (this) {
+                    for (CollectedTableStatistics stats : m_partitionStatistics.values()) {
+                        merged.merge(stats);
+                    }
+                    m_partitionStatistics.clear();
+                }
+                m_consumer.statisticsCollected(merged);
+            }
+        } finally {
+            m_onCloseTask.run();
+        }
+        if (m_reportedSerializationFailure != null) {
+            // There was an error reported by the EE during serialization
+            throw m_reportedSerializationFailure;
+        }
+    }
+
+    @Override
+    public synchronized long getBytesWritten() {
+        return m_bytesProcessed;
+    }
+
+    @Override
+    public void setOnCloseHandler(Runnable onClose) {
+        m_onCloseTask = onClose;
+    }
+
+    @Override
+    public Throwable getLastWriteException() {
+        return m_writeException;
+    }
+
+    @Override
+    public SnapshotFormat getFormat() {
+        return SnapshotFormat.ANALYZE;
+    }
+
+    @Override
+    public String toString() {
+        return "Statistics collection for " + m_table.getTypeName();
+    }
+
+    @Override
+    public int getInContainerRowCount(BBContainer tupleData) {
+        return SnapshotDataTarget.ROW_COUNT_UNSUPPORTED;
+    }
+}
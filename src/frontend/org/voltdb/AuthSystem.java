@@ -34,9 +34,11 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.Subject;
@@ -86,6 +88,16 @@ public class AuthSystem {
     public static final String VOLTDB_SERVICE_LOGIN_MODULE =
             System.getProperty("VOLTDB_SERVICE_LOGIN_MODULE", "VoltDBService");
 
+    /**
+     * How long a password checked against a bcrypt shadow password is remembered, 0 disables the cache
+     */
+    static final long AUTH_CACHE_TTL_MS = Long.getLong("AUTH_CACHE_TTL_MS", TimeUnit.MINUTES.toMillis(10));
+
+    /**
+     * Upper bound of the remembered logins, logins are checked without the cache while it is full
+     */
+    static final int AUTH_CACHE_MAX_ENTRIES = Integer.getInteger("AUTH_CACHE_MAX_ENTRIES", 10000);
+
     /**
      * Authentication provider enumeration. It serves also as mapping mechanism
      * for providers, which are configured in the deployment file, and the login
@@ -349,6 +361,14 @@ public class AuthSystem {
 
     private final InternalAdminUser m_internalAdminUser;
 
+    /**
+     * Logins that were checked with bcrypt, keyed on hash scheme and user name. A client that reconnects
+     * with the same password hash is let in without another bcrypt check until the entry expires. The
+     * cache belongs to the AuthSystem of a catalog, so changed passwords are never matched against it.
+     */
+    private final ConcurrentHashMap<String, VerifiedLogin> m_verifiedLogins =
+            new ConcurrentHashMap<String, VerifiedLogin>();
+
     //Auth system keeps a array of all perms used for auth disabled user not for checking permissions.
     private static String[] m_perm_list;
 
@@ -522,6 +542,11 @@ public class AuthSystem {
         return m_enabled;
     }
 
+    //Do clients log in with the kerberos handshake?
+    public boolean isKerberosEnabled() {
+        return m_enabled && m_authProvider == AuthProvider.KERBEROS;
+    }
+
     public LoginContext getLoginContext() {
         return m_loginCtx;
     }
@@ -774,8 +799,18 @@ public class AuthSystem {
                     }
                 }
             } else {
-                String pwToCheck = (scheme == ClientAuthScheme.HASH_SHA1 ? user.m_bcryptShadowPassword : user.m_bcryptSha2ShadowPassword);
-                matched = BCrypt.checkpw(Encoder.hexEncode(m_password), pwToCheck);
+                final String key = scheme.name() + ':' + m_user;
+                final byte fingerprint[] = fingerprint(m_password);
+                final VerifiedLogin verified = m_verifiedLogins.get(key);
+                if (verified != null && verified.matches(fingerprint, System.currentTimeMillis())) {
+                    matched = true;
+                } else {
+                    String pwToCheck = (scheme == ClientAuthScheme.HASH_SHA1 ? user.m_bcryptShadowPassword : user.m_bcryptSha2ShadowPassword);
+                    matched = BCrypt.checkpw(Encoder.hexEncode(m_password), pwToCheck);
+                    if (matched) {
+                        rememberLogin(key, fingerprint);
+                    }
+                }
             }
 
             if (matched) {
@@ -789,6 +824,59 @@ public class AuthSystem {
         }
     }
 
+    /**
+     * A password hash that passed the bcrypt check. Only a digest of the hash the client
+     * presented is kept.
+     */
+    private static class VerifiedLogin {
+        private final byte[] m_fingerprint;
+        private final long m_expiresAt;
+
+        VerifiedLogin(byte[] fingerprint, long expiresAt) {
+            m_fingerprint = fingerprint;
+            m_expiresAt = expiresAt;
+        }
+
+        boolean matches(byte[] fingerprint, long now) {
+            return now < m_expiresAt && MessageDigest.isEqual(m_fingerprint, fingerprint);
+        }
+    }
+
+    private static byte[] fingerprint(byte[] password) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password);
+        } catch (NoSuchAlgorithmException e) {
+            VoltDB.crashLocalVoltDB(e.getMessage(), true, e);
+            return null;
+        }
+    }
+
+    private void rememberLogin(String key, byte[] fingerprint) {
+        if (AUTH_CACHE_TTL_MS <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (m_verifiedLogins.size() >= AUTH_CACHE_MAX_ENTRIES) {
+            final Iterator<VerifiedLogin> iter = m_verifiedLogins.values().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().m_expiresAt <= now) {
+                    iter.remove();
+                }
+            }
+            if (m_verifiedLogins.size() >= AUTH_CACHE_MAX_ENTRIES && !m_verifiedLogins.containsKey(key)) {
+                return;
+            }
+        }
+        m_verifiedLogins.put(key, new VerifiedLogin(fingerprint, now + AUTH_CACHE_TTL_MS));
+    }
+
+    /**
+     * @return the number of remembered logins, for tests
+     */
+    int getVerifiedLoginCount() {
+        return m_verifiedLogins.size();
+    }
+
     private static void logAuthSuccess(String user) {
         //Make sure its logged per user
         String format = "Authenticated user " + user + "%s";
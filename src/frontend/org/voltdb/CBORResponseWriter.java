@@ -0,0 +1,262 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.GeographyValue;
+
+/**
+ * Writes a procedure response as CBOR (RFC 7049), the binary counterpart of
+ * {@link ClientResponseImpl#toJSONString()} for machine clients of the HTTP
+ * interface. The document has the same maps, keys and nesting as the JSON
+ * one, but numbers keep their binary form and VARBINARY values are byte
+ * strings instead of hex text. Rows are encoded straight out of the result
+ * tables into a small buffer that is written out whenever it fills up.
+ */
+final class CBORResponseWriter {
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int NULL = 0xf6;
+    private static final int DOUBLE = 0xfb;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream m_out;
+    private final byte[] m_buffer = new byte[BUFFER_SIZE];
+    private int m_position = 0;
+
+    CBORResponseWriter(OutputStream out) {
+        m_out = out;
+    }
+
+    /**
+     * Write a response and flush it to the underlying stream.
+     */
+    void write(ClientResponseImpl response) throws IOException {
+        writeHeader(MAJOR_MAP, 5);
+        writeText(ClientResponseImpl.JSON_STATUS_KEY);
+        writeLong(response.getStatus());
+        writeText(ClientResponseImpl.JSON_APPSTATUS_KEY);
+        writeLong(response.getAppStatus());
+        writeText(ClientResponseImpl.JSON_STATUSSTRING_KEY);
+        writeText(response.getStatusString());
+        writeText(ClientResponseImpl.JSON_APPSTATUSSTRING_KEY);
+        writeText(response.getAppStatusString());
+        writeText(ClientResponseImpl.JSON_RESULTS_KEY);
+        final VoltTable[] results = response.getResults();
+        writeHeader(MAJOR_ARRAY, results.length);
+        for (VoltTable table : results) {
+            write(table);
+        }
+        flush();
+    }
+
+    private void write(VoltTable table) throws IOException {
+        final int columns = table.getColumnCount();
+        writeHeader(MAJOR_MAP, 3);
+        writeText(VoltTable.JSON_STATUS_KEY);
+        writeLong(table.getStatusCode());
+
+        writeText(VoltTable.JSON_SCHEMA_KEY);
+        writeHeader(MAJOR_ARRAY, columns);
+        for (int i = 0; i < columns; i++) {
+            writeHeader(MAJOR_MAP, 2);
+            writeText(VoltTable.JSON_NAME_KEY);
+            writeText(table.getColumnName(i));
+            writeText(VoltTable.JSON_TYPE_KEY);
+            writeLong(table.getColumnType(i).getValue());
+        }
+
+        writeText(VoltTable.JSON_DATA_KEY);
+        writeHeader(MAJOR_ARRAY, table.getRowCount());
+        VoltTableRow row = table.cloneRow();
+        row.resetRowPosition();
+        while (row.advanceRow()) {
+            writeHeader(MAJOR_ARRAY, columns);
+            for (int i = 0; i < columns; i++) {
+                writeValue(row, i);
+            }
+        }
+    }
+
+    private void writeValue(VoltTableRow row, int column) throws IOException {
+        switch (row.getColumnType(column)) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+            final long value = row.getLong(column);
+            if (row.wasNull()) {
+                writeNull();
+            } else {
+                writeLong(value);
+            }
+            break;
+        case TIMESTAMP:
+            final long micros = row.getTimestampAsLong(column);
+            if (row.wasNull()) {
+                writeNull();
+            } else {
+                writeLong(micros);
+            }
+            break;
+        case FLOAT:
+            final double dvalue = row.getDouble(column);
+            if (row.wasNull()) {
+                writeNull();
+            } else {
+                writeDouble(dvalue);
+            }
+            break;
+        case STRING:
+            final byte[] text = row.getStringAsBytes(column);
+            if (text == null) {
+                writeNull();
+            } else {
+                writeHeader(MAJOR_TEXT, text.length);
+                writeBytes(text);
+            }
+            break;
+        case VARBINARY:
+            final byte[] bin = row.getVarbinary(column);
+            if (bin == null) {
+                writeNull();
+            } else {
+                writeHeader(MAJOR_BYTES, bin.length);
+                writeBytes(bin);
+            }
+            break;
+        case DECIMAL:
+            final BigDecimal dec = row.getDecimalAsBigDecimal(column);
+            writeText(row.wasNull() ? null : dec.toString());
+            break;
+        case GEOGRAPHY_POINT:
+            final GeographyPointValue pt = row.getGeographyPointValue(column);
+            writeText(row.wasNull() ? null : pt.toString());
+            break;
+        case GEOGRAPHY:
+            final GeographyValue gv = row.getGeographyValue(column);
+            writeText(row.wasNull() ? null : gv.toString());
+            break;
+        default:
+            // not a valid column type, keep the row as wide as the schema
+            writeNull();
+            break;
+        }
+    }
+
+    private void writeNull() throws IOException {
+        ensure(1);
+        m_buffer[m_position++] = (byte) NULL;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value >= 0) {
+            writeHeader(MAJOR_UNSIGNED, value);
+        } else {
+            writeHeader(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private void writeDouble(double value) throws IOException {
+        ensure(9);
+        m_buffer[m_position++] = (byte) DOUBLE;
+        putLong(Double.doubleToLongBits(value), 8);
+    }
+
+    private void writeText(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHeader(MAJOR_TEXT, bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * The initial byte of a data item and the length or value that follows it,
+     * in the fewest bytes the value fits in. The value is never negative.
+     */
+    private void writeHeader(int major, long value) throws IOException {
+        ensure(9);
+        final int type = major << 5;
+        if (value < 24) {
+            m_buffer[m_position++] = (byte) (type | value);
+        } else if (value <= 0xffL) {
+            m_buffer[m_position++] = (byte) (type | 24);
+            putLong(value, 1);
+        } else if (value <= 0xffffL) {
+            m_buffer[m_position++] = (byte) (type | 25);
+            putLong(value, 2);
+        } else if (value <= 0xffffffffL) {
+            m_buffer[m_position++] = (byte) (type | 26);
+            putLong(value, 4);
+        } else {
+            m_buffer[m_position++] = (byte) (type | 27);
+            putLong(value, 8);
+        }
+    }
+
+    private void putLong(long value, int bytes) {
+        for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+            m_buffer[m_position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > BUFFER_SIZE - m_position) {
+            flushBuffer();
+            if (bytes.length > BUFFER_SIZE) {
+                m_out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, m_buffer, m_position, bytes.length);
+        m_position += bytes.length;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (BUFFER_SIZE - m_position < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (m_position > 0) {
+            m_out.write(m_buffer, 0, m_position);
+            m_position = 0;
+        }
+    }
+
+    private void flush() throws IOException {
+        flushBuffer();
+        m_out.flush();
+    }
+}
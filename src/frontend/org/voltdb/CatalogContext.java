@@ -190,6 +190,8 @@ public class CatalogContext {
                     bytes,
                     depbytes,
                     catalogVersion + incValue);
+        // statistics collected by @Analyze still describe the tables the update left alone
+        retval.m_ptool.updateEstimates(m_ptool.getEstimates().retainUnchanged(database, retval.database));
         return retval;
     }
 
@@ -106,6 +106,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
     static long TOPOLOGY_CHANGE_CHECK_MS = Long.getLong("TOPOLOGY_CHANGE_CHECK_MS", 5000);
     static long AUTH_TIMEOUT_MS = Long.getLong("AUTH_TIMEOUT_MS", 30000);
+    // Threads checking login password hashes, shared by the client and admin ports
+    static final int AUTH_THREADS = Integer.getInteger("AUTH_THREADS",
+            Math.max(1, Math.min(8, CoreUtils.availableProcessors() / 2)));
+    // Logins waiting for an authentication thread, more logins are retried after AUTH_RETRY_MS
+    static final int AUTH_QUEUE_DEPTH = Integer.getInteger("AUTH_QUEUE_DEPTH", 1024);
+    static final long AUTH_RETRY_MS = 10;
 
     //Same as in Distributer.java
     public static final long ASYNC_TOPO_HANDLE = Long.MAX_VALUE - 1;
@@ -234,6 +240,14 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
     private final AtomicBoolean m_isAcceptingConnections = new AtomicBoolean(false);
 
+    /**
+     * Checks the password hashes of the logins read by the network threads. Hashing is
+     * CPU bound, so the pool is small and a reconnect storm waits in its queue instead
+     * of holding a thread per connection.
+     */
+    private final ExecutorService m_authExecutor = CoreUtils.getListeningExecutorService(
+            "Client authenticator", AUTH_THREADS, new LinkedBlockingQueue<Runnable>(AUTH_QUEUE_DEPTH), null);
+
     /** A port that accepts client connections */
     public class ClientAcceptor implements Runnable {
         private final int m_port;
@@ -245,7 +259,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         private final InetAddress m_interface;
 
         /**
-         * Used a cached thread pool to accept new connections.
+         * Runs the blocking kerberos handshakes, other logins are read by the network threads.
          */
         private final ExecutorService m_executor = CoreUtils.getBoundedThreadPoolExecutor(128, 10L, TimeUnit.SECONDS,
                         CoreUtils.getThreadFactory("Client authentication threads", "Client authenticator"));
@@ -428,6 +442,15 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                      */
                     m_numConnections.incrementAndGet();
 
+                    /*
+                     * The kerberos handshake does its own blocking socket IO. Everything else
+                     * is registered with the network right away and authenticates there.
+                     */
+                    if (!m_catalogContext.get().authSystem.isKerberosEnabled()) {
+                        registerForLogin(socket);
+                        continue;
+                    }
+
                     final AuthRunnable authRunnable = new AuthRunnable(socket);
                     while (true) {
                         try {
@@ -463,6 +486,32 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             }
         }
 
+        /**
+         * Hand a new connection to the network with a handler that reads the login
+         * message before anything else.
+         */
+        private void registerForLogin(final SocketChannel socket) {
+            try {
+                socket.socket().setTcpNoDelay(true);
+                socket.socket().setKeepAlive(true);
+                m_network.registerChannel(
+                        socket,
+                        new ClientInputHandler(m_isAdmin),
+                        0,
+                        ReverseDNSPolicy.ASYNCHRONOUS);
+            } catch (IOException e) {
+                m_numConnections.decrementAndGet();
+                try {
+                    socket.close();
+                } catch (IOException e1) {
+                    //Don't care connection is already lost anyways
+                }
+                if (m_running) {
+                    hostLog.warn("Exception registering connection for authentication in ClientAcceptor", e);
+                }
+            }
+        }
+
         /**
          * Attempt to authenticate the user associated with this socket connection
          * @param socket
@@ -696,25 +745,263 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
              * Create an input handler.
              */
             InputHandler handler = new ClientInputHandler(username, m_isAdmin);
-
-            byte buildString[] = VoltDB.instance().getBuildString().getBytes(Charsets.UTF_8);
-            responseBuffer = ByteBuffer.allocate(34 + buildString.length);
-            responseBuffer.putInt(30 + buildString.length);//message length
-            responseBuffer.put((byte)0);//version
-
-            //Send positive response
-            responseBuffer.put((byte)0);
-            responseBuffer.putInt(VoltDB.instance().getHostMessenger().getHostId());
-            responseBuffer.putLong(handler.connectionId());
-            responseBuffer.putLong(VoltDB.instance().getHostMessenger().getInstanceId().getTimestamp());
-            responseBuffer.putInt(VoltDB.instance().getHostMessenger().getInstanceId().getCoord());
-            responseBuffer.putInt(buildString.length);
-            responseBuffer.put(buildString).flip();
-            socket.write(responseBuffer);
+            socket.write(loginSuccessResponse(handler.connectionId()));
             return handler;
         }
     }
 
+    private static ByteBuffer loginFailureResponse(byte reason) {
+        ByteBuffer responseBuffer = ByteBuffer.allocate(6);
+        responseBuffer.putInt(2);//message length
+        responseBuffer.put((byte)0);//version
+        responseBuffer.put(reason).flip();
+        return responseBuffer;
+    }
+
+    private static ByteBuffer loginSuccessResponse(long connectionId) {
+        byte buildString[] = VoltDB.instance().getBuildString().getBytes(Charsets.UTF_8);
+        ByteBuffer responseBuffer = ByteBuffer.allocate(35 + buildString.length);
+        responseBuffer.putInt(31 + buildString.length);//message length
+        responseBuffer.put((byte)0);//version
+
+        //Send positive response
+        responseBuffer.put((byte)0);
+        responseBuffer.putInt(VoltDB.instance().getHostMessenger().getHostId());
+        responseBuffer.putLong(connectionId);
+        responseBuffer.putLong(VoltDB.instance().getHostMessenger().getInstanceId().getTimestamp());
+        responseBuffer.putInt(VoltDB.instance().getHostMessenger().getInstanceId().getCoord());
+        responseBuffer.putInt(buildString.length);
+        responseBuffer.put(buildString);
+        // older clients stop reading after the build string
+        responseBuffer.put(Constants.FEATURE_COLUMNAR_RESULTS).flip();
+        return responseBuffer;
+    }
+
+    /**
+     * The login of a connection that was registered with the network before it authenticated.
+     * The network thread of the connection reads the login message without blocking, the
+     * password hash is checked on the authentication threads and the result is handed back
+     * to the network thread. All state changes happen on the network thread, so they are
+     * ordered with the connection being stopped.
+     */
+    private class PendingLogin {
+        private static final int MAX_LOGIN_LENGTH = 1024 * 1024 * 2;
+
+        private final ClientInputHandler m_handler;
+        private final long m_start = System.currentTimeMillis();
+        private Connection m_connection;
+        private ScheduledFuture<?> m_timeoutFuture;
+        // The login message arrived, anything the client sends after it waits for the result
+        private boolean m_received = false;
+        // The connection was answered or stopped
+        private volatile boolean m_finished = false;
+
+        PendingLogin(ClientInputHandler handler) {
+            m_handler = handler;
+        }
+
+        boolean isReceived() {
+            return m_received || m_finished;
+        }
+
+        void started(final Connection c) {
+            m_connection = c;
+            m_timeoutFuture = VoltDB.instance().schedulePriorityWork(new Runnable() {
+                @Override
+                public void run() {
+                    c.queueTask(new Runnable() {
+                        @Override
+                        public void run() {
+                            timedOut();
+                        }
+                    });
+                }
+            }, AUTH_TIMEOUT_MS, 0, TimeUnit.MILLISECONDS);
+            c.enableReadSelection();
+        }
+
+        void stopped() {
+            m_finished = true;
+            m_timeoutFuture.cancel(false);
+        }
+
+        private void timedOut() {
+            if (m_finished) {
+                return;
+            }
+            double seconds = (System.currentTimeMillis() - m_start) / 1000.0;
+            authLog.warn(String.format("Timed out authenticating client from %s after %.2f seconds (timeout target is %.2f seconds)",
+                                       m_connection.getHostnameAndIPAndPort(), seconds, AUTH_TIMEOUT_MS / 1000.0));
+            reject(WIRE_PROTOCOL_TIMEOUT_ERROR);
+        }
+
+        /**
+         * Reject a login message with a length the blocking handshake refused as well
+         * @return true if the login was rejected
+         */
+        boolean checkLength(int messageLength) {
+            if (messageLength > 0 && messageLength <= MAX_LOGIN_LENGTH) {
+                return false;
+            }
+            authLog.warn("Failure to authenticate connection(" + m_connection.getHostnameAndIPAndPort() +
+                         "): wire protocol violation (message length " + messageLength +
+                         (messageLength > 0 ? " is too large)." : " is not positive)."));
+            reject(WIRE_PROTOCOL_FORMAT_ERROR);
+            return true;
+        }
+
+        void received(ByteBuffer message) {
+            m_received = true;
+            m_connection.disableReadSelection();
+
+            final ClientAuthScheme hashScheme;
+            final String service;
+            final String username;
+            final byte password[];
+            try {
+                int aversion = message.get(); //Get version
+                //If auth version is more than zero we read auth hashing scheme.
+                if (aversion > 0) {
+                    try {
+                        hashScheme = ClientAuthScheme.get(message.get());
+                    } catch (IllegalArgumentException ex) {
+                        authLog.warn("Failure to authenticate connection Invalid Hash Scheme presented.");
+                        reject(WIRE_PROTOCOL_FORMAT_ERROR);
+                        return;
+                    }
+                } else {
+                    hashScheme = ClientAuthScheme.HASH_SHA1;
+                }
+                FastDeserializer fds = new FastDeserializer(message);
+                service = fds.readString();
+                username = fds.readString();
+                final int digestLen = ClientAuthScheme.getDigestLength(hashScheme);
+                //We should be left with SHA bytes only which varies based on scheme.
+                if (message.remaining() != digestLen) {
+                    authLog.warn("Failure to authenticate connection(" + m_connection.getHostnameAndIPAndPort()
+                            + "): user " + username + " failed authentication.");
+                    reject(AUTHENTICATION_FAILURE);
+                    return;
+                }
+                password = new byte[digestLen];
+                message.get(password);
+            } catch (Exception e) {
+                authLog.warn("Failure to authenticate connection(" + m_connection.getHostnameAndIPAndPort() +
+                             "): wire protocol violation (malformed login message).", e);
+                reject(WIRE_PROTOCOL_FORMAT_ERROR);
+                return;
+            }
+
+            AuthProvider ap = null;
+            try {
+                ap = AuthProvider.fromService(service);
+            } catch (IllegalArgumentException unkownProvider) {
+                // handle it bellow
+            }
+
+            if (ap == null) {
+                authLog.warn("Rejected user " + username +
+                        " attempting to use disabled or unconfigured service " +
+                        service + ".");
+                authLog.warn("VoltDB Export services are no longer available through clients.");
+                reject(EXPORT_DISABLED_REJECTION);
+                return;
+            }
+
+            /*
+             * Don't use the auth system during recovery. Not safe to use
+             * the node to initiate multi-partition txns during recovery
+             */
+            if (VoltDB.instance().rejoining()) {
+                authLog.warn("Failure to authenticate connection(" + m_connection.getHostnameAndIPAndPort() +
+                        "): user " + username + " because this node is rejoining.");
+                reject(AUTHENTICATION_FAILURE_DUE_TO_REJOIN);
+                return;
+            }
+
+            final AuthSystem authSystem = m_catalogContext.get().authSystem;
+            final AuthenticationRequest arq;
+            if (ap == AuthProvider.KERBEROS) {
+                if (authSystem.isKerberosEnabled()) {
+                    // kerberos was configured after the connection was accepted
+                    authLog.warn("Failure to authenticate connection(" + m_connection.getHostnameAndIPAndPort() +
+                                 "): kerberos handshake on a connection accepted without kerberos.");
+                    reject(AUTHENTICATION_FAILURE);
+                    return;
+                }
+                // no socket IO is done unless kerberos is enabled
+                arq = authSystem.new KerberosAuthenticationRequest(null);
+            } else {
+                arq = authSystem.new HashAuthenticationRequest(username, password);
+            }
+            verify(arq, hashScheme, username);
+        }
+
+        private void verify(final AuthenticationRequest arq, final ClientAuthScheme hashScheme, final String username) {
+            if (m_finished) {
+                return;
+            }
+            try {
+                m_authExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        final boolean authenticated = arq.authenticate(hashScheme);
+                        m_connection.queueTask(new Runnable() {
+                            @Override
+                            public void run() {
+                                verified(arq, authenticated, username);
+                            }
+                        });
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                if (m_authExecutor.isShutdown()) {
+                    return;
+                }
+                // the connection waits with reads disabled, the timeout still applies
+                VoltDB.instance().schedulePriorityWork(new Runnable() {
+                    @Override
+                    public void run() {
+                        verify(arq, hashScheme, username);
+                    }
+                }, AUTH_RETRY_MS, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void verified(AuthenticationRequest arq, boolean authenticated, String username) {
+            if (m_finished) {
+                return;
+            }
+            if (!authenticated) {
+                Exception faex = arq.getAuthenticationFailureException();
+                if (faex != null) {
+                    authLog.warn("Failure to authenticate connection(" + m_connection.getHostnameAndIPAndPort() +
+                             "):", faex);
+                } else {
+                    authLog.warn("Failure to authenticate connection(" + m_connection.getHostnameAndIPAndPort() +
+                                 "): user " + username + " failed authentication.");
+                }
+                reject(AUTHENTICATION_FAILURE);
+                return;
+            }
+            m_finished = true;
+            m_timeoutFuture.cancel(false);
+            m_handler.authenticated(username, m_connection);
+            m_connection.writeStream().enqueue(loginSuccessResponse(m_handler.connectionId()));
+        }
+
+        /**
+         * Answer the login with the reason it failed and close the connection once
+         * the answer was written.
+         */
+        private void reject(byte reason) {
+            m_finished = true;
+            m_timeoutFuture.cancel(false);
+            m_connection.writeStream().enqueue(loginFailureResponse(reason));
+            ((VoltPort)m_connection).shutdownAfterDrain();
+        }
+    }
+
     /** A port that reads client procedure invocations and writes responses */
     public class ClientInputHandler extends VoltProtocolHandler implements AdmissionControlGroup.ACGMember, InvocationClientHandler {
         public static final int MAX_READ = 8192 * 4;
@@ -727,13 +1014,31 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
          * rather then caching the AuthUser because the AuthUser
          * can be invalidated on catalog updates
          */
-        private final String m_username;
+        private volatile String m_username;
+
+        /**
+         * The login of a connection that authenticates on the network,
+         * null once it authenticated
+         */
+        private volatile PendingLogin m_login;
 
         public ClientInputHandler(String username,
                                   boolean isAdmin)
         {
             m_username = username.intern();
             m_isAdmin = isAdmin;
+            m_login = null;
+        }
+
+        /**
+         * A handler for a connection that hasn't logged in yet. The first message
+         * is the login, the connection joins admission control once it authenticated.
+         */
+        ClientInputHandler(boolean isAdmin)
+        {
+            m_username = null;
+            m_isAdmin = isAdmin;
+            m_login = new PendingLogin(this);
         }
 
         @Override
@@ -749,15 +1054,45 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
 
         @Override
         public int getMaxRead() {
-            if (m_hasDTXNBackPressure) {
+            final PendingLogin login = m_login;
+            if (m_hasDTXNBackPressure || (login != null && login.isReceived())) {
                 return 0;
             } else {
                 return Math.max( MAX_READ, getNextMessageLength());
             }
         }
 
+        /*
+         * Clients send many small invocations back to back, so decode everything
+         * that arrived in one read with a single copy.
+         */
+        @Override
+        protected boolean batchMessages() {
+            return m_login == null;
+        }
+
+        @Override
+        public ByteBuffer retrieveNextMessage(final NIOReadStream inputStream) throws BadMessageLength {
+            final PendingLogin login = m_login;
+            if (login != null) {
+                if (login.isReceived()) {
+                    return null;
+                }
+                if (getNextMessageLength() == 0 && inputStream.dataAvailable() >= (Integer.SIZE/8) &&
+                        login.checkLength(inputStream.peekInt(0))) {
+                    return null;
+                }
+            }
+            return super.retrieveNextMessage(inputStream);
+        }
+
         @Override
         public void handleMessage(ByteBuffer message, Connection c) {
+            final PendingLogin login = m_login;
+            if (login != null) {
+                login.received(message);
+                return;
+            }
             try {
                 final ClientResponseImpl error = handleRead(message, this, c);
                 if (error != null) {
@@ -774,6 +1109,23 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         @Override
         public void started(final Connection c) {
             m_connection = c;
+            if (m_login != null) {
+                m_login.started(c);
+                return;
+            }
+            join(c);
+        }
+
+        /**
+         * Called on the network thread once the login was verified
+         */
+        private void authenticated(String username, Connection c) {
+            m_username = username.intern();
+            m_login = null;
+            join(c);
+        }
+
+        private void join(Connection c) {
             m_cihm.put(c.connectionId(),
                        new ClientInterfaceHandleManager( m_isAdmin, c, null, m_acg.get()));
             m_acg.get().addMember(this);
@@ -785,6 +1137,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         @Override
         public void stopped(Connection c) {
             m_numConnections.decrementAndGet();
+            final PendingLogin login = m_login;
+            if (login != null) {
+                // never joined admission control
+                login.stopped();
+                return;
+            }
             /*
              * It's necessary to free all the resources held by the IV2 ACG tracking.
              * Outstanding requests may actually still be at large
@@ -877,6 +1235,8 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         {
             buf.putInt(buf.capacity() - 4);
             clientResponse.flattenToBuffer(buf);
+            // the results were copied into the network buffer, give back their pooled memory
+            clientResponse.releasePooledResults();
         }
 
         @Override
@@ -899,6 +1259,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
                 clientData = cihm.findHandle(response.getClientInterfaceHandle());
             }
             if (clientData == null) {
+                releasePooledResults();
                 return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
             }
 
@@ -906,6 +1267,7 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             if (restartTransaction(clientData.m_messageSize, clientData.m_creationTimeNanos)) {
                 // If the transaction is successfully restarted, don't send a response to the
                 // client yet.
+                releasePooledResults();
                 return DeferredSerialization.EMPTY_MESSAGE_LENGTH;
             }
 
@@ -925,6 +1287,9 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             clientResponse.setClientHandle(clientData.m_clientHandle);
             clientResponse.setClusterRoundtrip((int)TimeUnit.NANOSECONDS.toMillis(delta));
             clientResponse.setHash(null); // not part of wire protocol
+            if (clientData.m_columnarResults) {
+                clientResponse.encodeColumnarResults();
+            }
 
             return clientResponse.getSerializedSize() + 4;
         }
@@ -938,6 +1303,13 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
             return clientResponse;
         }
 
+        // a response that is never sent still has to give back its pooled results
+        private void releasePooledResults() {
+            if (clientResponse != null) {
+                clientResponse.releasePooledResults();
+            }
+        }
+
         /**
          * Checks if the transaction needs to be restarted, if so, restart it.
          * @param messageSize the original message size when the invocation first came in
@@ -1547,10 +1919,12 @@ public class ClientInterface implements SnapshotDaemon.DaemonInitiator {
         {
             m_adminAcceptor.shutdown();
         }
+        m_authExecutor.shutdownNow();
         if (m_snapshotDaemon != null) {
             m_snapshotDaemon.shutdown();
         }
         m_notifier.shutdown();
+        m_dispatcher.shutdown();
     }
 
     public void startAcceptingConnections() throws IOException {
@@ -24,6 +24,7 @@ import java.util.concurrent.TimeUnit;
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONString;
 import org.json_voltpatches.JSONStringer;
+import org.json_voltpatches.JSONWriter;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ClientUtils;
 import org.voltdb.common.Constants;
@@ -44,11 +45,25 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     private byte encodedAppStatusString[];
     private VoltTable[] results = new VoltTable[0];
     private Integer m_hash = null;
+    // true when nothing but this response references its pooled result tables
+    private boolean m_ownsPooledResults = false;
+    // results received in the columnar format, the row oriented results are
+    // only built if asked for
+    private ColumnarVoltTable[] m_columnarResults = null;
+    // the results encoded by encodeColumnarResults(), sent instead of the row format
+    private ByteBuffer[] m_encodedResults = null;
+
+    // results smaller than this are sent in the row format even to clients
+    // that asked for columnar results, the row format is cheaper to build
+    static final int COLUMNAR_MIN_BYTES = Integer.getInteger("CLIENT_COLUMNAR_MIN_BYTES", 4096);
 
     private int clusterRoundTripTime = 0;
     private int clientRoundTripTime = 0;
     private long clientRoundTripTimeNanos = 0;
 
+    // version byte of responses carrying columnar result tables
+    static final byte COLUMNAR_VERSION = 1;
+
     // JSON KEYS FOR SERIALIZATION
     static final String JSON_STATUS_KEY = "status";
     static final String JSON_STATUSSTRING_KEY = "statusstring";
@@ -120,9 +135,56 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
 
     @Override
     public VoltTable[] getResults() {
+        if (results == null) {
+            results = new VoltTable[m_columnarResults.length];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = m_columnarResults[i].toVoltTable();
+            }
+        }
         return results;
     }
 
+    /**
+     * @return true if the results arrived in the columnar format, reading them
+     * through {@link #getColumnarResults()} then needs no conversion
+     */
+    public boolean hasColumnarResults() {
+        return m_columnarResults != null;
+    }
+
+    /**
+     * @return the result tables in the columnar format, converted from the row
+     * format if they didn't arrive that way
+     */
+    public ColumnarVoltTable[] getColumnarResults() {
+        if (m_columnarResults == null) {
+            m_columnarResults = new ColumnarVoltTable[results.length];
+            for (int i = 0; i < results.length; i++) {
+                m_columnarResults[i] = ColumnarVoltTable.fromVoltTable(results[i]);
+            }
+        }
+        return m_columnarResults;
+    }
+
+    /**
+     * Encode the result tables in the columnar format if they are large enough
+     * to benefit, for clients that asked for it. The encoding is kept and sent by
+     * {@link #flattenToBuffer(ByteBuffer)} until the results change.
+     */
+    public void encodeColumnarResults() {
+        int tablesSize = 0;
+        for (VoltTable vt : results) {
+            tablesSize += vt.getSerializedSize();
+        }
+        m_encodedResults = null;
+        if (tablesSize >= COLUMNAR_MIN_BYTES) {
+            m_encodedResults = new ByteBuffer[results.length];
+            for (int i = 0; i < results.length; i++) {
+                m_encodedResults[i] = ColumnarVoltTable.encode(results[i]);
+            }
+        }
+    }
+
     @Override
     public String getStatusString() {
         return statusString;
@@ -141,7 +203,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     }
 
     public void initFromBuffer(ByteBuffer buf) throws IOException {
-        buf.get();//Skip version byte
+        final byte version = buf.get();
         clientHandle = buf.getLong();
         byte presentFields = buf.get();
         status = buf.get();
@@ -169,6 +231,17 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (tableCount < 0) {
             throw new IOException("Table count is negative: " + tableCount);
         }
+        if (version == COLUMNAR_VERSION) {
+            results = null;
+            m_columnarResults = new ColumnarVoltTable[tableCount];
+            for (int i = 0; i < tableCount; i++) {
+                buf.getInt();
+                m_columnarResults[i] = ColumnarVoltTable.fromBuffer(buf);
+            }
+            setProperly = true;
+            return;
+        }
+        m_columnarResults = null;
         results = new VoltTable[tableCount];
         for (int i = 0; i < tableCount; i++) {
             int tableSize = buf.getInt();
@@ -202,8 +275,15 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         if (m_hash != null) {
             msgsize += 4;
         }
-        for (VoltTable vt : results) {
-            msgsize += vt.getSerializedSize();
+        if (m_encodedResults != null) {
+            for (ByteBuffer encoded : m_encodedResults) {
+                msgsize += encoded.remaining();
+            }
+        }
+        else {
+            for (VoltTable vt : results) {
+                msgsize += vt.getSerializedSize();
+            }
         }
 
         return msgsize;
@@ -214,7 +294,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
      */
     public ByteBuffer flattenToBuffer(ByteBuffer buf) {
         assert setProperly;
-        buf.put((byte)0); //version
+        buf.put(m_encodedResults != null ? COLUMNAR_VERSION : 0); //version
         buf.putLong(clientHandle);
         byte presentFields = 0;
         if (appStatusString != null) {
@@ -242,6 +322,12 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
             buf.putInt(m_hash.intValue());
         }
         buf.putShort((short) results.length);
+        if (m_encodedResults != null) {
+            for (ByteBuffer encoded : m_encodedResults) {
+                buf.put(encoded.duplicate());
+            }
+            return buf;
+        }
         for (VoltTable vt : results)
         {
             vt.flattenToBuffer(buf);
@@ -295,24 +381,7 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
     public String toJSONString() {
         JSONStringer js = new JSONStringer();
         try {
-            js.object();
-
-            js.key(JSON_STATUS_KEY);
-            js.value(status);
-            js.key(JSON_APPSTATUS_KEY);
-            js.value(appStatus);
-            js.key(JSON_STATUSSTRING_KEY);
-            js.value(statusString);
-            js.key(JSON_APPSTATUSSTRING_KEY);
-            js.value(appStatusString);
-            js.key(JSON_RESULTS_KEY);
-            js.array();
-            for (VoltTable o : results) {
-                js.value(o);
-            }
-            js.endArray();
-
-            js.endObject();
+            toJSONWriter(js);
         }
         catch (JSONException e) {
             e.printStackTrace();
@@ -321,6 +390,32 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         return js.toString();
     }
 
+    /**
+     * Write the same JSON as {@link #toJSONString()} to a writer, streaming
+     * the rows of the result tables rather than building their text first.
+     * @throws JSONException on JSON-related error or a failed write.
+     */
+    void toJSONWriter(JSONWriter js) throws JSONException {
+        js.object();
+
+        js.key(JSON_STATUS_KEY);
+        js.value(status);
+        js.key(JSON_APPSTATUS_KEY);
+        js.value(appStatus);
+        js.key(JSON_STATUSSTRING_KEY);
+        js.value(statusString);
+        js.key(JSON_APPSTATUSSTRING_KEY);
+        js.value(appStatusString);
+        js.key(JSON_RESULTS_KEY);
+        js.array();
+        for (VoltTable o : getResults()) {
+            o.toJSONWriter(js);
+        }
+        js.endArray();
+
+        js.endObject();
+    }
+
     /**
      * @return MD5 hash as int of the tables in the result. Only hashes first bits of big results.
      */
@@ -352,9 +447,33 @@ public class ClientResponseImpl implements ClientResponse, JSONString {
         VoltTable t = new VoltTable(new VoltTable.ColumnInfo("", VoltType.INTEGER));
         t.addRow(hash);
         results = new VoltTable[] { t };
+        m_encodedResults = null;
     }
 
     public void dropResultTable() {
         results = new VoltTable[] {};
+        m_encodedResults = null;
+    }
+
+    /**
+     * Mark the result tables as referenced only by this response, so that any
+     * pooled buffers backing them can be released once it has been sent.
+     */
+    public void setOwnsPooledResults(boolean owns) {
+        m_ownsPooledResults = owns;
+    }
+
+    /**
+     * Release the pooled buffers backing the result tables if this response
+     * owns them. The results must not be read afterwards.
+     */
+    public void releasePooledResults() {
+        if (!m_ownsPooledResults) {
+            return;
+        }
+        m_ownsPooledResults = false;
+        for (VoltTable result : results) {
+            PrivateVoltTableFactory.releasePooledBuffer(result);
+        }
     }
 }
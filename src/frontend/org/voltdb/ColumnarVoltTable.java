@@ -0,0 +1,1059 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.common.Constants;
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.GeographyValue;
+import org.voltdb.types.TimestampType;
+import org.voltdb.types.VoltDecimalHelper;
+import org.voltdb.utils.Encoder;
+import org.voltdb.utils.VoltTypeUtil;
+
+/**
+ * <p>A read only result table whose values are held column by column, as it
+ * arrives from the server when a client asks for columnar results (see
+ * {@link org.voltdb.client.ClientConfig#setColumnarResults(boolean)}).</p>
+ *
+ * <p>Whole columns can be read in bulk as primitive or object arrays, e.g.
+ * {@link #getLongColumn(int)}, without decoding a cell at a time. Nulls are
+ * represented in those arrays the way the row accessors of {@link VoltTable}
+ * return them: the type's null sentinel for numeric columns and
+ * <tt>null</tt> for the others. For code written against the row API the
+ * table also offers a cursor with the same accessors and semantics as
+ * {@link VoltTableRow}, and {@link #toVoltTable()} converts it to a row
+ * oriented table.</p>
+ *
+ * <p>On the wire the table is serialized as the length prefixed header
+ * <pre>
+ *  byte status code, short column count, byte column types[],
+ *  string column names[], int row count
+ * </pre>
+ * followed by one block per column, starting with the encoding of the
+ * column:</p>
+ * <ul>
+ * <li>{@link #PLAIN}: every value in its row format representation.</li>
+ * <li>{@link #DICTIONARY}: STRING columns with few distinct values. The
+ * distinct values, then a varint per row, 0 for null and n for the nth
+ * value.</li>
+ * <li>{@link #DELTA}: BIGINT and TIMESTAMP columns. A zig-zag varint per row
+ * holding the difference to the previous row, the first row's difference is
+ * to 0.</li>
+ * </ul>
+ */
+public class ColumnarVoltTable {
+
+    public static final byte PLAIN = 0;
+    public static final byte DICTIONARY = 1;
+    public static final byte DELTA = 2;
+
+    // STRING columns with more distinct values than this are sent plain
+    private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    private final byte m_statusCode;
+    private final String[] m_columnNames;
+    private final VoltType[] m_columnTypes;
+    private final byte[] m_encodings;
+    private final int m_rowCount;
+    // long[] for integral and timestamp columns, double[] for float columns,
+    // arrays of the value class for everything else
+    private final Object[] m_columns;
+
+    private int m_activeRowIndex = -1;
+    private boolean m_wasNull = false;
+
+    private ColumnarVoltTable(byte statusCode, String[] names, VoltType[] types,
+                              byte[] encodings, int rowCount, Object[] columns) {
+        m_statusCode = statusCode;
+        m_columnNames = names;
+        m_columnTypes = types;
+        m_encodings = encodings;
+        m_rowCount = rowCount;
+        m_columns = columns;
+    }
+
+    /**
+     * Build a columnar copy of a row oriented table.
+     */
+    public static ColumnarVoltTable fromVoltTable(VoltTable table) {
+        ByteBuffer buf = encode(table);
+        buf.getInt();
+        return fromBuffer(buf);
+    }
+
+    public byte getStatusCode() {
+        return m_statusCode;
+    }
+
+    public int getRowCount() {
+        return m_rowCount;
+    }
+
+    public int getColumnCount() {
+        return m_columnTypes.length;
+    }
+
+    public String getColumnName(int columnIndex) {
+        return m_columnNames[columnIndex];
+    }
+
+    public VoltType getColumnType(int columnIndex) {
+        return m_columnTypes[columnIndex];
+    }
+
+    /**
+     * @return the column index of a column name, ignoring case like
+     * {@link VoltTable#getColumnIndex(String)}
+     */
+    public int getColumnIndex(String name) {
+        for (int i = 0; i < m_columnNames.length; i++) {
+            if (m_columnNames[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No Column named '" + name + "'. Existing columns are:" +
+                Arrays.toString(m_columnNames));
+    }
+
+    public ColumnInfo[] getTableSchema() {
+        ColumnInfo[] schema = new ColumnInfo[m_columnTypes.length];
+        for (int i = 0; i < schema.length; i++) {
+            schema[i] = new ColumnInfo(m_columnNames[i], m_columnTypes[i]);
+        }
+        return schema;
+    }
+
+    /**
+     * @return the encoding the column arrived in
+     */
+    public byte getColumnEncoding(int columnIndex) {
+        return m_encodings[columnIndex];
+    }
+
+    /*
+     * Bulk accessors. The returned arrays are shared with the table and must
+     * not be modified.
+     */
+
+    /**
+     * @return the values of a TINYINT, SMALLINT, INTEGER, BIGINT or TIMESTAMP
+     * column, nulls are the null value of the column's type
+     */
+    public long[] getLongColumn(int columnIndex) {
+        return (long[]) column(columnIndex, VoltType.TINYINT, VoltType.SMALLINT, VoltType.INTEGER,
+                VoltType.BIGINT, VoltType.TIMESTAMP);
+    }
+
+    /**
+     * @return the values of a FLOAT column, nulls are {@link VoltType#NULL_FLOAT}
+     */
+    public double[] getDoubleColumn(int columnIndex) {
+        return (double[]) column(columnIndex, VoltType.FLOAT);
+    }
+
+    public String[] getStringColumn(int columnIndex) {
+        return (String[]) column(columnIndex, VoltType.STRING);
+    }
+
+    public byte[][] getVarbinaryColumn(int columnIndex) {
+        return (byte[][]) column(columnIndex, VoltType.VARBINARY);
+    }
+
+    public BigDecimal[] getDecimalColumn(int columnIndex) {
+        return (BigDecimal[]) column(columnIndex, VoltType.DECIMAL);
+    }
+
+    public GeographyPointValue[] getGeographyPointColumn(int columnIndex) {
+        return (GeographyPointValue[]) column(columnIndex, VoltType.GEOGRAPHY_POINT);
+    }
+
+    public GeographyValue[] getGeographyColumn(int columnIndex) {
+        return (GeographyValue[]) column(columnIndex, VoltType.GEOGRAPHY);
+    }
+
+    public boolean isNull(int columnIndex, int rowIndex) {
+        final Object column = m_columns[columnIndex];
+        switch (m_columnTypes[columnIndex]) {
+        case TINYINT:
+            return ((long[]) column)[rowIndex] == VoltType.NULL_TINYINT;
+        case SMALLINT:
+            return ((long[]) column)[rowIndex] == VoltType.NULL_SMALLINT;
+        case INTEGER:
+            return ((long[]) column)[rowIndex] == VoltType.NULL_INTEGER;
+        case BIGINT:
+        case TIMESTAMP:
+            return ((long[]) column)[rowIndex] == VoltType.NULL_BIGINT;
+        case FLOAT:
+            return ((double[]) column)[rowIndex] <= VoltType.NULL_FLOAT;
+        default:
+            return ((Object[]) column)[rowIndex] == null;
+        }
+    }
+
+    private Object column(int columnIndex, VoltType... types) {
+        if (columnIndex < 0 || columnIndex >= m_columnTypes.length) {
+            throw new IndexOutOfBoundsException("Column index " + columnIndex +
+                    " is beyond number of columns " + m_columnTypes.length);
+        }
+        for (VoltType type : types) {
+            if (m_columnTypes[columnIndex] == type) {
+                return m_columns[columnIndex];
+            }
+        }
+        throw new IllegalArgumentException("Column index " + columnIndex + " is type " + m_columnTypes[columnIndex]);
+    }
+
+    /*
+     * Row cursor, mirrors VoltTableRow
+     */
+
+    public void resetRowPosition() {
+        m_activeRowIndex = -1;
+    }
+
+    public int getActiveRowIndex() {
+        return m_activeRowIndex;
+    }
+
+    public boolean advanceRow() {
+        return advanceToRow(m_activeRowIndex + 1);
+    }
+
+    public boolean advanceToRow(int rowIndex) {
+        final int rowsToMove = rowIndex - m_activeRowIndex;
+        m_activeRowIndex = rowIndex;
+        return rowIndex < m_rowCount && rowsToMove >= 0;
+    }
+
+    public boolean wasNull() {
+        return m_wasNull;
+    }
+
+    private Object cell(int columnIndex, VoltType... types) {
+        if (m_activeRowIndex < 0 || m_activeRowIndex >= m_rowCount) {
+            throw new RuntimeException("ColumnarVoltTable is in an invalid state. Consider calling advanceRow().");
+        }
+        return column(columnIndex, types);
+    }
+
+    public long getLong(int columnIndex) {
+        final long value = ((long[]) cell(columnIndex, VoltType.TINYINT, VoltType.SMALLINT,
+                VoltType.INTEGER, VoltType.BIGINT))[m_activeRowIndex];
+        m_wasNull = isNull(columnIndex, m_activeRowIndex);
+        return value;
+    }
+
+    public long getLong(String columnName) {
+        return getLong(getColumnIndex(columnName));
+    }
+
+    public double getDouble(int columnIndex) {
+        final double value = ((double[]) cell(columnIndex, VoltType.FLOAT))[m_activeRowIndex];
+        m_wasNull = value <= VoltType.NULL_FLOAT;
+        return value;
+    }
+
+    public double getDouble(String columnName) {
+        return getDouble(getColumnIndex(columnName));
+    }
+
+    public String getString(int columnIndex) {
+        final String value = ((String[]) cell(columnIndex, VoltType.STRING))[m_activeRowIndex];
+        m_wasNull = value == null;
+        return value;
+    }
+
+    public String getString(String columnName) {
+        return getString(getColumnIndex(columnName));
+    }
+
+    public byte[] getStringAsBytes(int columnIndex) {
+        final String value = getString(columnIndex);
+        return value == null ? null : value.getBytes(Constants.UTF8ENCODING);
+    }
+
+    public byte[] getVarbinary(int columnIndex) {
+        final byte[] value = ((byte[][]) cell(columnIndex, VoltType.VARBINARY))[m_activeRowIndex];
+        m_wasNull = value == null;
+        return value;
+    }
+
+    public long getTimestampAsLong(int columnIndex) {
+        final long value = ((long[]) cell(columnIndex, VoltType.TIMESTAMP))[m_activeRowIndex];
+        m_wasNull = value == VoltType.NULL_BIGINT;
+        return value;
+    }
+
+    public TimestampType getTimestampAsTimestamp(int columnIndex) {
+        final long value = getTimestampAsLong(columnIndex);
+        return m_wasNull ? null : new TimestampType(value);
+    }
+
+    public java.sql.Timestamp getTimestampAsSqlTimestamp(int columnIndex) {
+        final long value = getTimestampAsLong(columnIndex);
+        return m_wasNull ? null : VoltTypeUtil.getSqlTimestampFromMicrosSinceEpoch(value);
+    }
+
+    public BigDecimal getDecimalAsBigDecimal(int columnIndex) {
+        final BigDecimal value = ((BigDecimal[]) cell(columnIndex, VoltType.DECIMAL))[m_activeRowIndex];
+        m_wasNull = value == null;
+        return value;
+    }
+
+    public GeographyPointValue getGeographyPointValue(int columnIndex) {
+        final GeographyPointValue value =
+                ((GeographyPointValue[]) cell(columnIndex, VoltType.GEOGRAPHY_POINT))[m_activeRowIndex];
+        m_wasNull = value == null;
+        return value;
+    }
+
+    public GeographyValue getGeographyValue(int columnIndex) {
+        final GeographyValue value = ((GeographyValue[]) cell(columnIndex, VoltType.GEOGRAPHY))[m_activeRowIndex];
+        m_wasNull = value == null;
+        return value;
+    }
+
+    /**
+     * Same as {@link VoltTableRow#get(int, VoltType)}
+     */
+    public Object get(int columnIndex, VoltType type) {
+        switch (type) {
+        case TINYINT:
+            return new Byte((byte) getLong(columnIndex));
+        case SMALLINT:
+            return new Short((short) getLong(columnIndex));
+        case INTEGER:
+            return new Integer((int) getLong(columnIndex));
+        case BIGINT:
+            return getLong(columnIndex);
+        case FLOAT:
+            return getDouble(columnIndex);
+        case STRING:
+            return getString(columnIndex);
+        case VARBINARY:
+            return getVarbinary(columnIndex);
+        case TIMESTAMP:
+            return getTimestampAsTimestamp(columnIndex);
+        case DECIMAL:
+            return getDecimalAsBigDecimal(columnIndex);
+        case GEOGRAPHY_POINT:
+            return getGeographyPointValue(columnIndex);
+        case GEOGRAPHY:
+            return getGeographyValue(columnIndex);
+        default:
+            throw new IllegalArgumentException("Invalid type '" + type + "'");
+        }
+    }
+
+    /**
+     * @return a table holding the first <tt>rows</tt> rows of this one
+     */
+    public ColumnarVoltTable head(int rows) {
+        if (rows >= m_rowCount) {
+            return new ColumnarVoltTable(m_statusCode, m_columnNames, m_columnTypes, m_encodings,
+                    m_rowCount, m_columns);
+        }
+        Object[] columns = new Object[m_columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (m_columns[i] instanceof long[]) {
+                columns[i] = Arrays.copyOf((long[]) m_columns[i], rows);
+            } else if (m_columns[i] instanceof double[]) {
+                columns[i] = Arrays.copyOf((double[]) m_columns[i], rows);
+            } else {
+                columns[i] = Arrays.copyOf((Object[]) m_columns[i], rows);
+            }
+        }
+        return new ColumnarVoltTable(m_statusCode, m_columnNames, m_columnTypes, m_encodings, rows, columns);
+    }
+
+    /**
+     * Convert to a row oriented table, for code that needs a {@link VoltTable}.
+     */
+    public VoltTable toVoltTable() {
+        final int columnCount = m_columnTypes.length;
+        final byte[][] names = new byte[columnCount][];
+        int headerSize = 1 + 2 + columnCount;
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = m_columnNames[i].getBytes(VoltTable.METADATA_ENCODING);
+            headerSize += 4 + names[i].length;
+        }
+
+        // encode the variable length values once, they are needed for the size
+        final byte[][][] varValues = new byte[columnCount][][];
+        final int[] rowSizes = new int[m_rowCount];
+        for (int i = 0; i < columnCount; i++) {
+            final VoltType type = m_columnTypes[i];
+            if (type.isVariableLength()) {
+                final Object[] values = (Object[]) m_columns[i];
+                final byte[][] encoded = new byte[m_rowCount][];
+                final Map<Object, byte[]> shared = m_encodings[i] == DICTIONARY
+                        ? new HashMap<Object, byte[]>() : null;
+                for (int r = 0; r < m_rowCount; r++) {
+                    final Object value = values[r];
+                    if (value != null) {
+                        byte[] bytes = shared == null ? null : shared.get(value);
+                        if (bytes == null) {
+                            bytes = toBytes(type, value);
+                            if (shared != null) {
+                                shared.put(value, bytes);
+                            }
+                        }
+                        encoded[r] = bytes;
+                        rowSizes[r] += bytes.length;
+                    }
+                    rowSizes[r] += 4;
+                }
+                varValues[i] = encoded;
+            } else {
+                final int length = type.getLengthInBytesForFixedTypesWithoutCheck();
+                for (int r = 0; r < m_rowCount; r++) {
+                    rowSizes[r] += length;
+                }
+            }
+        }
+        long size = 4 + headerSize + 4;
+        for (int r = 0; r < m_rowCount; r++) {
+            size += 4 + rowSizes[r];
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Table of " + size + " bytes is too large for a VoltTable");
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt(headerSize);
+        buf.put(m_statusCode);
+        buf.putShort((short) columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            buf.put(m_columnTypes[i].getValue());
+        }
+        for (int i = 0; i < columnCount; i++) {
+            buf.putInt(names[i].length);
+            buf.put(names[i]);
+        }
+        buf.putInt(m_rowCount);
+        for (int r = 0; r < m_rowCount; r++) {
+            buf.putInt(rowSizes[r]);
+            for (int i = 0; i < columnCount; i++) {
+                final Object column = m_columns[i];
+                switch (m_columnTypes[i]) {
+                case TINYINT:
+                    buf.put((byte) ((long[]) column)[r]);
+                    break;
+                case SMALLINT:
+                    buf.putShort((short) ((long[]) column)[r]);
+                    break;
+                case INTEGER:
+                    buf.putInt((int) ((long[]) column)[r]);
+                    break;
+                case BIGINT:
+                case TIMESTAMP:
+                    buf.putLong(((long[]) column)[r]);
+                    break;
+                case FLOAT:
+                    buf.putDouble(((double[]) column)[r]);
+                    break;
+                case DECIMAL: {
+                    final BigDecimal value = ((BigDecimal[]) column)[r];
+                    if (value == null) {
+                        VoltDecimalHelper.serializeNull(buf);
+                    } else {
+                        VoltDecimalHelper.serializeBigDecimal(value, buf);
+                    }
+                    break;
+                }
+                case GEOGRAPHY_POINT: {
+                    final GeographyPointValue value = ((GeographyPointValue[]) column)[r];
+                    if (value == null) {
+                        GeographyPointValue.serializeNull(buf);
+                    } else {
+                        value.flattenToBuffer(buf);
+                    }
+                    break;
+                }
+                default: {
+                    final byte[] bytes = varValues[i][r];
+                    if (bytes == null) {
+                        buf.putInt(VoltTable.NULL_STRING_INDICATOR);
+                    } else {
+                        buf.putInt(bytes.length);
+                        buf.put(bytes);
+                    }
+                }
+                }
+            }
+        }
+        buf.flip();
+        return new VoltTable(buf, false);
+    }
+
+    private static byte[] toBytes(VoltType type, Object value) {
+        switch (type) {
+        case STRING:
+            return ((String) value).getBytes(VoltTable.ROWDATA_ENCODING);
+        case VARBINARY:
+            return (byte[]) value;
+        case GEOGRAPHY: {
+            final GeographyValue gv = (GeographyValue) value;
+            final ByteBuffer buf = ByteBuffer.allocate(gv.getLengthInBytes());
+            gv.flattenToBuffer(buf);
+            return buf.array();
+        }
+        default:
+            throw new IllegalArgumentException("Not a variable length type " + type);
+        }
+    }
+
+    /**
+     * @return the text {@link VoltTable#toFormattedString(boolean)} displays
+     * for a cell, or <tt>null</tt> for a null value
+     */
+    private String displayString(int columnIndex, int rowIndex) {
+        if (isNull(columnIndex, rowIndex)) {
+            return null;
+        }
+        final Object column = m_columns[columnIndex];
+        switch (m_columnTypes[columnIndex]) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+            return Long.toString(((long[]) column)[rowIndex]);
+        case TIMESTAMP:
+            return new TimestampType(((long[]) column)[rowIndex]).toString();
+        case FLOAT:
+            return Double.toString(((double[]) column)[rowIndex]);
+        case DECIMAL:
+            return String.format("%01.12f", ((BigDecimal[]) column)[rowIndex].doubleValue());
+        case VARBINARY:
+            return Encoder.hexEncode(((byte[][]) column)[rowIndex]);
+        default:
+            return ((Object[]) column)[rowIndex].toString();
+        }
+    }
+
+    /**
+     * Same output as {@link VoltTable#toFormattedString(boolean)}, but every
+     * value is converted to text once, a column at a time.
+     */
+    public String toFormattedString(boolean includeColumnNames) {
+        final int MAX_PRINTABLE_CHARS = 30;
+        final int MAX_PRINTABLE_CHARS_GEOGRAPHY = 74;
+        final String ELLIPSIS = "...";
+
+        final int columnCount = m_columnTypes.length;
+        final String[][] cells = new String[columnCount][m_rowCount];
+        final String[] fmt = new String[columnCount];
+        final int[] padding = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            final VoltType colType = m_columnTypes[i];
+            final int maxWidth = colType == VoltType.GEOGRAPHY ? MAX_PRINTABLE_CHARS_GEOGRAPHY : MAX_PRINTABLE_CHARS;
+            int width = m_columnNames[i].length();
+            for (int r = 0; r < m_rowCount; r++) {
+                String value = displayString(i, r);
+                int cellWidth;
+                if (value == null) {
+                    value = "NULL";
+                    cellWidth = 4;
+                } else if (colType == VoltType.DECIMAL) {
+                    cellWidth = value.length();
+                } else {
+                    cellWidth = Math.min(value.length(), maxWidth);
+                    // crop long varbinaries
+                    if (colType == VoltType.VARBINARY && value.length() > MAX_PRINTABLE_CHARS) {
+                        value = value.substring(0, MAX_PRINTABLE_CHARS - ELLIPSIS.length()) + ELLIPSIS;
+                    }
+                }
+                cells[i][r] = value;
+                width = Math.max(width, cellWidth);
+            }
+            padding[i] = width + 1;
+            final String justification = (colType.isVariableLength() ||
+                    colType == VoltType.TIMESTAMP ||
+                    colType == VoltType.GEOGRAPHY_POINT) ? "-" : "";
+            fmt[i] = "%1$" + justification + padding[i] + "s";
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        if (includeColumnNames) {
+            for (int i = 0; i < columnCount; i++) {
+                sb.append(i == 0 ? "" : " ").append(String.format("%1$-" + padding[i] + "s", m_columnNames[i]));
+            }
+            sb.append("\n");
+            for (int i = 0; i < columnCount; i++) {
+                final char[] underline = new char[padding[i]];
+                Arrays.fill(underline, '-');
+                sb.append(i == 0 ? "" : " ").append(underline);
+            }
+            sb.append("\n");
+        }
+        for (int r = 0; r < m_rowCount; r++) {
+            for (int i = 0; i < columnCount; i++) {
+                sb.append(i == 0 ? "" : " ").append(String.format(fmt[i], cells[i][r]));
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toVoltTable().toString();
+    }
+
+    /*
+     * Serialization
+     */
+
+    /**
+     * How a column of a row oriented table will be encoded, worked out before
+     * anything is written so the output can be allocated at its exact size.
+     */
+    private static class ColumnPlan {
+        byte encoding = PLAIN;
+        long size;
+        // distinct values in order of first appearance and the code of every row
+        byte[][] dictionary;
+        int[] codes;
+    }
+
+    /**
+     * Key of a string dictionary, the UTF-8 bytes of a value in the table's
+     * buffer.
+     */
+    private static class ValueKey {
+        final ByteBuffer m_buf;
+        final int m_offset;
+        final int m_length;
+        final int m_hash;
+
+        ValueKey(ByteBuffer buf, int offset, int length) {
+            m_buf = buf;
+            m_offset = offset;
+            m_length = length;
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + buf.get(offset + i);
+            }
+            m_hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ValueKey)) {
+                return false;
+            }
+            final ValueKey other = (ValueKey) o;
+            if (other.m_length != m_length || other.m_hash != m_hash) {
+                return false;
+            }
+            for (int i = 0; i < m_length; i++) {
+                if (m_buf.get(m_offset + i) != other.m_buf.get(other.m_offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Serialize a row oriented table in the columnar format, prefixed with
+     * its length like {@link VoltTable#flattenToBuffer(ByteBuffer)}.
+     *
+     * @return a buffer positioned at 0 and limited to the serialized table
+     */
+    public static ByteBuffer encode(VoltTable table) {
+        final ByteBuffer src = table.m_buffer;
+        final int columnCount = table.getColumnCount();
+        final int rowCount = table.getRowCount();
+        final VoltType[] types = new VoltType[columnCount];
+        final byte[][] names = new byte[columnCount][];
+        long size = 4 + 1 + 2 + columnCount + 4;
+        for (int i = 0; i < columnCount; i++) {
+            types[i] = table.getColumnType(i);
+            names[i] = table.getColumnName(i).getBytes(VoltTable.METADATA_ENCODING);
+            size += 4 + names[i].length;
+        }
+
+        // the position of the next cell to read in every row, columns are
+        // read in order so this walks every cell once
+        final int[] cursors = new int[rowCount];
+        int pos = table.getRowStart() + 4;
+        for (int r = 0; r < rowCount; r++) {
+            cursors[r] = pos + 4;
+            pos += 4 + src.getInt(pos);
+        }
+
+        final ColumnPlan[] plans = new ColumnPlan[columnCount];
+        final int[][] cellOffsets = new int[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            final int[] offsets = Arrays.copyOf(cursors, rowCount);
+            cellOffsets[i] = offsets;
+            plans[i] = plan(src, types[i], offsets);
+            size += 1 + plans[i].size;
+            // move the cursors past this column
+            if (types[i].isVariableLength()) {
+                for (int r = 0; r < rowCount; r++) {
+                    final int length = src.getInt(cursors[r]);
+                    cursors[r] += 4 + (length == VoltTable.NULL_STRING_INDICATOR ? 0 : length);
+                }
+            } else {
+                final int length = types[i].getLengthInBytesForFixedTypesWithoutCheck();
+                for (int r = 0; r < rowCount; r++) {
+                    cursors[r] += length;
+                }
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Table of " + size + " bytes is too large to serialize");
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate((int) size);
+        buf.putInt((int) size - 4);
+        buf.put(table.getStatusCode());
+        buf.putShort((short) columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            buf.put(types[i].getValue());
+        }
+        for (int i = 0; i < columnCount; i++) {
+            buf.putInt(names[i].length);
+            buf.put(names[i]);
+        }
+        buf.putInt(rowCount);
+        for (int i = 0; i < columnCount; i++) {
+            write(src, types[i], cellOffsets[i], plans[i], buf);
+            cellOffsets[i] = null;
+        }
+        assert !buf.hasRemaining();
+        buf.flip();
+        return buf;
+    }
+
+    private static ColumnPlan plan(ByteBuffer src, VoltType type, int[] offsets) {
+        final ColumnPlan plan = new ColumnPlan();
+        final int rowCount = offsets.length;
+        switch (type) {
+        case BIGINT:
+        case TIMESTAMP: {
+            long deltaSize = 0;
+            long previous = 0;
+            for (int r = 0; r < rowCount; r++) {
+                final long value = src.getLong(offsets[r]);
+                deltaSize += varLongSize(zigZag(value - previous));
+                previous = value;
+            }
+            plan.size = 8L * rowCount;
+            if (deltaSize < plan.size) {
+                plan.encoding = DELTA;
+                plan.size = deltaSize;
+            }
+            break;
+        }
+        case STRING: {
+            long plainSize = 0;
+            long dictionarySize = 4;
+            Map<ValueKey, Integer> dictionary = new HashMap<ValueKey, Integer>();
+            int[] codes = new int[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                final int length = src.getInt(offsets[r]);
+                if (length == VoltTable.NULL_STRING_INDICATOR) {
+                    plainSize += 4;
+                    codes[r] = 0;
+                } else {
+                    plainSize += 4 + length;
+                    if (dictionary != null) {
+                        final ValueKey key = new ValueKey(src, offsets[r] + 4, length);
+                        Integer code = dictionary.get(key);
+                        if (code == null) {
+                            if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+                                dictionary = null;
+                                continue;
+                            }
+                            code = dictionary.size() + 1;
+                            dictionary.put(key, code);
+                            dictionarySize += 4 + length;
+                        }
+                        codes[r] = code;
+                    }
+                }
+                if (dictionary != null) {
+                    dictionarySize += varLongSize(codes[r]);
+                }
+            }
+            plan.size = plainSize;
+            if (dictionary != null && dictionarySize < plainSize) {
+                plan.encoding = DICTIONARY;
+                plan.size = dictionarySize;
+                plan.codes = codes;
+                plan.dictionary = new byte[dictionary.size()][];
+                for (Map.Entry<ValueKey, Integer> e : dictionary.entrySet()) {
+                    final ValueKey key = e.getKey();
+                    final byte[] bytes = new byte[key.m_length];
+                    for (int i = 0; i < bytes.length; i++) {
+                        bytes[i] = src.get(key.m_offset + i);
+                    }
+                    plan.dictionary[e.getValue() - 1] = bytes;
+                }
+            }
+            break;
+        }
+        case VARBINARY:
+        case GEOGRAPHY: {
+            long plainSize = 0;
+            for (int r = 0; r < rowCount; r++) {
+                final int length = src.getInt(offsets[r]);
+                plainSize += 4 + (length == VoltTable.NULL_STRING_INDICATOR ? 0 : length);
+            }
+            plan.size = plainSize;
+            break;
+        }
+        default:
+            plan.size = (long) type.getLengthInBytesForFixedTypesWithoutCheck() * rowCount;
+        }
+        return plan;
+    }
+
+    private static void write(ByteBuffer src, VoltType type, int[] offsets, ColumnPlan plan, ByteBuffer buf) {
+        final int rowCount = offsets.length;
+        buf.put(plan.encoding);
+        if (plan.encoding == DELTA) {
+            long previous = 0;
+            for (int r = 0; r < rowCount; r++) {
+                final long value = src.getLong(offsets[r]);
+                putVarLong(buf, zigZag(value - previous));
+                previous = value;
+            }
+        } else if (plan.encoding == DICTIONARY) {
+            buf.putInt(plan.dictionary.length);
+            for (byte[] value : plan.dictionary) {
+                buf.putInt(value.length);
+                buf.put(value);
+            }
+            for (int r = 0; r < rowCount; r++) {
+                putVarLong(buf, plan.codes[r]);
+            }
+        } else if (type.isVariableLength()) {
+            for (int r = 0; r < rowCount; r++) {
+                final int length = src.getInt(offsets[r]);
+                copy(src, offsets[r], 4 + (length == VoltTable.NULL_STRING_INDICATOR ? 0 : length), buf);
+            }
+        } else {
+            final int length = type.getLengthInBytesForFixedTypesWithoutCheck();
+            for (int r = 0; r < rowCount; r++) {
+                copy(src, offsets[r], length, buf);
+            }
+        }
+    }
+
+    private static void copy(ByteBuffer src, int offset, int length, ByteBuffer dst) {
+        final ByteBuffer dup = src.duplicate();
+        dup.limit(offset + length).position(offset);
+        dst.put(dup);
+    }
+
+    /**
+     * Read a table serialized by {@link #encode(VoltTable)}, the buffer must
+     * be positioned after the length prefix.
+     */
+    public static ColumnarVoltTable fromBuffer(ByteBuffer buf) {
+        final byte statusCode = buf.get();
+        final int columnCount = buf.getShort();
+        final VoltType[] types = new VoltType[columnCount];
+        final String[] names = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            types[i] = VoltType.get(buf.get());
+        }
+        for (int i = 0; i < columnCount; i++) {
+            final byte[] name = new byte[buf.getInt()];
+            buf.get(name);
+            names[i] = new String(name, VoltTable.METADATA_ENCODING);
+        }
+        final int rowCount = buf.getInt();
+        final byte[] encodings = new byte[columnCount];
+        final Object[] columns = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            encodings[i] = buf.get();
+            columns[i] = readColumn(buf, types[i], encodings[i], rowCount);
+        }
+        return new ColumnarVoltTable(statusCode, names, types, encodings, rowCount, columns);
+    }
+
+    private static Object readColumn(ByteBuffer buf, VoltType type, byte encoding, int rowCount) {
+        if (encoding == DELTA) {
+            final long[] values = new long[rowCount];
+            long previous = 0;
+            for (int r = 0; r < rowCount; r++) {
+                previous += unZigZag(getVarLong(buf));
+                values[r] = previous;
+            }
+            return values;
+        }
+        if (encoding == DICTIONARY) {
+            final String[] dictionary = new String[buf.getInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                final byte[] bytes = new byte[buf.getInt()];
+                buf.get(bytes);
+                dictionary[i] = new String(bytes, VoltTable.ROWDATA_ENCODING);
+            }
+            final String[] values = new String[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                final int code = (int) getVarLong(buf);
+                values[r] = code == 0 ? null : dictionary[code - 1];
+            }
+            return values;
+        }
+        if (encoding != PLAIN) {
+            throw new IllegalArgumentException("Unknown column encoding " + encoding);
+        }
+
+        switch (type) {
+        case TINYINT: {
+            final long[] values = new long[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                values[r] = buf.get();
+            }
+            return values;
+        }
+        case SMALLINT: {
+            final long[] values = new long[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                values[r] = buf.getShort();
+            }
+            return values;
+        }
+        case INTEGER: {
+            final long[] values = new long[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                values[r] = buf.getInt();
+            }
+            return values;
+        }
+        case BIGINT:
+        case TIMESTAMP: {
+            final long[] values = new long[rowCount];
+            buf.asLongBuffer().get(values);
+            buf.position(buf.position() + 8 * rowCount);
+            return values;
+        }
+        case FLOAT: {
+            final double[] values = new double[rowCount];
+            buf.asDoubleBuffer().get(values);
+            buf.position(buf.position() + 8 * rowCount);
+            return values;
+        }
+        case DECIMAL: {
+            final BigDecimal[] values = new BigDecimal[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                values[r] = VoltDecimalHelper.deserializeBigDecimal(buf);
+            }
+            return values;
+        }
+        case GEOGRAPHY_POINT: {
+            final GeographyPointValue[] values = new GeographyPointValue[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                values[r] = GeographyPointValue.unflattenFromBuffer(buf);
+            }
+            return values;
+        }
+        case STRING: {
+            final String[] values = new String[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                final int length = buf.getInt();
+                if (length != VoltTable.NULL_STRING_INDICATOR) {
+                    final byte[] bytes = new byte[length];
+                    buf.get(bytes);
+                    values[r] = new String(bytes, VoltTable.ROWDATA_ENCODING);
+                }
+            }
+            return values;
+        }
+        case VARBINARY: {
+            final byte[][] values = new byte[rowCount][];
+            for (int r = 0; r < rowCount; r++) {
+                final int length = buf.getInt();
+                if (length != VoltTable.NULL_STRING_INDICATOR) {
+                    values[r] = new byte[length];
+                    buf.get(values[r]);
+                }
+            }
+            return values;
+        }
+        case GEOGRAPHY: {
+            final GeographyValue[] values = new GeographyValue[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                final int length = buf.getInt();
+                if (length != VoltTable.NULL_STRING_INDICATOR) {
+                    values[r] = GeographyValue.unflattenFromBuffer(buf, buf.position());
+                    buf.position(buf.position() + length);
+                }
+            }
+            return values;
+        }
+        default:
+            throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarLong(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buf) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -31,7 +31,13 @@ public class CommandLogStats extends StatsSource {
         OUTSTANDING_TXNS,
         IN_USE_SEGMENT_COUNT,
         SEGMENT_COUNT,
-        FSYNC_INTERVAL
+        FSYNC_INTERVAL,
+        // number of batches synced to disk
+        FSYNC_COUNT,
+        BYTES_WRITTEN,
+        // time to write and sync a batch, in microseconds
+        AVG_FSYNC_LATENCY,
+        MAX_FSYNC_LATENCY
     };
 
     public CommandLogStats(CommandLog commandLog) {
@@ -47,6 +53,10 @@ public class CommandLogStats extends StatsSource {
         columns.add(new VoltTable.ColumnInfo(StatName.IN_USE_SEGMENT_COUNT.name(), VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo(StatName.SEGMENT_COUNT.name(), VoltType.INTEGER));
         columns.add(new VoltTable.ColumnInfo(StatName.FSYNC_INTERVAL.name(), VoltType.INTEGER));
+        columns.add(new VoltTable.ColumnInfo(StatName.FSYNC_COUNT.name(), VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo(StatName.BYTES_WRITTEN.name(), VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo(StatName.AVG_FSYNC_LATENCY.name(), VoltType.BIGINT));
+        columns.add(new VoltTable.ColumnInfo(StatName.MAX_FSYNC_LATENCY.name(), VoltType.BIGINT));
     }
 
     @Override
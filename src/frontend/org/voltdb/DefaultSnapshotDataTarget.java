@@ -52,9 +52,9 @@ import org.voltdb.utils.PosixAdvise;
 import com.google_voltpatches.common.util.concurrent.Callables;
 import com.google_voltpatches.common.util.concurrent.Futures;
 import com.google_voltpatches.common.util.concurrent.ListenableFuture;
-import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
 import com.google_voltpatches.common.util.concurrent.ListeningScheduledExecutorService;
 import com.google_voltpatches.common.util.concurrent.MoreExecutors;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
 import com.google_voltpatches.common.util.concurrent.UnsynchronizedRateLimiter;
 
 
@@ -86,7 +86,8 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     private volatile long m_bytesWritten = 0;
 
-    private static final Semaphore m_bytesAllowedBeforeSync = new Semaphore((1024 * 1024) * 256);
+    static final int BYTES_ALLOWED_BEFORE_SYNC = (1024 * 1024) * 256;
+    private static final Semaphore m_bytesAllowedBeforeSync = new Semaphore(BYTES_ALLOWED_BEFORE_SYNC);
     private final AtomicInteger m_bytesWrittenSinceLastSync = new AtomicInteger(0);
 
     private final ScheduledFuture<?> m_syncTask;
@@ -105,7 +106,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
     private final Condition m_noMoreOutstandingWriteTasksCondition =
             m_outstandingWriteTasksLock.newCondition();
 
-    private static final ListeningExecutorService m_es = CoreUtils.getListeningSingleThreadExecutor("Snapshot write service ");
+    private final SnapshotWriterPool.TargetQueue m_writeQueue;
     static final ListeningScheduledExecutorService m_syncService = MoreExecutors.listeningDecorator(
             Executors.newSingleThreadScheduledExecutor(CoreUtils.getThreadFactory("Snapshot sync service")));
 
@@ -135,10 +136,29 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
 
     public static void enforceSnapshotRateLimit(int permits) {
         if (USE_SNAPSHOT_RATELIMIT) {
-            SNAPSHOT_RATELIMITER.acquire(permits);
+            // shared by all the writer threads, the limiter itself isn't thread safe
+            synchronized (SNAPSHOT_RATELIMITER) {
+                SNAPSHOT_RATELIMITER.acquire(permits);
+            }
         }
     }
 
+    /**
+     * Wait until the bytes written but not yet synced by all the targets leave
+     * room for another write. The permits come back when the written bytes are
+     * synced or the target is closed.
+     */
+    static void acquireUnsyncedBytes(int bytes) throws InterruptedException {
+        m_bytesAllowedBeforeSync.acquire(bytes);
+    }
+
+    /**
+     * Give back the permits of bytes that were never written.
+     */
+    static void releaseUnsyncedBytes(int bytes) {
+        m_bytesAllowedBeforeSync.release(bytes);
+    }
+
     public DefaultSnapshotDataTarget(
             final File file,
             final int hostId,
@@ -185,6 +205,7 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         m_tableName = tableName;
         m_fos = new FileOutputStream(file);
         m_channel = m_fos.getChannel();
+        m_writeQueue = SnapshotWriterPool.createQueue(file, m_channel);
         m_needsFinalClose = !isReplicated;
         final FastSerializer fs = new FastSerializer();
         fs.writeInt(0);//CRC
@@ -449,73 +470,75 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         }
         final Future<BBContainer> compressionTaskFinal = compressionTask;
 
-        ListenableFuture<?> writeTask = m_es.submit(new Callable<Object>() {
+        final SettableFuture<Object> writeTask = SettableFuture.create();
+        m_writeQueue.offer(new SnapshotWriterPool.PendingWrite() {
+            private BBContainer m_payloadContainer = null;
+
             @Override
-            public Object call() throws Exception {
-                try {
-                    if (m_acceptOneWrite) {
-                        m_acceptOneWrite = false;
-                    } else {
-                        if (m_simulateBlockedWrite != null) {
-                            m_simulateBlockedWrite.await();
-                        }
-                        if (m_simulateFullDiskWritingChunk) {
-                            //Make sure to consume the result of the compression
-                            compressionTaskFinal.get().discard();
-                            throw new IOException("Disk full");
-                        }
+            public ByteBuffer prepare() throws Exception {
+                if (m_acceptOneWrite) {
+                    m_acceptOneWrite = false;
+                } else {
+                    if (m_simulateBlockedWrite != null) {
+                        m_simulateBlockedWrite.await();
+                    }
+                    if (m_simulateFullDiskWritingChunk) {
+                        //Make sure to consume the result of the compression
+                        compressionTaskFinal.get().discard();
+                        throw new IOException("Disk full");
                     }
+                }
+                if (m_writeFailed) {
+                    // an earlier write failed, don't bother waiting for this one
+                    if (compressionTaskFinal != null) {
+                        compressionTaskFinal.get().discard();
+                    }
+                    return null;
+                }
 
-                    final ByteBuffer tupleData = tupleDataCont.b();
-                    int totalWritten = 0;
-                    if (prependLength) {
-                        BBContainer payloadContainer = compressionTaskFinal.get();
-                        try {
-                            final ByteBuffer payloadBuffer = payloadContainer.b();
-                            payloadBuffer.position(0);
-
-                            ByteBuffer lengthPrefix = ByteBuffer.allocate(12);
-                            m_bytesAllowedBeforeSync.acquire(payloadBuffer.remaining());
-                            //Length prefix does not include 4 header items, just compressd payload
-                            //that follows
-                            lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
-                            lengthPrefix.putInt(tupleData.getInt(0)); // partitionId
-
-                            /*
-                             * Checksum the header and put it in the payload buffer
-                             */
-                            PureJavaCrc32C crc = new PureJavaCrc32C();
-                            crc.update(lengthPrefix.array(), 0, 8);
-                            lengthPrefix.putInt((int)crc.getValue());
-                            lengthPrefix.flip();
-                            payloadBuffer.put(lengthPrefix);
-                            payloadBuffer.position(0);
-
-                            enforceSnapshotRateLimit(payloadBuffer.remaining());
-
-                            /*
-                             * Write payload to file
-                             */
-                            while (payloadBuffer.hasRemaining()) {
-                                totalWritten += m_channel.write(payloadBuffer);
-                            }
-                        } finally {
-                            payloadContainer.discard();
-                        }
+                final ByteBuffer tupleData = tupleDataCont.b();
+                if (!prependLength) {
+                    return tupleData;
+                }
+                m_payloadContainer = compressionTaskFinal.get();
+                final ByteBuffer payloadBuffer = m_payloadContainer.b();
+                payloadBuffer.position(0);
+
+                ByteBuffer lengthPrefix = ByteBuffer.allocate(12);
+                //Length prefix does not include 4 header items, just compressd payload
+                //that follows
+                lengthPrefix.putInt(payloadBuffer.remaining() - 16);//length prefix
+                lengthPrefix.putInt(tupleData.getInt(0)); // partitionId
+
+                /*
+                 * Checksum the header and put it in the payload buffer
+                 */
+                PureJavaCrc32C crc = new PureJavaCrc32C();
+                crc.update(lengthPrefix.array(), 0, 8);
+                lengthPrefix.putInt((int)crc.getValue());
+                lengthPrefix.flip();
+                payloadBuffer.put(lengthPrefix);
+                payloadBuffer.position(0);
+                return payloadBuffer;
+            }
+
+            @Override
+            public void complete(int written, Throwable failure) {
+                try {
+                    if (failure == null) {
+                        m_bytesWritten += written;
+                        m_bytesWrittenSinceLastSync.addAndGet(written);
                     } else {
-                        while (tupleData.hasRemaining()) {
-                            totalWritten += m_channel.write(tupleData);
-                        }
+                        m_writeException = failure instanceof IOException ?
+                                (IOException) failure : new IOException(failure);
+                        SNAP_LOG.error("Error while attempting to write snapshot data to file " + m_file, failure);
+                        m_writeFailed = true;
                     }
-                    m_bytesWritten += totalWritten;
-                    m_bytesWrittenSinceLastSync.addAndGet(totalWritten);
-                } catch (IOException e) {
-                    m_writeException = e;
-                    SNAP_LOG.error("Error while attempting to write snapshot data to file " + m_file, e);
-                    m_writeFailed = true;
-                    throw e;
                 } finally {
                     try {
+                        if (m_payloadContainer != null) {
+                            m_payloadContainer.discard();
+                        }
                         tupleDataCont.discard();
                     } finally {
                         m_outstandingWriteTasksLock.lock();
@@ -526,9 +549,13 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
                         } finally {
                             m_outstandingWriteTasksLock.unlock();
                         }
+                        if (failure == null) {
+                            writeTask.set(null);
+                        } else {
+                            writeTask.setException(m_writeException);
+                        }
                     }
                 }
-                return null;
             }
         });
         return writeTask;
@@ -574,16 +601,20 @@ public class DefaultSnapshotDataTarget implements SnapshotDataTarget {
         return m_file.toString();
     }
 
+    /**
+     * @return the name of the writer serving this target's disk
+     */
+    public String getWriterName() {
+        return m_writeQueue.getWriter().getName();
+    }
+
     public static void setRate(final Integer megabytesPerSecond) {
-        m_es.execute(new Runnable() {
-            @Override
-            public void run() {
-                if (megabytesPerSecond == null) {
-                    SNAPSHOT_RATELIMITER.setRate(SNAPSHOT_RATELIMIT_MEGABYTES * 1024.0 * 1024.0);
-                } else {
-                    SNAPSHOT_RATELIMITER.setRate(megabytesPerSecond * 1024.0 * 1024.0);
-                }
+        synchronized (SNAPSHOT_RATELIMITER) {
+            if (megabytesPerSecond == null) {
+                SNAPSHOT_RATELIMITER.setRate(SNAPSHOT_RATELIMIT_MEGABYTES * 1024.0 * 1024.0);
+            } else {
+                SNAPSHOT_RATELIMITER.setRate(megabytesPerSecond * 1024.0 * 1024.0);
             }
-        });
+        }
     }
 }
@@ -84,6 +84,10 @@ public class DummyCommandLog implements CommandLog {
         rowValues[columnNameToIndex.get(CommandLogStats.StatName.IN_USE_SEGMENT_COUNT.name())] = 0;
         rowValues[columnNameToIndex.get(CommandLogStats.StatName.SEGMENT_COUNT.name())] = 0;
         rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_INTERVAL.name())] = 0;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_COUNT.name())] = 0;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.BYTES_WRITTEN.name())] = 0;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.AVG_FSYNC_LATENCY.name())] = 0;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.MAX_FSYNC_LATENCY.name())] = 0;
     }
 
     public boolean isSynchronous() {
@@ -18,6 +18,7 @@
 package org.voltdb;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -35,6 +36,8 @@ import org.ietf.jgss.GSSException;
 import org.ietf.jgss.GSSManager;
 import org.ietf.jgss.GSSName;
 import org.ietf.jgss.Oid;
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONWriter;
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.EstTime;
@@ -97,14 +100,12 @@ public class HTTPClientInterface {
 
         final AtomicBoolean m_complete = new AtomicBoolean(false);
         final Continuation m_continuation;
-        final String m_jsonp;
 
-        public JSONProcCallback(Continuation continuation, String jsonp) {
+        public JSONProcCallback(Continuation continuation) {
             assert continuation != null : "given continuation is null";
 
             m_continuation = continuation;
             m_continuation.addContinuationListener(this);
-            m_jsonp = jsonp;
         }
 
         @Override
@@ -119,14 +120,8 @@ public class HTTPClientInterface {
                 }
                 return;
             }
-            ClientResponseImpl rimpl = (ClientResponseImpl) clientResponse;
-            String msg = rimpl.toJSONString();
-
-            // handle jsonp pattern
-            // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
-            msg = asJsonp(m_jsonp, msg);
-
-            m_continuation.setAttribute("result", msg);
+            // the resumed request streams the response out, see writeResponse()
+            m_continuation.setAttribute("response", clientResponse);
             try {
                 m_continuation.resume();
             } catch (IllegalStateException e) {
@@ -169,6 +164,40 @@ public class HTTPClientInterface {
         return sb.append(jsonp).append("( ").append(msg).append(" )").toString();
     }
 
+    /**
+     * Write a procedure response to the servlet response as it is encoded,
+     * rather than building its whole text first. The rows of the result
+     * tables go to the servlet's buffer, which Jetty sends in chunks as it
+     * fills, so the connection can be kept alive for the next request.
+     */
+    static void writeResponse(ClientResponseImpl clientResponse, String jsonp, boolean cbor,
+            HttpServletResponse rsp) throws IOException, JSONException {
+        if (cbor) {
+            rsp.setContentType(CBORResponseWriter.CONTENT_TYPE);
+            new CBORResponseWriter(rsp.getOutputStream()).write(clientResponse);
+            return;
+        }
+        Writer out = rsp.getWriter();
+        // handle jsonp pattern
+        // http://en.wikipedia.org/wiki/JSON#The_Basic_Idea:_Retrieving_JSON_via_Script_Tags
+        if (jsonp != null) {
+            out.write(jsonp);
+            out.write("( ");
+        }
+        clientResponse.toJSONWriter(new JSONWriter(out));
+        if (jsonp != null) {
+            out.write(" )");
+        }
+    }
+
+    /**
+     * Machine clients ask for procedure responses in CBOR with an Accept header
+     */
+    static boolean acceptsCBOR(Request request) {
+        String accept = request.getHeader(HttpHeader.ACCEPT.asString());
+        return accept != null && accept.contains(CBORResponseWriter.CONTENT_TYPE);
+    }
+
     private final static void simpleJsonResponse(String jsonp, String message, HttpServletResponse rsp, int code) {
         ClientResponseImpl rimpl = new ClientResponseImpl(
                 ClientResponse.UNEXPECTED_FAILURE, new VoltTable[0], message);
@@ -212,6 +241,22 @@ public class HTTPClientInterface {
         }
 
         final Continuation continuation = ContinuationSupport.getContinuation(request);
+        ClientResponseImpl clientResponse = (ClientResponseImpl)continuation.getAttribute("response");
+        if (clientResponse != null) {
+            if (jsonp == null) {
+                jsonp = request.getParameter(JSONP);
+            }
+            try {
+                response.setStatus(HttpServletResponse.SC_OK);
+                writeResponse(clientResponse, jsonp, acceptsCBOR(request), response);
+                request.setHandled(true);
+            } catch (IllegalStateException | IOException | JSONException e){
+               // Thrown when we shut down the server via the JSON/HTTP (web studio) API
+               // or when the client goes away while the response is being written.
+                m_log.warn("JSON failed to send response: ", e);
+            }
+            return;
+        }
         String result = (String)continuation.getAttribute("result");
         if (result != null) {
             try {
@@ -294,7 +339,7 @@ public class HTTPClientInterface {
             continuation.suspend(response);
             suspended = true;
 
-            JSONProcCallback cb = new JSONProcCallback(continuation, jsonp);
+            JSONProcCallback cb = new JSONProcCallback(continuation);
             boolean success;
             if (params != null) {
                 ParameterSet paramSet = null;
@@ -17,6 +17,8 @@
 
 package org.voltdb;
 
+import java.util.List;
+
 import org.voltdb.client.ProcedureCallback;
 import org.voltdb.importer.AbstractImporter;
 import org.voltdb.importer.ImporterServerAdapter;
@@ -51,6 +53,13 @@ public class ImporterServerAdapterImpl implements ImporterServerAdapter {
                 .callProcedure(importer, m_statsCollector, procCallback, proc, fieldList);
     }
 
+    @Override
+    public boolean loadTable(AbstractImporter importer, ProcedureCallback callback, String tableName,
+            boolean upsert, List<Object[]> rows) {
+        return getInternalConnectionHandler()
+                .loadTable(importer, m_statsCollector, callback, tableName, upsert, rows);
+    }
+
     private InternalConnectionHandler getInternalConnectionHandler() {
         return VoltDB.instance().getClientInterface().getInternalConnectionHandler();
     }
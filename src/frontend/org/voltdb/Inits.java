@@ -44,6 +44,7 @@ import org.voltcore.logging.VoltLogger;
 import org.voltcore.messaging.HostMessenger;
 import org.voltcore.utils.Pair;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.commandlog.FileCommandLog;
 import org.voltdb.common.Constants;
 import org.voltdb.common.NodeState;
 import org.voltdb.compiler.deploymentfile.DeploymentType;
@@ -458,6 +459,12 @@ public class Inits {
                     } catch (Exception e) {
                         VoltDB.crashLocalVoltDB("Unable to instantiate command log", true, e);
                     }
+                } else {
+                    m_rvdb.m_commandLog = new FileCommandLog(logConfig.getSynchronous(),
+                                                             logConfig.getFsyncinterval(),
+                                                             logConfig.getMaxtxns(),
+                                                             logConfig.getLogpath(),
+                                                             logConfig.getInternalsnapshotpath());
                 }
             }
         }
@@ -17,17 +17,23 @@
 
 package org.voltdb;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.Level;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.AuthSystem.AuthUser;
+import org.voltdb.catalog.Column;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.catalog.Table;
 import org.voltdb.client.BatchTimeoutOverrideType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureCallback;
+import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.MiscUtils;
 
 /**
@@ -193,6 +199,198 @@ public class InternalConnectionHandler {
         return true;
     }
 
+    /**
+     * Loads a batch of rows into a table with one @LoadSinglepartitionTable per destination
+     * partition, or a single @LoadMultipartitionTable if the table is replicated. A partition
+     * whose load fails is retried a row at a time with the table's default insert or upsert
+     * procedure, the way VoltBulkLoader does, so that one bad row does not reject the others.
+     *
+     * The callback gets one response for the whole batch once every row has been processed:
+     * SUCCESS, SERVER_UNAVAILABLE if any part of the batch could not be queued, or the status
+     * of the last failed row otherwise. Statistics are reported once per batch under the name
+     * of the table's default procedure.
+     *
+     * @return false if the table does not exist, in which case nothing was queued
+     */
+    public boolean loadTable(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector,
+            ProcedureCallback procCallback, String tableName, boolean upsert, List<Object[]> rows) {
+        final Table catTable = getCatalogContext().tables.getIgnoreCase(tableName);
+        if (catTable == null) {
+            String fmt = "Cannot load table %s from streaming interface %s. Table not found.";
+            m_logger.rateLimitedLog(SUPPRESS_INTERVAL, Level.ERROR, null, fmt, tableName, caller);
+            m_failedCount.incrementAndGet();
+            return false;
+        }
+
+        final BulkLoad load = new BulkLoad(caller, statsCollector, procCallback,
+                catTable.getTypeName(), tableName + (upsert ? ".upsert" : ".insert"), upsert);
+        final VoltTable schema = CatalogUtil.getVoltTable(catTable);
+        final Column partitionColumn = catTable.getIsreplicated() ? null : catTable.getPartitioncolumn();
+
+        // group the rows by the partition they hash to, replicated tables load as one group
+        Map<Integer, BulkLoad.PartitionLoad> partitions = new HashMap<>();
+        for (Object[] row : rows) {
+            try {
+                Object[] converted = load.convert(schema, row);
+                int partition = -1;
+                if (partitionColumn != null) {
+                    partition = TheHashinator.getPartitionForParameter(
+                            partitionColumn.getType(), converted[partitionColumn.getIndex()]);
+                }
+                BulkLoad.PartitionLoad partitionLoad = partitions.get(partition);
+                if (partitionLoad == null) {
+                    partitionLoad = load.new PartitionLoad(schema.clone(0));
+                    partitions.put(partition, partitionLoad);
+                }
+                partitionLoad.add(converted);
+            } catch (Exception e) {
+                String fmt = "Cannot load a row into table %s from streaming interface %s.";
+                m_logger.rateLimitedLog(SUPPRESS_INTERVAL, Level.WARN, e, fmt, tableName, caller);
+                load.failed(ClientResponse.GRACEFUL_FAILURE, e.getMessage());
+            }
+        }
+
+        for (BulkLoad.PartitionLoad partitionLoad : partitions.values()) {
+            load.m_pending.incrementAndGet();
+            final VoltTable table = partitionLoad.m_table;
+            boolean queued;
+            if (partitionColumn == null) {
+                queued = callProcedure(caller, null, partitionLoad, "@LoadMultipartitionTable",
+                        load.m_tableName, load.m_upsertMode, table);
+            } else {
+                final Object partitionParam = VoltType.valueToBytes(
+                        partitionLoad.m_rows.get(0)[partitionColumn.getIndex()]);
+                queued = callProcedure(caller, null, partitionLoad, "@LoadSinglepartitionTable",
+                        partitionParam, load.m_tableName, load.m_upsertMode, table);
+            }
+            if (!queued) {
+                load.failed(ClientResponse.SERVER_UNAVAILABLE, "Failed to queue the load of table " + tableName);
+                load.done();
+            }
+        }
+        // release the hold taken when the load was created
+        load.done();
+        return true;
+    }
+
+    /**
+     * Tracks one batch handed to {@link #loadTable}, completing it once every partition
+     * load and row retry has responded.
+     */
+    private final class BulkLoad {
+        private final InternalConnectionContext m_caller;
+        private final InternalConnectionStatsCollector m_statsCollector;
+        private final ProcedureCallback m_callback;
+        private final String m_tableName;
+        private final String m_procName;
+        private final byte m_upsertMode;
+        // starts at one so the batch cannot complete while it is still being queued
+        private final AtomicInteger m_pending = new AtomicInteger(1);
+        private volatile byte m_status = ClientResponse.SUCCESS;
+        private volatile String m_statusString = null;
+
+        BulkLoad(InternalConnectionContext caller, InternalConnectionStatsCollector statsCollector,
+                ProcedureCallback callback, String tableName, String procName, boolean upsert) {
+            m_caller = caller;
+            m_statsCollector = statsCollector;
+            m_callback = callback;
+            m_tableName = tableName;
+            m_procName = procName;
+            m_upsertMode = (byte) (upsert ? 1 : 0);
+        }
+
+        Object[] convert(VoltTable schema, Object[] row) {
+            if (row.length != schema.getColumnCount()) {
+                throw new VoltTypeException("Incorrect number of columns; " + row.length
+                        + " found, " + schema.getColumnCount() + " expected");
+            }
+            Object[] converted = new Object[row.length];
+            for (int i = 0; i < row.length; i++) {
+                converted[i] = ParameterConverter.tryToMakeCompatible(
+                        schema.getColumnType(i).classFromType(), row[i]);
+            }
+            return converted;
+        }
+
+        synchronized void failed(byte status, String statusString) {
+            // an unqueued part may still be loaded on a retry, so that status sticks
+            if (m_status != ClientResponse.SERVER_UNAVAILABLE) {
+                m_status = status;
+                m_statusString = statusString;
+            }
+        }
+
+        void done() {
+            if (m_pending.decrementAndGet() != 0) {
+                return;
+            }
+            ClientResponseImpl response = new ClientResponseImpl(m_status, new VoltTable[0], m_statusString);
+            if (m_statsCollector != null) {
+                m_statsCollector.reportCompletion(m_caller.getName(), m_procName, response);
+            }
+            if (m_callback != null) {
+                try {
+                    m_callback.clientCallback(response);
+                } catch (Exception e) {
+                    m_logger.rateLimitedLog(SUPPRESS_INTERVAL, Level.ERROR, e,
+                            "Load callback failed for table %s from streaming interface %s", m_tableName, m_caller);
+                }
+            }
+        }
+
+        /**
+         * The rows of a batch going to one partition. Retries them one at a time if the
+         * bulk load fails.
+         */
+        final class PartitionLoad implements ProcedureCallback {
+            private final VoltTable m_table;
+            private final List<Object[]> m_rows = new ArrayList<>();
+
+            PartitionLoad(VoltTable table) {
+                m_table = table;
+            }
+
+            void add(Object[] row) {
+                m_table.addRow(row);
+                m_rows.add(row);
+            }
+
+            @Override
+            public void clientCallback(ClientResponse response) throws Exception {
+                if (response.getStatus() == ClientResponse.RESPONSE_UNKNOWN) {
+                    // the adapter resubmits the load and calls back again
+                    return;
+                }
+                if (response.getStatus() == ClientResponse.SERVER_UNAVAILABLE) {
+                    failed(response.getStatus(), response.getStatusString());
+                } else if (response.getStatus() != ClientResponse.SUCCESS) {
+                    final String crudProcName = m_tableName + (m_upsertMode != 0 ? ".upsert" : ".insert");
+                    for (Object[] row : m_rows) {
+                        m_pending.incrementAndGet();
+                        if (!callProcedure(m_caller, null, new RowCallback(), crudProcName, row)) {
+                            failed(ClientResponse.SERVER_UNAVAILABLE, "Failed to queue a row of table " + m_tableName);
+                            done();
+                        }
+                    }
+                }
+                done();
+            }
+        }
+
+        final class RowCallback implements ProcedureCallback {
+            @Override
+            public void clientCallback(ClientResponse response) throws Exception {
+                if (response.getStatus() == ClientResponse.RESPONSE_UNKNOWN) {
+                    return;
+                }
+                if (response.getStatus() != ClientResponse.SUCCESS) {
+                    failed(response.getStatus(), response.getStatusString());
+                }
+                done();
+            }
+        }
+    }
+
     private boolean hasBackPressure() {
         final boolean b = m_adapter.hasBackPressure();
         int prev = m_backpressureIndication.get();
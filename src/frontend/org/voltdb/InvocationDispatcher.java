@@ -79,6 +79,7 @@ import org.voltdb.messaging.Iv2InitiateTaskMessage;
 import org.voltdb.messaging.MultiPartitionParticipantMessage;
 import org.voltdb.parser.SQLLexer;
 import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.utils.BinaryWorkloadTrace;
 import org.voltdb.utils.Encoder;
 import org.voltdb.utils.MiscUtils;
 import org.voltdb.utils.VoltFile;
@@ -116,6 +117,9 @@ public final class InvocationDispatcher {
 
     private final boolean m_isConfiguredForNonVoltDBBackend;
 
+    // Records the invocations for a later replay, null unless WORKLOAD_TRACE_PATH is set
+    private final BinaryWorkloadTrace m_workloadTrace;
+
     public final static class Builder {
 
         Cartographer m_cartographer;
@@ -225,6 +229,8 @@ public final class InvocationDispatcher {
 
         // try to get the global default setting for read consistency, but fall back to SAFE
         m_defaultConsistencyReadLevel = VoltDB.Configuration.getDefaultReadConsistencyLevel();
+
+        m_workloadTrace = BinaryWorkloadTrace.fromSystemProperties(CoreUtils.getHostIdFromHSId(mailbox.getHSId()));
     }
 
     /*
@@ -259,6 +265,15 @@ public final class InvocationDispatcher {
         });
     }
 
+    /**
+     * Stop recording the workload, if it is recorded
+     */
+    public void shutdown() throws InterruptedException {
+        if (m_workloadTrace != null) {
+            m_workloadTrace.close();
+        }
+    }
+
     public final ClientResponseImpl dispatch(StoredProcedureInvocation task, InvocationClientHandler handler, Connection ccxn, AuthUser user) {
         final long nowNanos = System.nanoTime();
                 // Deserialize the client's request and map to a catalog stored procedure
@@ -356,6 +371,9 @@ public final class InvocationDispatcher {
                 return null;
             }
             else if ("@AdHoc".equals(task.procName)) {
+                if (m_workloadTrace != null) {
+                    m_workloadTrace.record(task, -1, nowNanos);
+                }
                 return dispatchAdHoc(task, handler, ccxn, false, user);
             }
             else if ("@AdHocSpForTest".equals(task.procName)) {
@@ -442,6 +460,9 @@ public final class InvocationDispatcher {
             // unable to hash to a site, return an error
             return getMispartitionedErrorResponse(task, catProc, e);
         }
+        if (m_workloadTrace != null) {
+            m_workloadTrace.record(task, catProc.getSinglepartition() ? partition : -1, nowNanos);
+        }
         boolean success = createTransaction(handler.connectionId(),
                         task,
                         catProc.getReadonly(),
@@ -1561,7 +1582,8 @@ public final class InvocationDispatcher {
         }
 
         long handle = cihm.getHandle(isSinglePartition, partition, invocation.getClientHandle(),
-                messageSize, nowNanos, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead);
+                messageSize, nowNanos, invocation.getProcName(), initiatorHSId, isReadOnly, isShortCircuitRead,
+                invocation.getColumnarResults());
 
         Iv2InitiateTaskMessage workRequest =
             new Iv2InitiateTaskMessage(m_siteId,
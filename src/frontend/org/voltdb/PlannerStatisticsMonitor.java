@@ -0,0 +1,171 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.KeeperException;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.apache.zookeeper_voltpatches.ZooKeeper;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.zk.ZKUtil;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.planner.CollectedTableStatistics;
+
+/**
+ * Stores the statistics gathered by @Analyze in ZooKeeper and installs them in
+ * the planner once every host has finished scanning.
+ *
+ * Each host writes what it gathered under
+ * /db/planner_statistics/&lt;txnId&gt;/&lt;hostId&gt;_&lt;table&gt; before it reports the
+ * analyze snapshot as complete, so when the snapshot completion fires every
+ * host can read and merge the statistics for the whole cluster. The first host
+ * to do so marks the run complete and removes older runs; a rejoining host
+ * loads the latest complete run.
+ */
+public class PlannerStatisticsMonitor implements SnapshotCompletionInterest {
+    private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
+
+    public static final String NONCE_PREFIX = "ANALYZE_";
+    private static final String COMPLETE = "complete";
+
+    private final ZooKeeper m_zk;
+
+    public PlannerStatisticsMonitor(ZooKeeper zk) {
+        m_zk = zk;
+    }
+
+    public static String nonceForTxnId(long txnId) {
+        return NONCE_PREFIX + txnId;
+    }
+
+    /**
+     * Write the statistics gathered on this host by the analyze run with the given txnId.
+     */
+    public static void publishHostStatistics(ZooKeeper zk, long txnId, int hostId,
+                                             List<CollectedTableStatistics> statistics)
+        throws KeeperException, InterruptedException
+    {
+        String runPath = ZKUtil.joinZKPath(VoltZK.planner_statistics, Long.toString(txnId));
+        try {
+            zk.create(runPath, null, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // another host got there first
+        }
+        for (CollectedTableStatistics stats : statistics) {
+            VoltTable table = CollectedTableStatistics.constructStatisticsTable();
+            stats.flattenToTable(table);
+            ByteBuffer buf = ByteBuffer.allocate(table.getSerializedSize());
+            table.flattenToBuffer(buf);
+            zk.create(ZKUtil.joinZKPath(runPath, hostId + "_" + stats.getTableName()),
+                    buf.array(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        }
+    }
+
+    @Override
+    public CountDownLatch snapshotCompleted(SnapshotCompletionEvent event) {
+        if (event.nonce.startsWith(NONCE_PREFIX) && event.didSucceed) {
+            try {
+                installStatistics(event.multipartTxnId);
+                markComplete(event.multipartTxnId);
+            } catch (Exception e) {
+                SNAP_LOG.warn("Failed to install statistics collected by @Analyze", e);
+            }
+        }
+        return new CountDownLatch(0);
+    }
+
+    /**
+     * Install the statistics of the latest complete analyze run, if any.
+     * Used by hosts that missed the run's completion, e.g. after a rejoin.
+     */
+    public void loadLatestStatistics() {
+        try {
+            long latest = -1;
+            for (String child : m_zk.getChildren(VoltZK.planner_statistics, false)) {
+                long txnId = Long.parseLong(child);
+                String runPath = ZKUtil.joinZKPath(VoltZK.planner_statistics, child);
+                if (txnId > latest && m_zk.exists(ZKUtil.joinZKPath(runPath, COMPLETE), false) != null) {
+                    latest = txnId;
+                }
+            }
+            if (latest != -1) {
+                installStatistics(latest);
+            }
+        } catch (Exception e) {
+            SNAP_LOG.warn("Failed to load statistics collected by @Analyze", e);
+        }
+    }
+
+    private void installStatistics(long txnId) throws KeeperException, InterruptedException {
+        String runPath = ZKUtil.joinZKPath(VoltZK.planner_statistics, Long.toString(txnId));
+        List<String> children = new ArrayList<String>(m_zk.getChildren(runPath, false));
+        // merge in a fixed order so every host ends up with the same estimates
+        Collections.sort(children);
+
+        CatalogContext context = VoltDB.instance().getCatalogContext();
+        Database db = context.database;
+        Map<String, CollectedTableStatistics> merged = new LinkedHashMap<String, CollectedTableStatistics>();
+        for (String child : children) {
+            if (COMPLETE.equals(child)) {
+                continue;
+            }
+            byte[] data = m_zk.getData(ZKUtil.joinZKPath(runPath, child), false, null);
+            VoltTable table = PrivateVoltTableFactory.createVoltTableFromSharedBuffer(ByteBuffer.wrap(data));
+            for (CollectedTableStatistics stats : CollectedTableStatistics.fromTable(db, table).values()) {
+                CollectedTableStatistics existing = merged.get(stats.getTableName());
+                if (existing == null) {
+                    merged.put(stats.getTableName(), stats);
+                }
+                else {
+                    existing.merge(stats);
+                }
+            }
+        }
+
+        context.m_ptool.updateEstimates(DatabaseEstimates.fromCollectedStatistics(merged.values()));
+        SNAP_LOG.info("Installed planner statistics for " + merged.size() + " tables collected by @Analyze");
+    }
+
+    private void markComplete(long txnId) throws KeeperException, InterruptedException {
+        String runPath = ZKUtil.joinZKPath(VoltZK.planner_statistics, Long.toString(txnId));
+        try {
+            m_zk.create(ZKUtil.joinZKPath(runPath, COMPLETE), null, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // already marked by another host, which also removed the older runs
+            return;
+        }
+        for (String child : m_zk.getChildren(VoltZK.planner_statistics, false)) {
+            if (Long.parseLong(child) < txnId) {
+                try {
+                    ZKUtil.deleteRecursively(m_zk, ZKUtil.joinZKPath(VoltZK.planner_statistics, child));
+                } catch (KeeperException.NoNodeException e) {
+                    // already removed
+                }
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@ package org.voltdb;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
@@ -96,9 +98,10 @@ public class PlannerStatsCollector extends StatsSource {
     long m_lastCacheMisses = 0;
 
     /**
-     * Time of last planning start
+     * Time of last planning start, per thread as ad hoc statements are
+     * planned by several threads
      */
-    Long m_currentStartTime = null;
+    final ThreadLocal<Long> m_currentStartTime = new ThreadLocal<Long>();
 
     /**
      * Total amount of planning time
@@ -131,6 +134,37 @@ public class PlannerStatsCollector extends StatsSource {
     long m_invocations = 0;
     long m_lastInvocations = 0;
 
+    /**
+     * Plans evicted from the ad hoc plan cache and new plans it didn't admit
+     */
+    long m_cacheEvictions = 0;
+    long m_lastCacheEvictions = 0;
+    long m_cacheNotAdmitted = 0;
+    long m_lastCacheNotAdmitted = 0;
+    // the counts already added up for each cache, every catalog version gets a new cache
+    private final Map<Object, long[]> m_countedCacheEvictions = new WeakHashMap<Object, long[]>();
+
+    /**
+     * Ad hoc statements waiting for a planner thread
+     */
+    long m_queueDepth = 0;
+
+    /**
+     * Time statements waited for a planner thread
+     */
+    long m_queued = 0;
+    long m_lastQueued = 0;
+    long m_totalQueueTime = 0;
+    long m_lastTotalQueueTime = 0;
+    long m_maxQueueTime = 0;
+    long m_lastMaxQueueTime = 0;
+
+    /**
+     * Statements rejected because the planner queue was full
+     */
+    long m_rejected = 0;
+    long m_lastRejected = 0;
+
     /**
      * Calculate the invocation count based on the cache hit/miss counts.
      * @return  invocation count
@@ -168,7 +202,7 @@ public class PlannerStatsCollector extends StatsSource {
     /**
      * Used to update EE cache stats without changing tracked time
      */
-    public void updateEECacheStats(long eeCacheSize, long hits, long misses, int partitionId) {
+    public synchronized void updateEECacheStats(long eeCacheSize, long hits, long misses, int partitionId) {
         m_cache1Level = eeCacheSize;
         m_cache1Hits += hits;
         m_cacheMisses += misses;
@@ -180,9 +214,55 @@ public class PlannerStatsCollector extends StatsSource {
     /**
      * Called before doing planning. Starts timer.
      */
-    public void startStatsCollection() {
+    public synchronized void startStatsCollection() {
         if (getInvocations() % m_collectionFrequency == 0) {
-            m_currentStartTime = System.nanoTime();
+            m_currentStartTime.set(System.nanoTime());
+        }
+    }
+
+    /**
+     * Record the eviction counts of an ad hoc plan cache. The counts of a cache only
+     * grow, what they grew by since the last update is added to the totals, so the
+     * totals keep growing when a catalog update replaces the cache.
+     *
+     * @param cache        the cache the counts are from
+     * @param evictions    plans evicted to make room for new ones
+     * @param notAdmitted  new plans not cached because they were used less than the plans they would replace
+     */
+    public synchronized void updateCacheEvictions(Object cache, long evictions, long notAdmitted) {
+        long counted[] = m_countedCacheEvictions.get(cache);
+        if (counted == null) {
+            counted = new long[2];
+            m_countedCacheEvictions.put(cache, counted);
+        }
+        m_cacheEvictions += evictions - counted[0];
+        m_cacheNotAdmitted += notAdmitted - counted[1];
+        counted[0] = evictions;
+        counted[1] = notAdmitted;
+    }
+
+    /**
+     * Called when a planner thread picks up work.
+     *
+     * @param queueDepth  work still waiting for a planner thread
+     * @param queueTime   time the work waited, in nanoseconds
+     */
+    public synchronized void dequeued(int queueDepth, long queueTime) {
+        m_queueDepth = queueDepth;
+        m_queued++;
+        m_totalQueueTime += queueTime;
+        m_maxQueueTime = Math.max(queueTime, m_maxQueueTime);
+        m_lastMaxQueueTime = Math.max(queueTime, m_lastMaxQueueTime);
+    }
+
+    /**
+     * Called when work is queued for a planner thread or rejected
+     * because the queue is full.
+     */
+    public synchronized void enqueued(int queueDepth, boolean rejected) {
+        m_queueDepth = queueDepth;
+        if (rejected) {
+            m_rejected++;
         }
     }
 
@@ -194,9 +274,10 @@ public class PlannerStatsCollector extends StatsSource {
      * @param cacheUse     where the planned statement came from
      * @param partitionId  partition id
      */
-    public void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
-        if (m_currentStartTime != null) {
-            long delta = System.nanoTime() - m_currentStartTime;
+    public synchronized void endStatsCollection(long cache1Size, long cache2Size, CacheUse cacheUse, long partitionId) {
+        final Long startTime = m_currentStartTime.get();
+        if (startTime != null) {
+            long delta = System.nanoTime() - startTime;
             if (delta < 0) {
                 if (Math.abs(delta) > 1000000000) {
                     log.info("Planner statistics recorded a negative planning time larger than one second: " +
@@ -210,7 +291,7 @@ public class PlannerStatsCollector extends StatsSource {
                 m_lastMinPlanningTime = Math.min(delta, m_lastMinPlanningTime);
                 m_lastMaxPlanningTime = Math.max(delta, m_lastMaxPlanningTime);
             }
-            m_currentStartTime = null;
+            m_currentStartTime.remove();
         }
 
         m_cache1Level = cache1Size;
@@ -255,6 +336,12 @@ public class PlannerStatsCollector extends StatsSource {
         long cache2Hits  = m_cache2Hits;
         long cacheMisses = m_cacheMisses;
         long failureCount = m_failures;
+        long queued = m_queued;
+        long totalQueueTime = m_totalQueueTime;
+        long maxQueueTime = m_maxQueueTime;
+        long rejected = m_rejected;
+        long cacheEvictions = m_cacheEvictions;
+        long cacheNotAdmitted = m_cacheNotAdmitted;
 
         if (m_interval) {
             totalTimedExecutionTime = m_totalPlanningTime - m_lastTimedPlanningTime;
@@ -283,6 +370,24 @@ public class PlannerStatsCollector extends StatsSource {
             failureCount = m_failures - m_lastFailures;
             m_lastFailures = m_failures;
 
+            queued = m_queued - m_lastQueued;
+            m_lastQueued = m_queued;
+
+            totalQueueTime = m_totalQueueTime - m_lastTotalQueueTime;
+            m_lastTotalQueueTime = m_totalQueueTime;
+
+            maxQueueTime = m_lastMaxQueueTime;
+            m_lastMaxQueueTime = 0;
+
+            rejected = m_rejected - m_lastRejected;
+            m_lastRejected = m_rejected;
+
+            cacheEvictions = m_cacheEvictions - m_lastCacheEvictions;
+            m_lastCacheEvictions = m_cacheEvictions;
+
+            cacheNotAdmitted = m_cacheNotAdmitted - m_lastCacheNotAdmitted;
+            m_lastCacheNotAdmitted = m_cacheNotAdmitted;
+
             m_lastInvocations = m_invocations;
         }
 
@@ -302,6 +407,12 @@ public class PlannerStatsCollector extends StatsSource {
             rowValues[columnNameToIndex.get("PLAN_TIME_AVG")] = 0L;
         }
         rowValues[columnNameToIndex.get("FAILURES")] = failureCount;
+        rowValues[columnNameToIndex.get("QUEUE_DEPTH")] = m_queueDepth;
+        rowValues[columnNameToIndex.get("QUEUE_TIME_AVG")] = queued == 0 ? 0L : totalQueueTime / queued;
+        rowValues[columnNameToIndex.get("QUEUE_TIME_MAX")] = maxQueueTime;
+        rowValues[columnNameToIndex.get("REJECTED")] = rejected;
+        rowValues[columnNameToIndex.get("CACHE_EVICTIONS")] = cacheEvictions;
+        rowValues[columnNameToIndex.get("CACHE_NOT_ADMITTED")] = cacheNotAdmitted;
     }
 
     /**
@@ -322,6 +433,12 @@ public class PlannerStatsCollector extends StatsSource {
         columns.add(new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT));
         columns.add(new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT));
         columns.add(new ColumnInfo("FAILURES",      VoltType.BIGINT));
+        columns.add(new ColumnInfo("QUEUE_DEPTH",   VoltType.INTEGER));
+        columns.add(new ColumnInfo("QUEUE_TIME_AVG", VoltType.BIGINT));
+        columns.add(new ColumnInfo("QUEUE_TIME_MAX", VoltType.BIGINT));
+        columns.add(new ColumnInfo("REJECTED",      VoltType.BIGINT));
+        columns.add(new ColumnInfo("CACHE_EVICTIONS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CACHE_NOT_ADMITTED", VoltType.BIGINT));
     }
 
     @Override
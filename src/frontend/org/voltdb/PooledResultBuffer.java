@@ -0,0 +1,120 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.voltcore.utils.DBBPool.BBContainer;
+
+/**
+ * Reference counted owner of a direct buffer that backs one or more result
+ * tables without copying them out of the execution engine's memory.
+ *
+ * Whoever creates the buffer holds the first reference, and every table
+ * created over it with {@link PrivateVoltTableFactory#createVoltTableFromPooledBuffer}
+ * holds another. The container is discarded when the last reference is released.
+ * Tables that are dropped without being released are found once they have been
+ * garbage collected and their buffer is discarded the next time a pooled buffer
+ * is created, so forgetting a release only delays the reuse of the memory.
+ */
+public final class PooledResultBuffer {
+
+    private static final ReferenceQueue<PooledResultBuffer> s_abandoned =
+            new ReferenceQueue<PooledResultBuffer>();
+
+    // keeps the containers of buffers that haven't been discarded reachable,
+    // so that an abandoned container is only ever discarded through its tracker
+    private static final Set<Tracker> s_outstanding =
+            Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+
+    private static final class Tracker extends WeakReference<PooledResultBuffer> {
+        private final BBContainer m_container;
+        private final AtomicBoolean m_discarded = new AtomicBoolean(false);
+
+        private Tracker(PooledResultBuffer owner, BBContainer container) {
+            super(owner, s_abandoned);
+            m_container = container;
+        }
+
+        private void discard() {
+            if (m_discarded.compareAndSet(false, true)) {
+                s_outstanding.remove(this);
+                m_container.discard();
+            }
+        }
+    }
+
+    private final Tracker m_tracker;
+    private final ByteBuffer m_buffer;
+    private final AtomicInteger m_refCount = new AtomicInteger(1);
+
+    /**
+     * Take ownership of a container. The caller holds the first reference
+     * and must {@link #release()} it once it has created its tables.
+     */
+    public PooledResultBuffer(BBContainer container) {
+        reclaimAbandoned();
+        m_buffer = container.b();
+        m_tracker = new Tracker(this, container);
+        s_outstanding.add(m_tracker);
+    }
+
+    /**
+     * @return a duplicate of the pooled buffer with independent position and limit.
+     */
+    public ByteBuffer b() {
+        return m_buffer.duplicate();
+    }
+
+    void retain() {
+        final int refs = m_refCount.getAndIncrement();
+        assert(refs > 0) : "Pooled result buffer retained after it was released";
+    }
+
+    public void release() {
+        final int refs = m_refCount.decrementAndGet();
+        assert(refs >= 0) : "Pooled result buffer released too many times";
+        if (refs == 0) {
+            m_tracker.discard();
+        }
+    }
+
+    /**
+     * Discard the buffers of tables that were garbage collected without being released.
+     */
+    public static void reclaimAbandoned() {
+        Tracker tracker;
+        while ((tracker = (Tracker) s_abandoned.poll()) != null) {
+            tracker.discard();
+        }
+    }
+
+    /**
+     * @return the number of pooled result buffers that have not been discarded yet.
+     */
+    public static int getOutstandingCount() {
+        return s_outstanding.size();
+    }
+}
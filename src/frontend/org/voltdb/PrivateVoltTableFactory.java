@@ -36,6 +36,36 @@ public abstract class PrivateVoltTableFactory {
         return new VoltTable(backing, readOnly);
     }
 
+    /**
+     * Create a read-only table over a slice of a pooled buffer without copying it.
+     * The table holds a reference to the buffer until it is passed to
+     * {@link #releasePooledBuffer(VoltTable)} or garbage collected.
+     */
+    public static VoltTable createVoltTableFromPooledBuffer(ByteBuffer backing, PooledResultBuffer pooled) {
+        VoltTable vt = new VoltTable(backing, true);
+        pooled.retain();
+        vt.m_pooledBuffer = pooled;
+        return vt;
+    }
+
+    /**
+     * End users should not call this method.
+     * Give back the table's reference to its pooled buffer. The table must not
+     * be used afterwards, as its memory may be reused for other results.
+     * Does nothing for tables that aren't backed by a pooled buffer.
+     */
+    public static void releasePooledBuffer(VoltTable vt) {
+        PooledResultBuffer pooled = vt.m_pooledBuffer;
+        if (pooled != null) {
+            vt.m_pooledBuffer = null;
+            pooled.release();
+        }
+    }
+
+    public static boolean isBackedByPooledBuffer(VoltTable vt) {
+        return vt.m_pooledBuffer != null;
+    }
+
     public static VoltTable createVoltTableFromSharedBuffer(ByteBuffer shared) {
         VoltTable vt = new VoltTable();
         vt.initFromBuffer(shared);
@@ -27,6 +27,7 @@ import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -148,6 +149,15 @@ public class ProcedureRunner {
     /** boolean flag to mark whether the previous batch execution has EE exception or not.*/
     private long m_spBigBatchBeginToken;
 
+    // Time the statements of every n-th invocation, 0 turns the timing off
+    private static final int STATEMENT_SAMPLE_INTERVAL = Integer.getInteger("STATEMENT_LATENCY_SAMPLE_INTERVAL", 20);
+    // Host wide timings of the procedure's statements, see @Statistics STATEMENT_LATENCY
+    private final IdentityHashMap<SQLStmt, StatementLatencyStats.Timings> m_statementTimings =
+            new IdentityHashMap<SQLStmt, StatementLatencyStats.Timings>();
+    private long m_statementSampleCount = 0;
+    // whether the statements of the current invocation are timed
+    private boolean m_timeStatements = false;
+
     // Used to get around the "abstract" for StmtProcedures.
     // Path of least resistance?
     static class StmtProcedure extends VoltProcedure {
@@ -271,6 +281,12 @@ public class ProcedureRunner {
         // set procedure name in the site/ee
         m_site.setProcedureName(m_procedureName);
 
+        // Results of single statement and ad hoc procedures go straight into the response
+        // without user code seeing them, so they can be left in pooled buffers that the
+        // client interface gives back once the response is written.
+        final boolean responseOwnsResults = !m_hasJava || m_procedure instanceof AdHocBase;
+        m_site.setPooledResults(responseOwnsResults);
+
         // use local var to avoid warnings about reassigning method argument
         Object[] paramList = paramListIn;
 
@@ -278,6 +294,10 @@ public class ProcedureRunner {
         // assert no sql is queued
         assert(m_batch.size() == 0);
 
+        // the single partition statements of sampled invocations are timed by the EE
+        m_timeStatements = STATEMENT_SAMPLE_INTERVAL > 0 && m_isSinglePartition && !m_statementTimings.isEmpty() &&
+                m_statementSampleCount++ % STATEMENT_SAMPLE_INTERVAL == 0;
+
         try {
             m_statsCollector.beginProcedure();
 
@@ -419,6 +439,7 @@ public class ProcedureRunner {
                         m_appStatusString,
                         results,
                         m_statusString);
+                retval.setOwnsPooledResults(responseOwnsResults);
             }
 
             int hash = (int) m_inputCRC.getValue();
@@ -450,6 +471,8 @@ public class ProcedureRunner {
             m_seenFinalBatch = false;
 
             m_site.setProcedureName(null);
+            m_site.setPooledResults(false);
+            m_timeStatements = false;
         }
 
         return retval;
@@ -1109,6 +1132,11 @@ public class ProcedureRunner {
                 // done in a static method in an abstract class so users don't call it
                 initSQLStmt(stmt, s);
                 //LOG.fine("Found statement " + name);
+
+                StatementLatencyStats statementStats = VoltDB.instance().getStatementLatencyStats();
+                if (statementStats != null && !m_isSysProc && STATEMENT_SAMPLE_INTERVAL > 0) {
+                    m_statementTimings.put(stmt, statementStats.getTimings(m_procedureName, name));
+                }
             }
         }
     }
@@ -1598,8 +1626,34 @@ public class ProcedureRunner {
        return state.m_results;
    }
 
-   // Batch up pre-planned fragments, but handle ad hoc independently.
    private VoltTable[] fastPath(List<QueuedSQL> batch) {
+       if (!m_timeStatements) {
+           return executeFastPath(batch);
+       }
+
+       // the EE times every fragment of the batch, one per statement
+       final long[] phaseTimes = new long[batch.size() * StatementLatencyStats.PHASES];
+       m_site.setPhaseTimes(phaseTimes);
+       final VoltTable[] results;
+       try {
+           results = executeFastPath(batch);
+       }
+       finally {
+           m_site.setPhaseTimes(null);
+       }
+       for (int i = 0; i < results.length; i++) {
+           final int offset = i * StatementLatencyStats.PHASES;
+           StatementLatencyStats.Timings timings = m_statementTimings.get(batch.get(i).stmt);
+           // an engine that doesn't time fragments leaves the times at 0
+           if (timings != null && phaseTimes[offset + StatementLatencyStats.TOTAL] > 0) {
+               timings.record(phaseTimes, offset);
+           }
+       }
+       return results;
+   }
+
+   // Batch up pre-planned fragments, but handle ad hoc independently.
+   private VoltTable[] executeFastPath(List<QueuedSQL> batch) {
        final int batchSize = batch.size();
        Object[] params = new Object[batchSize];
        long[] fragmentIds = new long[batchSize];
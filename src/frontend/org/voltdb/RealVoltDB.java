@@ -122,6 +122,7 @@ import org.voltdb.iv2.Initiator;
 import org.voltdb.iv2.KSafetyStats;
 import org.voltdb.iv2.LeaderAppointer;
 import org.voltdb.iv2.MpInitiator;
+import org.voltdb.iv2.SiteWaitStrategy;
 import org.voltdb.iv2.SpInitiator;
 import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
 import org.voltdb.iv2.TxnEgo;
@@ -211,6 +212,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
     private CommandLogStats m_commandLogStats = null;
     private StatsManager m_statsManager = null;
     private SnapshotCompletionMonitor m_snapshotCompletionMonitor;
+    private PlannerStatisticsMonitor m_plannerStatisticsMonitor;
     // These are unused locally, but they need to be registered with the StatsAgent so they're
     // globally available
     @SuppressWarnings("unused")
@@ -354,6 +356,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
     private LatencyStats m_latencyStats;
 
     private LatencyHistogramStats m_latencyHistogramStats;
+    private StatementLatencyStats m_statementLatencyStats;
 
     private File getConfigLogDirectory() {
         return getConfigLogDirectory(m_config);
@@ -827,6 +830,9 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
             m_latencyHistogramStats = new LatencyHistogramStats(m_myHostId);
             getStatsAgent().registerStatsSource(StatsSelector.LATENCY_HISTOGRAM,
                     0, m_latencyHistogramStats);
+            m_statementLatencyStats = new StatementLatencyStats();
+            getStatsAgent().registerStatsSource(StatsSelector.STATEMENT_LATENCY,
+                    0, m_statementLatencyStats);
 
 
             BalancePartitionsStatistics rebalanceStats = new BalancePartitionsStatistics();
@@ -901,8 +907,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 VoltDB.crashLocalVoltDB(e.getMessage(), true, e);
             }
 
-            boolean usingCommandLog = m_config.m_isEnterprise &&
-                    m_catalogContext.cluster.getLogconfig().get("log").getEnabled();
+            boolean usingCommandLog = m_catalogContext.cluster.getLogconfig().get("log").getEnabled();
             String clSnapshotPath = null;
             if (m_catalogContext.cluster.getLogconfig().get("log").getEnabled()) {
                 clSnapshotPath = m_catalogContext.cluster.getLogconfig().get("log").getInternalsnapshotpath();
@@ -1002,6 +1007,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 hostLog.fatal("Error initializing snapshot completion monitor", e);
                 VoltDB.crashLocalVoltDB("Error initializing snapshot completion monitor", true, e);
             }
+            m_plannerStatisticsMonitor = new PlannerStatisticsMonitor(m_messenger.getZK());
+            m_snapshotCompletionMonitor.addInterest(m_plannerStatisticsMonitor);
 
 
             /*
@@ -1859,6 +1866,12 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 if (sysType.getSnapshot() != null) {
                     hostLog.info("Snapshot priority set to " + sysType.getSnapshot().getPriority() + " [0 - 10]");
                 }
+                if (sysType.getSitequeue() != null) {
+                    SiteWaitStrategy.Type waitStrategy =
+                            SiteWaitStrategy.Type.valueOf(sysType.getSitequeue().getWaitstrategy().name());
+                    hostLog.info("Site queue wait strategy set to " + waitStrategy.name().toLowerCase());
+                    SiteWaitStrategy.setDefaultType(waitStrategy);
+                }
                 if (sysType.getQuery() != null) {
                     if (sysType.getQuery().getTimeout() > 0) {
                         hostLog.info("Query timeout set to " + sysType.getQuery().getTimeout() + " milliseconds");
@@ -2561,6 +2574,10 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                     m_cartographer.shutdown();
                 }
 
+                if (m_commandLog != null) {
+                    m_commandLog.shutdown();
+                }
+
                 if (m_configLogger != null) {
                     m_configLogger.join();
                 }
@@ -2921,6 +2938,11 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
         return m_memoryStats;
     }
 
+    @Override
+    public StatementLatencyStats getStatementLatencyStats() {
+        return m_statementLatencyStats;
+    }
+
     @Override
     public CatalogContext getCatalogContext() {
         return m_catalogContext;
@@ -3034,7 +3056,7 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
         try {
             final ZooKeeper zk = m_messenger.getZK();
             boolean logRecoveryCompleted = false;
-            if (getCommandLog().getClass().getName().equals("org.voltdb.CommandLogImpl")) {
+            if (getCommandLog().isEnabled()) {
                 String requestNode = zk.create(VoltZK.request_truncation_snapshot_node, null,
                         Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
                 if (m_rejoinTruncationReqId == null) {
@@ -3055,6 +3077,8 @@ public class RealVoltDB implements VoltDBInterface, RestoreAgent.Callback, HostM
                 String actionName = m_joining ? "join" : "rejoin";
                 m_joining = false;
                 consoleLog.info(String.format("Node %s completed", actionName));
+                // pick up planner statistics collected while this node was away
+                m_plannerStatisticsMonitor.loadLatestStatistics();
             }
         } catch (Exception e) {
             VoltDB.crashLocalVoltDB("Unable to log host rejoin completion to ZK", true, e);
@@ -55,6 +55,7 @@ import org.voltcore.utils.Pair;
 import org.voltdb.SystemProcedureCatalog.Config;
 import org.voltdb.catalog.Procedure;
 import org.voltdb.client.ClientResponse;
+import org.voltdb.commandlog.FileCommandLogReinitiator;
 import org.voltdb.common.Constants;
 import org.voltdb.dtxn.TransactionCreator;
 import org.voltdb.jni.ExecutionEngine;
@@ -130,6 +131,7 @@ SnapshotCompletionInterest, Promotable
     private final String m_clSnapshotPath;
     private final String m_snapshotPath;
     private final String m_voltdbrootPath;
+    private final int m_partitionCount;
     private final Set<Integer> m_liveHosts;
 
     private boolean m_planned = false;
@@ -459,12 +461,13 @@ SnapshotCompletionInterest, Promotable
         m_callback = callback;
         m_action = action;
         m_zk = hostMessenger.getZK();
-        m_clEnabled = VoltDB.instance().getConfig().m_isEnterprise ? clEnabled : false;
+        m_clEnabled = clEnabled;
         m_clPath = clPath;
         m_clSnapshotPath = clSnapshotPath;
         m_snapshotPath = snapshotPath;
         m_liveHosts = ImmutableSet.copyOf(hostMessenger.getLiveHostIds());
         m_voltdbrootPath = voltdbrootPath;
+        m_partitionCount = allPartitions.length;
 
         initialize(hostMessenger);
     }
@@ -488,6 +491,9 @@ SnapshotCompletionInterest, Promotable
                                                                     hostMessenger,
                                                                     m_clPath,
                                                                     m_liveHosts);
+            } else {
+                m_replayAgent = new FileCommandLogReinitiator(m_hostId, m_action, hostMessenger,
+                                                              m_clPath, m_liveHosts, m_partitionCount);
             }
         } catch (Exception e) {
             VoltDB.crashGlobalVoltDB("Unable to instantiate command log reinitiator",
@@ -1358,10 +1364,8 @@ SnapshotCompletionInterest, Promotable
          * they can be set individually
          */
         List<String> paths = new ArrayList<String>();
-        if (VoltDB.instance().getConfig().m_isEnterprise) {
-            if (m_clSnapshotPath != null) {
-                paths.add(m_clSnapshotPath);
-            }
+        if (m_clSnapshotPath != null) {
+            paths.add(m_clSnapshotPath);
         }
         if (m_snapshotPath != null) {
             paths.add(m_snapshotPath);
@@ -125,6 +125,18 @@ public interface SiteProcedureConnection {
      */
     public void setProcedureName(String procedureName);
 
+    /**
+     * Let the EE hand large results of the following fragments out in pooled
+     * buffers instead of copying them. See {@link org.voltdb.PooledResultBuffer}.
+     */
+    public void setPooledResults(boolean pooledResults);
+
+    /**
+     * Let the EE record how long each phase of the following fragment batches
+     * takes. See {@link org.voltdb.StatementLatencyStats}.
+     */
+    public void setPhaseTimes(long[] phaseTimes);
+
     public void setBatchTimeout(int batchTimeout);
     public int getBatchTimeout();
 
@@ -144,6 +156,13 @@ public interface SiteProcedureConnection {
      */
     public void truncateUndoLog(boolean rollback, long token, long spHandle, List<UndoAction> undoActions);
 
+    /**
+     * While set, committing transactions leave their undo quanta in the EE and
+     * the whole lot is released when it is cleared. Used by micro-batches of
+     * single partition transactions.
+     */
+    public void setDeferUndoRelease(boolean defer);
+
     /**
      * IV2: send dependencies to the EE
      */
@@ -24,7 +24,9 @@ public enum SnapshotFormat {
     NATIVE (true,  true,  TableStreamType.SNAPSHOT),
     CSV    (true,  true,  TableStreamType.SNAPSHOT),
     STREAM (false, false, TableStreamType.SNAPSHOT),
-    INDEX  (false, false, TableStreamType.ELASTIC_INDEX);
+    INDEX  (false, false, TableStreamType.ELASTIC_INDEX),
+    // rows are folded into planner statistics instead of being written out
+    ANALYZE(false, true,  TableStreamType.SNAPSHOT);
 
     private final boolean m_isFileBased;
     private final boolean m_canCloseEarly;
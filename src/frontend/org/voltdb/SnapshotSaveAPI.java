@@ -43,6 +43,7 @@ import org.voltcore.utils.CoreUtils;
 import org.voltcore.zk.ZKUtil;
 import org.voltdb.dtxn.SiteTracker;
 import org.voltdb.iv2.TxnEgo;
+import org.voltdb.sysprocs.saverestore.AnalyzeSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.CSVSnapshotWritePlan;
 import org.voltdb.sysprocs.saverestore.HashinatorSnapshotData;
 import org.voltdb.sysprocs.saverestore.IndexSnapshotWritePlan;
@@ -495,6 +496,9 @@ public class SnapshotSaveAPI
         else if (format == SnapshotFormat.INDEX) {
             plan = new IndexSnapshotWritePlan();
         }
+        else if (format == SnapshotFormat.ANALYZE) {
+            plan = new AnalyzeSnapshotWritePlan();
+        }
         else {
             throw new RuntimeException("BAD BAD BAD");
         }
@@ -116,6 +116,28 @@ public class SnapshotStatus extends StatsSource {
         columns.add(new ColumnInfo("THROUGHPUT", VoltType.FLOAT));
         columns.add(new ColumnInfo("RESULT", VoltType.STRING));
         columns.add(new ColumnInfo("TYPE", VoltType.STRING));
+        columns.add(new ColumnInfo("WRITER", VoltType.STRING));
+        columns.add(new ColumnInfo("WRITER_THROUGHPUT", VoltType.FLOAT));
+    }
+
+    /**
+     * Megabytes per second the given writer wrote for the snapshot, 0 until
+     * the snapshot is finished.
+     */
+    private static double getWriterThroughput(Snapshot s, final String writer, double duration) {
+        if (writer == null || duration == 0) {
+            return 0;
+        }
+        final long bytes[] = new long[1];
+        s.iterateTables(new Snapshot.TableIterator() {
+            @Override
+            public void next(Table t) {
+                if (writer.equals(t.writer)) {
+                    bytes[0] += t.size;
+                }
+            }
+        });
+        return (bytes[0] / (1024.0 * 1024.0)) / duration;
     }
 
     @SuppressWarnings("unchecked")
@@ -145,6 +167,8 @@ public class SnapshotStatus extends StatsSource {
         rowValues[columnNameToIndex.get("THROUGHPUT")] = throughput;
         rowValues[columnNameToIndex.get("RESULT")] = t.error == null ? "SUCCESS" : "FAILURE";
         rowValues[columnNameToIndex.get("TYPE")] = getSnapshotType(s.path);
+        rowValues[columnNameToIndex.get("WRITER")] = t.writer == null ? "" : t.writer;
+        rowValues[columnNameToIndex.get("WRITER_THROUGHPUT")] = getWriterThroughput(s, t.writer, duration);
         super.updateStatsRow(rowKey, rowValues);
     }
 
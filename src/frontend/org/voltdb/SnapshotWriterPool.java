@@ -0,0 +1,244 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Writes snapshot data for all the snapshot targets on a host. Every mount
+ * point gets its own group of writer threads, so snapshots spread over several
+ * disks are not limited to the throughput of a single thread.
+ *
+ * Each target has a queue of pending writes that is drained by one writer
+ * thread at a time, which keeps the writes to a file in order while different
+ * files on the same disk are written in parallel. A drain takes as many ready
+ * buffers as fit in {@link #AGGREGATION_BYTES} and hands them to the file in a
+ * single gathering write.
+ */
+public class SnapshotWriterPool {
+    private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
+
+    public static final int THREADS_PER_DISK =
+            Math.max(1, Integer.getInteger("SNAPSHOT_WRITER_THREADS_PER_DISK", 2));
+    // a batch must fit in the unsynced bytes allowed or it would wait forever for its permits
+    public static final int AGGREGATION_BYTES =
+            Math.max(1, Math.min(DefaultSnapshotDataTarget.BYTES_ALLOWED_BEFORE_SYNC / 4,
+                    Integer.getInteger("SNAPSHOT_WRITE_AGGREGATION_BYTES", 1024 * 1024 * 8)));
+
+    private static final Map<String, DiskWriter> m_writers = new HashMap<String, DiskWriter>();
+
+    /**
+     * A write waiting in a target's queue.
+     */
+    public interface PendingWrite {
+        /**
+         * Wait for the data of the write to be ready, called on the writer thread.
+         * @return the buffer to write or null if there is nothing to write
+         */
+        public ByteBuffer prepare() throws Exception;
+
+        /**
+         * Called on the writer thread once the buffer returned by prepare has
+         * been written or the write has failed.
+         * @param written    the number of bytes written for this write
+         * @param failure    the cause of the failure or null on success
+         */
+        public void complete(int written, Throwable failure);
+    }
+
+    /**
+     * The writer threads and write counts of one mount point.
+     */
+    public static class DiskWriter {
+        private final String m_name;
+        private final ListeningExecutorService m_es;
+        private final AtomicLong m_bytesWritten = new AtomicLong(0);
+        private final AtomicLong m_writes = new AtomicLong(0);
+
+        private DiskWriter(String name) {
+            m_name = name;
+            m_es = CoreUtils.getListeningExecutorService("Snapshot write service " + name, THREADS_PER_DISK);
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        public long getBytesWritten() {
+            return m_bytesWritten.get();
+        }
+
+        public long getWriteCount() {
+            return m_writes.get();
+        }
+    }
+
+    /**
+     * The queue of pending writes of one snapshot target.
+     */
+    public static class TargetQueue {
+        private final DiskWriter m_writer;
+        private final GatheringByteChannel m_channel;
+        private final ConcurrentLinkedQueue<PendingWrite> m_pending = new ConcurrentLinkedQueue<PendingWrite>();
+        private final AtomicBoolean m_scheduled = new AtomicBoolean(false);
+        private final Runnable m_drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+
+        private TargetQueue(DiskWriter writer, GatheringByteChannel channel) {
+            m_writer = writer;
+            m_channel = channel;
+        }
+
+        public DiskWriter getWriter() {
+            return m_writer;
+        }
+
+        public void offer(PendingWrite write) {
+            m_pending.offer(write);
+            if (m_scheduled.compareAndSet(false, true)) {
+                m_writer.m_es.execute(m_drainTask);
+            }
+        }
+
+        /**
+         * Write one aggregated batch, then go to the back of the disk's queue
+         * if there is more to do so other targets get their turn.
+         */
+        private void drain() {
+            final List<PendingWrite> batch = new ArrayList<PendingWrite>();
+            final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+            final List<Integer> sizes = new ArrayList<Integer>();
+            Throwable failure = null;
+            long bytes = 0;
+            PendingWrite write;
+            while (bytes < AGGREGATION_BYTES && (write = m_pending.poll()) != null) {
+                batch.add(write);
+                try {
+                    ByteBuffer buf = write.prepare();
+                    final int size = buf == null ? 0 : buf.remaining();
+                    if (size > 0) {
+                        buffers.add(buf);
+                        bytes += size;
+                    }
+                    sizes.add(size);
+                } catch (Throwable t) {
+                    sizes.add(0);
+                    failure = t;
+                    break;
+                }
+            }
+
+            if (failure == null && bytes > 0) {
+                /*
+                 * Wait for room in the unsynced bytes only once the batch is
+                 * gathered, a writer holding permits for buffers it hasn't
+                 * written yet could otherwise block the syncs that free them.
+                 */
+                final int permits = (int) Math.min(bytes, Integer.MAX_VALUE);
+                boolean acquired = false;
+                try {
+                    DefaultSnapshotDataTarget.acquireUnsyncedBytes(permits);
+                    acquired = true;
+                    DefaultSnapshotDataTarget.enforceSnapshotRateLimit(permits);
+                    final ByteBuffer[] srcs = buffers.toArray(new ByteBuffer[buffers.size()]);
+                    long written = 0;
+                    while (written < bytes) {
+                        written += m_channel.write(srcs);
+                    }
+                    m_writer.m_bytesWritten.addAndGet(written);
+                    m_writer.m_writes.incrementAndGet();
+                } catch (Throwable t) {
+                    failure = t;
+                    // failed writes are never synced, give their permits back here
+                    if (acquired) {
+                        DefaultSnapshotDataTarget.releaseUnsyncedBytes(permits);
+                    }
+                }
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    batch.get(i).complete(failure == null ? sizes.get(i) : 0, failure);
+                } catch (Throwable t) {
+                    SNAP_LOG.error("Error completing snapshot write", t);
+                }
+            }
+
+            m_scheduled.set(false);
+            if (!m_pending.isEmpty() && m_scheduled.compareAndSet(false, true)) {
+                m_writer.m_es.execute(m_drainTask);
+            }
+        }
+    }
+
+    /**
+     * Create the write queue for a snapshot file, served by the writer of the
+     * mount point the file is on.
+     */
+    public static TargetQueue createQueue(File file, GatheringByteChannel channel) {
+        return new TargetQueue(getWriter(mountPointOf(file)), channel);
+    }
+
+    static synchronized DiskWriter getWriter(String mountPoint) {
+        DiskWriter writer = m_writers.get(mountPoint);
+        if (writer == null) {
+            writer = new DiskWriter(mountPoint);
+            m_writers.put(mountPoint, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * @return the writers that have been created so far
+     */
+    public static synchronized List<DiskWriter> getWriters() {
+        return new ArrayList<DiskWriter>(m_writers.values());
+    }
+
+    private static String mountPointOf(File file) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        try {
+            FileStore store = Files.getFileStore(dir.toPath());
+            return store.toString();
+        } catch (IOException e) {
+            SNAP_LOG.debug("Unable to find the mount point of " + dir + ", using the directory", e);
+            return dir.getPath();
+        }
+    }
+}
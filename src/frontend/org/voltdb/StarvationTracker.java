@@ -52,6 +52,16 @@ public class StarvationTracker extends SiteStatsSource {
 
     private long m_starvationStartTime;
 
+    /*
+     * What the site's wait strategy did while starved
+     */
+    private long m_spins = 0;
+    private long m_lastSpins = 0;
+    private long m_yields = 0;
+    private long m_lastYields = 0;
+    private long m_parks = 0;
+    private long m_lastParks = 0;
+
     private boolean m_interval;
 
     /**
@@ -81,6 +91,16 @@ public class StarvationTracker extends SiteStatsSource {
         m_lastMin = Math.min(m_lastMin, delta);
     }
 
+    /**
+     * Account for the polls, yields and blocking waits a wait strategy did
+     * while waiting for the task that ends the current starvation.
+     */
+    public void recordWait(long spins, long yields, long parks) {
+        m_spins += spins;
+        m_yields += yields;
+        m_parks += parks;
+    }
+
     @Override
     protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
         super.populateColumnSchema(columns);
@@ -90,6 +110,9 @@ public class StarvationTracker extends SiteStatsSource {
         columns.add(new ColumnInfo("MIN", VoltType.BIGINT));
         columns.add(new ColumnInfo("MAX", VoltType.BIGINT));
         columns.add(new ColumnInfo("STDDEV", VoltType.BIGINT));
+        columns.add(new ColumnInfo("SPINS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("YIELDS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("PARKS", VoltType.BIGINT));
     }
 
     @Override
@@ -107,6 +130,12 @@ public class StarvationTracker extends SiteStatsSource {
             m_lastCount = m_count;
             m_lastMax = 0;
             m_lastMin = Long.MAX_VALUE;
+            rowValues[columnNameToIndex.get("SPINS")] = m_spins - m_lastSpins;
+            rowValues[columnNameToIndex.get("YIELDS")] = m_yields - m_lastYields;
+            rowValues[columnNameToIndex.get("PARKS")] = m_parks - m_lastParks;
+            m_lastSpins = m_spins;
+            m_lastYields = m_yields;
+            m_lastParks = m_parks;
             if (count > 0) {
                 rowValues[columnNameToIndex.get("COUNT")] = count;
                 rowValues[columnNameToIndex.get("PERCENT")] = totalStarvedTime / (totalTime / 100.0);
@@ -124,6 +153,9 @@ public class StarvationTracker extends SiteStatsSource {
             }
         } else {
             final long totalTime = System.nanoTime() - m_startTime;
+            rowValues[columnNameToIndex.get("SPINS")] = m_spins;
+            rowValues[columnNameToIndex.get("YIELDS")] = m_yields;
+            rowValues[columnNameToIndex.get("PARKS")] = m_parks;
             if (m_count > 0) {
                 final long uSecs = (m_totalTime / m_count) / 1000;
                 rowValues[columnNameToIndex.get("COUNT")] = m_count;
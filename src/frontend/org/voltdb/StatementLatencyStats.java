@@ -0,0 +1,205 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram_voltpatches.AbstractHistogram;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.dtxn.LatencyStats;
+
+/**
+ * Latency percentiles of the statements of the stored procedures run on this host,
+ * from a sample of the invocations. The time the EE takes to run a statement is
+ * broken down into serializing the parameters, executing the plan in the EE and
+ * copying the results back, so it shows whether a slow statement is slow in the EE
+ * or in getting data across JNI.
+ *
+ * The histograms are shared by the sites of the host and created the first time a
+ * statement is sampled, they take about 30KB per phase. All of the _TIME columns are
+ * in nanoseconds, like the execution times of the PROCEDURE statistics.
+ *
+ * Every 20th invocation of a procedure is sampled by default, the
+ * STATEMENT_LATENCY_SAMPLE_INTERVAL system property changes that and 0 turns sampling off.
+ * A sampled invocation still sends its statements to the EE in one batch, the EE times
+ * each fragment of the batch on its own.
+ */
+public class StatementLatencyStats extends StatsSource {
+
+    /**
+     * Phases of running a plan fragment. The phase times of fragment i of a batch
+     * are at i * PHASES + phase in the batch's phase time array.
+     */
+    public static final int PARAMETERS = 0;
+    public static final int EXECUTION = 1;
+    public static final int RESULTS = 2;
+    public static final int TOTAL = 3;
+    public static final int PHASES = 4;
+
+    private static final String PHASE_NAMES[] = { "PARAMETER", "EE", "RESULT", "TOTAL" };
+
+    // Nanoseconds, longer times are recorded as this
+    static final long HIGHEST_TRACKABLE_TIME = TimeUnit.SECONDS.toNanos(60);
+
+    /**
+     * The sampled timings of one statement.
+     */
+    public static class Timings {
+        final String m_procedure;
+        final String m_statement;
+        private volatile AbstractHistogram m_histograms[] = null;
+        // what had been recorded the last time interval stats were collected, guarded by this
+        private AbstractHistogram m_lastHistograms[] = null;
+
+        Timings(String procedure, String statement) {
+            m_procedure = procedure;
+            m_statement = statement;
+        }
+
+        /**
+         * Record the phase times of a run of the statement, in nanoseconds.
+         */
+        public void record(long phaseTimes[]) {
+            record(phaseTimes, 0);
+        }
+
+        /**
+         * Record the phase times of a run of the statement, in nanoseconds,
+         * starting at the given offset of a batch's phase times.
+         */
+        public void record(long phaseTimes[], int offset) {
+            AbstractHistogram histograms[] = m_histograms;
+            if (histograms == null) {
+                histograms = createHistograms();
+            }
+            for (int i = 0; i < PHASES; i++) {
+                histograms[i].recordValue(Math.max(0, Math.min(phaseTimes[offset + i], HIGHEST_TRACKABLE_TIME)));
+            }
+        }
+
+        private synchronized AbstractHistogram[] createHistograms() {
+            if (m_histograms == null) {
+                AbstractHistogram histograms[] = new AbstractHistogram[PHASES];
+                for (int i = 0; i < PHASES; i++) {
+                    histograms[i] = LatencyStats.constructHistogram(HIGHEST_TRACKABLE_TIME, 2, true);
+                }
+                m_histograms = histograms;
+            }
+            return m_histograms;
+        }
+
+        /**
+         * @return copies of the histograms, or of what was recorded since the last
+         * interval collection, null if nothing was
+         */
+        synchronized AbstractHistogram[] collect(boolean interval) {
+            final AbstractHistogram histograms[] = m_histograms;
+            if (histograms == null) {
+                return null;
+            }
+            AbstractHistogram copies[] = new AbstractHistogram[PHASES];
+            for (int i = 0; i < PHASES; i++) {
+                copies[i] = histograms[i].copy();
+            }
+            if (!interval) {
+                return copies;
+            }
+            AbstractHistogram deltas[] = new AbstractHistogram[PHASES];
+            for (int i = 0; i < PHASES; i++) {
+                deltas[i] = copies[i].copy();
+                if (m_lastHistograms != null) {
+                    deltas[i].subtract(m_lastHistograms[i]);
+                }
+            }
+            m_lastHistograms = copies;
+            return deltas;
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Timings> m_timings = new ConcurrentSkipListMap<String, Timings>();
+
+    public StatementLatencyStats() {
+        super(false);
+    }
+
+    /**
+     * @return the timings of a statement, the same for every site that runs the procedure
+     */
+    public Timings getTimings(String procedure, String statement) {
+        final String key = procedure + "." + statement;
+        Timings timings = m_timings.get(key);
+        if (timings == null) {
+            timings = new Timings(procedure, statement);
+            Timings existing = m_timings.putIfAbsent(key, timings);
+            if (existing != null) {
+                timings = existing;
+            }
+        }
+        return timings;
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("PROCEDURE", VoltType.STRING));
+        columns.add(new ColumnInfo("STATEMENT", VoltType.STRING));
+        columns.add(new ColumnInfo("TIMED_INVOCATIONS", VoltType.BIGINT));
+        for (String phase : PHASE_NAMES) {
+            columns.add(new ColumnInfo("AVG_" + phase + "_TIME", VoltType.BIGINT));
+            columns.add(new ColumnInfo("P50_" + phase + "_TIME", VoltType.BIGINT));
+            columns.add(new ColumnInfo("P95_" + phase + "_TIME", VoltType.BIGINT));
+            columns.add(new ColumnInfo("P99_" + phase + "_TIME", VoltType.BIGINT));
+            columns.add(new ColumnInfo("MAX_" + phase + "_TIME", VoltType.BIGINT));
+        }
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        // the interval histograms are taken once per collection, so build the rows here
+        List<Object> keys = new ArrayList<Object>();
+        for (Timings timings : m_timings.values()) {
+            AbstractHistogram histograms[] = timings.collect(interval);
+            if (histograms != null && histograms[TOTAL].getTotalCount() > 0) {
+                keys.add(new Object[] { timings, histograms });
+            }
+        }
+        return keys.iterator();
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object[] rowValues) {
+        final Timings timings = (Timings) ((Object[]) rowKey)[0];
+        final AbstractHistogram histograms[] = (AbstractHistogram[]) ((Object[]) rowKey)[1];
+        rowValues[columnNameToIndex.get("PROCEDURE")] = timings.m_procedure;
+        rowValues[columnNameToIndex.get("STATEMENT")] = timings.m_statement;
+        rowValues[columnNameToIndex.get("TIMED_INVOCATIONS")] = histograms[TOTAL].getTotalCount();
+        for (int i = 0; i < PHASES; i++) {
+            final AbstractHistogram histogram = histograms[i];
+            rowValues[columnNameToIndex.get("AVG_" + PHASE_NAMES[i] + "_TIME")] = (long) histogram.getMean();
+            rowValues[columnNameToIndex.get("P50_" + PHASE_NAMES[i] + "_TIME")] = histogram.getValueAtPercentile(50.0);
+            rowValues[columnNameToIndex.get("P95_" + PHASE_NAMES[i] + "_TIME")] = histogram.getValueAtPercentile(95.0);
+            rowValues[columnNameToIndex.get("P99_" + PHASE_NAMES[i] + "_TIME")] = histogram.getValueAtPercentile(99.0);
+            rowValues[columnNameToIndex.get("MAX_" + PHASE_NAMES[i] + "_TIME")] = histogram.getMaxValue();
+        }
+        super.updateStatsRow(rowKey, rowValues);
+    }
+}
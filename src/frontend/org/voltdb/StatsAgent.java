@@ -412,6 +412,12 @@ public class StatsAgent extends OpsAgent
         case LATENCY_HISTOGRAM:
             stats = collectStats(StatsSelector.LATENCY_HISTOGRAM, interval);
             break;
+        case STATEMENT_LATENCY:
+            stats = collectStats(StatsSelector.STATEMENT_LATENCY, interval);
+            break;
+        case MP_READ_POOL:
+            stats = collectStats(StatsSelector.MP_READ_POOL, interval);
+            break;
         case MANAGEMENT:
             stats = collectManagementStats(interval);
             break;
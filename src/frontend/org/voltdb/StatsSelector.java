@@ -24,6 +24,8 @@ public enum StatsSelector {
     INITIATOR,        // invoked as @stat initiator
     LATENCY,          // invoked as @stat latency
     LATENCY_HISTOGRAM,
+    STATEMENT_LATENCY, // sampled per statement latency percentiles, in nanoseconds
+    MP_READ_POOL,     // occupancy of the MPI read-only site pool
     PARTITIONCOUNT,
     IOSTATS,
     MEMORY,           // info about node's memory usage
@@ -40,7 +40,7 @@ import org.voltdb.messaging.FastDeserializer;
 public class StoredProcedureInvocation implements JSONString {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
 
-    public static final int CURRENT_MOST_RECENT_VERSION = 1;
+    public static final int CURRENT_MOST_RECENT_VERSION = 2;
 
     ProcedureInvocationType type = ProcedureInvocationType.ORIGINAL;
     String procName = null;
@@ -68,6 +68,9 @@ public class StoredProcedureInvocation implements JSONString {
 
     int batchTimeout = BatchTimeoutOverrideType.NO_TIMEOUT;
 
+    /** ProcedureInvocationType flags of how the client wants to be answered */
+    byte flags = 0;
+
     public StoredProcedureInvocation getShallowCopy()
     {
         StoredProcedureInvocation copy = new StoredProcedureInvocation();
@@ -87,13 +90,16 @@ public class StoredProcedureInvocation implements JSONString {
         }
 
         copy.batchTimeout = batchTimeout;
+        copy.flags = flags;
 
         return copy;
     }
 
     private void setType() {
         if (originalTxnId == UNITIALIZED_ID && originalUniqueId == UNITIALIZED_ID) {
-            if (BatchTimeoutOverrideType.isUserSetTimeout(batchTimeout)) {
+            if (flags != 0) {
+                type = ProcedureInvocationType.VERSION2;
+            } else if (BatchTimeoutOverrideType.isUserSetTimeout(batchTimeout)) {
                 type = ProcedureInvocationType.VERSION1;
             } else {
                 type = ProcedureInvocationType.ORIGINAL;
@@ -190,6 +196,9 @@ public class StoredProcedureInvocation implements JSONString {
         if (type.getValue() >= BatchTimeoutOverrideType.BATCH_TIMEOUT_VERSION) {
             timeoutSize = 1 + (batchTimeout == BatchTimeoutOverrideType.NO_TIMEOUT ? 0 : 4);
         }
+        if (type.getValue() >= ProcedureInvocationType.FLAGS_VERSION) {
+            timeoutSize += 1; // flags byte
+        }
 
         int size = 1 // Version/type
             + timeoutSize // batch time out byte
@@ -240,6 +249,9 @@ public class StoredProcedureInvocation implements JSONString {
                 buf.putInt(batchTimeout);
             }
         }
+        if (type.getValue() >= ProcedureInvocationType.FLAGS_VERSION) {
+            buf.put(flags);
+        }
         buf.putInt(procName.length());
         buf.put(procName.getBytes(Constants.UTF8ENCODING));
         buf.putLong(clientHandle);
@@ -306,10 +318,22 @@ public class StoredProcedureInvocation implements JSONString {
             }
         }
 
+        if (version >= ProcedureInvocationType.FLAGS_VERSION) {
+            flags = in.readByte();
+        }
+
         procName = in.readString().intern();
         clientHandle = in.readLong();
         // do not deserialize parameters in ClientInterface context
         serializedParams = in.remainder();
+        if (buf.hasArray() && buf.capacity() < buf.array().length) {
+            // the message is a slice of a batch read off the connection, copy the
+            // parameters out so this invocation doesn't keep the whole batch alive
+            final ByteBuffer copy = ByteBuffer.allocate(serializedParams.remaining());
+            copy.put(serializedParams);
+            copy.flip();
+            serializedParams = copy;
+        }
         final ByteBuffer duplicate = serializedParams.duplicate();
         params = new FutureTask<ParameterSet>(new Callable<ParameterSet>() {
             @Override
@@ -400,4 +424,20 @@ public class StoredProcedureInvocation implements JSONString {
     public void setBatchTimeout(int timeout) {
         batchTimeout = timeout;
     }
+
+    /**
+     * @return true if the client asked for its results in the columnar format
+     */
+    public boolean getColumnarResults() {
+        return (flags & ProcedureInvocationType.COLUMNAR_RESULTS_FLAG) != 0;
+    }
+
+    public void setColumnarResults(boolean columnar) {
+        if (columnar) {
+            flags |= ProcedureInvocationType.COLUMNAR_RESULTS_FLAG;
+        } else {
+            flags &= ~ProcedureInvocationType.COLUMNAR_RESULTS_FLAG;
+        }
+        setType();
+    }
 }
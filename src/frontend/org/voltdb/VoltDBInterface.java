@@ -85,6 +85,7 @@ public interface VoltDBInterface
     // existing code
     public StatsAgent getStatsAgent();
     public MemoryStats getMemoryStatsSource();
+    public StatementLatencyStats getStatementLatencyStats();
     public BackendTarget getBackendTargetType();
     public String getLocalMetadata();
     public SiteTracker getSiteTrackerForSnapshot();
@@ -30,6 +30,7 @@ import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.json_voltpatches.JSONString;
 import org.json_voltpatches.JSONStringer;
+import org.json_voltpatches.JSONWriter;
 import org.voltdb.client.ClientUtils;
 import org.voltdb.common.Constants;
 import org.voltdb.types.GeographyPointValue;
@@ -135,6 +136,9 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     int m_rowCount = -1;
     int m_colCount = -1;
 
+    // set when m_buffer is a slice of a pooled result buffer rather than memory of its own
+    PooledResultBuffer m_pooledBuffer = null;
+
     // non-positive value that probably shouldn't be -1 to avoid off-by-one errors
     private static final int NO_MEMOIZED_ROW_OFFSET = Integer.MIN_VALUE;
 
@@ -1557,42 +1561,51 @@ public final class VoltTable extends VoltTableRow implements JSONString {
     public String toJSONString() {
         JSONStringer js = new JSONStringer();
         try {
+            toJSONWriter(js);
+        }
+        catch (JSONException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Failed to serialized a table to JSON.", e);
+        }
+        return js.toString();
+    }
 
-            js.object();
+    /**
+     * Write the JSON representation of this table to a writer, one row at a
+     * time, without building the whole text first.
+     * @param js The writer, positioned where a value can be written.
+     * @throws JSONException on JSON-related error or a failed write.
+     */
+    void toJSONWriter(JSONWriter js) throws JSONException {
+        js.object();
 
-            // status code (1 byte)
-            js.key(JSON_STATUS_KEY).value(getStatusCode());
+        // status code (1 byte)
+        js.key(JSON_STATUS_KEY).value(getStatusCode());
 
-            // column schema
-            js.key(JSON_SCHEMA_KEY).array();
-            for (int i = 0; i < getColumnCount(); i++) {
-                js.object();
-                js.key(JSON_NAME_KEY).value(getColumnName(i));
-                js.key(JSON_TYPE_KEY).value(getColumnType(i).getValue());
-                js.endObject();
-            }
-            js.endArray();
+        // column schema
+        js.key(JSON_SCHEMA_KEY).array();
+        for (int i = 0; i < getColumnCount(); i++) {
+            js.object();
+            js.key(JSON_NAME_KEY).value(getColumnName(i));
+            js.key(JSON_TYPE_KEY).value(getColumnType(i).getValue());
+            js.endObject();
+        }
+        js.endArray();
 
-            // row data
-            js.key(JSON_DATA_KEY).array();
-            VoltTableRow row = cloneRow();
-            row.resetRowPosition();
-            while (row.advanceRow()) {
-                js.array();
-                for (int i = 0; i < getColumnCount(); i++) {
-                    row.putJSONRep(i, js);
-                }
-                js.endArray();
+        // row data
+        js.key(JSON_DATA_KEY).array();
+        VoltTableRow row = cloneRow();
+        row.resetRowPosition();
+        while (row.advanceRow()) {
+            js.array();
+            for (int i = 0; i < getColumnCount(); i++) {
+                row.putJSONRep(i, js);
             }
             js.endArray();
-
-            js.endObject();
         }
-        catch (JSONException e) {
-            e.printStackTrace();
-            throw new RuntimeException("Failed to serialized a table to JSON.", e);
-        }
-        return js.toString();
+        js.endArray();
+
+        js.endObject();
     }
 
     /**
@@ -94,6 +94,7 @@ public class VoltZK {
     public static final String user_snapshot_request = "/db/user_snapshot_request";
     public static final String user_snapshot_response = "/db/user_snapshot_response";
     public static final String commandlog_init_barrier = "/db/commmandlog_init_barrier";
+    public static final String commandlog_replay_barrier = "/db/commandlog_replay_barrier";
 
     // leader election
     public static final String iv2masters = "/db/iv2masters";
@@ -121,6 +122,9 @@ public class VoltZK {
     // Synchronized State Machine
     public static final String syncStateMachine = "/db/synchronized_states";
 
+    // Value distribution statistics collected by @Analyze
+    public static final String planner_statistics = "/db/planner_statistics";
+
     // Persistent nodes (mostly directories) to create on startup
     public static final String[] ZK_HIERARCHY = {
             root,
@@ -136,7 +140,8 @@ public class VoltZK {
             lastKnownLiveNodes,
             syncStateMachine,
             catalogUpdateBlockers,
-            request_truncation_snapshot
+            request_truncation_snapshot,
+            planner_statistics
     };
 
     /**
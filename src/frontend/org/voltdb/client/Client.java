@@ -27,6 +27,8 @@ import java.util.List;
 import org.voltdb.client.VoltBulkLoader.BulkLoaderFailureCallBack;
 import org.voltdb.client.VoltBulkLoader.VoltBulkLoader;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /**
  *  <p>
  *  A <code>Client</code> that connects to one or more nodes in a volt cluster
@@ -44,6 +46,11 @@ import org.voltdb.client.VoltBulkLoader.VoltBulkLoader;
  *  or take a long time then an application should have callbacks hand off processing to an application controlled
  *  thread pool.
  *  </p>
+ *
+ *  <p>Alternatively {@link #callProcedureAsync(String, Object...)} returns a future that is completed on the
+ *  executor given to {@link ClientConfig#setCompletionExecutor(java.util.concurrent.Executor)}, or on a thread
+ *  owned by the client if none was given, so listeners attached to it never run on the network thread.
+ *  </p>
  */
 public interface Client {
 
@@ -152,6 +159,41 @@ public interface Client {
     public boolean callProcedureWithTimeout(ProcedureCallback callback, int queryTimeout, String procName, Object... parameters)
     throws IOException, NoConnectionsException;
 
+    /**
+     * <p>Asynchronously invoke a procedure, returning a future for the response. The future is completed
+     * on the completion executor of this client rather than on the network thread, so listeners attached
+     * to it may block or do slow work without delaying other responses. If the response is anything other
+     * than success the future fails with a {@link ProcCallException}. If there is backpressure this call
+     * will block until the invocation is queued. If configureBlocking(false) is invoked and the invocation
+     * can't be queued, the returned future fails immediately with a {@link NoConnectionsException}.</p>
+     *
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return future that will hold the {@link ClientResponse} of the procedure call.
+     * @throws NoConnectionsException if this {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public ListenableFuture<ClientResponse> callProcedureAsync(String procName, Object... parameters)
+    throws IOException, NoConnectionsException;
+
+    /**
+     * <p>Asynchronously invoke a procedure with timeout, returning a future for the response. See
+     * {@link #callProcedureAsync(String, Object...)} for how the future is completed.</p>
+     *
+     * <p>WARNING: Use of a queryTimeout value that is greater than the global timeout value for your VoltDB configuration
+     * will temporarily override that safeguard. Currently, non-privileged users (requiring only SQLREAD permissions)
+     * can invoke this method, potentially degrading system performance with an uncontrolled long-running procedure.</p>
+     *
+     * @param queryTimeout query batch timeout setting in milliseconds of queries in a batch for read only procedures.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param parameters vararg list of procedure's parameter values.
+     * @return future that will hold the {@link ClientResponse} of the procedure call.
+     * @throws NoConnectionsException if this {@link Client} instance is not connected to any servers.
+     * @throws IOException if there is a Java network or connection problem.
+     */
+    public ListenableFuture<ClientResponse> callProcedureWithTimeoutAsync(int queryTimeout, String procName, Object... parameters)
+    throws IOException, NoConnectionsException;
+
     /**
      * <p>Asynchronously invoke a replicated procedure. If there is backpressure
      * this call will block until the invocation is queued. If configureBlocking(false) is invoked
@@ -20,6 +20,7 @@ package org.voltdb.client;
 import java.math.RoundingMode;
 import java.security.Principal;
 import java.util.Iterator;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.Subject;
@@ -55,6 +56,10 @@ public class ClientConfig {
     boolean m_reconnectOnConnectionLoss;
     long m_initialConnectionRetryIntervalMS = DEFAULT_INITIAL_CONNECTION_RETRY_INTERVAL_MS;
     long m_maxConnectionRetryIntervalMS = DEFAULT_MAX_CONNECTION_RETRY_INTERVAL_MS;
+    Executor m_completionExecutor = null;
+    int m_invocationBatchBytes = 0;
+    long m_invocationBatchDelayNanos = 0;
+    boolean m_columnarResults = false;
 
 
     final static String getUserNameFromSubject(Subject subject) {
@@ -349,6 +354,63 @@ public class ClientConfig {
         this.m_maxConnectionRetryIntervalMS = ms;
     }
 
+    /**
+     * <p>Set the executor that completes the futures returned by
+     * {@link Client#callProcedureAsync(String, Object...)}. Listeners attached to those futures
+     * without an executor of their own run on this executor. If not set, each client completes
+     * its futures on a single thread of its own, in the order responses arrive.</p>
+     *
+     * <p>The executor is not shut down when the client is closed.</p>
+     *
+     * @param executor executor used to complete procedure call futures.
+     */
+    public void setCompletionExecutor(Executor executor) {
+        m_completionExecutor = executor;
+    }
+
+    /**
+     * <p>Coalesce procedure invocations bound for the same server into batches that are written
+     * to the network together. An invocation waits until the batch it joined holds maxBatchBytes
+     * of serialized invocations or until maxDelay has passed since the batch was started, whichever
+     * comes first. Invocations larger than maxBatchBytes are written on their own.</p>
+     *
+     * <p>Batching trades up to maxDelay of extra latency for less allocation and fewer writes
+     * per invocation, which matters for clients issuing many small invocations. It is off by
+     * default.</p>
+     *
+     * @param maxBatchBytes size of a batch in bytes, or 0 to disable batching.
+     * @param maxDelay longest time an invocation is held before being written.
+     * @param unit TimeUnit of maxDelay.
+     */
+    public void setInvocationBatching(int maxBatchBytes, long maxDelay, TimeUnit unit) {
+        if (maxBatchBytes < 0) {
+            throw new IllegalArgumentException(
+                    "Invocation batch size can't be negative, " + maxBatchBytes + " was specified");
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException(
+                    "Invocation batch delay can't be negative, " + maxDelay + " was specified");
+        }
+        m_invocationBatchBytes = maxBatchBytes;
+        m_invocationBatchDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * <p>Ask servers to send large result tables in the columnar format. Results that arrive
+     * that way can be read a whole column at a time, see
+     * {@link org.voltdb.ClientResponseImpl#getColumnarResults()}, and take less space on the wire
+     * when columns hold repeated strings or increasing numbers. {@link ClientResponse#getResults()}
+     * still works, converting the tables to the row format when first called.</p>
+     *
+     * <p>Servers that don't support the columnar format keep sending the row format.
+     * It is off by default.</p>
+     *
+     * @param columnar true to ask for columnar results.
+     */
+    public void setColumnarResults(boolean columnar) {
+        m_columnarResults = columnar;
+    }
+
     /**
      * <p>Set the target latency for the Auto Tune feature. Note this represents internal
      * latency as reported by the server(s), not round-trip latency measured by the
@@ -25,11 +25,15 @@ import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
+import org.voltcore.utils.CoreUtils;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.VoltTable;
 import org.voltdb.client.HashinatorLite.HashinatorLiteType;
@@ -39,6 +43,9 @@ import org.voltdb.client.VoltBulkLoader.VoltBulkLoader;
 import org.voltdb.common.Constants;
 import org.voltdb.utils.Encoder;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
 /**
  *  A client that connects to one or more nodes in a VoltCluster
  *  and provides methods to call stored procedures and receive
@@ -104,6 +111,10 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
                 config.m_useClientAffinity,
                 config.m_subject);
         m_distributer.addClientStatusListener(m_listener);
+        if (config.m_invocationBatchBytes > 0) {
+            m_distributer.setInvocationBatching(config.m_invocationBatchBytes, config.m_invocationBatchDelayNanos);
+        }
+        m_distributer.setColumnarResults(config.m_columnarResults);
         String username = config.m_username;
         if (config.m_subject != null) {
             username = ClientConfig.getUserNameFromSubject(config.m_subject);
@@ -118,6 +129,15 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
             m_reconnectStatusListener = null;
         }
 
+        if (config.m_completionExecutor != null) {
+            m_ownedCompletionExecutor = null;
+            m_completionExecutor = config.m_completionExecutor;
+        } else {
+            // no thread is started until the first future needs completing
+            m_ownedCompletionExecutor = CoreUtils.getCachedSingleThreadExecutor("Client completion", 1000);
+            m_completionExecutor = m_ownedCompletionExecutor;
+        }
+
         m_hashScheme = config.m_hashScheme;
         if (config.m_cleartext) {
             m_passwordHash = ConnectionUtil.getHashedPassword(m_hashScheme, config.m_password);
@@ -359,6 +379,82 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
         return private_callProcedure(callback, 0, invocation, unit.toNanos(timeout));
     }
 
+    @Override
+    public ListenableFuture<ClientResponse> callProcedureAsync(String procName, Object... parameters)
+    throws IOException, NoConnectionsException {
+        //Time unit doesn't matter in this case since the timeout isn't being specified
+        return callProcedureWithClientTimeoutAsync(BatchTimeoutOverrideType.NO_TIMEOUT, procName,
+                Distributer.USE_DEFAULT_CLIENT_TIMEOUT, TimeUnit.NANOSECONDS, parameters);
+    }
+
+    @Override
+    public ListenableFuture<ClientResponse> callProcedureWithTimeoutAsync(int batchTimeout, String procName, Object... parameters)
+    throws IOException, NoConnectionsException {
+        if (batchTimeout < 0) {
+            throw new IllegalArgumentException("Timeout value can't be negative." );
+        }
+
+        //Time unit doesn't matter in this case since the timeout isn't being specified
+        return callProcedureWithClientTimeoutAsync(batchTimeout, procName,
+                Distributer.USE_DEFAULT_CLIENT_TIMEOUT, TimeUnit.NANOSECONDS, parameters);
+    }
+
+    /**
+     * Asynchronously invoke a procedure call, returning a future completed on the completion executor.
+     *
+     * @param batchTimeout procedure invocation batch timeout.
+     * @param procName class name (not qualified by package) of the procedure to execute.
+     * @param timeout timeout for the procedure
+     * @param unit TimeUnit of procedure timeout
+     * @param parameters vararg list of procedure's parameter values.
+     * @return future for the procedure response
+     */
+    public ListenableFuture<ClientResponse> callProcedureWithClientTimeoutAsync(int batchTimeout, String procName,
+            long timeout, TimeUnit unit, Object... parameters) throws IOException, NoConnectionsException {
+        if (m_isShutdown) {
+            throw new NoConnectionsException("Client instance is shutdown");
+        }
+        FutureCallback callback = new FutureCallback(m_completionExecutor);
+        if (!callProcedureWithClientTimeout(callback, batchTimeout, procName, timeout, unit, parameters)) {
+            callback.m_future.setException(new NoConnectionsException(
+                    "Procedure invocation " + procName + " was not queued due to backpressure or client shutdown"));
+        }
+        return callback.m_future;
+    }
+
+    /**
+     * Completes a future with the response of a procedure invocation. The future is completed
+     * on the given executor so that its listeners stay off the network thread.
+     */
+    private static class FutureCallback implements ProcedureCallback {
+        private final SettableFuture<ClientResponse> m_future = SettableFuture.create();
+        private final Executor m_executor;
+
+        FutureCallback(Executor executor) {
+            m_executor = executor;
+        }
+
+        @Override
+        public void clientCallback(final ClientResponse response) {
+            Runnable complete = new Runnable() {
+                @Override
+                public void run() {
+                    if (response.getStatus() != ClientResponse.SUCCESS) {
+                        m_future.setException(new ProcCallException(response, response.getStatusString(), null));
+                    } else {
+                        m_future.set(response);
+                    }
+                }
+            };
+            try {
+                m_executor.execute(complete);
+            } catch (RejectedExecutionException e) {
+                // the executor is shut down, completing here beats leaving the future hanging
+                complete.run();
+            }
+        }
+    }
+
     /**
      * Asynchronously invoke a replicated procedure. If there is backpressure
      * this call will block until the invocation is queued. If configureBlocking(false) is invoked
@@ -573,6 +669,11 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
 
         m_distributer.shutdown();
 
+        if (m_ownedCompletionExecutor != null) {
+            // already queued completions still run
+            m_ownedCompletionExecutor.shutdown();
+        }
+
         ClientFactory.decreaseClientNum();
     }
 
@@ -672,6 +773,10 @@ public final class ClientImpl implements Client, ReplicaProcCaller {
 
     private final ReconnectStatusListener m_reconnectStatusListener;
 
+    // completes the futures returned by callProcedureAsync, owned only if not configured
+    private final Executor m_completionExecutor;
+    private final ExecutorService m_ownedCompletionExecutor;
+
     @Override
     public void configureBlocking(boolean blocking) {
         m_blockingQueue = blocking;
@@ -136,7 +136,8 @@ public class ConnectionUtil {
      * @returns An array of objects. The first is an
      * authenticated socket channel, the second. is an array of 4 longs -
      * Integer hostId, Long connectionId, Long timestamp (part of instanceId), Int leaderAddress (part of instanceId).
-     * The last object is the build string
+     * The third is the build string and the last a Byte of the Constants.FEATURE_* flags
+     * the server supports.
      */
     public static Object[] getAuthenticatedConnection(String host, String username,
                                                       byte[] hashedPassword, int port,
@@ -173,7 +174,7 @@ public class ConnectionUtil {
             String service, InetSocketAddress addr, String username,
             byte[] hashedPassword, final Subject subject, ClientAuthScheme scheme)
     throws IOException {
-        Object returnArray[] = new Object[3];
+        Object returnArray[] = new Object[4];
         boolean success = false;
         if (addr.isUnresolved()) {
             throw new java.net.UnknownHostException(addr.getHostName());
@@ -306,6 +307,8 @@ public class ConnectionUtil {
             byte buildStringBytes[] = new byte[buildStringLength];
             loginResponse.get(buildStringBytes);
             returnArray[2] = new String(buildStringBytes, Constants.UTF8ENCODING);
+            // features supported by the server, older servers don't send any
+            returnArray[3] = loginResponse.hasRemaining() ? loginResponse.get() : (byte) 0;
 
             aChannel.configureBlocking(false);
             aChannel.socket().setKeepAlive(true);
@@ -55,6 +55,9 @@ import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.network.VoltNetworkPool.IOStatsIntf;
 import org.voltcore.network.VoltProtocolHandler;
 import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltcore.utils.DeferredSerialization;
 import org.voltcore.utils.Pair;
 import org.voltdb.ClientResponseImpl;
 import org.voltdb.VoltTable;
@@ -125,6 +128,11 @@ class Distributer {
     private final long m_procedureCallTimeoutNanos;
     private static final long MINIMUM_LONG_RUNNING_SYSTEM_CALL_TIMEOUT_MS = 30 * 60 * 1000; // 30 minutes
     private final long m_connectionResponseTimeoutNanos;
+    // zero disables invocation batching
+    private int m_invocationBatchBytes = 0;
+    private long m_invocationBatchDelayNanos = 0;
+    // ask servers that support it for columnar result tables
+    private boolean m_columnarResults = false;
     private final Map<Integer, ClientAffinityStats> m_clientAffinityStats =
         new HashMap<Integer, ClientAffinityStats>();
 
@@ -355,11 +363,19 @@ class Distributer {
         private Connection m_connection;
         private volatile boolean m_isConnected = true;
 
+        // invocations serialized but not yet handed to the write stream when batching
+        private final Object m_batchLock = new Object();
+        private InvocationBatch m_batch = null;
+
         volatile long m_lastResponseTimeNanos = System.nanoTime();
         boolean m_outstandingPing = false;
         ClientStatusListenerExt.DisconnectCause m_closeCause = DisconnectCause.CONNECTION_CLOSED;
+        // ask for columnar results on this connection
+        private final boolean m_columnarResults;
 
-        public NodeConnection(long ids[]) {}
+        public NodeConnection(long ids[], boolean columnarResults) {
+            m_columnarResults = columnarResults;
+        }
 
         /*
          * NodeConnection uses ignoreBackpressure to get rate limiter to not
@@ -367,7 +383,7 @@ class Distributer {
          * never be rejected such as those submitted from within a callback thread or
          * generated internally
          */
-        public void createWork(final long nowNanos, long handle, String name, ByteBuffer c,
+        public void createWork(final long nowNanos, long handle, String name, ProcedureInvocation invocation,
                 ProcedureCallback callback, boolean ignoreBackpressure, long timeoutNanos) {
             assert(callback != null);
 
@@ -443,10 +459,99 @@ class Distributer {
                 m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
                 return;
             } else {
-                m_connection.writeStream().enqueue(c);
+                try {
+                    if (m_columnarResults) {
+                        invocation.setColumnarResults(true);
+                    }
+                    writeInvocation(invocation);
+                } catch (IOException e) {
+                    // nothing was queued, so nothing will ever answer the callback
+                    if (m_callbacks.remove(handle) != null) {
+                        m_callbacksToInvoke.decrementAndGet();
+                        m_rateLimiter.transactionResponseReceived(nowNanos, -1, ignoreBackpressure);
+                    }
+                    Throwables.propagate(e);
+                }
+            }
+        }
+
+        /*
+         * Without batching every invocation is serialized to its own buffer and enqueued on its own.
+         * With batching, invocations are serialized back to back straight into a pooled direct buffer
+         * that is enqueued as a single write once the next invocation doesn't fit or the batch delay
+         * passes, whichever comes first. Only an invocation larger than a whole batch gets a buffer
+         * of its own. The server sees ordinary individual invocations.
+         */
+        private void writeInvocation(ProcedureInvocation invocation) throws IOException {
+            final int size = invocation.getSerializedSize() + 4;
+            if (m_invocationBatchBytes <= 0) {
+                m_connection.writeStream().enqueue(serializeSPI(invocation));
+                return;
+            }
+            if (size > m_invocationBatchBytes) {
+                final ByteBuffer serialized = serializeSPI(invocation);
+                synchronized (m_batchLock) {
+                    // too big to share a batch, enqueue whatever is batched first
+                    // so ordering on the connection is preserved
+                    if (m_batch != null) {
+                        flushBatch();
+                    }
+                    m_connection.writeStream().enqueue(serialized);
+                }
+                return;
+            }
+
+            InvocationBatch newBatch = null;
+            synchronized (m_batchLock) {
+                if (m_batch != null && m_batch.remaining() < size) {
+                    flushBatch();
+                }
+                if (m_batch == null) {
+                    m_batch = newBatch = new InvocationBatch(m_invocationBatchBytes);
+                }
+                boolean added = false;
+                try {
+                    m_batch.add(invocation, size);
+                    added = true;
+                } finally {
+                    if (!added && newBatch != null) {
+                        // nothing will flush a batch that never got scheduled
+                        m_batch = null;
+                        newBatch.cancel();
+                    }
+                }
+            }
+
+            if (newBatch != null) {
+                final InvocationBatch batch = newBatch;
+                try {
+                    m_ex.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flushBatch(batch);
+                        }
+                    }, m_invocationBatchDelayNanos, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // shutting down, don't leave the batch sitting around
+                    flushBatch(batch);
+                }
+            }
+        }
+
+        private void flushBatch(InvocationBatch batch) {
+            synchronized (m_batchLock) {
+                if (m_batch == batch) {
+                    flushBatch();
+                }
             }
         }
 
+        private void flushBatch() {
+            assert(Thread.holdsLock(m_batchLock));
+            m_connection.writeStream().enqueue(m_batch);
+            m_batch = null;
+        }
+
         /*
          * For high precision timeouts, submit a discrete task to a scheduled
          * executor service to time out the transaction. The timeout task
@@ -885,6 +990,26 @@ class Distributer {
         m_subject = subject;
     }
 
+    /**
+     * Coalesce invocations bound for the same connection into batches of up to maxBatchBytes,
+     * written out no later than maxDelayNanos after the first invocation of the batch.
+     * Must be called before any connections are created.
+     */
+    void setInvocationBatching(int maxBatchBytes, long maxDelayNanos) {
+        assert(m_connections.isEmpty());
+        m_invocationBatchBytes = maxBatchBytes;
+        m_invocationBatchDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * Ask for columnar results on connections to servers that support them.
+     * Must be called before any connections are created.
+     */
+    void setColumnarResults(boolean columnar) {
+        assert(m_connections.isEmpty());
+        m_columnarResults = columnar;
+    }
+
     void createConnection(String host, String program, String password, int port, ClientAuthScheme scheme)
     throws UnknownHostException, IOException
     {
@@ -901,7 +1026,10 @@ class Distributer {
         final long instanceIdWhichIsTimestampAndLeaderIp[] = (long[])socketChannelAndInstanceIdAndBuildString[1];
         final int hostId = (int)instanceIdWhichIsTimestampAndLeaderIp[0];
 
-        NodeConnection cxn = new NodeConnection(instanceIdWhichIsTimestampAndLeaderIp);
+        final byte features = (Byte)socketChannelAndInstanceIdAndBuildString[3];
+
+        NodeConnection cxn = new NodeConnection(instanceIdWhichIsTimestampAndLeaderIp,
+                m_columnarResults && (features & Constants.FEATURE_COLUMNAR_RESULTS) != 0);
         Connection c = m_network.registerChannel( aChannel, cxn);
         cxn.m_connection = c;
 
@@ -972,7 +1100,7 @@ class Distributer {
             cxn.createWork(System.nanoTime(),
                     spi.getHandle(),
                     spi.getProcName(),
-                    serializeSPI(spi),
+                    spi,
                     new SubscribeCallback(),
                     true,
                     USE_DEFAULT_CLIENT_TIMEOUT);
@@ -982,7 +1110,7 @@ class Distributer {
             cxn.createWork(System.nanoTime(),
                     spi.getHandle(),
                     spi.getProcName(),
-                    serializeSPI(spi),
+                    spi,
                     new TopoUpdateCallback(),
                     true,
                     USE_DEFAULT_CLIENT_TIMEOUT);
@@ -995,7 +1123,7 @@ class Distributer {
                 cxn.createWork(System.nanoTime(),
                         spi.getHandle(),
                         spi.getProcName(),
-                        serializeSPI(spi),
+                        spi,
                         new ProcUpdateCallback(),
                         true,
                         USE_DEFAULT_CLIENT_TIMEOUT);
@@ -1141,13 +1269,7 @@ class Distributer {
          * createWork synchronizes on an individual connection which allows for more concurrency
          */
         if (cxn != null) {
-            ByteBuffer buf = null;
-            try {
-                buf = serializeSPI(invocation);
-            } catch (Exception e) {
-                Throwables.propagate(e);
-            }
-            cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), buf, cb, ignoreBackpressure, timeoutNanos);
+            cxn.createWork(nowNanos, invocation.getHandle(), invocation.getProcName(), invocation, cb, ignoreBackpressure, timeoutNanos);
         }
 
         return !backpressure;
@@ -1388,6 +1510,63 @@ class Distributer {
         return m_hashinator.getConfigurationType();
     }
 
+    /**
+     * Invocations serialized back to back, each behind its length prefix, directly into a
+     * pooled direct buffer. The write stream copies the whole batch into its network buffers
+     * at once and the pooled buffer is returned.
+     */
+    private static class InvocationBatch implements DeferredSerialization {
+        private final BBContainer m_container;
+
+        InvocationBatch(int capacity) {
+            m_container = DBBPool.allocateDirectAndPool(capacity);
+        }
+
+        int remaining() {
+            return m_container.b().remaining();
+        }
+
+        /**
+         * Serialize the invocation behind its length prefix at the end of the batch.
+         * If the serialization fails the batch is left as it was.
+         * @param size  the length prefixed size of the invocation, no more than remaining()
+         */
+        void add(ProcedureInvocation invocation, int size) throws IOException {
+            final ByteBuffer buf = m_container.b();
+            assert(buf.remaining() >= size);
+            final int start = buf.position();
+            boolean added = false;
+            try {
+                buf.putInt(size - 4);
+                invocation.flattenToBuffer(buf);
+                assert(buf.position() - start == size);
+                added = true;
+            } finally {
+                if (!added) {
+                    buf.position(start);
+                }
+            }
+        }
+
+        @Override
+        public void serialize(ByteBuffer outbuf) {
+            final ByteBuffer buf = m_container.b();
+            buf.flip();
+            outbuf.put(buf);
+            m_container.discard();
+        }
+
+        @Override
+        public void cancel() {
+            m_container.discard();
+        }
+
+        @Override
+        public int getSerializedSize() {
+            return m_container.b().position();
+        }
+    }
+
     private ByteBuffer serializeSPI(ProcedureInvocation pi) throws IOException {
         ByteBuffer buf = ByteBuffer.allocate(pi.getSerializedSize() + 4);
         buf.putInt(buf.capacity() - 4);
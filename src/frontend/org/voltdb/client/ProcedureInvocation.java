@@ -37,9 +37,10 @@ public class ProcedureInvocation {
     // used for replicated procedure invocations
     private final long m_originalTxnId;
     private final long m_originalUniqueId;
-    private final ProcedureInvocationType m_type;
+    private ProcedureInvocationType m_type;
 
     private int m_batchTimeout;
+    private byte m_flags = 0;
 
     public ProcedureInvocation(long handle, String procName, Object... parameters) {
         this(-1, -1, handle, procName, parameters);
@@ -65,9 +66,16 @@ public class ProcedureInvocation {
                             ? ParameterSet.fromArrayWithCopy(parameters)
                             : ParameterSet.emptyParameterSet());
 
+        m_batchTimeout = batchTimeout;
+        setType();
+    }
+
+    private void setType() {
         // auto-set the type if both txn IDs are set
         if (m_originalTxnId == -1 && m_originalUniqueId == -1) {
-            if (BatchTimeoutOverrideType.isUserSetTimeout(batchTimeout)) {
+            if (m_flags != 0) {
+                m_type = ProcedureInvocationType.VERSION2;
+            } else if (BatchTimeoutOverrideType.isUserSetTimeout(m_batchTimeout)) {
                 m_type = ProcedureInvocationType.VERSION1;
             } else {
                 m_type = ProcedureInvocationType.ORIGINAL;
@@ -75,8 +83,19 @@ public class ProcedureInvocation {
         } else {
             m_type = ProcedureInvocationType.REPLICATED;
         }
+    }
 
-        m_batchTimeout = batchTimeout;
+    /**
+     * Ask for the results in the columnar format, only for servers that
+     * advertised support for it when the connection was made.
+     */
+    void setColumnarResults(boolean columnar) {
+        if (columnar) {
+            m_flags |= ProcedureInvocationType.COLUMNAR_RESULTS_FLAG;
+        } else {
+            m_flags &= ~ProcedureInvocationType.COLUMNAR_RESULTS_FLAG;
+        }
+        setType();
     }
 
     /** return the clientHandle value */
@@ -99,6 +118,9 @@ public class ProcedureInvocation {
             // In the most common case, the default value, BatchTimeoutType.NO_BATCH_TIMEOUT, does not get serialized.
             timeoutSize = 1 + (m_batchTimeout == BatchTimeoutOverrideType.NO_TIMEOUT ? 0 : 4);
         }
+        if (m_type.getValue() >= ProcedureInvocationType.FLAGS_VERSION) {
+            timeoutSize += 1;
+        }
         // 16 is the size of the m_originalTxnId and m_originalUniqueId values
         // that are required by DR internal invocations prior to DR v2.
         int size =
@@ -131,6 +153,9 @@ public class ProcedureInvocation {
                 buf.putInt(m_batchTimeout);
             }
         }
+        if (m_type.getValue() >= ProcedureInvocationType.FLAGS_VERSION) {
+            buf.put(m_flags);
+        }
 
         SerializationHelper.writeVarbinary(m_procNameBytes, buf);
         buf.putLong(m_clientHandle);
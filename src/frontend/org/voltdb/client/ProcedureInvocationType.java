@@ -29,8 +29,16 @@ package org.voltdb.client;
 public enum ProcedureInvocationType {
     ORIGINAL((byte) 0),
     VERSION1((byte) 1),              // version with individual timeout support
+    VERSION2((byte) 2),              // version with invocation flags
     REPLICATED ((byte) (1 << 7));    // -128
 
+    // the lowest version carrying a byte of invocation flags after the batch timeout
+    public static final int FLAGS_VERSION = 2;
+
+    // invocation flags
+    /** The client wants the result tables in the columnar format */
+    public static final byte COLUMNAR_RESULTS_FLAG = 1;
+
     private final byte m_value;
 
     private ProcedureInvocationType(byte val) {
@@ -47,6 +55,8 @@ public enum ProcedureInvocationType {
             return ORIGINAL;
         case 1:
             return VERSION1;
+        case 2:
+            return VERSION2;
         case -128:
             return REPLICATED;
         default:
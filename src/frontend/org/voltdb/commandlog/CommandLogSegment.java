@@ -0,0 +1,419 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.commandlog;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.voltcore.utils.InstanceId;
+
+/**
+ * One pre-allocated file of a partition's command log.
+ *
+ * A segment starts with a fixed size header followed by entries written back to back.
+ * Each entry is a 4 byte payload length, a 4 byte CRC32 of the payload and the payload,
+ * which starts with the entry type and the SP handle it was logged at. The remainder
+ * of the file is zero filled when it is created, so a zero length marks the end of the
+ * entries and a torn write at the tail fails its CRC check and ends the segment.
+ */
+public class CommandLogSegment {
+
+    static final int MAGIC = 0x56434c47; // "VCLG"
+    static final int VERSION = 1;
+
+    // magic, version, partition id, partition count, segment id, txn id, partition txn id, instance id
+    static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8 + 8 + 4 + 8;
+    // length and CRC
+    static final int ENTRY_PREFIX_SIZE = 4 + 4;
+    // type and SP handle
+    static final int ENTRY_HEADER_SIZE = 1 + 8;
+
+    static final byte INVOCATION_ENTRY = 1;
+    static final byte FAULT_ENTRY = 2;
+
+    private static final Pattern FILE_NAME = Pattern.compile("cl_(\\d+)_(\\d+)\\.log");
+    private static final int ZERO_FILL_CHUNK = 256 * 1024;
+
+    private final File m_file;
+    private final int m_partitionId;
+    private final int m_partitionCount;
+    private final long m_segmentId;
+    private final long m_txnId;
+    private final long m_partitionTxnId;
+    private final InstanceId m_instanceId;
+    private final long m_size;
+
+    private FileChannel m_channel = null;
+    private long m_writePosition = HEADER_SIZE;
+    private long m_maxSpHandle = Long.MIN_VALUE;
+    private boolean m_dirty = false;
+
+    private CommandLogSegment(File file, int partitionId, int partitionCount, long segmentId, long txnId,
+                              long partitionTxnId, InstanceId instanceId, long size) {
+        m_file = file;
+        m_partitionId = partitionId;
+        m_partitionCount = partitionCount;
+        m_segmentId = segmentId;
+        m_txnId = txnId;
+        m_partitionTxnId = partitionTxnId;
+        m_instanceId = instanceId;
+        m_size = size;
+    }
+
+    static String fileName(int partitionId, long segmentId) {
+        return "cl_" + partitionId + "_" + segmentId + ".log";
+    }
+
+    /**
+     * Create a segment file of the given size, write its header and zero fill the rest
+     * so that later writes don't have to extend the file before it can be synced.
+     *
+     * @param partitionCount  number of partitions of the cluster that writes the log
+     * @param txnId           multi-partition txn id of the snapshot the log starts from
+     * @param partitionTxnId  txn id of this partition in that snapshot
+     */
+    static CommandLogSegment create(File dir, int partitionId, int partitionCount, long segmentId, long txnId,
+                                    long partitionTxnId, InstanceId instanceId, long size)
+    throws IOException {
+        File file = new File(dir, fileName(partitionId, segmentId));
+        CommandLogSegment segment = new CommandLogSegment(file, partitionId, partitionCount, segmentId,
+                                                          txnId, partitionTxnId, instanceId, size);
+
+        @SuppressWarnings("resource")
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(partitionId);
+            header.putInt(partitionCount);
+            header.putLong(segmentId);
+            header.putLong(txnId);
+            header.putLong(partitionTxnId);
+            header.putInt(instanceId == null ? -1 : instanceId.getCoord());
+            header.putLong(instanceId == null ? -1 : instanceId.getTimestamp());
+            header.flip();
+            writeFully(channel, header, 0);
+
+            ByteBuffer zeros = ByteBuffer.allocate(ZERO_FILL_CHUNK);
+            long position = HEADER_SIZE;
+            while (position < size) {
+                zeros.clear();
+                zeros.limit((int) Math.min(ZERO_FILL_CHUNK, size - position));
+                position += writeFully(channel, zeros, position);
+            }
+            // sync the size along with the data once, later syncs only need the data
+            channel.force(true);
+        } catch (IOException e) {
+            channel.close();
+            file.delete();
+            throw e;
+        }
+        segment.m_channel = channel;
+        return segment;
+    }
+
+    /**
+     * Read the header of an existing segment file.
+     * @return the segment, or null if the file is not a valid segment
+     */
+    static CommandLogSegment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(raf.getChannel(), header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            int partitionId = header.getInt();
+            int partitionCount = header.getInt();
+            long segmentId = header.getLong();
+            long txnId = header.getLong();
+            long partitionTxnId = header.getLong();
+            int coord = header.getInt();
+            long timestamp = header.getLong();
+            InstanceId instanceId = (coord == -1 && timestamp == -1) ? null : new InstanceId(coord, timestamp);
+            return new CommandLogSegment(file, partitionId, partitionCount, segmentId, txnId, partitionTxnId,
+                                         instanceId, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Find all the segments in a directory, ordered by partition and then by segment id.
+     */
+    static List<CommandLogSegment> findSegments(File dir) throws IOException {
+        List<CommandLogSegment> segments = new ArrayList<CommandLogSegment>();
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isFile() && FILE_NAME.matcher(f.getName()).matches();
+            }
+        });
+        if (files == null) {
+            return segments;
+        }
+        for (File f : files) {
+            CommandLogSegment segment = open(f);
+            if (segment != null) {
+                segments.add(segment);
+            }
+        }
+        Collections.sort(segments, new Comparator<CommandLogSegment>() {
+            @Override
+            public int compare(CommandLogSegment a, CommandLogSegment b) {
+                if (a.m_partitionId != b.m_partitionId) {
+                    return a.m_partitionId < b.m_partitionId ? -1 : 1;
+                }
+                return Long.compare(a.m_segmentId, b.m_segmentId);
+            }
+        });
+        return segments;
+    }
+
+    /**
+     * @return the largest segment id used in the directory for the partition, or -1.
+     */
+    static long maxSegmentId(File dir, int partitionId) {
+        long max = -1;
+        String[] names = dir.list();
+        if (names == null) {
+            return max;
+        }
+        for (String name : names) {
+            Matcher m = FILE_NAME.matcher(name);
+            if (m.matches() && Integer.parseInt(m.group(1)) == partitionId) {
+                max = Math.max(max, Long.parseLong(m.group(2)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Frame an entry in the buffer. The payload must already have been written
+     * starting at entryStart + ENTRY_PREFIX_SIZE, and end at the buffer's position.
+     */
+    static void sealEntry(ByteBuffer buf, int entryStart) {
+        final int end = buf.position();
+        final int payloadLength = end - entryStart - ENTRY_PREFIX_SIZE;
+        ByteBuffer payload = buf.duplicate();
+        payload.limit(end);
+        payload.position(entryStart + ENTRY_PREFIX_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        buf.putInt(entryStart, payloadLength);
+        buf.putInt(entryStart + 4, (int) crc.getValue());
+    }
+
+    /**
+     * @return true if the buffer fits in what's left of the segment
+     */
+    boolean hasRoomFor(int bytes) {
+        return m_writePosition + bytes <= m_size;
+    }
+
+    boolean isEmpty() {
+        return m_writePosition == HEADER_SIZE;
+    }
+
+    /**
+     * Append complete entries to the segment. The caller is responsible for
+     * checking that they fit and for calling {@link #sync()} afterwards.
+     */
+    void write(ByteBuffer entries, long maxSpHandle) throws IOException {
+        assert(hasRoomFor(entries.remaining()));
+        m_writePosition += writeFully(m_channel, entries, m_writePosition);
+        m_maxSpHandle = Math.max(m_maxSpHandle, maxSpHandle);
+        m_dirty = true;
+    }
+
+    /**
+     * Force written entries to disk. The file was pre-allocated and its size
+     * synced when it was created, so only the data needs to be forced.
+     */
+    boolean sync() throws IOException {
+        if (!m_dirty) {
+            return false;
+        }
+        m_channel.force(false);
+        m_dirty = false;
+        return true;
+    }
+
+    void close() throws IOException {
+        if (m_channel != null) {
+            m_channel.close();
+            m_channel = null;
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        m_file.delete();
+    }
+
+    /**
+     * Map the segment and return a reader over its intact entries.
+     */
+    EntryReader reader() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(m_file, "r");
+        try {
+            MappedByteBuffer buf = raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length());
+            buf.position(HEADER_SIZE);
+            return new EntryReader(buf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Iterates over the entries of a segment, stopping at the end marker or at
+     * the first entry that was not completely written.
+     */
+    static class EntryReader {
+        private final ByteBuffer m_buf;
+        private final CRC32 m_crc = new CRC32();
+        private byte m_type;
+        private long m_spHandle;
+        private ByteBuffer m_body;
+
+        EntryReader(ByteBuffer buf) {
+            m_buf = buf;
+        }
+
+        /**
+         * Move to the next entry.
+         * @return false if there are no more intact entries
+         */
+        boolean next() {
+            if (m_buf.remaining() < ENTRY_PREFIX_SIZE) {
+                return false;
+            }
+            final int length = m_buf.getInt();
+            final int crc = m_buf.getInt();
+            if (length < ENTRY_HEADER_SIZE || length > m_buf.remaining()) {
+                return false;
+            }
+            ByteBuffer payload = m_buf.slice();
+            payload.limit(length);
+            m_crc.reset();
+            m_crc.update(payload.duplicate());
+            if ((int) m_crc.getValue() != crc) {
+                return false;
+            }
+            m_buf.position(m_buf.position() + length);
+            m_type = payload.get();
+            m_spHandle = payload.getLong();
+            m_body = payload.slice();
+            return true;
+        }
+
+        byte type() {
+            return m_type;
+        }
+
+        long spHandle() {
+            return m_spHandle;
+        }
+
+        /**
+         * @return the entry after its type and SP handle
+         */
+        ByteBuffer body() {
+            return m_body.duplicate();
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long written = 0;
+        while (buf.hasRemaining()) {
+            written += channel.write(buf, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        long read = 0;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + read);
+            if (n < 0) {
+                throw new IOException("Unexpected end of command log segment");
+            }
+            read += n;
+        }
+    }
+
+    int getPartitionId() {
+        return m_partitionId;
+    }
+
+    int getPartitionCount() {
+        return m_partitionCount;
+    }
+
+    long getSegmentId() {
+        return m_segmentId;
+    }
+
+    long getTxnId() {
+        return m_txnId;
+    }
+
+    long getPartitionTxnId() {
+        return m_partitionTxnId;
+    }
+
+    InstanceId getInstanceId() {
+        return m_instanceId;
+    }
+
+    long getMaxSpHandle() {
+        return m_maxSpHandle;
+    }
+
+    long getSize() {
+        return m_size;
+    }
+
+    File getFile() {
+        return m_file;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandLogSegment[" + m_file.getName() + ", " + (m_writePosition - HEADER_SIZE) + " bytes]";
+    }
+}
@@ -0,0 +1,718 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.commandlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper_voltpatches.CreateMode;
+import org.apache.zookeeper_voltpatches.ZooDefs.Ids;
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.messaging.HostMessenger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.InstanceId;
+import org.voltcore.utils.Pair;
+import org.voltdb.CommandLog;
+import org.voltdb.CommandLogStats;
+import org.voltdb.SnapshotCompletionInterest;
+import org.voltdb.SnapshotCompletionMonitor;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltZK;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.SettableFuture;
+
+/**
+ * Command log that writes the initiations of each partition on this host to its own
+ * series of pre-allocated segment files in the command log directory.
+ *
+ * Schedulers serialize their invocations into per-partition buffers while holding the
+ * log's lock. A single writer thread wakes up every fsync interval, or as soon as the
+ * configured number of transactions are waiting, swaps out the buffers together with
+ * the completion checks of every durability listener, writes and syncs the segments
+ * and then hands the checks back to the schedulers. In synchronous mode this is a group
+ * commit: the transactions of a batch are released for execution by that batch's sync.
+ * In asynchronous mode the transactions run right away and only the durable unique IDs
+ * wait for the sync, unless the writer falls far enough behind that the log pushes back
+ * on the schedulers.
+ *
+ * Nothing is written until the log is initialized at the end of restore, because
+ * everything executed before that is covered by the truncation snapshot the log
+ * starts from.
+ */
+public class FileCommandLog implements CommandLog, SnapshotCompletionInterest {
+
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
+
+    public static final long DEFAULT_SEGMENT_SIZE = Long.getLong("CL_SEGMENT_SIZE", 64L * 1024 * 1024);
+
+    // Outstanding bytes at which asynchronous logging starts pushing back on the schedulers
+    static final long ASYNC_BACKPRESSURE_BYTES = 32L * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final boolean m_synchronous;
+    private final int m_fsyncInterval;
+    private final int m_maxTxns;
+    private final File m_logDir;
+    private final long m_segmentSize;
+
+    private final Object m_lock = new Object();
+
+    // Guarded by m_lock
+    private final Map<Integer, PartitionLog> m_partitions = new HashMap<Integer, PartitionLog>();
+    private final List<DurabilityListener> m_listeners = new ArrayList<DurabilityListener>();
+    private List<SettableFuture<Object>> m_backpressureFutures = new ArrayList<SettableFuture<Object>>();
+    private int m_pendingTxns = 0;
+    private long m_pendingBytes = 0;
+    private Map<Integer, Long> m_truncationPoints = null;
+    private boolean m_initialized = false;
+    private boolean m_shutdown = false;
+    private boolean m_truncationRequested = false;
+
+    // Set on init, then only used by the writer thread
+    private Thread m_writer = null;
+    private long m_logSizeBytes;
+    private long m_txnId = Long.MIN_VALUE;
+    private int m_partitionCount = 0;
+    private final Map<Integer, Long> m_partitionTxnIds = new HashMap<Integer, Long>();
+    private InstanceId m_instanceId = null;
+    private long m_lastSyncNanos = 0;
+
+    // Statistics, updated by the writer thread
+    private volatile long m_syncCount = 0;
+    private volatile long m_bytesWritten = 0;
+    private volatile long m_totalSyncNanos = 0;
+    private volatile long m_maxSyncNanos = 0;
+    private volatile int m_lastSyncIntervalMillis = 0;
+    private volatile int m_inUseSegmentCount = 0;
+    private volatile int m_segmentCount = 0;
+
+    /**
+     * The log of one partition. The pending buffer is filled under the log's lock,
+     * the segments are only touched by the writer thread.
+     */
+    private class PartitionLog {
+        final int m_partitionId;
+        ByteBuffer m_pending = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+        ByteBuffer m_spare = null;
+        long m_pendingMaxSpHandle = Long.MIN_VALUE;
+
+        CommandLogSegment m_current = null;
+        CommandLogSegment m_next = null;
+        final ArrayDeque<CommandLogSegment> m_closed = new ArrayDeque<CommandLogSegment>();
+        long m_nextSegmentId;
+
+        PartitionLog(int partitionId) {
+            m_partitionId = partitionId;
+            m_nextSegmentId = CommandLogSegment.maxSegmentId(m_logDir, partitionId) + 1;
+        }
+
+        ByteBuffer reserve(int bytes) {
+            if (m_pending.remaining() < bytes) {
+                int capacity = Math.max(m_pending.capacity() * 2, m_pending.position() + bytes);
+                ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+                m_pending.flip();
+                grown.put(m_pending);
+                m_pending = grown;
+            }
+            return m_pending;
+        }
+
+        /**
+         * Swap out the pending entries for the writer.
+         */
+        ByteBuffer takePending() {
+            ByteBuffer pending = m_pending;
+            pending.flip();
+            if (m_spare != null) {
+                m_pending = m_spare;
+                m_spare = null;
+            } else {
+                m_pending = ByteBuffer.allocateDirect(pending.capacity());
+            }
+            return pending;
+        }
+
+        void returnBuffer(ByteBuffer written) {
+            if (m_spare == null || m_spare.capacity() < written.capacity()) {
+                written.clear();
+                m_spare = written;
+            }
+        }
+
+        /**
+         * Write entries to the segments, starting a new segment when the current one is full.
+         * Entries are never split across segments.
+         */
+        void append(ByteBuffer entries, long maxSpHandle) throws IOException {
+            while (entries.hasRemaining()) {
+                int fits = 0;
+                if (m_current != null) {
+                    // walk the entry lengths to find the largest prefix that still fits
+                    int position = entries.position();
+                    while (position < entries.limit()) {
+                        int entrySize = CommandLogSegment.ENTRY_PREFIX_SIZE + entries.getInt(position);
+                        if (!m_current.hasRoomFor(fits + entrySize)) {
+                            break;
+                        }
+                        fits += entrySize;
+                        position += entrySize;
+                    }
+                }
+                if (fits == 0) {
+                    rollSegment(CommandLogSegment.ENTRY_PREFIX_SIZE + entries.getInt(entries.position()));
+                    continue;
+                }
+                ByteBuffer chunk = entries.duplicate();
+                chunk.limit(entries.position() + fits);
+                m_current.write(chunk, maxSpHandle);
+                entries.position(entries.position() + fits);
+            }
+        }
+
+        private void rollSegment(int minimumEntrySize) throws IOException {
+            if (m_current != null) {
+                m_current.sync();
+                m_current.close();
+                m_closed.add(m_current);
+                m_current = null;
+            }
+            if (m_next != null && m_next.hasRoomFor(minimumEntrySize)) {
+                m_current = m_next;
+                m_next = null;
+            } else {
+                m_current = createSegment(minimumEntrySize);
+            }
+        }
+
+        /**
+         * Allocate the next segment ahead of time once the current one is mostly used,
+         * so that rolling over doesn't put a whole segment of zero filling in front of a sync.
+         */
+        void prepareNextSegment() throws IOException {
+            if (m_next == null && m_current != null && !m_current.hasRoomFor((int) (m_segmentSize / 4))) {
+                m_next = createSegment(0);
+            }
+        }
+
+        private CommandLogSegment createSegment(int minimumEntrySize) throws IOException {
+            Long partitionTxnId = m_partitionTxnIds.get(m_partitionId);
+            long size = Math.max(m_segmentSize, CommandLogSegment.HEADER_SIZE + minimumEntrySize);
+            // replay checks the partition count against the cluster it recovers
+            return CommandLogSegment.create(m_logDir, m_partitionId,
+                                            Math.max(m_partitionCount, m_partitionId + 1),
+                                            m_nextSegmentId++, m_txnId,
+                                            partitionTxnId == null ? Long.MIN_VALUE : partitionTxnId,
+                                            m_instanceId, size);
+        }
+
+        boolean sync() throws IOException {
+            return m_current != null && m_current.sync();
+        }
+
+        /**
+         * Delete the segments that only hold entries at or before the truncation point.
+         */
+        void truncate(long spHandle) throws IOException {
+            while (!m_closed.isEmpty() && m_closed.peek().getMaxSpHandle() <= spHandle) {
+                m_closed.poll().delete();
+            }
+        }
+
+        long inUseBytes() {
+            long bytes = 0;
+            for (CommandLogSegment segment : m_closed) {
+                bytes += segment.getSize();
+            }
+            if (m_current != null) {
+                bytes += m_current.getSize();
+            }
+            return bytes;
+        }
+
+        void close() throws IOException {
+            for (CommandLogSegment segment : m_closed) {
+                segment.close();
+            }
+            if (m_current != null) {
+                m_current.close();
+            }
+            if (m_next != null) {
+                m_next.close();
+            }
+        }
+    }
+
+    /**
+     * @param synchronous          true to hold transactions until they are durable
+     * @param fsyncInterval        milliseconds between syncs
+     * @param maxTxns              sync early once this many transactions are waiting
+     * @param logPath              directory for the segment files
+     * @param internalSnapshotPath directory of the truncation snapshots (unused, the snapshot
+     *                             daemon writes them)
+     */
+    public FileCommandLog(boolean synchronous, int fsyncInterval, int maxTxns,
+                          String logPath, String internalSnapshotPath) {
+        this(synchronous, fsyncInterval, maxTxns, logPath, DEFAULT_SEGMENT_SIZE);
+    }
+
+    FileCommandLog(boolean synchronous, int fsyncInterval, int maxTxns, String logPath, long segmentSize) {
+        m_synchronous = synchronous;
+        m_fsyncInterval = Math.max(1, fsyncInterval);
+        m_maxTxns = Math.max(1, maxTxns);
+        m_logDir = new File(logPath);
+        m_segmentSize = segmentSize;
+    }
+
+    @Override
+    public void init(int logSize, long txnId, int partitionCount, String coreBinding,
+                     Map<Integer, Long> perPartitionTxnId) {
+        start(logSize, txnId, partitionCount, perPartitionTxnId);
+    }
+
+    @Override
+    public void initForRejoin(int logSize, long txnId, int partitionCount, boolean isRejoin,
+                              String coreBinding, Map<Integer, Long> perPartitionTxnId) {
+        start(logSize, txnId, partitionCount, perPartitionTxnId);
+    }
+
+    private void start(int logSize, long txnId, int partitionCount, Map<Integer, Long> perPartitionTxnId) {
+        synchronized (m_lock) {
+            if (m_initialized) {
+                return;
+            }
+            m_logSizeBytes = logSize * 1024L * 1024L;
+            m_txnId = txnId;
+            m_partitionCount = partitionCount;
+            if (perPartitionTxnId != null) {
+                m_partitionTxnIds.putAll(perPartitionTxnId);
+            }
+            HostMessenger messenger = VoltDB.instance().getHostMessenger();
+            if (messenger != null) {
+                m_instanceId = messenger.getInstanceId();
+            }
+
+            // Whatever is left in the directory was either replayed or is older than
+            // the snapshot the log starts from, so it is never needed again.
+            if (!m_logDir.exists() && !m_logDir.mkdirs()) {
+                VoltDB.crashLocalVoltDB("Unable to create command log directory " + m_logDir, false, null);
+            }
+            try {
+                for (CommandLogSegment segment : CommandLogSegment.findSegments(m_logDir)) {
+                    segment.delete();
+                }
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to clear command log directory " + m_logDir, true, e);
+            }
+
+            SnapshotCompletionMonitor monitor = VoltDB.instance().getSnapshotCompletionMonitor();
+            if (monitor != null) {
+                monitor.addInterest(this);
+            }
+
+            m_writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWriter();
+                }
+            }, "Command log writer");
+            m_writer.setDaemon(true);
+            m_writer.start();
+            m_initialized = true;
+        }
+        hostLog.info("Command log initialized in " + m_logDir + " with " +
+                     (m_synchronous ? "synchronous" : "asynchronous") + " logging, fsync interval " +
+                     m_fsyncInterval + "ms");
+    }
+
+    @Override
+    public boolean needsInitialization() {
+        synchronized (m_lock) {
+            return !m_initialized;
+        }
+    }
+
+    @Override
+    public ListenableFuture<Object> log(Iv2InitiateTaskMessage message, long spHandle,
+                                        int[] involvedPartitions, DurabilityListener listener,
+                                        TransactionTask durabilityHandle) {
+        synchronized (m_lock) {
+            if (!m_initialized) {
+                // Replay and restore run before the log is initialized, the truncation
+                // snapshot taken at the end of them makes their transactions durable.
+                listener.addTransaction(durabilityHandle);
+                listener.processDurabilityChecks(listener.startNewTaskList(listener.getNumberOfTasks()));
+                return m_synchronous ? null : CoreUtils.COMPLETED_FUTURE;
+            }
+
+            final int partitions = involvedPartitions == null ? 0 : involvedPartitions.length;
+            final int messageSize = message.getSerializedSize();
+            final int entrySize = CommandLogSegment.ENTRY_PREFIX_SIZE + CommandLogSegment.ENTRY_HEADER_SIZE +
+                                  4 + (4 * partitions) + messageSize;
+            final PartitionLog plog = getPartitionLog(TxnEgo.getPartitionId(spHandle));
+            final ByteBuffer buf = plog.reserve(entrySize);
+            final int entryStart = buf.position();
+            buf.position(entryStart + CommandLogSegment.ENTRY_PREFIX_SIZE);
+            buf.put(CommandLogSegment.INVOCATION_ENTRY);
+            buf.putLong(spHandle);
+            buf.putInt(partitions);
+            for (int i = 0; i < partitions; i++) {
+                buf.putInt(involvedPartitions[i]);
+            }
+            // the message insists on filling its buffer exactly
+            final int messageStart = buf.position();
+            buf.limit(messageStart + messageSize);
+            ByteBuffer messageBuf = buf.slice();
+            buf.limit(buf.capacity());
+            try {
+                message.flattenToBuffer(messageBuf);
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to serialize a command log entry", true, e);
+            }
+            buf.position(messageStart + messageSize);
+            CommandLogSegment.sealEntry(buf, entryStart);
+            plog.m_pendingMaxSpHandle = Math.max(plog.m_pendingMaxSpHandle, spHandle);
+
+            listener.addTransaction(durabilityHandle);
+            m_pendingBytes += entrySize;
+            if (++m_pendingTxns >= m_maxTxns) {
+                m_lock.notify();
+            }
+
+            if (m_synchronous) {
+                return null;
+            }
+            if (m_pendingBytes > ASYNC_BACKPRESSURE_BYTES) {
+                SettableFuture<Object> backpressure = SettableFuture.create();
+                m_backpressureFutures.add(backpressure);
+                return backpressure;
+            }
+            return CoreUtils.COMPLETED_FUTURE;
+        }
+    }
+
+    @Override
+    public void logIv2Fault(long writerHSId, Set<Long> survivorHSId, int partitionId, long spHandle) {
+        synchronized (m_lock) {
+            if (!m_initialized) {
+                return;
+            }
+            final int entrySize = CommandLogSegment.ENTRY_PREFIX_SIZE + CommandLogSegment.ENTRY_HEADER_SIZE +
+                                  8 + 4 + 4 + (8 * survivorHSId.size());
+            final PartitionLog plog = getPartitionLog(partitionId);
+            final ByteBuffer buf = plog.reserve(entrySize);
+            final int entryStart = buf.position();
+            buf.position(entryStart + CommandLogSegment.ENTRY_PREFIX_SIZE);
+            buf.put(CommandLogSegment.FAULT_ENTRY);
+            buf.putLong(spHandle);
+            buf.putLong(writerHSId);
+            buf.putInt(partitionId);
+            buf.putInt(survivorHSId.size());
+            for (long hsId : survivorHSId) {
+                buf.putLong(hsId);
+            }
+            CommandLogSegment.sealEntry(buf, entryStart);
+            plog.m_pendingMaxSpHandle = Math.max(plog.m_pendingMaxSpHandle, spHandle);
+            m_pendingBytes += entrySize;
+        }
+    }
+
+    private PartitionLog getPartitionLog(int partitionId) {
+        PartitionLog plog = m_partitions.get(partitionId);
+        if (plog == null) {
+            plog = new PartitionLog(partitionId);
+            m_partitions.put(partitionId, plog);
+        }
+        return plog;
+    }
+
+    private void runWriter() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_fsyncInterval);
+        m_lastSyncNanos = System.nanoTime();
+        try {
+            while (true) {
+                final List<Pair<PartitionLog, ByteBuffer>> batch = new ArrayList<Pair<PartitionLog, ByteBuffer>>();
+                final List<Long> batchMaxSpHandles = new ArrayList<Long>();
+                final List<Pair<DurabilityListener, CompletionChecks>> checks =
+                        new ArrayList<Pair<DurabilityListener, CompletionChecks>>();
+                final List<SettableFuture<Object>> futures;
+                final Map<Integer, Long> truncationPoints;
+                final boolean shutdown;
+
+                synchronized (m_lock) {
+                    while (!m_shutdown && m_pendingTxns < m_maxTxns) {
+                        long waitNanos = deadline - System.nanoTime();
+                        if (waitNanos <= 0) {
+                            if (m_pendingBytes > 0 || m_truncationPoints != null) {
+                                break;
+                            }
+                            // idle, start a new interval
+                            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_fsyncInterval);
+                            waitNanos = deadline - System.nanoTime();
+                        }
+                        m_lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+                    }
+
+                    for (PartitionLog plog : m_partitions.values()) {
+                        if (plog.m_pending.position() > 0) {
+                            batch.add(Pair.of(plog, plog.takePending()));
+                            batchMaxSpHandles.add(plog.m_pendingMaxSpHandle);
+                        }
+                    }
+                    for (DurabilityListener listener : m_listeners) {
+                        checks.add(Pair.of(listener, listener.startNewTaskList(listener.getNumberOfTasks())));
+                    }
+                    futures = m_backpressureFutures;
+                    m_backpressureFutures = new ArrayList<SettableFuture<Object>>();
+                    m_pendingTxns = 0;
+                    m_pendingBytes = 0;
+                    truncationPoints = m_truncationPoints;
+                    m_truncationPoints = null;
+                    shutdown = m_shutdown;
+                }
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(m_fsyncInterval);
+
+                writeBatch(batch, batchMaxSpHandles);
+
+                for (Pair<DurabilityListener, CompletionChecks> check : checks) {
+                    check.getFirst().processDurabilityChecks(check.getSecond());
+                }
+                for (SettableFuture<Object> future : futures) {
+                    future.set(null);
+                }
+
+                synchronized (m_lock) {
+                    for (Pair<PartitionLog, ByteBuffer> written : batch) {
+                        written.getFirst().returnBuffer(written.getSecond());
+                    }
+                }
+
+                if (truncationPoints != null) {
+                    truncate(truncationPoints);
+                }
+                if (shutdown) {
+                    break;
+                }
+                manageSegments();
+            }
+        } catch (InterruptedException e) {
+            VoltDB.crashLocalVoltDB("Command log writer was interrupted", true, e);
+        } catch (IOException e) {
+            VoltDB.crashLocalVoltDB("Unable to write to the command log in " + m_logDir, true, e);
+        }
+    }
+
+    /**
+     * Write every partition's entries, then sync all of them before anything is
+     * acknowledged, and account the time of the whole batch to the sync latency.
+     */
+    private void writeBatch(List<Pair<PartitionLog, ByteBuffer>> batch, List<Long> maxSpHandles)
+    throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        long bytes = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            ByteBuffer entries = batch.get(i).getSecond();
+            bytes += entries.remaining();
+            batch.get(i).getFirst().append(entries, maxSpHandles.get(i));
+        }
+        boolean synced = false;
+        for (Pair<PartitionLog, ByteBuffer> written : batch) {
+            synced |= written.getFirst().sync();
+        }
+        final long end = System.nanoTime();
+
+        m_bytesWritten += bytes;
+        if (synced) {
+            final long latency = end - start;
+            m_syncCount++;
+            m_totalSyncNanos += latency;
+            m_maxSyncNanos = Math.max(m_maxSyncNanos, latency);
+            m_lastSyncIntervalMillis = (int) TimeUnit.NANOSECONDS.toMillis(end - m_lastSyncNanos);
+            m_lastSyncNanos = end;
+        }
+    }
+
+    private void truncate(Map<Integer, Long> truncationPoints) throws IOException {
+        for (Map.Entry<Integer, Long> e : truncationPoints.entrySet()) {
+            m_partitionTxnIds.put(e.getKey(), e.getValue());
+            PartitionLog plog;
+            synchronized (m_lock) {
+                plog = m_partitions.get(e.getKey());
+            }
+            if (plog != null) {
+                plog.truncate(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Pre-allocate segments that will be needed soon, update the segment counts
+     * and ask for a truncation snapshot once the log outgrows its configured size.
+     */
+    private void manageSegments() throws IOException {
+        List<PartitionLog> plogs;
+        synchronized (m_lock) {
+            plogs = new ArrayList<PartitionLog>(m_partitions.values());
+        }
+        long inUseBytes = 0;
+        int inUse = 0;
+        int total = 0;
+        for (PartitionLog plog : plogs) {
+            plog.prepareNextSegment();
+            inUseBytes += plog.inUseBytes();
+            inUse += plog.m_closed.size() + (plog.m_current == null ? 0 : 1);
+            total += plog.m_closed.size() + (plog.m_current == null ? 0 : 1) + (plog.m_next == null ? 0 : 1);
+        }
+        m_inUseSegmentCount = inUse;
+        m_segmentCount = total;
+        if (inUseBytes > m_logSizeBytes) {
+            requestTruncationSnapshot(false);
+        }
+    }
+
+    @Override
+    public void requestTruncationSnapshot(final boolean queueIfPending) {
+        synchronized (m_lock) {
+            if (m_truncationRequested && !queueIfPending) {
+                return;
+            }
+            m_truncationRequested = true;
+        }
+        HostMessenger messenger = VoltDB.instance().getHostMessenger();
+        if (messenger == null) {
+            return;
+        }
+        try {
+            messenger.getZK().create(VoltZK.request_truncation_snapshot_node, null,
+                                     Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT_SEQUENTIAL);
+        } catch (Exception e) {
+            hostLog.warn("Unable to request a command log truncation snapshot", e);
+            synchronized (m_lock) {
+                m_truncationRequested = false;
+            }
+        }
+    }
+
+    @Override
+    public CountDownLatch snapshotCompleted(SnapshotCompletionEvent event) {
+        if (event.truncationSnapshot && event.didSucceed) {
+            synchronized (m_lock) {
+                if (m_truncationPoints == null) {
+                    m_truncationPoints = new HashMap<Integer, Long>();
+                }
+                m_truncationPoints.putAll(event.partitionTxnIds);
+                m_truncationRequested = false;
+                m_lock.notify();
+            }
+        }
+        return new CountDownLatch(0);
+    }
+
+    @Override
+    public void shutdown() throws InterruptedException {
+        Thread writer;
+        synchronized (m_lock) {
+            m_shutdown = true;
+            m_lock.notify();
+            writer = m_writer;
+        }
+        if (writer == null) {
+            return;
+        }
+        writer.join();
+        SnapshotCompletionMonitor monitor = VoltDB.instance().getSnapshotCompletionMonitor();
+        if (monitor != null) {
+            monitor.removeInterest(this);
+        }
+        synchronized (m_lock) {
+            for (PartitionLog plog : m_partitions.values()) {
+                try {
+                    plog.close();
+                } catch (IOException e) {
+                    hostLog.warn("Unable to close command log segments of partition " + plog.m_partitionId, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void initializeLastDurableUniqueId(DurabilityListener listener, long uniqueId) {
+        synchronized (m_lock) {
+            listener.initializeLastDurableUniqueId(uniqueId);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void populateCommandLogStats(Map<String, Integer> columnNameToIndex, Object[] rowValues) {
+        long outstandingBytes;
+        long outstandingTxns;
+        synchronized (m_lock) {
+            outstandingBytes = m_pendingBytes;
+            outstandingTxns = m_pendingTxns;
+        }
+        final long syncCount = m_syncCount;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_BYTES.name())] = outstandingBytes;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.OUTSTANDING_TXNS.name())] = outstandingTxns;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.IN_USE_SEGMENT_COUNT.name())] = m_inUseSegmentCount;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.SEGMENT_COUNT.name())] = m_segmentCount;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_INTERVAL.name())] = m_lastSyncIntervalMillis;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.FSYNC_COUNT.name())] = syncCount;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.BYTES_WRITTEN.name())] = m_bytesWritten;
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.AVG_FSYNC_LATENCY.name())] =
+                syncCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(m_totalSyncNanos / syncCount);
+        rowValues[columnNameToIndex.get(CommandLogStats.StatName.MAX_FSYNC_LATENCY.name())] =
+                TimeUnit.NANOSECONDS.toMicros(m_maxSyncNanos);
+    }
+
+    @Override
+    public boolean isSynchronous() {
+        return m_synchronous;
+    }
+
+    @Override
+    public boolean canOfferTask() {
+        return !m_synchronous;
+    }
+
+    @Override
+    public void registerDurabilityListener(DurabilityListener durabilityListener) {
+        synchronized (m_lock) {
+            m_listeners.add(durabilityListener);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.commandlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.messaging.HostMessenger;
+import org.voltcore.utils.CoreUtils;
+import org.voltcore.utils.InstanceId;
+import org.voltcore.zk.ZKCountdownLatch;
+import org.voltdb.ClientInterface;
+import org.voltdb.CommandLogReinitiator;
+import org.voltdb.RestoreAgent;
+import org.voltdb.SimpleClientResponseAdapter;
+import org.voltdb.StartAction;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltZK;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.dtxn.TransactionCreator;
+import org.voltdb.iv2.LeaderCache;
+import org.voltdb.iv2.MpInitiator;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+
+import com.google_voltpatches.common.collect.ImmutableMap;
+
+/**
+ * Replays the segments written by {@link FileCommandLog} during recover.
+ *
+ * The host that leads a partition replays that partition's log, sending its
+ * single-partition transactions to the partition and a sentinel for every
+ * multi-partition transaction found in it. The host of the multi-partition
+ * initiator collects the multi-partition transactions from all its local logs,
+ * initiates each of them once in unique ID order and then ends the log. The
+ * replay sequencers of the partitions put everything back in its original order.
+ * Entries at or before the restored snapshot are skipped. All hosts wait for
+ * each other before reporting that replay is complete, so that the truncation
+ * snapshot that follows sees every replayed transaction.
+ *
+ * Partitions are not rebalanced during replay, a log recorded with a different
+ * partition count than the recovering cluster fails the recover.
+ */
+public class FileCommandLogReinitiator implements CommandLogReinitiator {
+
+    private static final VoltLogger hostLog = new VoltLogger("HOST");
+
+    // Transactions one replay stream may have outstanding
+    private static final int MAX_OUTSTANDING_PER_STREAM = 10000;
+
+    private final int m_hostId;
+    private final boolean m_recover;
+    private final HostMessenger m_messenger;
+    private final Set<Integer> m_liveHosts;
+    private final File m_logDir;
+    // partitions of the recovering cluster
+    private final int m_partitionCount;
+    private final Map<Integer, List<CommandLogSegment>> m_segments =
+            new TreeMap<Integer, List<CommandLogSegment>>();
+    private final SimpleClientResponseAdapter m_adapter =
+            new SimpleClientResponseAdapter(ClientInterface.CL_REPLAY_BASE_CID, "CommandLogReplayAdapter");
+    private final AtomicLong m_replayedTxns = new AtomicLong(0);
+    private int m_loggedPartitionCount = 0;
+
+    private Callback m_callback = null;
+    private TransactionCreator m_initiator = null;
+    private Map<Integer, Long> m_snapshotPartitionTxnIds = null;
+
+    public FileCommandLogReinitiator(int hostId, StartAction action, HostMessenger messenger,
+                                     String clPath, Set<Integer> liveHosts, int partitionCount) {
+        m_hostId = hostId;
+        m_recover = action.doesRecover();
+        m_messenger = messenger;
+        m_liveHosts = liveHosts;
+        m_logDir = new File(clPath);
+        m_partitionCount = partitionCount;
+
+        // Only recover reads the log, every other action starts a new one
+        if (m_recover && m_logDir.isDirectory()) {
+            try {
+                for (CommandLogSegment segment : CommandLogSegment.findSegments(m_logDir)) {
+                    List<CommandLogSegment> partitionSegments = m_segments.get(segment.getPartitionId());
+                    if (partitionSegments == null) {
+                        partitionSegments = new ArrayList<CommandLogSegment>();
+                        m_segments.put(segment.getPartitionId(), partitionSegments);
+                    }
+                    partitionSegments.add(segment);
+                    m_loggedPartitionCount = Math.max(m_loggedPartitionCount, segment.getPartitionCount());
+                }
+            } catch (IOException e) {
+                VoltDB.crashLocalVoltDB("Unable to read the command log in " + m_logDir, true, e);
+            }
+        }
+    }
+
+    @Override
+    public void setSnapshotTxnId(RestoreAgent.SnapshotInfo info) {
+        m_snapshotPartitionTxnIds = info == null ? null : info.partitionToTxnId;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        m_callback = callback;
+    }
+
+    @Override
+    public void setInitiator(TransactionCreator initiator) {
+        m_initiator = initiator;
+        m_initiator.bindAdapter(m_adapter);
+    }
+
+    @Override
+    public void initPartitionTracking() {}
+
+    @Override
+    public void generateReplayPlan(long snapshotTimeStamp, long snapshotTxnId,
+            int newPartitionCount, boolean isMPINode) {
+        // Who replays what depends on partition leadership, which is decided when replay starts
+    }
+
+    @Override
+    public void replay() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (m_recover) {
+                        if (!matchesPartitionCount(m_partitionCount)) {
+                            VoltDB.crashGlobalVoltDB("The command log in " + m_logDir + " was recorded with " +
+                                    m_loggedPartitionCount + " partitions but the cluster has " + m_partitionCount +
+                                    ", recover with the configuration the log was recorded with", false, null);
+                        }
+                        replayLocalLogs();
+                    }
+                    ZKCountdownLatch latch = new ZKCountdownLatch(m_messenger.getZK(),
+                            VoltZK.commandlog_replay_barrier, m_liveHosts.size());
+                    latch.countDown();
+                    latch.await();
+                } catch (Exception e) {
+                    VoltDB.crashGlobalVoltDB("Command log replay failed", true, e);
+                }
+                hostLog.info("Command log replay completed, " + m_replayedTxns.get() +
+                             " transactions replayed on this host");
+                if (m_callback != null) {
+                    m_callback.onReplayCompletion();
+                }
+            }
+        }, "Command log replay").start();
+    }
+
+    private void replayLocalLogs() throws Exception {
+        final ImmutableMap<Integer, Long> masters = readLeaders(VoltZK.iv2masters);
+        final Long mpiHSId = readLeaders(VoltZK.iv2mpi).get(MpInitiator.MP_INIT_PID);
+        final boolean isMpiHost = mpiHSId != null && CoreUtils.getHostIdFromHSId(mpiHSId) == m_hostId;
+
+        final TreeMap<Long, Iv2InitiateTaskMessage> multiPartition = new TreeMap<Long, Iv2InitiateTaskMessage>();
+        final List<Thread> streams = new ArrayList<Thread>();
+        final List<Stream> replays = new ArrayList<Stream>();
+        for (Map.Entry<Integer, List<CommandLogSegment>> e : m_segments.entrySet()) {
+            final int partitionId = e.getKey();
+            if (isMpiHost) {
+                collectMultiPartition(partitionId, e.getValue(), multiPartition);
+            }
+            Long master = masters.get(partitionId);
+            if (master != null && CoreUtils.getHostIdFromHSId(master) == m_hostId) {
+                final Stream stream = new Stream(partitionId);
+                final List<CommandLogSegment> segments = e.getValue();
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        stream.replayPartition(segments);
+                    }
+                }, "Command log replay partition " + partitionId);
+                t.start();
+                streams.add(t);
+                replays.add(stream);
+            }
+        }
+
+        if (isMpiHost) {
+            Stream mpStream = new Stream(MpInitiator.MP_INIT_PID);
+            for (Iv2InitiateTaskMessage msg : multiPartition.values()) {
+                mpStream.initiate(msg, false);
+            }
+            // the end of log is queued behind the replayed multi-partition work, and has to be
+            // sent even without local logs to release partitions blocked on sentinels elsewhere
+            m_initiator.sendEOLMessage(MpInitiator.MP_INIT_PID);
+            replays.add(mpStream);
+        }
+
+        for (Thread t : streams) {
+            t.join();
+        }
+        for (Stream stream : replays) {
+            stream.awaitResponses();
+        }
+    }
+
+    private ImmutableMap<Integer, Long> readLeaders(String path) throws Exception {
+        LeaderCache cache = new LeaderCache(m_messenger.getZK(), path);
+        cache.start(true);
+        try {
+            return cache.pointInTimeCache();
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    private boolean isCoveredBySnapshot(int partitionId, long spHandle) {
+        if (m_snapshotPartitionTxnIds == null) {
+            return false;
+        }
+        Long snapshotTxnId = m_snapshotPartitionTxnIds.get(partitionId);
+        return snapshotTxnId != null && spHandle <= snapshotTxnId;
+    }
+
+    private void collectMultiPartition(int partitionId, List<CommandLogSegment> segments,
+            Map<Long, Iv2InitiateTaskMessage> multiPartition) throws IOException {
+        final VoltDbMessageFactory factory = new VoltDbMessageFactory();
+        for (CommandLogSegment segment : segments) {
+            CommandLogSegment.EntryReader reader = segment.reader();
+            while (reader.next()) {
+                if (reader.type() != CommandLogSegment.INVOCATION_ENTRY ||
+                        isCoveredBySnapshot(partitionId, reader.spHandle())) {
+                    continue;
+                }
+                ByteBuffer body = reader.body();
+                final int partitions = body.getInt();
+                body.position(body.position() + 4 * partitions);
+                Iv2InitiateTaskMessage msg = (Iv2InitiateTaskMessage) factory.createMessageFromBuffer(body, -1);
+                if (!msg.isSinglePartition() && !multiPartition.containsKey(msg.getUniqueId())) {
+                    multiPartition.put(msg.getUniqueId(), msg);
+                }
+            }
+        }
+    }
+
+    /**
+     * The transactions one replay thread initiates, with a bound on how many
+     * of them may be waiting for a response.
+     */
+    private class Stream {
+        final int m_partitionId;
+        final Semaphore m_outstanding = new Semaphore(MAX_OUTSTANDING_PER_STREAM);
+        final AtomicLong m_failed = new AtomicLong(0);
+
+        private final SimpleClientResponseAdapter.Callback m_responseCallback =
+                new SimpleClientResponseAdapter.Callback() {
+            @Override
+            public void handleResponse(ClientResponse response) {
+                final byte status = response.getStatus();
+                if (status != ClientResponse.SUCCESS && status != ClientResponse.USER_ABORT) {
+                    m_failed.incrementAndGet();
+                }
+                m_outstanding.release();
+            }
+        };
+
+        Stream(int partitionId) {
+            m_partitionId = partitionId;
+        }
+
+        void replayPartition(List<CommandLogSegment> segments) {
+            final VoltDbMessageFactory factory = new VoltDbMessageFactory();
+            try {
+                for (CommandLogSegment segment : segments) {
+                    CommandLogSegment.EntryReader reader = segment.reader();
+                    while (reader.next()) {
+                        if (reader.type() != CommandLogSegment.INVOCATION_ENTRY ||
+                                isCoveredBySnapshot(m_partitionId, reader.spHandle())) {
+                            continue;
+                        }
+                        ByteBuffer body = reader.body();
+                        final int partitions = body.getInt();
+                        body.position(body.position() + 4 * partitions);
+                        Iv2InitiateTaskMessage msg =
+                                (Iv2InitiateTaskMessage) factory.createMessageFromBuffer(body, -1);
+                        if (msg.isSinglePartition()) {
+                            initiate(msg, true);
+                        } else {
+                            m_initiator.sendSentinel(msg.getUniqueId(), m_partitionId);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                VoltDB.crashGlobalVoltDB("Failed to replay the command log of partition " + m_partitionId,
+                                         true, e);
+            }
+        }
+
+        void initiate(Iv2InitiateTaskMessage msg, boolean isSinglePartition) {
+            m_outstanding.acquireUninterruptibly();
+            StoredProcedureInvocation invocation = msg.getStoredProcedureInvocation();
+            invocation.setClientHandle(m_adapter.registerCallback(m_responseCallback));
+            boolean initiated = m_initiator.createTransaction(m_adapter.connectionId(),
+                    msg.getTxnId(),
+                    msg.getUniqueId(),
+                    invocation,
+                    msg.isReadOnly(),
+                    isSinglePartition,
+                    false,
+                    m_partitionId,
+                    msg.getSerializedSize(),
+                    System.nanoTime());
+            if (initiated) {
+                m_replayedTxns.incrementAndGet();
+            } else {
+                m_outstanding.release();
+                m_failed.incrementAndGet();
+            }
+        }
+
+        void awaitResponses() {
+            m_outstanding.acquireUninterruptibly(MAX_OUTSTANDING_PER_STREAM);
+            m_outstanding.release(MAX_OUTSTANDING_PER_STREAM);
+            if (m_failed.get() > 0) {
+                hostLog.warn(m_failed.get() + " replayed transactions of " +
+                             (m_partitionId == MpInitiator.MP_INIT_PID ? "the multi-partition initiator" :
+                                                                         "partition " + m_partitionId) +
+                             " did not succeed");
+            }
+        }
+    }
+
+    @Override
+    public boolean hasReplayedSegments() {
+        return !m_segments.isEmpty();
+    }
+
+    @Override
+    public boolean hasReplayedTxns() {
+        return m_replayedTxns.get() > 0;
+    }
+
+    @Override
+    public Long getMaxLastSeenTxn() {
+        Long max = null;
+        for (List<CommandLogSegment> segments : m_segments.values()) {
+            for (CommandLogSegment segment : segments) {
+                if (max == null || segment.getTxnId() > max) {
+                    max = segment.getTxnId();
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * The log of each partition starts right after the partition's position in
+     * the snapshot it was started from, so a usable snapshot can't be older than that.
+     */
+    @Override
+    public Map<Integer, Long> getMaxLastSeenTxnByPartition() {
+        if (m_segments.isEmpty()) {
+            return null;
+        }
+        Map<Integer, Long> start = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, List<CommandLogSegment>> e : m_segments.entrySet()) {
+            start.put(e.getKey(), e.getValue().get(0).getPartitionTxnId());
+        }
+        return start;
+    }
+
+    @Override
+    public InstanceId getInstanceId() {
+        for (List<CommandLogSegment> segments : m_segments.values()) {
+            return segments.get(0).getInstanceId();
+        }
+        return null;
+    }
+
+    @Override
+    public void returnAllSegments() {
+        for (List<CommandLogSegment> segments : m_segments.values()) {
+            for (CommandLogSegment segment : segments) {
+                try {
+                    segment.delete();
+                } catch (IOException e) {
+                    hostLog.warn("Unable to delete replayed command log segment " + segment.getFile(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if there is no log or the log was recorded with the given partition count
+     */
+    boolean matchesPartitionCount(int partitionCount) {
+        return m_segments.isEmpty() || m_loggedPartitionCount == partitionCount;
+    }
+
+    int getLoggedPartitionCount() {
+        return m_loggedPartitionCount;
+    }
+
+    /**
+     * The log is never rebalanced into a different number of partitions,
+     * recovery only succeeds with the partition count the log was recorded with.
+     */
+    @Override
+    public boolean checkAndBalancePartitions() {
+        if (!m_recover) {
+            return true;
+        }
+        if (!matchesPartitionCount(m_partitionCount)) {
+            hostLog.error("The command log was recorded with " + m_loggedPartitionCount +
+                          " partitions but the cluster has " + m_partitionCount);
+            return false;
+        }
+        return true;
+    }
+}
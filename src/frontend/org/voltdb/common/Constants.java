@@ -46,6 +46,9 @@ public class Constants
     public static final byte AUTHENTICATION_FAILURE_DUE_TO_REJOIN = 4;
     public static final byte EXPORT_DISABLED_REJECTION = 5;
 
+    // optional features a server advertises in a trailing byte of its login response
+    public static final byte FEATURE_COLUMNAR_RESULTS = 1;
+
     // from jdbc metadata generation
     public static final String JSON_PARTITION_PARAMETER = "partitionParameter";
     public static final String JSON_PARTITION_PARAMETER_TYPE = "partitionParameterType";
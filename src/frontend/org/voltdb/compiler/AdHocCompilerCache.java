@@ -19,9 +19,7 @@ package org.voltdb.compiler;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -43,6 +41,10 @@ import com.google_voltpatches.common.cache.CacheBuilder;
  * statement mapped to core parameterized plans. These parameterized
  * plans need parameter values and sql literals in order to be
  * actually used.
+ *
+ * Both levels are {@link ShardedPlanCache}s, so the planner threads
+ * and the client interface threads looking up plans don't serialize
+ * on one lock, and plans used once don't evict frequently used ones.
  */
 public class AdHocCompilerCache implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -82,23 +84,18 @@ public class AdHocCompilerCache implements Serializable {
     // max cache size for parameterized plans
     final long MAX_LITERAL_MEM  = Long.getLong("ADHOC_COMPILER_CACHE_MAX_LITERAL_MEM_BYTES", 32*1024*1024);
     final int MAX_CORE_ENTRIES;
+    final long MAX_CORE_MEM = Long.getLong("ADHOC_COMPILER_CACHE_MAX_CORE_MEM_BYTES", 32*1024*1024);
+    // each level is split into this many independently locked shards
+    static final int SHARDS = Integer.getInteger("ADHOC_COMPILER_CACHE_SHARDS", 16);
 
     /** cache of literals to full plans */
-    final Map<String, AdHocPlannedStatement> m_literalCache;
+    final ShardedPlanCache<String, AdHocPlannedStatement> m_literalCache;
     /** cache of parameterized plan descriptions to one or more core parameterized plans,
      *  each plan optionally has its own requirements for which parameters need to be bound
-     *  to what values to enable its specialized (expression-indexed) plan. */
-    final Map<String, List<BoundPlan> > m_coreCache;
-
-    // placeholder stats used during development that may/may not survive
-    long m_literalHits = 0;
-    long m_literalQueries = 0;
-    long m_literalInsertions = 0;
-    long m_literalEvictions = 0;
-    long m_planHits = 0;
-    long m_planQueries = 0;
-    long m_planInsertions = 0;
-    long m_planEvictions = 0;
+     *  to what values to enable its specialized (expression-indexed) plan.
+     *  The lists are never modified once they are in the cache, a new variant replaces
+     *  the list with a longer copy. */
+    final ShardedPlanCache<String, List<BoundPlan> > m_coreCache;
 
     /** {@see this#startPeriodicStatsPrinting() } */
     Timer m_statsTimer = null;
@@ -120,123 +117,51 @@ public class AdHocCompilerCache implements Serializable {
         MAX_LITERAL_ENTRIES = maxLiteralEntries;
         MAX_CORE_ENTRIES = maxCoreEntries;
 
-        // an LRU cache map
-        m_literalCache = new AdHocStatementCache(MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM);
-
-        // an LRU cache map
-        m_coreCache = new LinkedHashMap<String, List<BoundPlan> >(MAX_CORE_ENTRIES * 2, .75f, true) {
-            private static final long serialVersionUID = 1L;
-
-            // This method is called just after a new entry has been added
-            @Override
-            public boolean removeEldestEntry(Map.Entry<String, List<BoundPlan> > eldest) {
-                if (size() > MAX_CORE_ENTRIES) {
-                    ++m_planEvictions;
-                    return true;
-                }
-                return false;
-            }
-
-        };
-    }
-
-    // define a LinkedHashMap based LRU cache bounds by both entry number and entry value on-heap size
-    // without changing Map.Entry, only works for value of type AdHocPlannedStatement
-    // only extend put, remove,clear and removeEldestEntry methods to account weight
-    public class AdHocStatementCache extends LinkedHashMap<String, AdHocPlannedStatement>{
-       private static final long serialVersionUID = 2988383448026641836L;
-        private final int maxEntries;
-        private final long maxMemory; // in bytes
-        private long currentMemory;   // in bytes
-
-        public AdHocStatementCache() {
-            // default max entry of 1000
-            // default max value size of 32MB
-            this(1000, 32 * 1024 * 1024);
-        }
-
-        public AdHocStatementCache(final int maxEntries) {
-            this(maxEntries, 32 * 1024 * 1024);
-        }
-
-        public AdHocStatementCache(final int maxEntries, final long maxMemory) {
-            // set accessOrder to true for LRU
-            super(maxEntries * 2, .75f, true);
-            this.maxEntries = maxEntries;
-            this.maxMemory = maxMemory;
-            this.currentMemory = 0;
-        }
-
-        // This method is called just after a new entry has been added
-        @Override
-        public boolean removeEldestEntry(final Map.Entry<String, AdHocPlannedStatement> eldest) {
-            if ((size() > maxEntries) || (this.currentMemory > this.maxMemory))  {
-                ++m_literalEvictions;
-                this.currentMemory -= eldest.getValue().getSerializedSize();
-                return true;
-            }
-            return false;
-        }
-
-        @Override
-        public AdHocPlannedStatement put(String key, AdHocPlannedStatement value) {
-            this.currentMemory += value.getSerializedSize();
-            return super.put(key,value);
-        }
-
-        @Override
-        public AdHocPlannedStatement remove(Object key) {
-            AdHocPlannedStatement value = super.remove(key);
-            if (value != null) {
-                this.currentMemory -= value.getSerializedSize();
-            }
-            return value;
-        }
-
-        @Override
-        public void clear() {
-            super.clear();
-            this.currentMemory = 0;
-        }
+        m_literalCache = new ShardedPlanCache<String, AdHocPlannedStatement>(
+                MAX_LITERAL_ENTRIES, MAX_LITERAL_MEM, SHARDS,
+                new ShardedPlanCache.Weigher<AdHocPlannedStatement>() {
+                    @Override
+                    public int weigh(AdHocPlannedStatement value) {
+                        return value.getSerializedSize();
+                    }
+                });
+
+        m_coreCache = new ShardedPlanCache<String, List<BoundPlan> >(
+                MAX_CORE_ENTRIES, MAX_CORE_MEM, SHARDS,
+                new ShardedPlanCache.Weigher<List<BoundPlan> >() {
+                    @Override
+                    public int weigh(List<BoundPlan> value) {
+                        int size = 0;
+                        for (BoundPlan plan : value) {
+                            size += plan.m_core.getSerializedSize();
+                        }
+                        return size;
+                    }
+                });
     }
 
     /**
      * Stats printing method used during development.
      * Probably shouldn't live past real stats integration.
      */
-    synchronized void printStats() {
-        String line1 = String.format("CACHE STATS - Literals: Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_literalHits, m_literalQueries, (m_literalHits * 100.0) / m_literalQueries,
-                m_literalInsertions, m_literalEvictions);
-        String line2 = String.format("CACHE STATS - Plans:    Hits %d/%d (%.1f%%), Inserts %d Evictions %d\n",
-                m_planHits, m_planQueries, (m_planHits * 100.0) /m_planQueries,
-                m_planInsertions, m_planEvictions);
+    void printStats() {
+        String line1 = String.format("CACHE STATS - Literals: Hits %d Misses %d, Evictions %d Rejections %d\n",
+                m_literalCache.hits(), m_literalCache.misses(),
+                m_literalCache.evictions(), m_literalCache.rejections());
+        String line2 = String.format("CACHE STATS - Plans:    Hits %d Misses %d, Evictions %d Rejections %d\n",
+                m_coreCache.hits(), m_coreCache.misses(),
+                m_coreCache.evictions(), m_coreCache.rejections());
 
         System.out.print(line1 + line2);
         System.out.flush();
-
-        // reset these
-        m_literalHits = 0;
-        m_literalQueries = 0;
-        m_literalInsertions = 0;
-        m_literalEvictions = 0;
-        m_planHits = 0;
-        m_planQueries = 0;
-        m_planInsertions = 0;
-        m_planEvictions = 0;
     }
 
     /**
      * @param sql SQL literal
      * @return full, ready-to-go plan
      */
-    public synchronized AdHocPlannedStatement getWithSQL(String sql) {
-        ++m_literalQueries;
-        AdHocPlannedStatement retval = m_literalCache.get(sql);
-        if (retval != null) {
-            ++m_literalHits;
-        }
-        return retval;
+    public AdHocPlannedStatement getWithSQL(String sql) {
+        return m_literalCache.get(sql);
     }
 
     /**
@@ -244,13 +169,8 @@ public class AdHocCompilerCache implements Serializable {
      * SQL statement
      * @return A CorePlan that needs parameter values to run.
      */
-    public synchronized List<BoundPlan> getWithParsedToken(String parsedToken) {
-        ++m_planQueries;
-        List<BoundPlan> retval = m_coreCache.get(parsedToken);
-        if (retval != null) {
-            ++m_planHits;
-        }
-        return retval;
+    public List<BoundPlan> getWithParsedToken(String parsedToken) {
+        return m_coreCache.get(parsedToken);
     }
 
     /**
@@ -271,7 +191,7 @@ public class AdHocCompilerCache implements Serializable {
      * @param hasUserQuestionMarkParameters is user provided parameterized query
      * @param hasAutoParameterizedException is the auto parameterized query has parameter exception
      */
-    public synchronized void put(String sql,
+    public void put(String sql,
                                  String parsedToken,
                                  AdHocPlannedStatement planIn,
                                  String[] extractedLiterals,
@@ -296,18 +216,8 @@ public class AdHocCompilerCache implements Serializable {
             BoundPlan matched = null;
             BoundPlan unmatched = new BoundPlan(planIn.core, planIn.parameterBindings(extractedLiterals));
             // deal with the parameterized plan cache first
-            List<BoundPlan> boundVariants = m_coreCache.get(parsedToken);
-            if (boundVariants == null) {
-                boundVariants = new ArrayList<BoundPlan>();
-                m_coreCache.put(parsedToken, boundVariants);
-                // Note that there is an edge case in which more than one plan is getting counted as one
-                // "plan insertion". This only happens when two different plans arose from the same parameterized
-                // query (token) because one invocation used the correct constants to trigger an expression index and
-                // another invocation did not.  These are not counted separately (which would have to happen below
-                // after each call to boundVariants.add) because they are not evicted separately.
-                // It seems saner to use consistent units when counting insertions vs. evictions.
-                ++m_planInsertions;
-            } else {
+            List<BoundPlan> boundVariants = m_coreCache.peek(parsedToken);
+            if (boundVariants != null) {
                 for (BoundPlan boundPlan : boundVariants) {
                     if (boundPlan.equals(unmatched)) {
                         matched = boundPlan;
@@ -324,18 +234,22 @@ public class AdHocCompilerCache implements Serializable {
                 }
             }
             if (matched == null) {
-                // Don't count insertions (of possibly repeated tokens) here
-                //  -- see the comment above where only UNIQUE token insertions are being counted, instead.
-                boundVariants.add(unmatched);
+                // Two threads adding a variant for the same token at once may
+                // lose one of them, it is planned again the next time it is needed.
+                List<BoundPlan> variants = new ArrayList<BoundPlan>();
+                if (boundVariants != null) {
+                    variants.addAll(boundVariants);
+                }
+                variants.add(unmatched);
+                m_coreCache.put(parsedToken, variants);
             }
         }
 
         // then deal with the L1 cache
         if (! hasUserQuestionMarkParameters) {
-            AdHocPlannedStatement cachedPlan = m_literalCache.get(sql);
+            AdHocPlannedStatement cachedPlan = m_literalCache.peek(sql);
             if (cachedPlan == null) {
                 m_literalCache.put(sql, plan);
-                ++m_literalInsertions;
             }
             else {
                 assert(cachedPlan.equals(plan));
@@ -343,6 +257,14 @@ public class AdHocCompilerCache implements Serializable {
         }
     }
 
+    /**
+     * Drop every cached plan, e.g. after the statistics the plans were costed with change.
+     */
+    public void clear() {
+        m_literalCache.clear();
+        m_coreCache.clear();
+    }
+
     /**
      * Start a timer that prints cache stats to the console every 5s.
      * Used for development until we get better stats integration.
@@ -374,4 +296,35 @@ public class AdHocCompilerCache implements Serializable {
     public int getCoreCacheSize() {
         return m_coreCache.size();
     }
+
+    public long getLiteralCacheHits() {
+        return m_literalCache.hits();
+    }
+
+    public long getLiteralCacheMisses() {
+        return m_literalCache.misses();
+    }
+
+    public long getCoreCacheHits() {
+        return m_coreCache.hits();
+    }
+
+    public long getCoreCacheMisses() {
+        return m_coreCache.misses();
+    }
+
+    /**
+     * Return the number of plans evicted from either cache to make room for new ones.
+     */
+    public long getEvictions() {
+        return m_literalCache.evictions() + m_coreCache.evictions();
+    }
+
+    /**
+     * Return the number of new plans that were not cached because they were
+     * used less often than the plans they would have replaced.
+     */
+    public long getRejections() {
+        return m_literalCache.rejections() + m_coreCache.rejections();
+    }
 }
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -36,6 +37,7 @@ import org.voltcore.utils.CoreUtils;
 import org.voltdb.CatalogContext;
 import org.voltdb.ClientInterface.ExplainMode;
 import org.voltdb.OperationMode;
+import org.voltdb.PlannerStatsCollector;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
@@ -52,9 +54,13 @@ public class AsyncCompilerAgent {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
     private static final VoltLogger adhocLog = new VoltLogger("ADHOC");
 
-    // if more than this amount of work is queued, reject new work
+    // if more than this amount of work per planner thread is queued, reject new work
     static public final int MAX_QUEUE_DEPTH = 250;
 
+    // Ad hoc statements are planned by this many threads, catalog changes by a single one
+    static final int PLANNER_THREADS = Integer.getInteger("AD_HOC_PLANNER_THREADS",
+            Math.max(1, Math.min(8, CoreUtils.availableProcessors() / 2)));
+
     // accept work via this mailbox
     Mailbox m_mailbox;
 
@@ -66,9 +72,15 @@ public class AsyncCompilerAgent {
     // of Europe, Scandinavia, and the sub-continent.
     final AsyncCompilerAgentHelper m_helper;
 
-    // do work in this executor service
+    // plan ad hoc statements in this executor service
+    final LinkedBlockingQueue<Runnable> m_plannerQueue =
+        new LinkedBlockingQueue<Runnable>(MAX_QUEUE_DEPTH * PLANNER_THREADS);
     final ListeningExecutorService m_es =
-        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Planner", MAX_QUEUE_DEPTH);
+        CoreUtils.getListeningExecutorService("Ad Hoc Planner", PLANNER_THREADS, m_plannerQueue, null);
+
+    // catalog changes are prepared one at a time in this executor service
+    final ListeningExecutorService m_catalogEs =
+        CoreUtils.getBoundedSingleThreadExecutor("Ad Hoc Catalog Compiler", MAX_QUEUE_DEPTH);
 
     // Enable debug hooks when the "asynccompilerdebug" sys prop is set to "true" or "yes".
     private final static MiscUtils.BooleanSystemProperty DEBUG_MODE =
@@ -86,6 +98,38 @@ public class AsyncCompilerAgent {
             m_es.shutdown();
             m_es.awaitTermination(120, TimeUnit.SECONDS);
         }
+        if (m_catalogEs != null) {
+            m_catalogEs.shutdown();
+            m_catalogEs.awaitTermination(120, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Queue planning work, recording how long it waits for a planner thread.
+     * Throws RejectedExecutionException when the queue is full.
+     */
+    private void submitPlannerWork(final Runnable work) {
+        final PlannerStatsCollector stats = PlannerTool.getAdHocPlannerStats();
+        final long queuedAt = System.nanoTime();
+        try {
+            m_es.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (stats != null) {
+                        stats.dequeued(m_plannerQueue.size(), System.nanoTime() - queuedAt);
+                    }
+                    work.run();
+                }
+            });
+        } catch (RejectedExecutionException rejected) {
+            if (stats != null) {
+                stats.enqueued(m_plannerQueue.size(), true);
+            }
+            throw rejected;
+        }
+        if (stats != null) {
+            stats.enqueued(m_plannerQueue.size(), false);
+        }
     }
 
     public void createMailbox(final HostMessenger hostMessenger, final long hsId) {
@@ -99,15 +143,24 @@ public class AsyncCompilerAgent {
 
             @Override
             public void deliver(final VoltMessage message) {
+                final Runnable handler = new Runnable() {
+                    @Override
+                    public void run() {
+                        handleMailboxMessage(message);
+                    }
+                };
+                final LocalObjectMessage wrapper = (LocalObjectMessage)message;
                 try {
-                    m_es.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            handleMailboxMessage(message);
-                        }
-                    });
+                    // ad hoc DDL is a catalog change too, it must not be passed by later ones
+                    if (wrapper.payload instanceof CatalogChangeWork ||
+                            (wrapper.payload instanceof AdHocPlannerWork &&
+                             startsWithDDL((AdHocPlannerWork)wrapper.payload))) {
+                        m_catalogEs.submit(handler);
+                    }
+                    else {
+                        submitPlannerWork(handler);
+                    }
                 } catch (RejectedExecutionException rejected) {
-                    final LocalObjectMessage wrapper = (LocalObjectMessage)message;
                     AsyncCompilerWork work = (AsyncCompilerWork)(wrapper.payload);
                     generateErrorResult("Ad Hoc Planner task queue is full. Try again.", work);
                 }
@@ -116,6 +169,20 @@ public class AsyncCompilerAgent {
         hostMessenger.createMailbox(hsId, m_mailbox);
     }
 
+    /**
+     * @return true if the first statement of the batch is DDL. The batch is
+     * rejected later if it mixes DDL with other statements.
+     */
+    static boolean startsWithDDL(AdHocPlannerWork w) {
+        for (String stmt : w.sqlStatements) {
+            if (SQLLexer.isComment(stmt) || stmt.trim().isEmpty()) {
+                continue;
+            }
+            return SQLLexer.extractDDLToken(stmt) != null;
+        }
+        return false;
+    }
+
     void generateErrorResult(String errorMsg, AsyncCompilerWork work) {
         AsyncCompilerResult retval = new AsyncCompilerResult();
         retval.clientHandle = work.clientHandle;
@@ -274,6 +341,7 @@ public class AsyncCompilerAgent {
                 w.completionHandler.onCompletion(errResult);
                 return;
             }
+            // DDL batches are delivered to the catalog thread, in order with the other catalog changes
             final CatalogChangeWork ccw = new CatalogChangeWork(w);
             dispatchCatalogChangeWork(ccw);
         }
@@ -313,7 +381,7 @@ public class AsyncCompilerAgent {
     }
 
     public void compileAdHocPlanForProcedure(final AdHocPlannerWork apw) {
-        m_es.submit(new Runnable() {
+        submitPlannerWork(new Runnable() {
             @Override
             public void run(){
                 apw.completionHandler.onCompletion(compileAdHocPlan(apw));
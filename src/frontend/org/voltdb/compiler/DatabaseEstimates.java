@@ -18,14 +18,70 @@
 package org.voltdb.compiler;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.ColumnRef;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Index;
+import org.voltdb.catalog.Table;
+import org.voltdb.planner.CollectedTableStatistics;
+import org.voltdb.planner.EquiDepthHistogram;
+import org.voltdb.utils.CatalogUtil;
+
+/**
+ * Row count and value distribution estimates used to cost plans.
+ * Without collected statistics every table is assumed to hold between
+ * 100K and 1M rows. Estimates built by {@link #fromCollectedStatistics}
+ * replace those defaults with what @Analyze found.
+ */
 public class DatabaseEstimates {
 
     public static class TableEstimates {
         public long maxTuples = 1000000;
         public long minTuples = 100000;
         public ArrayList<ScalarValueHints> valueHints = new ArrayList<ScalarValueHints>();
+
+        // true when the tuple counts come from collected statistics instead of the defaults
+        public boolean fromStatistics = false;
+        public final HashMap<String, IndexEstimates> indexes = new HashMap<String, IndexEstimates>();
+        public final HashMap<String, ColumnEstimates> columns = new HashMap<String, ColumnEstimates>();
+
+        public IndexEstimates getEstimatesForIndex(String indexName) {
+            return indexes.get(indexName);
+        }
+
+        public ColumnEstimates getEstimatesForColumn(String columnName) {
+            return columns.get(columnName);
+        }
+    }
+
+    public static class IndexEstimates {
+        public long entryCount = -1;
+        // distinctPrefixCounts[i] is the number of distinct keys made of
+        // the first i+1 indexed components, or null when not collected
+        public long[] distinctPrefixCounts = null;
+
+        /**
+         * @return the number of distinct values of the first prefixLength
+         * key components, or -1 if that has not been collected.
+         */
+        public long getDistinctPrefixCount(int prefixLength) {
+            if (distinctPrefixCounts == null ||
+                    prefixLength < 1 ||
+                    prefixLength > distinctPrefixCounts.length) {
+                return -1;
+            }
+            return distinctPrefixCounts[prefixLength - 1];
+        }
+    }
+
+    public static class ColumnEstimates {
+        public long distinctCount = -1;
+        public long nullCount = 0;
+        public EquiDepthHistogram histogram = null;
     }
 
     HashMap<String, TableEstimates> tables = new HashMap<String, TableEstimates>();
@@ -36,4 +92,90 @@ public class DatabaseEstimates {
 
         return tables.get(tableName);
     }
+
+    /**
+     * @return true if every one of the tables has estimates derived from collected
+     * statistics, so their row counts can be compared with each other.
+     */
+    public boolean hasStatistics(Collection<String> tableNames) {
+        if (tableNames.isEmpty()) {
+            return false;
+        }
+        for (String tableName : tableNames) {
+            TableEstimates est = tables.get(tableName);
+            if (est == null || ! est.fromStatistics) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Build estimates from value distribution statistics collected by @Analyze.
+     * Tables without collected statistics keep the default estimates.
+     */
+    public static DatabaseEstimates fromCollectedStatistics(Collection<CollectedTableStatistics> collected) {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        for (CollectedTableStatistics stats : collected) {
+            stats.applyTo(estimates.getEstimatesForTable(stats.getTableName()));
+        }
+        return estimates;
+    }
+
+    /**
+     * Carry these estimates over to an updated catalog. The estimates of a table
+     * are kept only if its columns are unchanged, and those of an index only if
+     * the index is unchanged too. Anything else goes back to the defaults until
+     * the next @Analyze.
+     *
+     * @param before    catalog database the estimates were collected against
+     * @param after     catalog database being installed
+     */
+    public DatabaseEstimates retainUnchanged(Database before, Database after) {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        for (Map.Entry<String, TableEstimates> e : tables.entrySet()) {
+            Table oldTable = before.getTables().getIgnoreCase(e.getKey());
+            Table newTable = after.getTables().getIgnoreCase(e.getKey());
+            if (oldTable == null || newTable == null ||
+                    ! describeColumns(oldTable).equals(describeColumns(newTable))) {
+                continue;
+            }
+            TableEstimates oldEst = e.getValue();
+            TableEstimates newEst = estimates.getEstimatesForTable(e.getKey());
+            newEst.maxTuples = oldEst.maxTuples;
+            newEst.minTuples = oldEst.minTuples;
+            newEst.valueHints.addAll(oldEst.valueHints);
+            newEst.fromStatistics = oldEst.fromStatistics;
+            newEst.columns.putAll(oldEst.columns);
+            for (Map.Entry<String, IndexEstimates> ie : oldEst.indexes.entrySet()) {
+                Index oldIndex = oldTable.getIndexes().getIgnoreCase(ie.getKey());
+                Index newIndex = newTable.getIndexes().getIgnoreCase(ie.getKey());
+                if (oldIndex != null && newIndex != null &&
+                        describeIndex(oldIndex).equals(describeIndex(newIndex))) {
+                    newEst.indexes.put(ie.getKey(), ie.getValue());
+                }
+            }
+        }
+        return estimates;
+    }
+
+    private static String describeColumns(Table table) {
+        StringBuilder sb = new StringBuilder();
+        for (Column column : CatalogUtil.getSortedCatalogItems(table.getColumns(), "index")) {
+            sb.append(column.getName()).append(':').append(column.getType())
+              .append(':').append(column.getSize()).append(',');
+        }
+        return sb.toString();
+    }
+
+    private static String describeIndex(Index index) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(index.getType()).append(':').append(index.getUnique()).append(':');
+        for (ColumnRef ref : CatalogUtil.getSortedCatalogItems(index.getColumns(), "index")) {
+            sb.append(ref.getColumn().getName()).append(',');
+        }
+        sb.append(':').append(index.getExpressionsjson());
+        sb.append(':').append(index.getPredicatejson());
+        return sb.toString();
+    }
 }
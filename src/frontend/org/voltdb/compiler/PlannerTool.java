@@ -17,7 +17,9 @@
 
 package org.voltdb.compiler;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.hsqldb_voltpatches.HSQLInterface;
 import org.hsqldb_voltpatches.HSQLInterface.HSQLParseException;
@@ -44,6 +46,10 @@ import org.voltdb.utils.Encoder;
 /**
  * Planner tool accepts an already compiled VoltDB catalog and then
  * interactively accept SQL and outputs plans on standard out.
+ *
+ * Statements may be planned by several threads at once. A HSQL session can
+ * only parse one statement at a time, so each planning borrows a session
+ * loaded with the schema and more are loaded when all of them are in use.
  */
 public class PlannerTool {
     private static final VoltLogger hostLog = new VoltLogger("HOST");
@@ -51,10 +57,13 @@ public class PlannerTool {
 
     private final Database m_database;
     private final Cluster m_cluster;
-    private final HSQLInterface m_hsql;
+    private final List<String> m_ddl = new ArrayList<String>();
+    private final ConcurrentLinkedQueue<HSQLInterface> m_idleHsql = new ConcurrentLinkedQueue<HSQLInterface>();
     private final byte[] m_catalogHash;
     private final AdHocCompilerCache m_cache;
-    private static PlannerStatsCollector m_plannerStats;
+    private static volatile PlannerStatsCollector m_plannerStats;
+    // replaced wholesale whenever fresh table statistics arrive
+    private volatile DatabaseEstimates m_estimates = new DatabaseEstimates();
 
     private static final int AD_HOC_JOINED_TABLE_LIMIT = 5;
 
@@ -68,8 +77,6 @@ public class PlannerTool {
         m_catalogHash = catalogHash;
         m_cache = AdHocCompilerCache.getCacheForCatalogHash(catalogHash);
 
-        // LOAD HSQL
-        m_hsql = HSQLInterface.loadHsqldb();
         String binDDL = m_database.getSchema();
         String ddl = Encoder.decodeBase64AndDecompress(binDDL);
         String[] commands = ddl.split("\n");
@@ -78,16 +85,11 @@ public class PlannerTool {
             decoded_cmd = decoded_cmd.trim();
             if (decoded_cmd.length() == 0)
                 continue;
-            try {
-                m_hsql.runDDLCommand(decoded_cmd);
-            }
-            catch (HSQLParseException e) {
-                // need a good error message here
-                throw new RuntimeException("Error creating hsql: " + e.getMessage() + " in DDL statement: " + decoded_cmd);
-            }
+            m_ddl.add(decoded_cmd);
         }
 
-        hostLog.debug("hsql loaded");
+        // LOAD HSQL
+        m_idleHsql.offer(loadHsql());
 
         // Create and register a singleton planner stats collector, if this is the first time.
         if (m_plannerStats == null) {
@@ -104,6 +106,52 @@ public class PlannerTool {
         }
     }
 
+    /**
+     * @return the statistics of ad hoc planning, null if there is no stats agent
+     */
+    static PlannerStatsCollector getAdHocPlannerStats() {
+        return m_plannerStats;
+    }
+
+    private HSQLInterface loadHsql() {
+        HSQLInterface hsql = HSQLInterface.loadHsqldb();
+        for (String decoded_cmd : m_ddl) {
+            try {
+                hsql.runDDLCommand(decoded_cmd);
+            }
+            catch (HSQLParseException e) {
+                // need a good error message here
+                throw new RuntimeException("Error creating hsql: " + e.getMessage() + " in DDL statement: " + decoded_cmd);
+            }
+        }
+
+        hostLog.debug("hsql loaded");
+        return hsql;
+    }
+
+    private HSQLInterface borrowHsql() {
+        HSQLInterface hsql = m_idleHsql.poll();
+        return hsql != null ? hsql : loadHsql();
+    }
+
+    private void returnHsql(HSQLInterface hsql) {
+        m_idleHsql.offer(hsql);
+    }
+
+    /**
+     * Replace the estimates used to cost ad hoc plans. Cached plans were chosen
+     * using the old estimates, so the plan cache is flushed as well.
+     */
+    public void updateEstimates(DatabaseEstimates estimates) {
+        assert(estimates != null);
+        m_estimates = estimates;
+        m_cache.clear();
+    }
+
+    public DatabaseEstimates getEstimates() {
+        return m_estimates;
+    }
+
     public AdHocPlannedStatement planSqlForTest(String sqlIn) {
         StatementPartitioning infer = StatementPartitioning.inferPartitioning();
         return planSql(sqlIn, infer, false, null);
@@ -116,12 +164,13 @@ public class PlannerTool {
     /**
      * Stripped down compile that is ONLY used to plan default procedures.
      */
-    public synchronized CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
+    public CompiledPlan planSqlCore(String sql, StatementPartitioning partitioning) {
         TrivialCostModel costModel = new TrivialCostModel();
-        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates estimates = m_estimates;
+        final HSQLInterface hsql = borrowHsql();
         QueryPlanner planner = new QueryPlanner(
             sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-            partitioning, m_hsql, estimates, !VoltCompiler.DEBUG_MODE,
+            partitioning, hsql, estimates, !VoltCompiler.DEBUG_MODE,
             AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
 
         CompiledPlan plan = null;
@@ -143,6 +192,9 @@ public class PlannerTool {
             }
             throw new RuntimeException("Error compiling query: " + e.toString() + loggedMsg, e);
         }
+        finally {
+            returnHsql(hsql);
+        }
 
         if (plan == null) {
             throw new RuntimeException("Null plan received in PlannerTool.planSql");
@@ -151,7 +203,7 @@ public class PlannerTool {
         return plan;
     }
 
-    synchronized AdHocPlannedStatement planSql(String sqlIn, StatementPartitioning partitioning,
+    AdHocPlannedStatement planSql(String sqlIn, StatementPartitioning partitioning,
             boolean isExplainMode, final Object[] userParams) {
 
         CacheUse cacheUse = CacheUse.FAIL;
@@ -160,6 +212,7 @@ public class PlannerTool {
         }
         boolean hasUserQuestionMark = false;
         boolean wrongNumberParameters = false;
+        HSQLInterface hsql = null;
         try {
             if ((sqlIn == null) || (sqlIn.length() == 0)) {
                 throw new RuntimeException("Can't plan empty or null SQL.");
@@ -194,10 +247,11 @@ public class PlannerTool {
             //////////////////////
 
             TrivialCostModel costModel = new TrivialCostModel();
-            DatabaseEstimates estimates = new DatabaseEstimates();
+            DatabaseEstimates estimates = m_estimates;
+            hsql = borrowHsql();
             QueryPlanner planner = new QueryPlanner(
                     sql, "PlannerTool", "PlannerToolProc", m_cluster, m_database,
-                    partitioning, m_hsql, estimates, !VoltCompiler.DEBUG_MODE,
+                    partitioning, hsql, estimates, !VoltCompiler.DEBUG_MODE,
                     AD_HOC_JOINED_TABLE_LIMIT, costModel, null, null, DeterminismMode.FASTER);
 
             CompiledPlan plan = null;
@@ -311,8 +365,12 @@ public class PlannerTool {
             return ahps;
         }
         finally {
+            if (hsql != null) {
+                returnHsql(hsql);
+            }
             if (m_plannerStats != null) {
                 m_plannerStats.endStatsCollection(m_cache.getLiteralCacheSize(), m_cache.getCoreCacheSize(), cacheUse, -1);
+                m_plannerStats.updateCacheEvictions(m_cache, m_cache.getEvictions(), m_cache.getRejections());
             }
         }
     }
@@ -0,0 +1,323 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.compiler;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded LRU map for the ad hoc plan caches, split into shards that each
+ * have their own lock so lookups on different threads rarely wait for each
+ * other. Every shard gets an equal part of the entry and memory budgets.
+ *
+ * A full shard only admits a new entry if it was looked up more often than
+ * the least recently used entry it would evict (TinyLFU). Lookup counts are
+ * estimated by a count-min sketch per shard whose counters are halved after
+ * every ten lookups per entry the shard may hold, so entries that were
+ * popular a while ago don't keep their place forever. A query that is run
+ * once therefore can't push a frequently used plan out of the cache.
+ */
+class ShardedPlanCache<K, V> {
+
+    interface Weigher<V> {
+        /**
+         * @return approximate size of the value in bytes
+         */
+        int weigh(V value);
+    }
+
+    // four bit counters, like the TinyLFU paper
+    private static final int MAX_FREQUENCY = 15;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int[] SKETCH_SEEDS = { 0x97cb3127, 0x5c6b2e4b, 0x7f4a7c15, 0x165667b1 };
+
+    /**
+     * Count-min sketch of how often the keys of a shard are looked up.
+     */
+    static class FrequencySketch {
+        private final int[][] m_counters = new int[SKETCH_DEPTH][];
+        private final int m_mask;
+        private final int m_sampleSize;
+        private int m_additions = 0;
+
+        FrequencySketch(int maxEntries) {
+            int width = Integer.highestOneBit(Math.max(16, maxEntries) * 2 - 1);
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                m_counters[i] = new int[width];
+            }
+            m_mask = width - 1;
+            m_sampleSize = 10 * Math.max(16, maxEntries);
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SKETCH_SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & m_mask;
+        }
+
+        void increment(Object key) {
+            final int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                final int idx = index(hash, i);
+                if (m_counters[i][idx] < MAX_FREQUENCY) {
+                    m_counters[i][idx]++;
+                    added = true;
+                }
+            }
+            if (added && ++m_additions >= m_sampleSize) {
+                age();
+            }
+        }
+
+        int frequency(Object key) {
+            final int hash = key.hashCode();
+            int frequency = MAX_FREQUENCY;
+            for (int i = 0; i < SKETCH_DEPTH; i++) {
+                frequency = Math.min(frequency, m_counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void age() {
+            for (int[] row : m_counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            m_additions /= 2;
+        }
+
+        void clear() {
+            for (int[] row : m_counters) {
+                Arrays.fill(row, 0);
+            }
+            m_additions = 0;
+        }
+    }
+
+    // counters kept by each shard
+    private static final int HITS = 0;
+    private static final int MISSES = 1;
+
+    private static class Shard<K, V> {
+        final ReentrantLock m_lock = new ReentrantLock();
+        // access ordered, the eldest entry is the least recently used one
+        final LinkedHashMap<K, V> m_map;
+        final FrequencySketch m_sketch;
+        final int m_maxEntries;
+        final long m_maxBytes;
+        long m_bytes = 0;
+        final long[] m_counters = new long[2];
+
+        Shard(int maxEntries, long maxBytes) {
+            m_maxEntries = maxEntries;
+            m_maxBytes = maxBytes;
+            m_map = new LinkedHashMap<K, V>(maxEntries * 2, .75f, true);
+            m_sketch = new FrequencySketch(maxEntries);
+        }
+
+        boolean hasRoom(int entries, long bytes) {
+            return m_map.size() + entries <= m_maxEntries && m_bytes + bytes <= m_maxBytes;
+        }
+    }
+
+    private final Shard<K, V>[] m_shards;
+    private final Weigher<V> m_weigher;
+    // updated while holding a shard lock, read without one
+    private final AtomicInteger m_size = new AtomicInteger();
+    private final AtomicLong m_evictions = new AtomicLong();
+    private final AtomicLong m_rejections = new AtomicLong();
+
+    /**
+     * @param maxEntries  maximum number of entries of the whole cache
+     * @param maxBytes    maximum weight of the whole cache
+     * @param shards      number of shards, rounded up to a power of two
+     */
+    ShardedPlanCache(int maxEntries, long maxBytes, int shards, Weigher<V> weigher) {
+        int count = Integer.highestOneBit(Math.max(1, shards) * 2 - 1);
+        // don't split the cache into shards too small to hold anything
+        while (count > 1 && maxEntries / count < 4) {
+            count /= 2;
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Shard<K, V>[] shardArray = new Shard[count];
+        m_shards = shardArray;
+        for (int i = 0; i < count; i++) {
+            m_shards[i] = new Shard<K, V>(Math.max(1, maxEntries / count), Math.max(1, maxBytes / count));
+        }
+        m_weigher = weigher;
+    }
+
+    private Shard<K, V> shardFor(Object key) {
+        int h = key.hashCode() * 0x9e3779b9;
+        return m_shards[(h ^ (h >>> 16)) & (m_shards.length - 1)];
+    }
+
+    /**
+     * Look up a value, counting the lookup towards the admission of the key.
+     */
+    V get(K key) {
+        final Shard<K, V> shard = shardFor(key);
+        shard.m_lock.lock();
+        try {
+            shard.m_sketch.increment(key);
+            final V value = shard.m_map.get(key);
+            if (value != null) {
+                shard.m_counters[HITS]++;
+            } else {
+                shard.m_counters[MISSES]++;
+            }
+            return value;
+        } finally {
+            shard.m_lock.unlock();
+        }
+    }
+
+    /**
+     * Look up a value without counting it as a use of the key.
+     */
+    V peek(K key) {
+        final Shard<K, V> shard = shardFor(key);
+        shard.m_lock.lock();
+        try {
+            return shard.m_map.get(key);
+        } finally {
+            shard.m_lock.unlock();
+        }
+    }
+
+    /**
+     * Insert or replace a value. A new key is only admitted to a full shard if
+     * it was looked up more often than the entry it would evict. A value heavier
+     * than a whole shard is rejected and leaves the cached value of the key alone.
+     *
+     * @return true if the value is in the cache
+     */
+    boolean put(K key, V value) {
+        final int weight = m_weigher.weigh(value);
+        final Shard<K, V> shard = shardFor(key);
+        if (weight > shard.m_maxBytes) {
+            m_rejections.incrementAndGet();
+            return false;
+        }
+        shard.m_lock.lock();
+        try {
+            final V previous = shard.m_map.get(key);
+            if (previous != null) {
+                shard.m_bytes -= m_weigher.weigh(previous);
+                shard.m_map.remove(key);
+                m_size.decrementAndGet();
+            }
+            if (previous == null && !shard.hasRoom(1, weight)) {
+                final Map.Entry<K, V> victim = shard.m_map.entrySet().iterator().next();
+                if (shard.m_sketch.frequency(key) <= shard.m_sketch.frequency(victim.getKey())) {
+                    m_rejections.incrementAndGet();
+                    return false;
+                }
+            }
+            final Iterator<Map.Entry<K, V>> iter = shard.m_map.entrySet().iterator();
+            while (!shard.hasRoom(1, weight) && iter.hasNext()) {
+                shard.m_bytes -= m_weigher.weigh(iter.next().getValue());
+                iter.remove();
+                m_evictions.incrementAndGet();
+                m_size.decrementAndGet();
+            }
+            shard.m_map.put(key, value);
+            shard.m_bytes += weight;
+            m_size.incrementAndGet();
+            return true;
+        } finally {
+            shard.m_lock.unlock();
+        }
+    }
+
+    void clear() {
+        for (Shard<K, V> shard : m_shards) {
+            shard.m_lock.lock();
+            try {
+                m_size.addAndGet(-shard.m_map.size());
+                shard.m_map.clear();
+                shard.m_sketch.clear();
+                shard.m_bytes = 0;
+            } finally {
+                shard.m_lock.unlock();
+            }
+        }
+    }
+
+    int size() {
+        return m_size.get();
+    }
+
+    long weightedSize() {
+        long bytes = 0;
+        for (Shard<K, V> shard : m_shards) {
+            shard.m_lock.lock();
+            try {
+                bytes += shard.m_bytes;
+            } finally {
+                shard.m_lock.unlock();
+            }
+        }
+        return bytes;
+    }
+
+    int shardCount() {
+        return m_shards.length;
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (Shard<K, V> shard : m_shards) {
+            shard.m_lock.lock();
+            try {
+                sum += shard.m_counters[counter];
+            } finally {
+                shard.m_lock.unlock();
+            }
+        }
+        return sum;
+    }
+
+    long hits() {
+        return sum(HITS);
+    }
+
+    long misses() {
+        return sum(MISSES);
+    }
+
+    /**
+     * @return entries removed to make room for new ones
+     */
+    long evictions() {
+        return m_evictions.get();
+    }
+
+    /**
+     * @return new entries not admitted because they were looked up less often than the entry they would replace
+     */
+    long rejections() {
+        return m_rejections.get();
+    }
+}
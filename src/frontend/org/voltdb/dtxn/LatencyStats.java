@@ -72,6 +72,11 @@ public class LatencyStats extends SiteStatsSource {
     public static AbstractHistogram constructHistogram(boolean threadSafe) {
         final long highestTrackableValue = 60L * 60L * 1000000L;
         final int numberOfSignificantValueDigits = 3;
+        return constructHistogram(highestTrackableValue, numberOfSignificantValueDigits, threadSafe);
+    }
+
+    public static AbstractHistogram constructHistogram(long highestTrackableValue,
+            int numberOfSignificantValueDigits, boolean threadSafe) {
         if (threadSafe) {
             return new AtomicHistogram( highestTrackableValue, numberOfSignificantValueDigits);
         } else {
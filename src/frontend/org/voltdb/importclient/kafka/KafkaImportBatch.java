@@ -0,0 +1,101 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.importclient.kafka;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows formatted from a run of consecutive messages of one topic partition, loaded into
+ * the database together. A batch covers every message offered to it, including those that
+ * failed to format, so committing it moves the commit point past all of them at once.
+ */
+final class KafkaImportBatch
+{
+    private final int m_maxRows;
+    private final long m_lingerMs;
+    private List<Object[]> m_rows;
+    //Next offsets of the first and last messages in the batch, -1 while empty.
+    private long m_firstOffset = -1L;
+    private long m_lastOffset = -1L;
+    private long m_startedMs;
+
+    KafkaImportBatch(int maxRows, long lingerMs)
+    {
+        m_maxRows = maxRows;
+        m_lingerMs = lingerMs;
+        m_rows = new ArrayList<Object[]>(maxRows);
+    }
+
+    /**
+     * Add a message to the batch.
+     *
+     * @param nextOffset the offset following the message
+     * @param row the formatted row, or null if the message could not be formatted
+     * @param nowMs the current time
+     */
+    void offer(long nextOffset, Object[] row, long nowMs)
+    {
+        if (m_firstOffset < 0) {
+            m_firstOffset = nextOffset;
+            m_startedMs = nowMs;
+        }
+        m_lastOffset = nextOffset;
+        if (row != null) {
+            m_rows.add(row);
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return m_firstOffset < 0;
+    }
+
+    /**
+     * @return true if the batch is full or has waited long enough for more rows
+     */
+    boolean isReady(long nowMs)
+    {
+        return !isEmpty() && (m_rows.size() >= m_maxRows || nowMs - m_startedMs >= m_lingerMs);
+    }
+
+    long getFirstOffset()
+    {
+        return m_firstOffset;
+    }
+
+    long getLastOffset()
+    {
+        return m_lastOffset;
+    }
+
+    List<Object[]> getRows()
+    {
+        return m_rows;
+    }
+
+    /**
+     * Start a new batch. The rows of the previous one are handed off for loading, so they
+     * are not reused.
+     */
+    void clear()
+    {
+        m_rows = new ArrayList<Object[]>(m_maxRows);
+        m_firstOffset = m_lastOffset = -1L;
+    }
+}
@@ -54,6 +54,10 @@ public class KafkaStreamImporterConfig implements ImporterConfig
     // We don't allow period in topic names because we construct URIs using it
     private static final Pattern legalTopicNamesPattern = Pattern.compile("[a-zA-Z0-9\\_-]+");
     private static final int topicMaxNameLength = 255;
+    // Default procedures that a batched importer can turn into bulk loads of their table
+    private static final Pattern batchProcedurePattern = Pattern.compile(".+\\.(insert|upsert)");
+    // How many offsets may be outstanding past the last committed one before the fetcher waits
+    static final int GAP_LEAD = Integer.getInteger("KAFKA_IMPORT_GAP_LEAD", 32_768);
 
     private final URI m_uri;
     private final List<HostAndPort> m_brokers;
@@ -62,12 +66,14 @@ public class KafkaStreamImporterConfig implements ImporterConfig
     private final int m_fetchSize;
     private final int m_soTimeout;
     private final String m_procedure;
+    private final int m_batchSize;
+    private final int m_batchLingerMs;
     private final int m_partition;
     private HostAndPort m_partitionLeader;
     private final FormatterBuilder m_formatterBuilder;
 
     private KafkaStreamImporterConfig(URI uri, List<HostAndPort> brokers, String topic, int partition, HostAndPort partitionLeader,
-            String groupId, int fetchSize, int soTimeout, String procedure,
+            String groupId, int fetchSize, int soTimeout, String procedure, int batchSize, int batchLingerMs,
             FormatterBuilder formatterBuilder)
     {
         m_uri = uri;
@@ -79,6 +85,8 @@ public class KafkaStreamImporterConfig implements ImporterConfig
         m_fetchSize = fetchSize;
         m_soTimeout = soTimeout;
         m_procedure = procedure;
+        m_batchSize = batchSize;
+        m_batchLingerMs = batchLingerMs;
         m_formatterBuilder = formatterBuilder;
     }
 
@@ -119,6 +127,51 @@ public class KafkaStreamImporterConfig implements ImporterConfig
     }
 
 
+    /**
+     * @return the number of rows loaded per batch, batching is off if this is 1 or less
+     */
+    public int getBatchSize()
+    {
+        return m_batchSize;
+    }
+
+
+    /**
+     * @return how long a partially filled batch may wait for more rows before it is loaded
+     */
+    public int getBatchLingerMs()
+    {
+        return m_batchLingerMs;
+    }
+
+
+    /**
+     * @return true if rows are loaded in batches into the table of the default procedure
+     */
+    public boolean isBatched()
+    {
+        return m_batchSize > 1;
+    }
+
+
+    /**
+     * @return the table a batched importer loads into
+     */
+    public String getBatchTable()
+    {
+        return m_procedure.substring(0, m_procedure.lastIndexOf('.'));
+    }
+
+
+    /**
+     * @return true if a batched importer upserts rather than inserts its rows
+     */
+    public boolean isBatchUpsert()
+    {
+        return m_procedure.endsWith(".upsert");
+    }
+
+
     public int getPartition()
     {
         return m_partition;
@@ -176,6 +229,22 @@ public class KafkaStreamImporterConfig implements ImporterConfig
         //These are defaults picked up from kafka we save them so that they are passed around.
         int fetchSize = Integer.parseInt(props.getProperty("fetch.message.max.bytes", "65536"));
         int soTimeout = Integer.parseInt(props.getProperty("socket.timeout.ms", "30000"));
+        //Batched loading goes through the bulk load path, which only knows how to insert or upsert table rows.
+        int batchSize = Integer.parseInt(props.getProperty("batch.size", "1"));
+        int batchLingerMs = Integer.parseInt(props.getProperty("batch.linger.ms", "10"));
+        if (batchSize > 1 && !batchProcedurePattern.matcher(procedure).matches()) {
+            throw new IllegalArgumentException("batch.size requires the procedure to be a table's default insert or upsert procedure, "
+                    + "like TABLE.insert, not " + procedure);
+        }
+        //A batch commits all of its offsets at once, so the batch being loaded and the one being filled
+        //both have to fit in the gap tracker's lead or every fetch waits on the commit.
+        if (batchSize < 1 || batchSize > GAP_LEAD / 2) {
+            throw new IllegalArgumentException("batch.size must be between 1 and "
+                    + (GAP_LEAD / 2) + ", half of KAFKA_IMPORT_GAP_LEAD, not " + batchSize);
+        }
+        if (batchLingerMs < 0) {
+            throw new IllegalArgumentException("batch.linger.ms can not be negative");
+        }
 
         List<String> ttopicList = Arrays.asList(topics.split("\\s*,\\s*"));
         if (ttopicList == null || ttopicList.isEmpty()) {
@@ -192,7 +261,8 @@ public class KafkaStreamImporterConfig implements ImporterConfig
                 throw new IllegalArgumentException("topic name " + topic + " is illegal, contains a character other than ASCII alphanumerics, '_' and '-'");
             }
             try {
-                configs.putAll(getConfigsForPartitions(key, hapList, topic, groupId, procedure, soTimeout, fetchSize, formatterBuilder));
+                configs.putAll(getConfigsForPartitions(key, hapList, topic, groupId, procedure, soTimeout, fetchSize,
+                        batchSize, batchLingerMs, formatterBuilder));
             } catch(Exception e) {
                 m_logger.warn(String.format("Error trying to get partition information for topic [%s] on host [%s]", topic, hapList.get(0).getHost()), e);
             }
@@ -216,7 +286,8 @@ public class KafkaStreamImporterConfig implements ImporterConfig
     }
 
     private static Map<URI, KafkaStreamImporterConfig> getConfigsForPartitions(String key, List<HostAndPort> brokerList,
-            final String topic, String groupId, String procedure, int soTimeout, int fetchSize, FormatterBuilder formatterBuilder)
+            final String topic, String groupId, String procedure, int soTimeout, int fetchSize,
+            int batchSize, int batchLingerMs, FormatterBuilder formatterBuilder)
     {
         SimpleConsumer consumer = null;
         Map<URI, KafkaStreamImporterConfig> configs = new HashMap<>();
@@ -258,7 +329,7 @@ public class KafkaStreamImporterConfig implements ImporterConfig
                         }
                         KafkaStreamImporterConfig config = new KafkaStreamImporterConfig(uri, brokerList, topic,
                                 part.partitionId(), new HostAndPort(leader.host(), leader.port()),
-                                groupId, fetchSize, soTimeout, procedure, formatterBuilder);
+                                groupId, fetchSize, soTimeout, procedure, batchSize, batchLingerMs, formatterBuilder);
                         configs.put(uri, config);
                     }
                 }
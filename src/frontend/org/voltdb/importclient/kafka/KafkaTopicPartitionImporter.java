@@ -78,7 +78,7 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
     private final AtomicReference<BlockingChannel> m_offsetManager = new AtomicReference<BlockingChannel>();
     private SimpleConsumer m_consumer = null;
     private final TopicAndPartition m_topicAndPartition;
-    private final Gap m_gapTracker = new Gap(Integer.getInteger("KAFKA_IMPORT_GAP_LEAD", 32_768));
+    private final Gap m_gapTracker = new Gap(KafkaStreamImporterConfig.GAP_LEAD);
     private final KafkaStreamImporterConfig m_config;
     private HostAndPort m_coordinator;
 
@@ -359,6 +359,9 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
         long submitCount = 0;
         AtomicLong cbcnt = new AtomicLong(0);
         Formatter<String> formatter = (Formatter<String>) m_config.getFormatterBuilder().create();
+        //Rows waiting to be loaded together, only when batching is configured.
+        final KafkaImportBatch batch = m_config.isBatched()
+                ? new KafkaImportBatch(m_config.getBatchSize(), m_config.getBatchLingerMs()) : null;
         try {
             //Start with the starting leader.
             resetLeader();
@@ -380,6 +383,10 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
 
                     m_gapTracker.resetTo(lastOffset);
                     m_lastCommittedOffset = lastOffset;
+                    if (batch != null) {
+                        //Messages in a pending batch will be fetched again from the new offset.
+                        batch.clear();
+                    }
 
                     m_currentOffset.set(lastOffset);
                     if (m_currentOffset.get() < 0) {
@@ -450,20 +457,33 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                     ByteBuffer payload = messageAndOffset.message().payload();
 
                     String line = new String(payload.array(),payload.arrayOffset(),payload.limit(),StandardCharsets.UTF_8);
-                    try{
-                        Invocation invocation = new Invocation(m_config.getProcedure(), formatter.transform(line));
-                        TopicPartitionInvocationCallback cb = new TopicPartitionInvocationCallback(
-                                messageAndOffset.nextOffset(), cbcnt, m_gapTracker, m_dead,
-                                invocation);
-                         if (!callProcedure(invocation, cb)) {
-                              if (isDebugEnabled()) {
-                                 debug(null, "Failed to process Invocation possibly bad data: " + line);
-                               }
-                               m_gapTracker.commit(currentOffset);
-                         }
-                     } catch (FormatException e){
-                        rateLimitedLog(Level.WARN, e, "Failed to tranform data: %s" ,line);
-                        m_gapTracker.commit(currentOffset);
+                    if (batch != null) {
+                        Object[] row = null;
+                        try {
+                            row = formatter.transform(line);
+                        } catch (FormatException e) {
+                            rateLimitedLog(Level.WARN, e, "Failed to tranform data: %s" ,line);
+                        }
+                        batch.offer(messageAndOffset.nextOffset(), row, System.currentTimeMillis());
+                        if (batch.isReady(System.currentTimeMillis())) {
+                            loadBatch(batch, cbcnt);
+                        }
+                    } else {
+                        try {
+                            Invocation invocation = new Invocation(m_config.getProcedure(), formatter.transform(line));
+                            TopicPartitionInvocationCallback cb = new TopicPartitionInvocationCallback(
+                                    messageAndOffset.nextOffset(), cbcnt, m_gapTracker, m_dead,
+                                    invocation);
+                            if (!callProcedure(invocation, cb)) {
+                                if (isDebugEnabled()) {
+                                    debug(null, "Failed to process Invocation possibly bad data: " + line);
+                                }
+                                m_gapTracker.commit(currentOffset);
+                            }
+                        } catch (FormatException e){
+                            rateLimitedLog(Level.WARN, e, "Failed to tranform data: %s" ,line);
+                            m_gapTracker.commit(currentOffset);
+                        }
                     }
                     submitCount++;
                     m_currentOffset.set(messageAndOffset.nextOffset());
@@ -474,6 +494,10 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
                 if (!shouldRun()) {
                     break;
                 }
+                //Load a partial batch that has waited long enough.
+                if (batch != null && batch.isReady(System.currentTimeMillis())) {
+                    loadBatch(batch, cbcnt);
+                }
 
                 //wait to fetch more if we read nothing last time.
                 if (currentFetchCount == 0) {
@@ -503,6 +527,22 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
 
     }
 
+    //Load the rows of the batch in one go, its offsets are committed together once the load completes.
+    private void loadBatch(KafkaImportBatch batch, AtomicLong cbcnt) {
+        final long first = batch.getFirstOffset();
+        final long last = batch.getLastOffset();
+        TopicPartitionBatchCallback cb = new TopicPartitionBatchCallback(first, last, cbcnt, m_gapTracker, m_dead);
+        if (batch.getRows().isEmpty()) {
+            m_gapTracker.commit(first, last);
+        } else if (!loadTable(m_config.getBatchTable(), m_config.isBatchUpsert(), batch.getRows(), cb)) {
+            if (isDebugEnabled()) {
+                debug(null, "Failed to load batch of offsets %d to %d into %s", first, last, m_config.getBatchTable());
+            }
+            m_gapTracker.commit(first, last);
+        }
+        batch.clear();
+    }
+
     public boolean commitOffset() {
         final int correlationId = m_topicAndPartition.partition();
         final short version = 1;
@@ -624,6 +664,14 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
             }
             return c;
         }
+
+        //Commit every offset from first to last, as one batch was loaded for them.
+        synchronized long commit(long first, long last) {
+            for (long offset = first; offset <= last; ++offset) {
+                commit(offset);
+            }
+            return c;
+        }
     }
 
     @Override
@@ -676,4 +724,37 @@ public class KafkaTopicPartitionImporter extends AbstractImporter
             return m_invocation;
         }
     }
+
+    //Callback for each batch we have submitted, covering a run of offsets.
+    private final static class TopicPartitionBatchCallback implements ProcedureCallback
+    {
+        private final long m_firstOffset;
+        private final long m_lastOffset;
+        private final AtomicLong m_cbcnt;
+        private final Gap m_tracker;
+        private final AtomicBoolean m_dontCommit;
+
+        public TopicPartitionBatchCallback(
+                final long firstOffset,
+                final long lastOffset,
+                final AtomicLong cbcnt,
+                final Gap tracker,
+                final AtomicBoolean dontCommit) {
+            m_firstOffset = firstOffset;
+            m_lastOffset = lastOffset;
+            m_cbcnt = cbcnt;
+            m_tracker = tracker;
+            m_dontCommit = dontCommit;
+            m_tracker.submit(m_lastOffset);
+        }
+
+        @Override
+        public void clientCallback(ClientResponse response) throws Exception {
+
+            m_cbcnt.incrementAndGet();
+            if (!m_dontCommit.get() && response.getStatus() != ClientResponseImpl.SERVER_UNAVAILABLE) {
+                m_tracker.commit(m_firstOffset, m_lastOffset);
+            }
+        }
+    }
 }
@@ -18,6 +18,7 @@
 package org.voltdb.importer;
 
 import java.net.URI;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.voltcore.logging.Level;
@@ -113,6 +114,33 @@ public abstract class AbstractImporter
         }
     }
 
+    /**
+     * This should be used by importer implementations to load a batch of rows into a table
+     * with as few transactions as possible. The rows are grouped by destination partition
+     * and each group is loaded in one transaction. A group that fails is retried a row at
+     * a time, so the callback gets one status for the batch once all its rows are processed.
+     *
+     * @param tableName the name of the table to load into
+     * @param upsert true to upsert the rows, false to insert them
+     * @param rows the rows, each with the values of all the table's columns in order
+     * @param callback the callback that will receive the status of the batch
+     * @return returns true if the batch was queued successfully; false otherwise
+     */
+    protected final boolean loadTable(String tableName, boolean upsert, List<Object[]> rows, ProcedureCallback callback)
+    {
+        final String procName = tableName + (upsert ? ".upsert" : ".insert");
+        try {
+            boolean result = m_importServerAdapter.loadTable(this, callback, tableName, upsert, rows);
+            reportStat(result, procName);
+            applyBackPressureAsNeeded();
+            return result;
+        } catch (Exception ex) {
+            rateLimitedLog(Level.ERROR, ex, "%s: Error trying to import", getName());
+            reportFailureStat(procName);
+            return false;
+        }
+    }
+
     private void applyBackPressureAsNeeded()
     {
         int count = m_backPressureCount.get();
@@ -17,6 +17,8 @@
 
 package org.voltdb.importer;
 
+import java.util.List;
+
 import org.voltdb.client.ProcedureCallback;
 
 
@@ -52,6 +54,21 @@ public interface ImporterServerAdapter {
      */
     public boolean callProcedure(AbstractImporter importer, ProcedureCallback callback, String proc, Object... fieldList);
 
+    /**
+     * This is used by importers to load a batch of rows into a table. The server groups the
+     * rows by destination partition and loads each group in a single transaction.
+     *
+     * @param importer the calling importer instance. This may be used by the importer framework
+     * to report back pressure.
+     * @param callback the callback object that will receive one status for the whole batch
+     * @param tableName the name of the table to load into
+     * @param upsert true to upsert the rows, false to insert them
+     * @param rows the rows to load, each with the values of all the table's columns in order
+     * @return returns true if the batch was queued successfully; false otherwise.
+     */
+    public boolean loadTable(AbstractImporter importer, ProcedureCallback callback, String tableName,
+            boolean upsert, List<Object[]> rows);
+
     /**
      * This should be used by importers to report failure while trying to execute a procedure.
      *
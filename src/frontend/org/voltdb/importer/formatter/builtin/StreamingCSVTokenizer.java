@@ -0,0 +1,468 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.importer.formatter.builtin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.voltdb.importer.formatter.FormatException;
+
+/**
+ * A CSV tokenizer that splits a record in one pass over its UTF-8 bytes and converts the
+ * fields to numbers straight from those bytes, without a String per field or an array per
+ * record. Field contents are unquoted and unescaped into a scratch buffer that is reused
+ * for every record, so a tokenizer is meant to be owned by one thread and fed one record
+ * after another, either as a line or as a run of bytes holding many records.
+ *
+ * Separator, quote and escape characters must be ASCII. Unless it is the quote character,
+ * the escape character escapes a following quote, separator or escape character, inside or
+ * outside quotes. A doubled quote inside quotes stands for one quote. Fields containing NULL, \N or a custom null
+ * string are reported as null, unquoted empty fields as blank.
+ */
+public class StreamingCSVTokenizer {
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // Longest run of digits parsed as a long or a double mantissa without overflow or rounding
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final int MAX_EXACT_DOUBLE_DIGITS = 15;
+
+    private static final byte[] NULL_WORD = { 'N', 'U', 'L', 'L' };
+    private static final byte[] NULL_SIGIL = { '\\', 'N' };
+
+    private final byte m_separator;
+    private final byte m_quote;
+    private final byte m_escape;
+    private final boolean m_strictQuotes;
+    private boolean m_trimWhitespace = false;
+    private byte[] m_nullString = null;
+    private long m_columnSizeLimit = Long.MAX_VALUE;
+
+    // unescaped contents of the fields of the current record, back to back
+    private byte[] m_data = new byte[1024];
+    private int m_dataLength;
+    private int[] m_starts = new int[16];
+    private int[] m_lengths = new int[16];
+    private boolean[] m_quoted = new boolean[16];
+    private boolean[] m_padded = new boolean[16];
+    private int m_fieldCount;
+    private int m_recordLines;
+    // input for records given as Strings
+    private byte[] m_line = new byte[1024];
+    // result of the last successful parseLong()
+    private long m_long;
+
+    /**
+     * @param separator field separator
+     * @param quote quote character, or 0 for none
+     * @param escape escape character, or 0 for none
+     * @param strictQuotes reject fields that are not quoted
+     */
+    public StreamingCSVTokenizer(char separator, char quote, char escape, boolean strictQuotes) {
+        if (separator > 0x7f || quote > 0x7f || escape > 0x7f) {
+            throw new IllegalArgumentException("Separator, quote and escape characters must be ASCII");
+        }
+        m_separator = (byte) separator;
+        m_quote = (byte) quote;
+        m_escape = (byte) escape;
+        m_strictQuotes = strictQuotes;
+    }
+
+    /**
+     * Strip leading and trailing whitespace from every field.
+     */
+    public void setTrimWhitespace(boolean trim) {
+        m_trimWhitespace = trim;
+    }
+
+    /**
+     * Use the given string, instead of NULL and \N, to spell a null field. An empty string
+     * restores the defaults.
+     */
+    public void setNullString(String nullString) {
+        m_nullString = (nullString == null || nullString.isEmpty())
+                ? null : nullString.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void setColumnSizeLimit(long limit) {
+        m_columnSizeLimit = limit;
+    }
+
+    /**
+     * Tokenize a line holding one record.
+     *
+     * @return the number of fields
+     */
+    public int parseLine(String line) throws FormatException {
+        final int length = line.length();
+        if (m_line.length < length) {
+            m_line = new byte[Math.max(length, m_line.length * 2)];
+        }
+        // ASCII is copied as is, anything else goes through the encoder
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c > 0x7f) {
+                byte[] encoded = line.getBytes(StandardCharsets.UTF_8);
+                parseRecord(encoded, 0, encoded.length, true);
+                return m_fieldCount;
+            }
+            m_line[i] = (byte) c;
+        }
+        parseRecord(m_line, 0, length, true);
+        return m_fieldCount;
+    }
+
+    /**
+     * Tokenize the record starting at off. The record ends at an unquoted newline, or at end
+     * if endOfInput is set.
+     *
+     * @return the position following the record, or -1 if the record does not end before
+     * end and more input is needed
+     */
+    public int parseRecord(byte[] buf, int off, int end, boolean endOfInput) throws FormatException {
+        m_fieldCount = 0;
+        m_dataLength = 0;
+        m_recordLines = 0;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        boolean quoted = false;
+        int pos = off;
+        while (pos < end) {
+            final byte b = buf[pos];
+            if (b == m_escape && m_escape != 0 && m_escape != m_quote) {
+                if (pos + 1 == end && !endOfInput) {
+                    return -1;
+                }
+                if (pos + 1 < end && isEscapable(buf[pos + 1])) {
+                    append(buf[pos + 1], fieldStart);
+                    pos += 2;
+                    continue;
+                }
+            }
+            if (inQuotes) {
+                if (b == m_quote) {
+                    if (pos + 1 == end && !endOfInput) {
+                        // can not tell a closing quote from the first half of a doubled one
+                        return -1;
+                    }
+                    if (pos + 1 < end && buf[pos + 1] == m_quote) {
+                        append(m_quote, fieldStart);
+                        pos += 2;
+                        continue;
+                    }
+                    inQuotes = false;
+                } else {
+                    if (b == '\n') {
+                        m_recordLines++;
+                    }
+                    append(b, fieldStart);
+                }
+                pos++;
+                continue;
+            }
+            if (b == m_separator) {
+                endField(fieldStart, quoted);
+                fieldStart = m_dataLength;
+                quoted = false;
+            } else if (b == '\n') {
+                endField(fieldStart, quoted);
+                m_recordLines++;
+                return pos + 1;
+            } else if (b == '\r' && pos + 1 < end && buf[pos + 1] == '\n') {
+                endField(fieldStart, quoted);
+                m_recordLines++;
+                return pos + 2;
+            } else if (b == m_quote && m_quote != 0 && !quoted && isWhitespace(fieldStart, m_dataLength)) {
+                // an opening quote, whitespace before it is not part of the value
+                m_dataLength = fieldStart;
+                inQuotes = true;
+                quoted = true;
+            } else {
+                append(b, fieldStart);
+            }
+            pos++;
+        }
+        if (!endOfInput) {
+            return -1;
+        }
+        if (inQuotes) {
+            throw new FormatException("Unterminated quoted field in record ending at column %d", m_fieldCount + 1);
+        }
+        if (pos > off && buf[pos - 1] == '\r' && !quoted) {
+            // a final \r with no \n following it
+            m_dataLength = Math.max(fieldStart, m_dataLength - 1);
+        }
+        endField(fieldStart, quoted);
+        return end;
+    }
+
+    private boolean isEscapable(byte b) {
+        return b == m_quote || b == m_separator || b == m_escape;
+    }
+
+    private boolean isWhitespace(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (m_data[i] != ' ' && m_data[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(byte b, int fieldStart) {
+        if (m_dataLength == m_data.length) {
+            byte[] data = new byte[m_data.length * 2];
+            System.arraycopy(m_data, 0, data, 0, m_dataLength);
+            m_data = data;
+        }
+        m_data[m_dataLength++] = b;
+        if (m_dataLength - fieldStart > m_columnSizeLimit) {
+            throw new FormatException("Column %d exceeds the size limit of %d bytes", m_fieldCount + 1, m_columnSizeLimit);
+        }
+    }
+
+    private void endField(int start, boolean quoted) {
+        if (m_fieldCount == m_starts.length) {
+            final int capacity = m_fieldCount * 2;
+            m_starts = Arrays.copyOf(m_starts, capacity);
+            m_lengths = Arrays.copyOf(m_lengths, capacity);
+            m_quoted = Arrays.copyOf(m_quoted, capacity);
+            m_padded = Arrays.copyOf(m_padded, capacity);
+        }
+        int end = m_dataLength;
+        if (m_strictQuotes && !quoted && end > start) {
+            throw new FormatException("Column %d is not quoted while strict quotes are required", m_fieldCount + 1);
+        }
+        m_padded[m_fieldCount] = end > start && (m_data[start] == ' ' || m_data[end - 1] == ' ');
+        if (m_trimWhitespace) {
+            while (start < end && m_data[start] <= ' ') {
+                start++;
+            }
+            while (end > start && m_data[end - 1] <= ' ') {
+                end--;
+            }
+        }
+        m_starts[m_fieldCount] = start;
+        m_lengths[m_fieldCount] = end - start;
+        m_quoted[m_fieldCount] = quoted;
+        m_fieldCount++;
+    }
+
+    /**
+     * @return the number of fields in the last record
+     */
+    public int getFieldCount() {
+        return m_fieldCount;
+    }
+
+    /**
+     * @return the number of newlines in the last record, including its terminator
+     */
+    public int getRecordLines() {
+        return m_recordLines;
+    }
+
+    /**
+     * @return true if the field is unquoted and empty
+     */
+    public boolean isBlank(int field) {
+        return m_lengths[field] == 0 && !m_quoted[field];
+    }
+
+    /**
+     * @return true if the field, before any trimming, starts or ends with a space
+     */
+    public boolean isPadded(int field) {
+        return m_padded[field];
+    }
+
+    /**
+     * @return true if the field spells null
+     */
+    public boolean isNull(int field) {
+        if (m_nullString != null) {
+            return fieldEquals(field, m_nullString);
+        }
+        return fieldEquals(field, NULL_WORD) || fieldEquals(field, NULL_SIGIL);
+    }
+
+    private boolean fieldEquals(int field, byte[] value) {
+        final int length = m_lengths[field];
+        if (length != value.length) {
+            return false;
+        }
+        final int start = m_starts[field];
+        for (int i = 0; i < length; i++) {
+            if (m_data[start + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getString(int field) {
+        return new String(m_data, m_starts[field], m_lengths[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse the field as a plain decimal integer.
+     *
+     * @return false if the field is not one, or has too many digits to be parsed here
+     */
+    private boolean parseLong(int field) {
+        int pos = m_starts[field];
+        final int end = pos + m_lengths[field];
+        boolean negative = false;
+        if (pos < end && (m_data[pos] == '-' || m_data[pos] == '+')) {
+            negative = m_data[pos] == '-';
+            pos++;
+        }
+        final int digits = end - pos;
+        if (digits == 0 || digits > MAX_LONG_DIGITS) {
+            return false;
+        }
+        long value = 0;
+        for (; pos < end; pos++) {
+            final int digit = m_data[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            value = value * 10 + digit;
+        }
+        m_long = negative ? -value : value;
+        return true;
+    }
+
+    /**
+     * @return the field as a long
+     * @throws NumberFormatException if it is not an integer that fits a long
+     */
+    public long getLong(int field) {
+        if (parseLong(field)) {
+            return m_long;
+        }
+        return Long.parseLong(getString(field));
+    }
+
+    /**
+     * Parse the field as a double if it is a plain decimal number with few enough digits
+     * that the result is exact, the fast path of Clinger's algorithm.
+     *
+     * @return the value, or NaN if the field needs the general parser
+     */
+    private double parseExactDouble(int field) {
+        int pos = m_starts[field];
+        final int end = pos + m_lengths[field];
+        boolean negative = false;
+        if (pos < end && (m_data[pos] == '-' || m_data[pos] == '+')) {
+            negative = m_data[pos] == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; pos < end; pos++) {
+            final byte b = m_data[pos];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            final int digit = b - '0';
+            if (digit < 0 || digit > 9 || ++digits > MAX_EXACT_DOUBLE_DIGITS) {
+                return Double.NaN;
+            }
+            mantissa = mantissa * 10 + digit;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the field as a double
+     * @throws NumberFormatException if it is not a number
+     */
+    public double getDouble(int field) {
+        double value = parseExactDouble(field);
+        if (Double.isNaN(value)) {
+            return Double.parseDouble(getString(field));
+        }
+        return value;
+    }
+
+    /**
+     * Convert the field to the given class, as far as that can be done straight from the
+     * bytes. Integers are range checked for int, short and byte and come back as a value of
+     * that class, floating point numbers as a Double. Anything else, including fields that
+     * do not parse or fall outside the range of the class, comes back as a String for the
+     * caller's usual conversion to handle or reject.
+     *
+     * @param clz the class wanted, primitive or boxed
+     * @return the value, null if the field spells null
+     */
+    public Object getValue(int field, Class<?> clz) {
+        if (isNull(field)) {
+            return null;
+        }
+        if (clz == long.class || clz == Long.class) {
+            // Long.MIN_VALUE is the BIGINT null, leave it to the caller
+            if (parseLong(field) && m_long != Long.MIN_VALUE) {
+                return m_long;
+            }
+        } else if (clz == int.class || clz == Integer.class) {
+            if (parseLong(field) && m_long > Integer.MIN_VALUE && m_long <= Integer.MAX_VALUE) {
+                return (int) m_long;
+            }
+        } else if (clz == short.class || clz == Short.class) {
+            if (parseLong(field) && m_long > Short.MIN_VALUE && m_long <= Short.MAX_VALUE) {
+                return (short) m_long;
+            }
+        } else if (clz == byte.class || clz == Byte.class) {
+            if (parseLong(field) && m_long > Byte.MIN_VALUE && m_long <= Byte.MAX_VALUE) {
+                return (byte) m_long;
+            }
+        } else if (clz == double.class || clz == Double.class) {
+            final double value = parseExactDouble(field);
+            if (!Double.isNaN(value)) {
+                return value;
+            }
+        }
+        return getString(field);
+    }
+
+    /**
+     * Convert every field of the record with {@link #getValue(int, Class)}.
+     *
+     * @param classes the class wanted for each field, or null for Strings
+     * @param row the array to fill, at least as long as the record
+     */
+    public Object[] toRow(Class<?>[] classes, Object[] row) {
+        for (int i = 0; i < m_fieldCount; i++) {
+            Class<?> clz = (classes != null && i < classes.length) ? classes[i] : String.class;
+            row[i] = getValue(i, clz);
+        }
+        return row;
+    }
+}
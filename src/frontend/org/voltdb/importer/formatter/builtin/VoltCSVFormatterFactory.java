@@ -29,6 +29,9 @@ public class VoltCSVFormatterFactory extends AbstractFormatterFactory {
 
     @Override
     public Formatter<String> create(String formatName, Properties props) {
+        if (Boolean.parseBoolean(props.getProperty("streaming", "false"))) {
+            return new VoltStreamingCSVFormatter(formatName, props);
+        }
         if(useSuperCsv(props)){
             return new VoltSuperCSVFormatter(formatName, props);
         }
@@ -0,0 +1,108 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.importer.formatter.builtin;
+
+import java.util.Properties;
+
+import org.voltdb.importer.formatter.FormatException;
+import org.voltdb.importer.formatter.Formatter;
+
+/**
+ * CSV formatter backed by {@link StreamingCSVTokenizer}. Given a columntypes property,
+ * a comma separated list of SQL type names, numeric fields come back as Long, Integer,
+ * Short, Byte or Double values parsed straight from the input instead of as Strings.
+ */
+public class VoltStreamingCSVFormatter implements Formatter<String> {
+    final StreamingCSVTokenizer m_tokenizer;
+    final Class<?>[] m_columnClasses;
+
+    VoltStreamingCSVFormatter(String formatName, Properties prop) {
+
+        if (!("csv".equalsIgnoreCase(formatName) || "tsv".equalsIgnoreCase(formatName))) {
+            throw new IllegalArgumentException("Invalid format " + formatName + ", choices are either \"csv\" or \"tsv\".");
+        }
+        char separator = "csv".equalsIgnoreCase(formatName) ? ',' : '\t';
+
+        String separatorProp = prop.getProperty("separator", "");
+        if (!separatorProp.isEmpty() && separatorProp.length() == 1) {
+            separator = separatorProp.charAt(0);
+        }
+
+        char quotechar = VoltSuperCSVFormatter.DEFAULT_QUOTE_CHAR;
+        String quoteCharProp = prop.getProperty("quotechar", "");
+        if (!quoteCharProp.isEmpty() && quoteCharProp.length() == 1) {
+            quotechar = quoteCharProp.charAt(0);
+        }
+
+        char escape = VoltSuperCSVFormatter.DEFAULT_ESCAPE_CHAR;
+        String escapeProp = prop.getProperty("escape", "");
+        if (!escapeProp.isEmpty() && escapeProp.length() == 1) {
+            escape = escapeProp.charAt(0);
+        }
+
+        boolean strictQuotes = false;
+        String strictQuotesProp = prop.getProperty("strictquotes", "");
+        if (!strictQuotesProp.isEmpty()) {
+            strictQuotes = Boolean.parseBoolean(strictQuotesProp);
+        }
+
+        m_tokenizer = new StreamingCSVTokenizer(separator, quotechar, escape, strictQuotes);
+
+        String columnTypesProp = prop.getProperty("columntypes", "").trim();
+        if (columnTypesProp.isEmpty()) {
+            m_columnClasses = null;
+        } else {
+            String[] columnTypes = columnTypesProp.split("\\s*,\\s*");
+            m_columnClasses = new Class<?>[columnTypes.length];
+            for (int i = 0; i < columnTypes.length; i++) {
+                m_columnClasses[i] = classForType(columnTypes[i]);
+            }
+        }
+    }
+
+    private static Class<?> classForType(String typeName) {
+        switch (typeName.toUpperCase()) {
+        case "TINYINT":
+            return byte.class;
+        case "SMALLINT":
+            return short.class;
+        case "INTEGER":
+            return int.class;
+        case "BIGINT":
+            return long.class;
+        case "FLOAT":
+            return double.class;
+        case "VARCHAR":
+        case "TIMESTAMP":
+        case "DECIMAL":
+        case "VARBINARY":
+        case "GEOGRAPHY":
+        case "GEOGRAPHY_POINT":
+            // converted by the procedure from their string form
+            return String.class;
+        default:
+            throw new IllegalArgumentException("Invalid column type " + typeName + " in columntypes.");
+        }
+    }
+
+    @Override
+    public Object[] transform(String sourceData) throws FormatException {
+        final int fieldCount = m_tokenizer.parseLine(sourceData);
+        return m_tokenizer.toRow(m_columnClasses, new Object[fieldCount]);
+    }
+}
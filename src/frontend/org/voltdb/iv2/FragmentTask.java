@@ -218,6 +218,22 @@ public class FragmentTask extends TransactionTask
             return currentFragResponse;
         }
 
+        // Dependency tables are serialized to the coordinator or handed to the
+        // procedure running there. Either way nothing here keeps them, so large
+        // ones can stay in pooled buffers that are reclaimed when they are dropped.
+        siteConnection.setPooledResults(true);
+        try {
+            executeFragments(siteConnection, currentFragResponse);
+        }
+        finally {
+            siteConnection.setPooledResults(false);
+        }
+        return currentFragResponse;
+    }
+
+    private void executeFragments(SiteProcedureConnection siteConnection,
+                                  FragmentResponseMessage currentFragResponse)
+    {
         for (int frag = 0; frag < m_fragmentMsg.getFragmentCount(); frag++)
         {
             byte[] planHash = m_fragmentMsg.getPlanHash(frag);
@@ -315,7 +331,6 @@ public class FragmentTask extends TransactionTask
                 }
             }
         }
-        return currentFragResponse;
     }
 
     @Override
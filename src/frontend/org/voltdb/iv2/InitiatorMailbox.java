@@ -267,6 +267,32 @@ public class InitiatorMailbox implements Mailbox
         }
     }
 
+    /**
+     * Deliver several messages in order, taking the mailbox lock once for all
+     * of them.
+     */
+    public void deliverAll(final List<? extends VoltMessage> messages)
+    {
+        if (SCHEDULE_IN_SITE_THREAD) {
+            this.m_scheduler.getQueue().offer(new SiteTasker.SiteTaskerRunnable() {
+                @Override
+                void run() {
+                    synchronized (InitiatorMailbox.this) {
+                        for (VoltMessage message : messages) {
+                            deliverInternal(message);
+                        }
+                    }
+                }
+            });
+        } else {
+            synchronized (this) {
+                for (VoltMessage message : messages) {
+                    deliverInternal(message);
+                }
+            }
+        }
+    }
+
     protected void deliverInternal(VoltMessage message) {
         assert(lockingVows());
         logRxMessage(message);
@@ -249,6 +249,18 @@ public class MpInitiatorMailbox extends InitiatorMailbox
         });
     }
 
+    @Override
+    public void deliverAll(final List<? extends VoltMessage> messages) {
+        m_taskQueue.offer(new Runnable() {
+            @Override
+            public void run() {
+                for (VoltMessage message : messages) {
+                    deliverInternal(message);
+                }
+            }
+        });
+    }
+
     @Override
     void repairReplicasWith(final List<Long> needsRepair, final VoltMessage repairWork)
     {
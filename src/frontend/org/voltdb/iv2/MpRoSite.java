@@ -598,6 +598,21 @@ public class MpRoSite implements Runnable, SiteProcedureConnection
         // don't need to do anything here I think?
     }
 
+    @Override
+    public void setPooledResults(boolean pooledResults) {
+        // no EE here, results always come from other sites
+    }
+
+    @Override
+    public void setPhaseTimes(long[] phaseTimes) {
+        // no EE here
+    }
+
+    @Override
+    public void setDeferUndoRelease(boolean defer) {
+        // no EE here
+    }
+
     @Override
     public void notifyOfSnapshotNonce(String nonce, long snapshotSpHandle) {
         // TODO Auto-generated method stub
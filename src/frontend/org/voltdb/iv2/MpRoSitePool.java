@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
@@ -37,12 +38,101 @@ import org.voltdb.StarvationTracker;
  * Provide a pool of MP Read-only sites to do MP RO work.
  * This should be owned by the MpTransactionTaskQueue and expects all operations
  * to be done while holding its lock.
+ *
+ * Unless mpiReadPoolSize and mpiReadPoolInitialSize say otherwise, the pool
+ * may grow to one site per core and starts with a quarter of the cores warm.
+ * In between, it keeps as many sites as the observed MP read load needs, see
+ * {@link LoadTracker}. Sites are created ahead of demand when the load grows
+ * and idle sites above that are shut down after MPI_READ_POOL_IDLE_TIMEOUT_MS.
+ * Idle sites are handed out most recently used first, so the work stays on
+ * the sites that are warm and the others age out.
  */
 class MpRoSitePool {
     final static VoltLogger tmLog = new VoltLogger("TM");
 
     static int DEFAULT_MAX_POOL_SIZE = 20;
     static int INITIAL_POOL_SIZE = 1;
+    // Idle sites above the target size that haven't run anything for this long are shut down
+    static long IDLE_TIMEOUT_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(Long.getLong("MPI_READ_POOL_IDLE_TIMEOUT_MS", 60 * 1000));
+    // The pool is also resized this often, so it shrinks while no MP reads complete
+    static final long RESIZE_INTERVAL_MS = 1000;
+
+    static int defaultMaxPoolSize()
+    {
+        return Math.max(DEFAULT_MAX_POOL_SIZE, CoreUtils.availableProcessors());
+    }
+
+    static int defaultInitialPoolSize(int maxPoolSize)
+    {
+        return Math.min(maxPoolSize, Math.max(INITIAL_POOL_SIZE, CoreUtils.availableProcessors() / 4));
+    }
+
+    /**
+     * Moving averages of the time between MP reads and of the time a read holds
+     * a site. By Little's law their ratio is the number of reads in flight, the
+     * pool keeps HEADROOM times as many sites. A gap since the last read longer
+     * than the average counts as the time between reads, so the target decays
+     * while no reads arrive.
+     */
+    static class LoadTracker
+    {
+        static final double WEIGHT = 0.05;
+        static final double HEADROOM = 2.0;
+
+        private long m_lastArrivalNanos = -1;
+        private double m_interarrivalNanos = 0.0;
+        private double m_serviceNanos = 0.0;
+
+        void arrival(long nowNanos)
+        {
+            if (m_lastArrivalNanos >= 0) {
+                final long interarrival = Math.max(1, nowNanos - m_lastArrivalNanos);
+                m_interarrivalNanos = m_interarrivalNanos == 0.0 ? interarrival :
+                    m_interarrivalNanos + WEIGHT * (interarrival - m_interarrivalNanos);
+            }
+            m_lastArrivalNanos = nowNanos;
+        }
+
+        void completion(long serviceNanos)
+        {
+            m_serviceNanos = m_serviceNanos == 0.0 ? serviceNanos :
+                m_serviceNanos + WEIGHT * (serviceNanos - m_serviceNanos);
+        }
+
+        private double interarrivalNanos(long nowNanos)
+        {
+            if (m_interarrivalNanos == 0.0) {
+                return 0.0;
+            }
+            return Math.max(m_interarrivalNanos, nowNanos - m_lastArrivalNanos);
+        }
+
+        /**
+         * @return MP reads per second
+         */
+        double getArrivalRate(long nowNanos)
+        {
+            final double interarrival = interarrivalNanos(nowNanos);
+            return interarrival == 0.0 ? 0.0 : TimeUnit.SECONDS.toNanos(1) / interarrival;
+        }
+
+        long getServiceNanos()
+        {
+            return (long)m_serviceNanos;
+        }
+
+        int targetSize(long nowNanos, int minSize, int maxSize)
+        {
+            final double interarrival = interarrivalNanos(nowNanos);
+            if (interarrival == 0.0) {
+                return minSize;
+            }
+            final double inFlight = m_serviceNanos / interarrival;
+            final long target = (long)Math.ceil(inFlight * HEADROOM);
+            return (int)Math.max(minSize, Math.min(maxSize, target));
+        }
+    }
 
     class MpRoSiteContext {
         final private BackendTarget m_backend;
@@ -52,6 +142,9 @@ class MpRoSitePool {
         final private ProcedureRunnerFactory m_prf;
         final private LoadedProcedureSet m_loadedProcedures;
         final private Thread m_siteThread;
+        // When the site started its current transaction or became idle
+        private long m_workStartNanos = 0;
+        private long m_idleSinceNanos = System.nanoTime();
 
         MpRoSiteContext(long siteId, BackendTarget backend,
                 CatalogContext context, int partitionId,
@@ -114,6 +207,10 @@ class MpRoSitePool {
     private CatalogSpecificPlanner m_csp;
     private ThreadFactory m_poolThreadFactory;
     private final int m_poolSize;
+    private final int m_minPoolSize;
+    private final LoadTracker m_load = new LoadTracker();
+    private final MpRoSitePoolStats m_stats;
+    private volatile boolean m_shutdown = false;
 
     MpRoSitePool(
             long siteId,
@@ -135,22 +232,82 @@ class MpRoSitePool {
 
         Integer poolSize = Integer.getInteger("mpiReadPoolSize");
         if (poolSize == null) {
-            poolSize = DEFAULT_MAX_POOL_SIZE;
+            poolSize = defaultMaxPoolSize();
+        }
+        m_poolSize = Math.max(1, poolSize);
+        Integer initialSize = Integer.getInteger("mpiReadPoolInitialSize");
+        if (initialSize == null) {
+            initialSize = defaultInitialPoolSize(m_poolSize);
         }
-        m_poolSize = poolSize;
-        tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize);
+        m_minPoolSize = Math.max(1, Math.min(m_poolSize, initialSize));
+        tmLog.info("Setting maximum size of MPI read pool to: " + m_poolSize
+                + ", starting with " + m_minPoolSize + " sites");
+        m_stats = new MpRoSitePoolStats(m_siteId);
 
         // Construct the initial pool
-        for (int i = 0; i < INITIAL_POOL_SIZE; i++) {
-            m_idleSites.push(new MpRoSiteContext(m_siteId,
-                        m_backend,
-                        m_catalogContext,
-                        m_partitionId,
-                        m_initiatorMailbox,
-                        m_csp,
-                        m_poolThreadFactory));
+        for (int i = 0; i < m_minPoolSize; i++) {
+            m_idleSites.push(createSite());
         }
+        updateStats(System.nanoTime());
+    }
 
+    MpRoSitePoolStats getStats()
+    {
+        return m_stats;
+    }
+
+    private MpRoSiteContext createSite()
+    {
+        m_stats.siteCreated();
+        return new MpRoSiteContext(m_siteId,
+                m_backend,
+                m_catalogContext,
+                m_partitionId,
+                m_initiatorMailbox,
+                m_csp,
+                m_poolThreadFactory);
+    }
+
+    private void updateStats(long nowNanos)
+    {
+        m_stats.updateOccupancy(m_busySites.size(), m_idleSites.size(), m_poolSize,
+                m_load.targetSize(nowNanos, m_minPoolSize, m_poolSize),
+                m_load.getArrivalRate(nowNanos), m_load.getServiceNanos());
+    }
+
+    /**
+     * Move the pool towards the size the load needs, growing by at most one
+     * site per call so the MpTransactionTaskQueue lock isn't held for long.
+     * Called when a read completes and every RESIZE_INTERVAL_MS.
+     */
+    void resize(long nowNanos)
+    {
+        if (m_shutdown) {
+            return;
+        }
+        final int target = m_load.targetSize(nowNanos, m_minPoolSize, m_poolSize);
+        final int size = m_busySites.size() + m_idleSites.size();
+        if (size < target) {
+            m_idleSites.addLast(createSite());
+        }
+        else {
+            // the least recently used idle sites are at the tail
+            int excess = size - target;
+            while (excess-- > 0 && !m_idleSites.isEmpty()
+                    && nowNanos - m_idleSites.peekLast().m_idleSinceNanos > IDLE_TIMEOUT_NANOS) {
+                m_idleSites.pollLast().shutdown();
+                m_stats.siteRetired();
+            }
+        }
+        updateStats(nowNanos);
+    }
+
+    /**
+     * Record how long an MP read waited in the MpTransactionTaskQueue for a site.
+     */
+    void recordQueueDelay(long nanos)
+    {
+        m_stats.recordQueueDelay(nanos);
     }
 
     /**
@@ -169,7 +326,7 @@ class MpRoSitePool {
             if (site.getCatalogCRC() != m_catalogContext.getCatalogCRC()
                     || site.getCatalogVersion() != m_catalogContext.catalogVersion) {
                 site.shutdown();
-                m_idleSites.remove(site);
+                siterator.remove();
             }
         }
     }
@@ -216,17 +373,15 @@ class MpRoSitePool {
             site = m_busySites.get(txnId);
         }
         else {
+            final long now = System.nanoTime();
             if (m_idleSites.isEmpty()) {
-                m_idleSites.push(new MpRoSiteContext(m_siteId,
-                            m_backend,
-                            m_catalogContext,
-                            m_partitionId,
-                            m_initiatorMailbox,
-                            m_csp,
-                            m_poolThreadFactory));
+                m_idleSites.push(createSite());
             }
             site = m_idleSites.pop();
+            site.m_workStartNanos = now;
             m_busySites.put(txnId, site);
+            m_load.arrival(now);
+            updateStats(now);
         }
         site.offer(task);
         return true;
@@ -241,20 +396,25 @@ class MpRoSitePool {
         if (site == null) {
             throw new RuntimeException("No busy site for txnID: " + txnId + " found, shouldn't happen.");
         }
+        final long now = System.nanoTime();
+        m_load.completion(now - site.m_workStartNanos);
         // check the catalog versions, only push back onto idle if the catalog hasn't changed
         // otherwise, just let it get garbage collected and let doWork() construct new ones for the
         // pool with the updated catalog.
         if (site.getCatalogCRC() == m_catalogContext.getCatalogCRC()
                 && site.getCatalogVersion() == m_catalogContext.catalogVersion) {
+            site.m_idleSinceNanos = now;
             m_idleSites.push(site);
         }
         else {
             site.shutdown();
         }
+        resize(now);
     }
 
     void shutdown()
     {
+        m_shutdown = true;
         // Shutdown all, then join all, hopefully save some shutdown time for tests.
         for (MpRoSiteContext site : m_idleSites) {
             site.shutdown();
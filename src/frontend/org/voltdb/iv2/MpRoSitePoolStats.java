@@ -0,0 +1,138 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.voltdb.SiteStatsSource;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+
+/**
+ * Occupancy of the MPI read-only site pool and how long MP reads wait for
+ * a site, reported by @Statistics MP_READ_POOL. Times are in microseconds.
+ * The pool updates it while holding the MpTransactionTaskQueue lock, the
+ * statistics are read from other threads.
+ */
+class MpRoSitePoolStats extends SiteStatsSource {
+
+    private int m_busy = 0;
+    private int m_idle = 0;
+    private int m_maxSize = 0;
+    private int m_targetSize = 0;
+    private double m_arrivalRate = 0.0;
+    private long m_serviceNanos = 0;
+    private long m_created = 0;
+    private long m_retired = 0;
+
+    private long m_queued = 0;
+    private long m_queueDelayNanos = 0;
+    private long m_maxQueueDelayNanos = 0;
+    private long m_lastQueued = 0;
+    private long m_lastQueueDelayNanos = 0;
+    private long m_lastMaxQueueDelayNanos = 0;
+
+    private boolean m_interval = false;
+
+    MpRoSitePoolStats(long siteId) {
+        super(siteId, false);
+    }
+
+    synchronized void updateOccupancy(int busy, int idle, int maxSize, int targetSize,
+                                      double arrivalRate, long serviceNanos) {
+        m_busy = busy;
+        m_idle = idle;
+        m_maxSize = maxSize;
+        m_targetSize = targetSize;
+        m_arrivalRate = arrivalRate;
+        m_serviceNanos = serviceNanos;
+    }
+
+    synchronized void siteCreated() {
+        m_created++;
+    }
+
+    synchronized void siteRetired() {
+        m_retired++;
+    }
+
+    /**
+     * Record how long an MP read waited for a site, in nanoseconds
+     */
+    synchronized void recordQueueDelay(long nanos) {
+        m_queued++;
+        m_queueDelayNanos += nanos;
+        m_maxQueueDelayNanos = Math.max(m_maxQueueDelayNanos, nanos);
+        m_lastMaxQueueDelayNanos = Math.max(m_lastMaxQueueDelayNanos, nanos);
+    }
+
+    @Override
+    protected void populateColumnSchema(ArrayList<ColumnInfo> columns) {
+        super.populateColumnSchema(columns);
+        columns.add(new ColumnInfo("BUSY", VoltType.INTEGER));
+        columns.add(new ColumnInfo("IDLE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("TARGET_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("MAX_SIZE", VoltType.INTEGER));
+        columns.add(new ColumnInfo("ARRIVAL_RATE", VoltType.FLOAT));
+        columns.add(new ColumnInfo("AVG_SERVICE_TIME", VoltType.BIGINT));
+        columns.add(new ColumnInfo("CREATED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("RETIRED", VoltType.BIGINT));
+        columns.add(new ColumnInfo("READS", VoltType.BIGINT));
+        columns.add(new ColumnInfo("AVG_QUEUE_DELAY", VoltType.BIGINT));
+        columns.add(new ColumnInfo("MAX_QUEUE_DELAY", VoltType.BIGINT));
+    }
+
+    @Override
+    protected void updateStatsRow(Object rowKey, Object rowValues[]) {
+        rowValues[columnNameToIndex.get("BUSY")] = m_busy;
+        rowValues[columnNameToIndex.get("IDLE")] = m_idle;
+        rowValues[columnNameToIndex.get("TARGET_SIZE")] = m_targetSize;
+        rowValues[columnNameToIndex.get("MAX_SIZE")] = m_maxSize;
+        rowValues[columnNameToIndex.get("ARRIVAL_RATE")] = m_arrivalRate;
+        rowValues[columnNameToIndex.get("AVG_SERVICE_TIME")] = m_serviceNanos / 1000;
+        rowValues[columnNameToIndex.get("CREATED")] = m_created;
+        rowValues[columnNameToIndex.get("RETIRED")] = m_retired;
+        final long queued;
+        final long delayNanos;
+        final long maxDelayNanos;
+        if (m_interval) {
+            queued = m_queued - m_lastQueued;
+            delayNanos = m_queueDelayNanos - m_lastQueueDelayNanos;
+            maxDelayNanos = m_lastMaxQueueDelayNanos;
+            m_lastQueued = m_queued;
+            m_lastQueueDelayNanos = m_queueDelayNanos;
+            m_lastMaxQueueDelayNanos = 0;
+        } else {
+            queued = m_queued;
+            delayNanos = m_queueDelayNanos;
+            maxDelayNanos = m_maxQueueDelayNanos;
+        }
+        rowValues[columnNameToIndex.get("READS")] = queued;
+        rowValues[columnNameToIndex.get("AVG_QUEUE_DELAY")] = queued == 0 ? 0L : (delayNanos / queued) / 1000;
+        rowValues[columnNameToIndex.get("MAX_QUEUE_DELAY")] = maxDelayNanos / 1000;
+        super.updateStatsRow(rowKey, rowValues);
+    }
+
+    @Override
+    protected Iterator<Object> getStatsRowKeyIterator(boolean interval) {
+        m_interval = interval;
+        return Collections.singletonList(new Object()).iterator();
+    }
+}
@@ -26,6 +26,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
@@ -72,6 +74,7 @@ public class MpScheduler extends Scheduler
     //Generator of pre-IV2ish timestamp based unique IDs
     private final UniqueIdGenerator m_uniqueIdGenerator;
     final private MpTransactionTaskQueue m_pendingTasks;
+    private ScheduledFuture<?> m_sitePoolResizer = null;
 
     // the current not-needed-any-more point of the repair log.
     long m_repairLogTruncationHandle = Long.MIN_VALUE;
@@ -93,6 +96,13 @@ public class MpScheduler extends Scheduler
     void setMpRoSitePool(MpRoSitePool sitePool)
     {
         m_pendingTasks.setMpRoSitePool(sitePool);
+        m_sitePoolResizer = VoltDB.instance().scheduleWork(new Runnable() {
+            @Override
+            public void run()
+            {
+                m_pendingTasks.resizeMpRoSitePool();
+            }
+        }, MpRoSitePool.RESIZE_INTERVAL_MS, MpRoSitePool.RESIZE_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     void updateCatalog(String diffCmds, CatalogContext context, CatalogSpecificPlanner csp)
@@ -107,6 +117,9 @@ public class MpScheduler extends Scheduler
         // response to roll back. This function must be called with
         // the deliver lock held to be correct. The null task should
         // never run; the site thread is expected to be told to stop.
+        if (m_sitePoolResizer != null) {
+            m_sitePoolResizer.cancel(false);
+        }
         m_pendingTasks.shutdown();
         m_pendingTasks.repair(m_nullTask, m_iv2Masters, m_partitionMasters);
     }
@@ -334,7 +347,8 @@ public class MpScheduler extends Scheduler
     }
 
     /**
-     * Extract the two involved partitions from the @BalancePartitions request.
+     * Extract the involved partitions from the @BalancePartitions request, a
+     * request may move several ranges between different pairs of partitions.
      */
     private Set<Integer> getBalancePartitions(Iv2InitiateTaskMessage msg)
     {
@@ -342,8 +356,12 @@ public class MpScheduler extends Scheduler
             JSONObject jsObj = new JSONObject((String) msg.getParameters()[0]);
             BalancePartitionsRequest request = new BalancePartitionsRequest(jsObj);
 
-            return Sets.newHashSet(request.partitionPairs.get(0).srcPartition,
-                    request.partitionPairs.get(0).destPartition);
+            Set<Integer> partitions = Sets.newHashSet();
+            for (BalancePartitionsRequest.PartitionPair pair : request.partitionPairs) {
+                partitions.add(pair.srcPartition);
+                partitions.add(pair.destPartition);
+            }
+            return partitions.isEmpty() ? null : partitions;
         } catch (JSONException e) {
             hostLog.warn("Unable to determine partitions for @BalancePartitions", e);
             return null;
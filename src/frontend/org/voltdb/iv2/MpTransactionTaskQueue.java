@@ -46,6 +46,8 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
     private final Map<Long, TransactionTask> m_currentWrites = new HashMap<Long, TransactionTask>();
     private final Map<Long, TransactionTask> m_currentReads = new HashMap<Long, TransactionTask>();
     private Deque<TransactionTask> m_backlog = new ArrayDeque<TransactionTask>();
+    // When each task in the backlog was offered, in the same order, for the queue delay of MP reads
+    private Deque<Long> m_backlogOfferNanos = new ArrayDeque<Long>();
 
     private MpRoSitePool m_sitePool = null;
 
@@ -64,6 +66,14 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
         m_sitePool.updateCatalog(diffCmds, context, csp);
     }
 
+    /**
+     * Let the read pool grow or retire idle sites without waiting for a read to complete
+     */
+    synchronized void resizeMpRoSitePool()
+    {
+        m_sitePool.resize(System.nanoTime());
+    }
+
     void shutdown()
     {
         if (m_sitePool != null) {
@@ -83,6 +93,7 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
     {
         Iv2Trace.logTransactionTaskQueueOffer(task);
         m_backlog.addLast(task);
+        m_backlogOfferNanos.addLast(System.nanoTime());
         taskQueueOffer();
         return true;
     }
@@ -184,6 +195,7 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
             if (!task.getTransactionState().isReadOnly()) {
                 if (m_currentReads.isEmpty() && m_currentWrites.isEmpty()) {
                     task = m_backlog.pollFirst();
+                    m_backlogOfferNanos.pollFirst();
                     m_currentWrites.put(task.getTxnId(), task);
                     taskQueueOffer(task);
                     retval = true;
@@ -194,6 +206,7 @@ public class MpTransactionTaskQueue extends TransactionTaskQueue
                        m_sitePool.canAcceptWork())
                 {
                     task = m_backlog.pollFirst();
+                    m_sitePool.recordQueueDelay(System.nanoTime() - m_backlogOfferNanos.pollFirst());
                     assert(task.getTransactionState().isReadOnly());
                     m_currentReads.put(task.getTxnId(), task);
                     taskQueueOffer(task);
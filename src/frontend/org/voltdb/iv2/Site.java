@@ -208,6 +208,9 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
     public final static long kInvalidUndoToken = -1L;
     private long m_latestUndoToken = 0L;
     private long m_latestUndoTxnId = Long.MIN_VALUE;
+    // Latest undo token of the committed txns whose release is deferred
+    private boolean m_deferUndoRelease = false;
+    private long m_deferredUndoToken = Site.kInvalidUndoToken;
 
     private long getNextUndoToken(long txnId)
     {
@@ -738,6 +741,8 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
                     if (task instanceof TransactionTask) {
                         m_currentTxnId = ((TransactionTask)task).getTxnId();
                         m_lastTxnTime = EstTime.currentTimeMillis();
+                    } else if (task instanceof SpProcedureBatchTask) {
+                        m_lastTxnTime = EstTime.currentTimeMillis();
                     }
                     task.run(getSiteProcedureConnection());
                 } else if (m_rejoinState == kStateReplayingRejoin) {
@@ -1072,13 +1077,20 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         //If the begin undo token is not set the txn never did any work so there is nothing to undo/release
         if (beginUndoToken == Site.kInvalidUndoToken) return;
         if (rollback) {
+            // the undo below reaches back to beginUndoToken, which may be the
+            // last quantum of a committed txn whose release was deferred
+            releaseDeferredUndoToken();
             m_ee.undoUndoToken(beginUndoToken);
         }
         else {
             assert(m_latestUndoToken != Site.kInvalidUndoToken);
             assert(m_latestUndoToken >= beginUndoToken);
             if (m_latestUndoToken > beginUndoToken) {
-                m_ee.releaseUndoToken(m_latestUndoToken);
+                if (m_deferUndoRelease) {
+                    m_deferredUndoToken = m_latestUndoToken;
+                } else {
+                    m_ee.releaseUndoToken(m_latestUndoToken);
+                }
             }
         }
 
@@ -1086,6 +1098,25 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         handleUndoLog(undoLog, rollback);
     }
 
+    @Override
+    public void setDeferUndoRelease(boolean defer)
+    {
+        // the DR streams end a transaction's binary log when its undo token
+        // is released, so DR producers release every transaction on its own
+        m_deferUndoRelease = defer && !m_context.cluster.getDrproducerenabled();
+        if (!m_deferUndoRelease) {
+            releaseDeferredUndoToken();
+        }
+    }
+
+    private void releaseDeferredUndoToken()
+    {
+        if (m_deferredUndoToken != Site.kInvalidUndoToken) {
+            m_ee.releaseUndoToken(m_deferredUndoToken);
+            m_deferredUndoToken = Site.kInvalidUndoToken;
+        }
+    }
+
     @Override
     public void stashWorkUnitDependencies(Map<Integer, List<VoltTable>> dependencies)
     {
@@ -1526,6 +1557,16 @@ public class Site implements Runnable, SiteProcedureConnection, SiteSnapshotConn
         m_ee.setProcedureName(procedureName);
     }
 
+    @Override
+    public void setPooledResults(boolean pooledResults) {
+        m_ee.setPooledResults(pooledResults);
+    }
+
+    @Override
+    public void setPhaseTimes(long[] phaseTimes) {
+        m_ee.setPhaseTimes(phaseTimes);
+    }
+
     @Override
     public void notifyOfSnapshotNonce(String nonce, long snapshotSpHandle) {
         m_initiatorMailbox.notifyOfSnapshotNonce(nonce, snapshotSpHandle);
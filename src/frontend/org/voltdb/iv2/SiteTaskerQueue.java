@@ -19,34 +19,61 @@ package org.voltdb.iv2;
 
 import java.util.concurrent.LinkedTransferQueue;
 
-import org.voltcore.utils.CoreUtils;
 import org.voltdb.StarvationTracker;
 
 /** SiteTaskerScheduler orders SiteTaskers for execution. */
 public class SiteTaskerQueue
 {
     private final LinkedTransferQueue<SiteTasker> m_tasks = new LinkedTransferQueue<SiteTasker>();
+    private final SiteWaitStrategy m_waitStrategy;
     private StarvationTracker m_starvationTracker;
+    // Most single partition procedure tasks take() coalesces into one SpProcedureBatchTask
+    private int m_maxBatchSize = 1;
+
+    public SiteTaskerQueue()
+    {
+        this(SiteWaitStrategy.create());
+    }
+
+    public SiteTaskerQueue(SiteWaitStrategy waitStrategy)
+    {
+        m_waitStrategy = waitStrategy;
+    }
 
     public boolean offer(SiteTasker task)
     {
         return m_tasks.offer(task);
     }
 
-    // Block on the site tasker queue.
+    // Wait on the site tasker queue using the queue's wait strategy.
     public SiteTasker take() throws InterruptedException
     {
         SiteTasker task = m_tasks.poll();
         if (task == null) {
             m_starvationTracker.beginStarvation();
-        } else {
+            try {
+                task = m_waitStrategy.take(m_tasks, m_starvationTracker);
+            } finally {
+                m_starvationTracker.endStarvation();
+            }
+        }
+        return m_maxBatchSize > 1 ? coalesce(task) : task;
+    }
+
+    /**
+     * Take the batchable tasks queued right behind the given one, the site is
+     * the only consumer so the task peeked at is the one polled.
+     */
+    private SiteTasker coalesce(SiteTasker task)
+    {
+        if (!SpProcedureBatchTask.isBatchable(task) || !SpProcedureBatchTask.isBatchable(m_tasks.peek())) {
             return task;
         }
-        try {
-            return CoreUtils.queueSpinTake(m_tasks);
-        } finally {
-            m_starvationTracker.endStarvation();
+        SpProcedureBatchTask batch = new SpProcedureBatchTask((SpProcedureTask) task);
+        while (batch.size() < m_maxBatchSize && SpProcedureBatchTask.isBatchable(m_tasks.peek())) {
+            batch.add((SpProcedureTask) m_tasks.poll());
         }
+        return batch;
     }
 
     // Non-blocking poll on the site tasker queue.
@@ -62,4 +89,20 @@ public class SiteTaskerQueue
     public void setStarvationTracker(StarvationTracker tracker) {
         m_starvationTracker = tracker;
     }
+
+    /**
+     * Let take() hand out up to maxBatchSize consecutive single partition
+     * procedure tasks as one SpProcedureBatchTask, 1 turns batching off.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        m_maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public int getMaxBatchSize() {
+        return m_maxBatchSize;
+    }
+
+    public SiteWaitStrategy getWaitStrategy() {
+        return m_waitStrategy;
+    }
 }
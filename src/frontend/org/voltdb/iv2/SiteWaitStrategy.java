@@ -0,0 +1,218 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.concurrent.LinkedTransferQueue;
+
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.StarvationTracker;
+
+/**
+ * How a site thread waits for work when its SiteTaskerQueue is empty.
+ * Spinning keeps the thread on its core and cuts the wake up latency of the
+ * next task at the cost of burning a CPU, blocking gives the core back to the
+ * OS. Each wait reports the spins, yields and parks it did to the site's
+ * StarvationTracker so the cost of the chosen strategy shows up in
+ * the STARVATION statistics.
+ *
+ * Strategies that keep per-thread state are created once per queue.
+ */
+public abstract class SiteWaitStrategy {
+
+    public enum Type {
+        /** Spin for QUEUE_SPIN_MICROS, if set, then block, the historical behavior */
+        BLOCK,
+        /** Never give up the core */
+        BUSYSPIN,
+        /** Spin for a while, then yield the core between polls */
+        SPINYIELD,
+        /** Spin, yield and then block, tuning the spin budget from recent waits */
+        ADAPTIVE
+    }
+
+    // Polls between yields for the yielding strategies
+    static final int SPIN_TRIES = Integer.getInteger("SITE_WAIT_SPIN_TRIES", 100);
+    // Yields before the adaptive strategy blocks
+    static final int YIELD_TRIES = Integer.getInteger("SITE_WAIT_YIELD_TRIES", 10);
+    // Upper bound of the adaptive spin budget, in polls
+    static final int MAX_ADAPTIVE_SPINS = Integer.getInteger("SITE_WAIT_MAX_ADAPTIVE_SPINS", 1 << 16);
+
+    private static volatile Type s_defaultType = Type.BLOCK;
+
+    /**
+     * Set the strategy used by queues created from now on, from the
+     * deployment's systemsettings.
+     */
+    public static void setDefaultType(Type type) {
+        s_defaultType = type;
+    }
+
+    public static Type getDefaultType() {
+        return s_defaultType;
+    }
+
+    public static SiteWaitStrategy create() {
+        return create(s_defaultType);
+    }
+
+    public static SiteWaitStrategy create(Type type) {
+        switch (type) {
+        case BUSYSPIN:
+            return new BusySpin();
+        case SPINYIELD:
+            return new SpinYield();
+        case ADAPTIVE:
+            return new Adaptive();
+        default:
+            return new Block();
+        }
+    }
+
+    public abstract Type getType();
+
+    /**
+     * Wait for the next task, called by the site thread after a poll of the
+     * queue came back empty.
+     */
+    abstract SiteTasker take(LinkedTransferQueue<SiteTasker> tasks, StarvationTracker tracker)
+            throws InterruptedException;
+
+    static class Block extends SiteWaitStrategy {
+        @Override
+        public Type getType() {
+            return Type.BLOCK;
+        }
+
+        @Override
+        SiteTasker take(LinkedTransferQueue<SiteTasker> tasks, StarvationTracker tracker)
+                throws InterruptedException {
+            if (CoreUtils.QUEUE_SPIN_MICROSECONDS > 0) {
+                final long start = System.nanoTime();
+                long spins = 0;
+                SiteTasker task;
+                do {
+                    if ((task = tasks.poll()) != null) {
+                        tracker.recordWait(spins, 0, 0);
+                        return task;
+                    }
+                    spins++;
+                } while (System.nanoTime() - start <= CoreUtils.QUEUE_SPIN_MICROSECONDS);
+                tracker.recordWait(spins, 0, 1);
+            } else {
+                tracker.recordWait(0, 0, 1);
+            }
+            return tasks.take();
+        }
+    }
+
+    static class BusySpin extends SiteWaitStrategy {
+        @Override
+        public Type getType() {
+            return Type.BUSYSPIN;
+        }
+
+        @Override
+        SiteTasker take(LinkedTransferQueue<SiteTasker> tasks, StarvationTracker tracker)
+                throws InterruptedException {
+            long spins = 0;
+            SiteTasker task;
+            while ((task = tasks.poll()) == null) {
+                if (Thread.interrupted()) {
+                    tracker.recordWait(spins, 0, 0);
+                    throw new InterruptedException();
+                }
+                spins++;
+            }
+            tracker.recordWait(spins, 0, 0);
+            return task;
+        }
+    }
+
+    static class SpinYield extends SiteWaitStrategy {
+        @Override
+        public Type getType() {
+            return Type.SPINYIELD;
+        }
+
+        @Override
+        SiteTasker take(LinkedTransferQueue<SiteTasker> tasks, StarvationTracker tracker)
+                throws InterruptedException {
+            long spins = 0;
+            long yields = 0;
+            SiteTasker task;
+            while ((task = tasks.poll()) == null) {
+                if (Thread.interrupted()) {
+                    tracker.recordWait(spins, yields, 0);
+                    throw new InterruptedException();
+                }
+                if (++spins % SPIN_TRIES == 0) {
+                    Thread.yield();
+                    yields++;
+                }
+            }
+            tracker.recordWait(spins, yields, 0);
+            return task;
+        }
+    }
+
+    /**
+     * Spins for a budget of polls, yields a few times and then blocks. The
+     * budget doubles whenever work arrived while spinning or yielding and is
+     * halved whenever the thread had to block, so a busy site stays hot and
+     * an idle one quickly stops burning its core.
+     */
+    static class Adaptive extends SiteWaitStrategy {
+        private int m_spinBudget = SPIN_TRIES;
+
+        @Override
+        public Type getType() {
+            return Type.ADAPTIVE;
+        }
+
+        int getSpinBudget() {
+            return m_spinBudget;
+        }
+
+        @Override
+        SiteTasker take(LinkedTransferQueue<SiteTasker> tasks, StarvationTracker tracker)
+                throws InterruptedException {
+            long spins = 0;
+            long yields = 0;
+            SiteTasker task;
+            while ((task = tasks.poll()) == null) {
+                if (spins < m_spinBudget) {
+                    spins++;
+                } else if (yields < YIELD_TRIES) {
+                    if (Thread.interrupted()) {
+                        tracker.recordWait(spins, yields, 0);
+                        throw new InterruptedException();
+                    }
+                    Thread.yield();
+                    yields++;
+                } else {
+                    m_spinBudget = Math.max(SPIN_TRIES, m_spinBudget >>> 1);
+                    tracker.recordWait(spins, yields, 1);
+                    return tasks.take();
+                }
+            }
+            m_spinBudget = Math.min(MAX_ADAPTIVE_SPINS, m_spinBudget << 1);
+            tracker.recordWait(spins, yields, 0);
+            return task;
+        }
+    }
+}
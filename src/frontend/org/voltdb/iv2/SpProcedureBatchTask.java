@@ -0,0 +1,120 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.iv2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.voltcore.messaging.Mailbox;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.messaging.InitiateResponseMessage;
+import org.voltdb.rejoin.TaskLog;
+
+/**
+ * A micro-batch of consecutive single partition procedure invocations that
+ * the site runs in one iteration of its run loop. Every transaction still
+ * commits or rolls back on its own, but the undo quanta of the committed ones
+ * are released in the EE once for the whole batch, and the responses are
+ * handed to the initiator mailbox together once the batch is done.
+ *
+ * Only user procedures are batched, system procedures may rely on the site
+ * knowing the txnId of the running transaction.
+ */
+public class SpProcedureBatchTask extends SiteTasker
+{
+    private final List<SpProcedureTask> m_tasks = new ArrayList<SpProcedureTask>();
+
+    SpProcedureBatchTask(SpProcedureTask first)
+    {
+        m_tasks.add(first);
+    }
+
+    /**
+     * @return true if the task can be run as part of a batch
+     */
+    static boolean isBatchable(SiteTasker task)
+    {
+        if (task == null || task.getClass() != SpProcedureTask.class) {
+            return false;
+        }
+        return !((SpProcedureTask) task).m_procName.startsWith("@");
+    }
+
+    void add(SpProcedureTask task)
+    {
+        m_tasks.add(task);
+    }
+
+    int size()
+    {
+        return m_tasks.size();
+    }
+
+    List<SpProcedureTask> getTasks()
+    {
+        return m_tasks;
+    }
+
+    @Override
+    public void run(SiteProcedureConnection siteConnection)
+    {
+        final List<InitiateResponseMessage> responses = new ArrayList<InitiateResponseMessage>(m_tasks.size());
+        siteConnection.setDeferUndoRelease(true);
+        try {
+            for (SpProcedureTask task : m_tasks) {
+                InitiateResponseMessage response = task.execute(siteConnection);
+                task.logToDR((SpTransactionState) task.getTransactionState(), response);
+                responses.add(response);
+            }
+        } finally {
+            // release what the committed transactions left in the undo log
+            // before anyone is told they committed
+            siteConnection.setDeferUndoRelease(false);
+        }
+
+        final Mailbox initiator = m_tasks.get(0).m_initiator;
+        if (initiator instanceof InitiatorMailbox) {
+            ((InitiatorMailbox) initiator).deliverAll(responses);
+        } else {
+            for (InitiateResponseMessage response : responses) {
+                initiator.deliver(response);
+            }
+        }
+    }
+
+    @Override
+    public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog taskLog)
+    throws IOException
+    {
+        for (SpProcedureTask task : m_tasks) {
+            task.runForRejoin(siteConnection, taskLog);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("SpProcedureBatchTask:");
+        for (SpProcedureTask task : m_tasks) {
+            sb.append("\n  ").append(task);
+        }
+        return sb.toString();
+    }
+}
@@ -62,6 +62,20 @@ public class SpProcedureTask extends ProcedureTask
     /** Run is invoked by a run-loop to execute this transaction. */
     @Override
     public void run(SiteProcedureConnection siteConnection)
+    {
+        final InitiateResponseMessage response = execute(siteConnection);
+        m_initiator.deliver(response);
+        if (EXEC_TRACE_ENABLED) {
+            execLog.l7dlog( Level.TRACE, LogKeys.org_voltdb_ExecutionSite_SendingCompletedWUToDtxn.name(), null);
+        }
+        logToDR((SpTransactionState)m_txnState, response);
+    }
+
+    /**
+     * Execute and complete the transaction without delivering its response,
+     * so a SpProcedureBatchTask can send the responses of a batch together.
+     */
+    InitiateResponseMessage execute(SiteProcedureConnection siteConnection)
     {
         LatencyWatchdog.pet();
 
@@ -97,15 +111,10 @@ public class SpProcedureTask extends ProcedureTask
         }
         completeInitiateTask(siteConnection);
         response.m_sourceHSId = m_initiator.getHSId();
-        m_initiator.deliver(response);
-        if (EXEC_TRACE_ENABLED) {
-            execLog.l7dlog( Level.TRACE, LogKeys.org_voltdb_ExecutionSite_SendingCompletedWUToDtxn.name(), null);
-        }
         if (HOST_DEBUG_ENABLED) {
             hostLog.debug("COMPLETE: " + this);
         }
-
-        logToDR(txnState, response);
+        return response;
     }
 
     @Override
@@ -182,7 +191,7 @@ public class SpProcedureTask extends ProcedureTask
         logToDR(txnState, response);
     }
 
-    private void logToDR(SpTransactionState txnState, InitiateResponseMessage response)
+    void logToDR(SpTransactionState txnState, InitiateResponseMessage response)
     {
         // Log invocation to DR
         if (m_drGateway != null && !txnState.isReadOnly() && !txnState.needsRollback()) {
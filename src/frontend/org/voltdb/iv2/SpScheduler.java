@@ -67,6 +67,10 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
 {
     static final VoltLogger tmLog = new VoltLogger("TM");
 
+    // Most consecutive single partition invocations the site runs as one micro-batch,
+    // releasing their undo log and sending their responses together. 1 turns it off.
+    static final int SP_MICRO_BATCH_SIZE = Integer.getInteger("SP_MICRO_BATCH_SIZE", 1);
+
     static class DuplicateCounterKey implements Comparable<DuplicateCounterKey> {
         private final long m_txnId;
         private final long m_spHandle;
@@ -158,6 +162,7 @@ public class SpScheduler extends Scheduler implements SnapshotCompletionInterest
     SpScheduler(int partitionId, SiteTaskerQueue taskQueue, SnapshotCompletionMonitor snapMonitor)
     {
         super(partitionId, taskQueue);
+        m_tasks.setMaxBatchSize(SP_MICRO_BATCH_SIZE);
         m_pendingTasks = new TransactionTaskQueue(m_tasks,getCurrentTxnId());
         m_snapMonitor = snapMonitor;
         m_durabilityListener = new SpDurabilityListener(this, m_pendingTasks);
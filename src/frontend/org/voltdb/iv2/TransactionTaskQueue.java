@@ -20,6 +20,10 @@ package org.voltdb.iv2;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.dtxn.TransactionState;
@@ -34,32 +38,70 @@ public class TransactionTaskQueue
      * Multi-part transactions create a backlog of tasks behind them. A queue is
      * created for each multi-part task to maintain the backlog until the next
      * multi-part task.
+     *
+     * Only the thread that holds m_draining touches the backlog.
      */
-    private Deque<TransactionTask> m_backlog = new ArrayDeque<TransactionTask>();
+    private final Deque<TransactionTask> m_backlog = new ArrayDeque<TransactionTask>();
+
+    /*
+     * The initiator mailbox offers tasks and the site flushes the backlog without
+     * sharing a lock. Offers and flush requests are recorded here and applied by
+     * whichever thread manages to set m_draining, the others return right away.
+     * Applying the offers in the order they were recorded keeps the order the
+     * monitor used to impose, and a flush commutes with the offers around it
+     * because both only ever append to the site task queue.
+     */
+    private final ConcurrentLinkedQueue<TransactionTask> m_offered = new ConcurrentLinkedQueue<TransactionTask>();
+    private final AtomicInteger m_flushRequests = new AtomicInteger(0);
+    private final AtomicInteger m_restartRequests = new AtomicInteger(0);
+    private final AtomicBoolean m_draining = new AtomicBoolean(false);
+
+    /*
+     * Published by the draining thread for size() and toString()
+     */
+    private volatile int m_backlogSize = 0;
+    private volatile TransactionTask m_backlogHead = null;
 
     /*
      * Track the maximum spHandle offered to the task queue
      */
-    private long m_maxTaskedSpHandle;
+    private final AtomicLong m_maxTaskedSpHandle;
 
     TransactionTaskQueue(SiteTaskerQueue queue, long initialSpHandle)
     {
         m_taskQueue = queue;
-        m_maxTaskedSpHandle = initialSpHandle;
+        m_maxTaskedSpHandle = new AtomicLong(initialSpHandle);
     }
 
     /**
      * If necessary, stick this task in the backlog.
-     * Many network threads may be racing to reach here, synchronize to
-     * serialize queue order
+     * Many network threads may be racing to reach here, the task is placed in
+     * offer order either by this thread or by the thread currently draining.
      * @param task
-     * @return true if this task was stored, false if not
+     * @return true if this call stored the task in the backlog, false if it was
+     * queued for execution or placed by another thread
      */
-    synchronized boolean offer(TransactionTask task)
+    boolean offer(TransactionTask task)
     {
         Iv2Trace.logTransactionTaskQueueOffer(task);
+        final long spHandle = task.getTransactionState().m_spHandle;
+        long max;
+        while ((max = m_maxTaskedSpHandle.get()) < spHandle) {
+            if (m_maxTaskedSpHandle.compareAndSet(max, spHandle)) {
+                break;
+            }
+        }
+        m_offered.offer(task);
+        return drain(task) < 0;
+    }
+
+    /*
+     * Place a task the way offer always has, called only while draining.
+     * @return true if the task was stored in the backlog
+     */
+    private boolean place(TransactionTask task)
+    {
         TransactionState txnState = task.getTransactionState();
-        m_maxTaskedSpHandle = Math.max(m_maxTaskedSpHandle, txnState.m_spHandle);
         boolean retval = false;
         if (!m_backlog.isEmpty()) {
             /*
@@ -93,6 +135,48 @@ public class TransactionTaskQueue
         return retval;
     }
 
+    /*
+     * Apply the recorded offers and flush requests if no other thread is. Keeps
+     * going until nothing is left so a request recorded while another thread was
+     * finishing up is never stranded.
+     * @param mine the task offered by the caller, if any
+     * @return the number of tasks released by flushes, or -1 if the caller's
+     * task was stored in the backlog
+     */
+    private int drain(TransactionTask mine)
+    {
+        int released = 0;
+        boolean mineStored = false;
+        do {
+            if (!m_draining.compareAndSet(false, true)) {
+                break;
+            }
+            try {
+                TransactionTask task;
+                while ((task = m_offered.poll()) != null) {
+                    if (place(task) && task == mine) {
+                        mineStored = true;
+                    }
+                }
+                while (m_flushRequests.get() > 0) {
+                    m_flushRequests.decrementAndGet();
+                    released += flushBacklog();
+                }
+                while (m_restartRequests.get() > 0) {
+                    m_restartRequests.decrementAndGet();
+                    if (!m_backlog.isEmpty()) {
+                        taskQueueOffer(m_backlog.getFirst());
+                    }
+                }
+                m_backlogSize = m_backlog.size();
+                m_backlogHead = m_backlog.peekFirst();
+            } finally {
+                m_draining.set(false);
+            }
+        } while (!m_offered.isEmpty() || m_flushRequests.get() > 0 || m_restartRequests.get() > 0);
+        return mineStored ? -1 : released;
+    }
+
     // Add a local method to offer to the SiteTaskerQueue so we have
     // a single point we can log through.
     private void taskQueueOffer(TransactionTask task)
@@ -105,15 +189,25 @@ public class TransactionTaskQueue
      * @return the maximum spHandle offered to the task queue
      */
     public long getMaxTaskedSpHandle() {
-        return m_maxTaskedSpHandle;
+        return m_maxTaskedSpHandle.get();
     }
 
     /**
      * Try to offer as many runnable Tasks to the SiteTaskerQueue as possible.
      * @param txnId The transaction ID of the TransactionTask which is completing and causing the flush
-     * @return the number of TransactionTasks queued to the SiteTaskerQueue
+     * @return the number of TransactionTasks queued to the SiteTaskerQueue by this call,
+     * a flush applied by another draining thread is not counted
+     */
+    int flush(long txnId)
+    {
+        m_flushRequests.incrementAndGet();
+        return Math.max(0, drain(null));
+    }
+
+    /*
+     * Release the backlog behind a completed multi-part, called only while draining.
      */
-    synchronized int flush(long txnId)
+    private int flushBacklog()
     {
         int offered = 0;
         // If the first entry of the backlog is a completed transaction, clear it so it no longer
@@ -167,18 +261,19 @@ public class TransactionTaskQueue
      * instead of flush by the currently blocking MP transaction in the event a
      * restart is necessary.
      */
-    synchronized void restart()
+    void restart()
     {
-        taskQueueOffer(m_backlog.getFirst());
+        m_restartRequests.incrementAndGet();
+        drain(null);
     }
 
     /**
      * How many Tasks are un-runnable?
      * @return
      */
-    synchronized int size()
+    int size()
     {
-        return m_backlog.size();
+        return m_backlogSize;
     }
 
     @Override
@@ -187,8 +282,9 @@ public class TransactionTaskQueue
         StringBuilder sb = new StringBuilder();
         sb.append("TransactionTaskQueue:").append("\n");
         sb.append("\tSIZE: ").append(size());
-        if (!m_backlog.isEmpty()) {
-            sb.append("\tHEAD: ").append(m_backlog.getFirst());
+        TransactionTask head = m_backlogHead;
+        if (head != null) {
+            sb.append("\tHEAD: ").append(head);
         }
         return sb.toString();
     }
@@ -134,6 +134,7 @@ public class Driver implements java.sql.Driver
                 boolean heavyweight = false;
                 int maxoutstandingtxns = 0;
                 boolean reconnectOnConnectionLoss = false;
+                boolean columnarResults = false;
                 for (Enumeration<?> e = info.propertyNames(); e.hasMoreElements();)
                 {
                     String key = (String) e.nextElement();
@@ -150,12 +151,15 @@ public class Driver implements java.sql.Driver
                     else if ("autoreconnect".equals(key)){
                         reconnectOnConnectionLoss = ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value) || "1".equals(value));
                     }
+                    else if ("columnarresults".equalsIgnoreCase(key)) {
+                        columnarResults = ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value) || "1".equals(value));
+                    }
                     // else - unknown; ignore
                 }
 
                 // Return JDBC connection wrapper for the client
                 return  new JDBC4Connection(JDBC4ClientConnectionPool.get(servers, user, password,
-                            heavyweight, maxoutstandingtxns, reconnectOnConnectionLoss),
+                            heavyweight, maxoutstandingtxns, reconnectOnConnectionLoss, columnarResults),
                         info);
 
             } catch (Exception x) {
@@ -74,15 +74,30 @@ public class JDBC4ClientConnectionPool {
      */
     public static JDBC4ClientConnection get(String[] servers, String user,
             String password, boolean isHeavyWeight, int maxOutstandingTxns, boolean reconnectOnConnectionLoss) throws Exception {
+        return get(servers, user, password, isHeavyWeight, maxOutstandingTxns, reconnectOnConnectionLoss, false);
+    }
+
+    /**
+     * Gets a client connection to the given VoltDB server(s).
+     *
+     * @param columnarResults
+     *            ask the servers for query results in the columnar format.
+     * @see #get(String[] servers, String user, String password, boolean isHeavyWeight, int
+     *      maxOutstandingTxns, boolean reconnectOnConnectionLoss)
+     */
+    public static JDBC4ClientConnection get(String[] servers, String user,
+            String password, boolean isHeavyWeight, int maxOutstandingTxns, boolean reconnectOnConnectionLoss,
+            boolean columnarResults) throws Exception {
         String clientConnectionKeyBase = getClientConnectionKeyBase(servers, user, password,
-                isHeavyWeight, maxOutstandingTxns, reconnectOnConnectionLoss);
+                isHeavyWeight, maxOutstandingTxns, reconnectOnConnectionLoss, columnarResults);
         String clientConnectionKey = clientConnectionKeyBase;
 
         synchronized (ClientConnections) {
             if (!ClientConnections.containsKey(clientConnectionKey))
                 ClientConnections.put(clientConnectionKey, new JDBC4ClientConnection(
                         clientConnectionKeyBase, clientConnectionKey, servers, user,
-                        password, isHeavyWeight, maxOutstandingTxns, reconnectOnConnectionLoss));
+                        password, isHeavyWeight, maxOutstandingTxns, reconnectOnConnectionLoss,
+                        columnarResults));
             return ClientConnections.get(clientConnectionKey).use();
         }
     }
@@ -123,16 +138,20 @@ public class JDBC4ClientConnectionPool {
      *            connection before getting blocked on back-pressure.
      * @param reconnectOnConnectionLoss
      *            Attempts to reconnect to a node with retry after connection loss
+     * @param columnarResults
+     *            ask for query results in the columnar format
      * @return the base hash/key for the given connection parameter
      */
     private static String getClientConnectionKeyBase(String[] servers, String user,
-            String password, boolean isHeavyWeight, int maxOutstandingTxns, boolean reconnectOnConnectionLoss) {
+            String password, boolean isHeavyWeight, int maxOutstandingTxns, boolean reconnectOnConnectionLoss,
+            boolean columnarResults) {
         String clientConnectionKeyBase = user + ":" + password + "@";
         for (int i = 0; i < servers.length; i++)
             clientConnectionKeyBase += servers[i].trim() + ",";
         clientConnectionKeyBase += "{"
                 + Boolean.toString(isHeavyWeight) + ":" + Integer.toString(maxOutstandingTxns)
-                + ":" + Boolean.toString(reconnectOnConnectionLoss) + "}";
+                + ":" + Boolean.toString(reconnectOnConnectionLoss)
+                + ":" + Boolean.toString(columnarResults) + "}";
         return clientConnectionKeyBase;
     }
 
@@ -45,10 +45,15 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
     public static final String COMMIT_THROW_EXCEPTION = "jdbc.committhrowexception";
     public static final String ROLLBACK_THROW_EXCEPTION = "jdbc.rollbackthrowexception";
     public static final String QUERYTIMEOUT_UNIT = "jdbc.querytimeout.unit";
+    public static final String BATCH_MAX_IN_FLIGHT = "jdbc.batch.maxinflight";
+    // statements of a batch sent without waiting for a response. Statements sent together
+    // may run in any order, so a batch runs one statement at a time unless this is raised.
+    static final int DEFAULT_BATCH_MAX_IN_FLIGHT = 1;
 
     protected final JDBC4ClientConnection NativeConnection;
     protected final String User;
     protected TimeUnit queryTimeOutUnit = TimeUnit.SECONDS;
+    protected final int batchMaxInFlight;
     private boolean isClosed = false;
     private Properties props;
     private boolean autoCommit = true;
@@ -61,6 +66,8 @@ public class JDBC4Connection implements java.sql.Connection, IVoltDBConnection
         if (this.props.getProperty(JDBC4Connection.QUERYTIMEOUT_UNIT, "Seconds").equalsIgnoreCase("milliseconds")) {
             this.queryTimeOutUnit = TimeUnit.MILLISECONDS;
         }
+        this.batchMaxInFlight = Integer.parseInt(this.props.getProperty(BATCH_MAX_IN_FLIGHT,
+                Integer.toString(DEFAULT_BATCH_MAX_IN_FLIGHT)));
     }
 
     private void checkClosed() throws SQLException
@@ -43,6 +43,7 @@ import java.util.Map;
 import javax.sql.rowset.serial.SerialBlob;
 import javax.sql.rowset.serial.SerialClob;
 
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.utils.Encoder;
@@ -59,7 +60,7 @@ import org.voltdb.utils.Encoder;
 
 public class JDBC4ResultSet implements java.sql.ResultSet {
     private final Statement statement;
-    protected VoltTable table;
+    protected JDBC4ResultTable table;
     protected int columnCount;
     private int fetchDirection = FETCH_FORWARD;
     private int fetchSize = 0;
@@ -71,6 +72,19 @@ public class JDBC4ResultSet implements java.sql.ResultSet {
 
     public JDBC4ResultSet(Statement sourceStatement, VoltTable sourceTable)
             throws SQLException {
+        this(sourceStatement, JDBC4ResultTable.of(sourceTable));
+    }
+
+    /**
+     * Read the rows straight from a table received in the columnar format.
+     */
+    public JDBC4ResultSet(Statement sourceStatement, ColumnarVoltTable sourceTable)
+            throws SQLException {
+        this(sourceStatement, JDBC4ResultTable.of(sourceTable));
+    }
+
+    private JDBC4ResultSet(Statement sourceStatement, JDBC4ResultTable sourceTable)
+            throws SQLException {
         statement = sourceStatement;
         table = sourceTable;
         rowCount = table.getRowCount();
@@ -1902,7 +1916,7 @@ public class JDBC4ResultSet implements java.sql.ResultSet {
 
     // Returns the underlying VoltTable
     public VoltTable getVoltTable() {
-        return table;
+        return table == null ? null : table.toVoltTable();
     }
 
     // Retrieve the raw row data as an array
@@ -0,0 +1,134 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import org.voltdb.ColumnarVoltTable;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+/**
+ * The rows behind a JDBC4ResultSet, either a row oriented VoltTable or a
+ * ColumnarVoltTable received from a client asking for columnar results.
+ * Both offer the same cursor, this only lets the result set use either.
+ */
+abstract class JDBC4ResultTable {
+
+    static JDBC4ResultTable of(VoltTable table) {
+        return new Rows(table);
+    }
+
+    static JDBC4ResultTable of(ColumnarVoltTable table) {
+        return new Columns(table);
+    }
+
+    abstract int getRowCount();
+    abstract int getColumnCount();
+    abstract String getColumnName(int index);
+    abstract VoltType getColumnType(int index);
+    abstract int getColumnIndex(String name);
+
+    abstract int getActiveRowIndex();
+    abstract void resetRowPosition();
+    abstract boolean advanceRow();
+    abstract boolean advanceToRow(int index);
+    abstract boolean wasNull();
+
+    abstract long getLong(int index);
+    abstract double getDouble(int index);
+    abstract String getString(int index);
+    abstract byte[] getStringAsBytes(int index);
+    abstract byte[] getVarbinary(int index);
+    abstract BigDecimal getDecimalAsBigDecimal(int index);
+    abstract Timestamp getTimestampAsSqlTimestamp(int index);
+    abstract Object get(int index, VoltType type);
+
+    abstract VoltTable toVoltTable();
+
+    private static class Rows extends JDBC4ResultTable {
+        private final VoltTable m_table;
+
+        Rows(VoltTable table) {
+            m_table = table;
+        }
+
+        @Override int getRowCount() { return m_table.getRowCount(); }
+        @Override int getColumnCount() { return m_table.getColumnCount(); }
+        @Override String getColumnName(int index) { return m_table.getColumnName(index); }
+        @Override VoltType getColumnType(int index) { return m_table.getColumnType(index); }
+        @Override int getColumnIndex(String name) { return m_table.getColumnIndex(name); }
+
+        @Override int getActiveRowIndex() { return m_table.getActiveRowIndex(); }
+        @Override void resetRowPosition() { m_table.resetRowPosition(); }
+        @Override boolean advanceRow() { return m_table.advanceRow(); }
+        @Override boolean advanceToRow(int index) { return m_table.advanceToRow(index); }
+        @Override boolean wasNull() { return m_table.wasNull(); }
+
+        @Override long getLong(int index) { return m_table.getLong(index); }
+        @Override double getDouble(int index) { return m_table.getDouble(index); }
+        @Override String getString(int index) { return m_table.getString(index); }
+        @Override byte[] getStringAsBytes(int index) { return m_table.getStringAsBytes(index); }
+        @Override byte[] getVarbinary(int index) { return m_table.getVarbinary(index); }
+        @Override BigDecimal getDecimalAsBigDecimal(int index) { return m_table.getDecimalAsBigDecimal(index); }
+        @Override Timestamp getTimestampAsSqlTimestamp(int index) { return m_table.getTimestampAsSqlTimestamp(index); }
+        @Override Object get(int index, VoltType type) { return m_table.get(index, type); }
+
+        @Override VoltTable toVoltTable() { return m_table; }
+    }
+
+    private static class Columns extends JDBC4ResultTable {
+        private final ColumnarVoltTable m_table;
+        private VoltTable m_rows = null;
+
+        Columns(ColumnarVoltTable table) {
+            m_table = table;
+        }
+
+        @Override int getRowCount() { return m_table.getRowCount(); }
+        @Override int getColumnCount() { return m_table.getColumnCount(); }
+        @Override String getColumnName(int index) { return m_table.getColumnName(index); }
+        @Override VoltType getColumnType(int index) { return m_table.getColumnType(index); }
+        @Override int getColumnIndex(String name) { return m_table.getColumnIndex(name); }
+
+        @Override int getActiveRowIndex() { return m_table.getActiveRowIndex(); }
+        @Override void resetRowPosition() { m_table.resetRowPosition(); }
+        @Override boolean advanceRow() { return m_table.advanceRow(); }
+        @Override boolean advanceToRow(int index) { return m_table.advanceToRow(index); }
+        @Override boolean wasNull() { return m_table.wasNull(); }
+
+        @Override long getLong(int index) { return m_table.getLong(index); }
+        @Override double getDouble(int index) { return m_table.getDouble(index); }
+        @Override String getString(int index) { return m_table.getString(index); }
+        @Override byte[] getStringAsBytes(int index) { return m_table.getStringAsBytes(index); }
+        @Override byte[] getVarbinary(int index) { return m_table.getVarbinary(index); }
+        @Override BigDecimal getDecimalAsBigDecimal(int index) { return m_table.getDecimalAsBigDecimal(index); }
+        @Override Timestamp getTimestampAsSqlTimestamp(int index) { return m_table.getTimestampAsSqlTimestamp(index); }
+        @Override Object get(int index, VoltType type) { return m_table.get(index, type); }
+
+        @Override
+        VoltTable toVoltTable() {
+            // only built for callers that ask for the VoltTable itself
+            if (m_rows == null) {
+                m_rows = m_table.toVoltTable();
+            }
+            return m_rows;
+        }
+    }
+}
@@ -25,16 +25,20 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcCallException;
+import org.voltdb.client.ProcedureCallback;
 import org.voltdb.parser.JDBCParser;
 import org.voltdb.parser.SQLLexer;
 import org.voltdb.parser.JDBCParser.ParsedCall;
@@ -114,36 +118,23 @@ public class JDBC4Statement implements java.sql.Statement
         }
 
         protected VoltTable[] execute(JDBC4ClientConnection connection, long timeout, TimeUnit queryTimeOutUnit) throws SQLException {
+            return executeForResponse(connection, timeout, queryTimeOutUnit).getResults();
+        }
+
+        protected ClientResponse executeForResponse(JDBC4ClientConnection connection, long timeout, TimeUnit queryTimeOutUnit) throws SQLException {
             try
             {
                 if (this.type == TYPE_EXEC) {
-                    return connection.execute(this.sql[0], timeout, queryTimeOutUnit, this.parameters).getResults();
+                    return connection.execute(this.sql[0], timeout, queryTimeOutUnit, this.parameters);
                 } else {
-                    return connection.execute("@AdHoc", timeout, queryTimeOutUnit, this.sql[0]).getResults();
+                    return connection.execute("@AdHoc", timeout, queryTimeOutUnit, this.sql[0]);
                 }
             }
             catch(ProcCallException e)
             {
                 ClientResponse response = e.getClientResponse();
                 if (response != null) {
-                    // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
-                    // for connection problems.
-                    switch (response.getStatus()) {
-                    case ClientResponse.CONNECTION_LOST:
-                        throw SQLError.get(e, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", e.getMessage());
-                    case ClientResponse.CONNECTION_TIMEOUT:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", e.getMessage());
-                    case ClientResponse.SERVER_UNAVAILABLE:
-                        throw SQLError.get(e, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", e.getMessage());
-                    case ClientResponse.USER_ABORT:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "USER_ABORT", e.getMessage());
-                    case ClientResponse.UNEXPECTED_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", e.getMessage());
-                    case ClientResponse.GRACEFUL_FAILURE:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", e.getMessage());
-                    default:
-                        throw SQLError.get(e, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), e.getMessage());
-                    }
+                    throw getResponseError(response, e, e.getMessage());
                 } else {
                     throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
                 }
@@ -154,11 +145,57 @@ public class JDBC4Statement implements java.sql.Statement
             }
         }
 
+        /**
+         * Send the statement without waiting for the response.
+         * @return false if the client was shut down and couldn't send it
+         */
+        protected boolean executeAsync(JDBC4ClientConnection connection, ProcedureCallback callback,
+                                       long timeout, TimeUnit queryTimeOutUnit) throws SQLException {
+            try
+            {
+                if (this.type == TYPE_EXEC) {
+                    return connection.executeAsyncWithClientTimeout(callback, this.sql[0], timeout, queryTimeOutUnit, this.parameters);
+                } else {
+                    return connection.executeAsyncWithClientTimeout(callback, "@AdHoc", timeout, queryTimeOutUnit, this.sql[0]);
+                }
+            }
+            catch(IOException e)
+            {
+                throw SQLError.get(e, SQLError.CONNECTION_FAILURE, e.getMessage());
+            }
+        }
+
+        // Map response status to specific JDBC exception, mostly GENERAL_ERROR except
+        // for connection problems.
+        static SQLException getResponseError(ClientResponse response, Throwable cause, String message) {
+            switch (response.getStatus()) {
+            case ClientResponse.CONNECTION_LOST:
+                return SQLError.get(cause, SQLError.CONNECTION_CLOSED, "CONNECTION_LOST", message);
+            case ClientResponse.CONNECTION_TIMEOUT:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_TIMEOUT", message);
+            case ClientResponse.SERVER_UNAVAILABLE:
+                return SQLError.get(cause, SQLError.CONNECTION_FAILURE, "CONNECTION_UNAVAILABLE", message);
+            case ClientResponse.USER_ABORT:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "USER_ABORT", message);
+            case ClientResponse.UNEXPECTED_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "UNEXPECTED_FAILURE", message);
+            case ClientResponse.GRACEFUL_FAILURE:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, "GRACEFUL_FAILURE", message);
+            default:
+                return SQLError.get(cause, SQLError.GENERAL_ERROR, String.format("status=%d", (int)response.getStatus()), message);
+            }
+        }
+
         public static boolean isUpdateResult(VoltTable table)
         {
             return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
         }
 
+        public static boolean isUpdateResult(ColumnarVoltTable table)
+        {
+            return ((table.getColumnName(0).length() == 0 || table.getColumnName(0).equals("modified_tuples"))&& table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
+        }
+
         public String toSqlString()
         {
             return this.sql[0];
@@ -227,6 +264,110 @@ public class JDBC4Statement implements java.sql.Statement
         }
     }
 
+    /**
+     * The statements of a batch sent to the database without waiting for each other.
+     * At most maxInFlight of them are outstanding, the responses are kept in the
+     * order the statements were added. Outstanding statements may run in any order,
+     * so only a maxInFlight of 1 runs them one after another in the order they were added.
+     */
+    static class BatchExecution
+    {
+        private final int maxInFlight;
+        private final Semaphore permits;
+        private final ClientResponse[] responses;
+        private final SQLException[] errors;
+        private int submitted = 0;
+        private volatile boolean failed = false;
+
+        BatchExecution(int size, int maxInFlight)
+        {
+            this.maxInFlight = Math.max(1, maxInFlight);
+            this.permits = new Semaphore(this.maxInFlight);
+            this.responses = new ClientResponse[size];
+            this.errors = new SQLException[size];
+        }
+
+        /**
+         * Send the statements until all were sent or one failed, and wait for
+         * the responses of the ones that were sent.
+         */
+        void execute(List<VoltSQL> batch, JDBC4ClientConnection connection, long timeout, TimeUnit unit) throws SQLException
+        {
+            try {
+                try {
+                    while (submitted < batch.size() && !failed) {
+                        permits.acquire();
+                        final int index = submitted++;
+                        if (!submit(index, batch.get(index), connection, timeout, unit)) {
+                            break;
+                        }
+                    }
+                } finally {
+                    permits.acquire(maxInFlight);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw SQLError.get(e, SQLError.GENERAL_ERROR, e.getMessage());
+            }
+        }
+
+        private boolean submit(final int index, VoltSQL query, JDBC4ClientConnection connection, long timeout, TimeUnit unit)
+        {
+            boolean queued = false;
+            try {
+                queued = query.executeAsync(connection, new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse response) {
+                        responses[index] = response;
+                        if (response.getStatus() != ClientResponse.SUCCESS) {
+                            failed = true;
+                        }
+                        permits.release();
+                    }
+                }, timeout, unit);
+                if (!queued) {
+                    errors[index] = SQLError.get(SQLError.CONNECTION_CLOSED);
+                }
+            } catch (SQLException e) {
+                errors[index] = e;
+            }
+            if (!queued) {
+                failed = true;
+                permits.release();
+            }
+            return queued;
+        }
+
+        /**
+         * @return the update counts of the statements that were sent
+         * @throws BatchUpdateException if a statement failed
+         */
+        int[] getUpdateCounts() throws SQLException
+        {
+            final int[] updateCounts = new int[submitted];
+            SQLException firstError = null;
+            for (int i = 0; i < submitted; i++) {
+                final ClientResponse response = responses[i];
+                SQLException error = errors[i];
+                if (error == null && response.getStatus() != ClientResponse.SUCCESS) {
+                    error = VoltSQL.getResponseError(response, null, response.getStatusString());
+                }
+                if (error != null) {
+                    updateCounts[i] = EXECUTE_FAILED;
+                    if (firstError == null) {
+                        firstError = error;
+                    }
+                } else {
+                    updateCounts[i] = (int) response.getResults()[0].fetchRow(0).getLong(0);
+                }
+            }
+            if (firstError != null) {
+                throw new BatchUpdateException(updateCounts, firstError);
+            }
+            return updateCounts;
+        }
+    }
+
     private ArrayList<VoltSQL> batch = null;
     protected boolean isClosed = false;
     private int fetchDirection = ResultSet.FETCH_FORWARD;
@@ -237,6 +378,8 @@ public class JDBC4Statement implements java.sql.Statement
     private boolean isPoolable = false;
 
     protected VoltTable[] tableResults = null;
+    // set instead of tableResults when the results arrived in the columnar format
+    protected ColumnarVoltTable[] columnarResults = null;
     protected int tableResultIndex = -1;
     protected int lastUpdateCount = -1;
     protected Set<JDBC4ResultSet> openResults = new HashSet<JDBC4ResultSet>();
@@ -278,9 +421,42 @@ public class JDBC4Statement implements java.sql.Statement
         return new JDBC4ResultSet(this, result);
     }
 
+    private JDBC4ResultSet createTrimmedResultSet(ColumnarVoltTable input) throws SQLException
+    {
+        if (maxRows > 0 && input.getRowCount() > maxRows) {
+            return new JDBC4ResultSet(this, input.head(maxRows));
+        }
+        return new JDBC4ResultSet(this, input);
+    }
+
+    /**
+     * Read the results of a query straight from the columnar tables if they
+     * arrived that way, the row oriented tables are then never built.
+     */
+    private void setCurrentResult(ClientResponse response) throws SQLException
+    {
+        if (!(response instanceof ClientResponseImpl) || !((ClientResponseImpl) response).hasColumnarResults()) {
+            setCurrentResult(response.getResults(), -1);
+            return;
+        }
+        this.tableResults = null;
+        this.columnarResults = ((ClientResponseImpl) response).getColumnarResults();
+        this.tableResultIndex = -1;
+        this.lastUpdateCount = -1;
+        if (this.result != null) {
+            this.result.close();
+        }
+        if (this.columnarResults.length == 0) {
+            return;
+        }
+        this.tableResultIndex = 0;
+        this.result = createTrimmedResultSet(this.columnarResults[this.tableResultIndex]);
+    }
+
     private void setCurrentResult(VoltTable[] tables, int updateCount) throws SQLException
     {
         this.tableResults = tables;
+        this.columnarResults = null;
         this.tableResultIndex = -1;
         this.lastUpdateCount = updateCount;
         if (this.result != null) {
@@ -368,7 +544,7 @@ public class JDBC4Statement implements java.sql.Statement
         checkClosed();
         if (query.isQueryOfType(VoltSQL.TYPE_SELECT,VoltSQL.TYPE_EXEC))
         {
-            setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout,this.sourceConnection.queryTimeOutUnit), -1);
+            setCurrentResult(query.executeForResponse(this.sourceConnection.NativeConnection, this.m_timeout,this.sourceConnection.queryTimeOutUnit));
             return true;
         }
         else
@@ -412,6 +588,9 @@ public class JDBC4Statement implements java.sql.Statement
     }
 
     // Submits a batch of commands to the database for execution and if all commands execute successfully, returns an array of update counts.
+    // The commands are sent without waiting for each other, up to the jdbc.batch.maxinflight
+    // connection property at a time. Once a command failed no more are sent, the
+    // BatchUpdateException holds the update counts of the commands sent until then.
     @Override
     public int[] executeBatch() throws SQLException
     {
@@ -421,31 +600,19 @@ public class JDBC4Statement implements java.sql.Statement
             return new int[0];
         }
 
-        int[] updateCounts = new int[batch.size()];
-        // keep a running total of update counts
-        int runningUpdateCount = 0;
-
-        int i = 0;
+        final int[] updateCounts;
         try {
-            for (; i < batch.size(); i++) {
-
-                setCurrentResult(
-                        null,
-                        (int) batch.get(i).execute(
-                                sourceConnection.NativeConnection,
-                                this.m_timeout,
-                                sourceConnection.queryTimeOutUnit)[0].fetchRow(
-                                0).getLong(0));
-                updateCounts[i] = this.lastUpdateCount;
-                runningUpdateCount += this.lastUpdateCount;
-            }
-        } catch (SQLException x) {
-            updateCounts[i] = EXECUTE_FAILED;
-            throw new BatchUpdateException(Arrays.copyOf(updateCounts, i + 1),
-                    x);
+            BatchExecution execution = new BatchExecution(batch.size(), sourceConnection.batchMaxInFlight);
+            execution.execute(batch, sourceConnection.NativeConnection, this.m_timeout, sourceConnection.queryTimeOutUnit);
+            updateCounts = execution.getUpdateCounts();
         } finally {
             clearBatch();
         }
+        // keep a running total of update counts
+        int runningUpdateCount = 0;
+        for (int updateCount : updateCounts) {
+            runningUpdateCount += updateCount;
+        }
         // replace the update count from the last statement with the update count
         // from the last batch.
         this.lastUpdateCount = runningUpdateCount;
@@ -455,7 +622,7 @@ public class JDBC4Statement implements java.sql.Statement
 
     protected ResultSet executeQuery(VoltSQL query) throws SQLException
     {
-        setCurrentResult(query.execute(this.sourceConnection.NativeConnection, this.m_timeout, this.sourceConnection.queryTimeOutUnit), -1);
+        setCurrentResult(query.executeForResponse(this.sourceConnection.NativeConnection, this.m_timeout, this.sourceConnection.queryTimeOutUnit));
         return this.result;
     }
 
@@ -594,7 +761,21 @@ public class JDBC4Statement implements java.sql.Statement
         if (current != Statement.CLOSE_ALL_RESULTS)
         {
             this.tableResultIndex++;
-            if (this.tableResultIndex < this.tableResults.length)
+            if (this.columnarResults != null)
+            {
+                if (this.tableResultIndex < this.columnarResults.length)
+                {
+                    ColumnarVoltTable table = this.columnarResults[this.tableResultIndex];
+                    if (VoltSQL.isUpdateResult(table)) {
+                        this.lastUpdateCount = (int)table.getLongColumn(0)[0];
+                    } else
+                    {
+                        this.result = createTrimmedResultSet(table);
+                        return true;
+                    }
+                }
+            }
+            else if (this.tableResultIndex < this.tableResults.length)
             {
                 VoltTable table = this.tableResults[this.tableResultIndex];
                 if (VoltSQL.isUpdateResult(table)) {
@@ -33,6 +33,7 @@ import org.voltcore.utils.Pair;
 import org.voltdb.PlannerStatsCollector;
 import org.voltdb.PlannerStatsCollector.CacheUse;
 import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.StatementLatencyStats;
 import org.voltdb.StatsAgent;
 import org.voltdb.StatsSelector;
 import org.voltdb.TableStreamType;
@@ -127,6 +128,11 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
 
     String m_currentProcedureName = null;
     int m_currentBatchIndex = 0;
+    // whether large results may be handed out in pooled buffers instead of heap copies
+    boolean m_pooledResults = false;
+    // nanoseconds spent in each phase of every fragment of the last batch, laid out as
+    // StatementLatencyStats describes, null unless the batch is being timed
+    long[] m_phaseTimes = null;
     private boolean m_readOnly;
     private long m_startTime;
     private long m_lastMsgTime;
@@ -554,6 +560,25 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
         m_currentProcedureName = procedureName;
     }
 
+    /**
+     * Allow result tables of the following plan fragments to be backed by
+     * pooled direct buffers. Only callers that release the tables, or that are
+     * content to let them be reclaimed when garbage collected, should set this.
+     */
+    public void setPooledResults(boolean pooledResults) {
+        m_pooledResults = pooledResults;
+    }
+
+    /**
+     * Record how long each phase of every fragment of the following plan fragment batches
+     * takes in the given array, see {@link StatementLatencyStats}. It needs room for the
+     * largest batch. Null stops the timing. Engines that can't time fragments leave the
+     * array untouched.
+     */
+    public void setPhaseTimes(long[] phaseTimes) {
+        m_phaseTimes = phaseTimes;
+    }
+
     /** Run multiple plan fragments */
     public VoltTable[] executePlanFragments(int numFragmentIds,
                                             long[] planFragmentIds,
@@ -798,6 +823,17 @@ public abstract class ExecutionEngine implements FastDeserializer.Deserializatio
                                           ByteBuffer resultBuffer, int result_buffer_size,
                                           ByteBuffer exceptionBuffer, int exception_buffer_size);
 
+    /**
+     * Have the EE write the nanoseconds it spends on each fragment of the following
+     * batches into a buffer, as native order longs, or stop doing so.
+     * @param pointer
+     * @param fragment_times_buffer direct buffer, or null to stop the timing
+     * @param fragment_times_capacity number of fragments the buffer has room for
+     * @return error code
+     */
+    protected native int nativeSetFragmentTimesBuffer(long pointer, ByteBuffer fragment_times_buffer,
+                                                      int fragment_times_capacity);
+
     /**
      * Load the system catalog for this engine.
      * @param pointer the VoltDBEngine pointer
@@ -19,6 +19,7 @@ package org.voltdb.jni;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.List;
 
 import org.voltcore.logging.VoltLogger;
@@ -26,7 +27,9 @@ import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltcore.utils.Pair;
 import org.voltdb.ParameterSet;
+import org.voltdb.PooledResultBuffer;
 import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.StatementLatencyStats;
 import org.voltdb.StatsSelector;
 import org.voltdb.TableStreamType;
 import org.voltdb.TheHashinator.HashinatorConfig;
@@ -67,7 +70,18 @@ public class ExecutionEngineJNI extends ExecutionEngine {
 
     private static final boolean HOST_TRACE_ENABLED;
 
+    /** Size of the buffer the EE serializes results into. */
+    private static final int RESULT_BUFFER_SIZE = 1024 * 1024 * 10;
+
+    /**
+     * Results at least this large are handed to the result tables in the EE's own
+     * buffer when pooled results are allowed, and the EE gets a pooled replacement.
+     * Smaller results are cheaper to copy. A negative value disables pooled results.
+     */
+    public static final int EE_POOLED_RESULT_THRESHOLD;
+
     static {
+        EE_POOLED_RESULT_THRESHOLD = Integer.getInteger("EE_POOLED_RESULT_THRESHOLD", 1024 * 1024 * 4);
         EE_COMPACTION_THRESHOLD = Integer.getInteger("EE_COMPACTION_THRESHOLD", 95);
         if (EE_COMPACTION_THRESHOLD < 0 || EE_COMPACTION_THRESHOLD > 99) {
             VoltDB.crashLocalVoltDB("EE_COMPACTION_THRESHOLD " + EE_COMPACTION_THRESHOLD + " is not valid, must be between 0 and 99", false, null);
@@ -94,7 +108,7 @@ public class ExecutionEngineJNI extends ExecutionEngine {
      * that rely on being able to serialize large results sets will get the same amount of storage
      * when using the IPC backend.
      **/
-    private final BBContainer deserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 10);
+    private BBContainer deserializerBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(RESULT_BUFFER_SIZE);
     private FastDeserializer deserializer =
         new FastDeserializer(deserializerBufferOrigin.b());
 
@@ -107,6 +121,13 @@ public class ExecutionEngineJNI extends ExecutionEngine {
     private final BBContainer exceptionBufferOrigin = org.voltcore.utils.DBBPool.allocateDirect(1024 * 1024 * 5);
     private ByteBuffer exceptionBuffer = exceptionBufferOrigin.b();
 
+    /*
+     * While batches are being timed the EE writes the nanoseconds it spent on
+     * each fragment here, allocated the first time and grown for larger batches.
+     */
+    private BBContainer fragmentTimesBufferC = null;
+    private ByteBuffer fragmentTimesBuffer = null;
+
     /**
      * initialize the native Engine object.
      */
@@ -166,13 +187,52 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         psetBufferC = DBBPool.allocateDirect(size);
         psetBuffer = psetBufferC.b();
 
+        setNativeBuffers();
+    }
+
+    private void setNativeBuffers() {
         int errorCode = nativeSetBuffers(pointer, psetBuffer,
                 psetBuffer.capacity(),
-                deserializer.buffer(), deserializer.buffer().capacity(),
+                deserializer.buffer(), RESULT_BUFFER_SIZE,
                 exceptionBuffer, exceptionBuffer.capacity());
         checkErrorCode(errorCode);
     }
 
+    @Override
+    public void setPhaseTimes(long[] phaseTimes) {
+        super.setPhaseTimes(phaseTimes);
+        int errorCode;
+        if (phaseTimes == null) {
+            errorCode = nativeSetFragmentTimesBuffer(pointer, null, 0);
+        }
+        else {
+            final int fragments = phaseTimes.length / StatementLatencyStats.PHASES;
+            if (fragmentTimesBuffer == null || fragmentTimesBuffer.capacity() < fragments * 8) {
+                if (fragmentTimesBufferC != null) {
+                    fragmentTimesBufferC.discard();
+                }
+                fragmentTimesBufferC = DBBPool.allocateDirect(fragments * 8);
+                fragmentTimesBuffer = fragmentTimesBufferC.b();
+                fragmentTimesBuffer.order(ByteOrder.nativeOrder());
+            }
+            errorCode = nativeSetFragmentTimesBuffer(pointer, fragmentTimesBuffer,
+                    fragmentTimesBuffer.capacity() / 8);
+        }
+        checkErrorCode(errorCode);
+    }
+
+    /**
+     * Hand the buffer the EE just serialized results into over to the caller
+     * and give the EE a pooled buffer to use from now on.
+     */
+    private PooledResultBuffer takeResultBuffer() {
+        final PooledResultBuffer results = new PooledResultBuffer(deserializerBufferOrigin);
+        deserializerBufferOrigin = DBBPool.allocateDirectAndPool(RESULT_BUFFER_SIZE);
+        deserializer = new FastDeserializer(deserializerBufferOrigin.b());
+        setNativeBuffers();
+        return results;
+    }
+
     final void clearPsetAndEnsureCapacity(int size) {
         assert(psetBuffer != null);
         if (size > psetBuffer.capacity()) {
@@ -218,6 +278,10 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         exceptionBufferOrigin.discard();
         psetBufferC.discard();
         psetBuffer = null;
+        if (fragmentTimesBufferC != null) {
+            fragmentTimesBufferC.discard();
+            fragmentTimesBuffer = null;
+        }
         LOG.trace("Released Execution Engine.");
     }
 
@@ -272,6 +336,8 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             }
         }
 
+        final long[] phaseTimes = m_phaseTimes;
+
         // serialize the param sets
         int allPsetSize = 0;
         for (int i = 0; i < batchSize; ++i) {
@@ -284,7 +350,13 @@ public class ExecutionEngineJNI extends ExecutionEngine {
         }
 
         clearPsetAndEnsureCapacity(allPsetSize);
+        long mark = phaseTimes != null ? System.nanoTime() : 0;
         for (int i = 0; i < batchSize; ++i) {
+            if (phaseTimes != null && i > 0) {
+                final long now = System.nanoTime();
+                phaseTimes[(i - 1) * StatementLatencyStats.PHASES + StatementLatencyStats.PARAMETERS] = now - mark;
+                mark = now;
+            }
             if (parameterSets[i] instanceof ByteBuffer) {
                 ByteBuffer buf = (ByteBuffer) parameterSets[i];
                 psetBuffer.put(buf);
@@ -303,6 +375,10 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             }
         }
         // checkMaxFsSize();
+        if (phaseTimes != null) {
+            phaseTimes[(batchSize - 1) * StatementLatencyStats.PHASES + StatementLatencyStats.PARAMETERS] =
+                    System.nanoTime() - mark;
+        }
 
         // Execute the plan, passing a raw pointer to the byte buffers for input and output
         //Clear is destructive, do it before the native call
@@ -318,7 +394,15 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                     lastCommittedSpHandle,
                     uniqueId,
                     undoToken);
+        final long executed = phaseTimes != null ? System.nanoTime() : 0;
+        if (phaseTimes != null && errorCode == ERRORCODE_SUCCESS) {
+            for (int i = 0; i < batchSize; ++i) {
+                phaseTimes[i * StatementLatencyStats.PHASES + StatementLatencyStats.EXECUTION] =
+                        fragmentTimesBuffer.getLong(i * 8);
+            }
+        }
 
+        PooledResultBuffer pooled = null;
         try {
             checkErrorCode(errorCode);
             FastDeserializer fds = fallbackBuffer == null ? deserializer : new FastDeserializer(fallbackBuffer);
@@ -331,8 +415,24 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                 final boolean dirty = fds.readBoolean();
                 if (dirty)
                     m_dirty = true;
-                // get a copy of the buffer
-                final ByteBuffer fullBacking = fds.readBuffer(totalSize);
+                // large results stay where the EE put them, otherwise get a copy of the buffer.
+                // The fallback buffer belongs to the EE and always has to be copied.
+                final ByteBuffer fullBacking;
+                if (fallbackBuffer == null && m_pooledResults &&
+                        EE_POOLED_RESULT_THRESHOLD >= 0 && totalSize >= EE_POOLED_RESULT_THRESHOLD) {
+                    final int start = deserializer.buffer().position();
+                    pooled = takeResultBuffer();
+                    final ByteBuffer resultBuffer = pooled.b();
+                    resultBuffer.limit(start + totalSize);
+                    resultBuffer.position(start);
+                    fullBacking = resultBuffer.slice();
+                }
+                else {
+                    fullBacking = fds.readBuffer(totalSize);
+                }
+                // the copy above is shared out by the size of each fragment's result
+                final long copied = phaseTimes != null ? System.nanoTime() : 0;
+                mark = copied;
                 final VoltTable[] results = new VoltTable[batchSize];
                 for (int i = 0; i < batchSize; ++i) {
                     final int numdeps = fullBacking.getInt(); // number of dependencies for this frag
@@ -347,7 +447,23 @@ public class ExecutionEngineJNI extends ExecutionEngine {
                     fullBacking.position(fullBacking.position() + tableSize);
                     tableBacking.limit(tableSize);
 
-                    results[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
+                    if (pooled == null) {
+                        results[i] = PrivateVoltTableFactory.createVoltTableFromBuffer(tableBacking, true);
+                    }
+                    else {
+                        results[i] = PrivateVoltTableFactory.createVoltTableFromPooledBuffer(tableBacking, pooled);
+                    }
+                    if (phaseTimes != null) {
+                        final long now = System.nanoTime();
+                        final int offset = i * StatementLatencyStats.PHASES;
+                        phaseTimes[offset + StatementLatencyStats.RESULTS] =
+                                now - mark + (copied - executed) * tableSize / Math.max(1, totalSize);
+                        phaseTimes[offset + StatementLatencyStats.TOTAL] =
+                                phaseTimes[offset + StatementLatencyStats.PARAMETERS] +
+                                phaseTimes[offset + StatementLatencyStats.EXECUTION] +
+                                phaseTimes[offset + StatementLatencyStats.RESULTS];
+                        mark = now;
+                    }
                 }
                 return results;
             } catch (final IOException ex) {
@@ -356,6 +472,10 @@ public class ExecutionEngineJNI extends ExecutionEngine {
             }
         } finally {
             fallbackBuffer = null;
+            // the tables hold their own references to the pooled buffer
+            if (pooled != null) {
+                pooled.release();
+            }
         }
     }
 
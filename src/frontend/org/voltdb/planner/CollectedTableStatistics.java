@@ -0,0 +1,491 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltTableRow;
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.ColumnRef;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.Index;
+import org.voltdb.catalog.Table;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.HyperLogLog;
+
+import com.google_voltpatches.common.base.Charsets;
+import com.google_voltpatches.common.hash.HashFunction;
+import com.google_voltpatches.common.hash.Hashing;
+
+/**
+ * Value distribution statistics gathered by scanning the rows of one table.
+ * For every column it keeps a null count, a distinct-count sketch and, for
+ * numeric columns, a bounded uniform sample of values; for every column-based
+ * index it keeps a distinct-count sketch per key prefix.
+ *
+ * Statistics gathered on different partitions (or different hosts) can be
+ * merged, and can be flattened to a VoltTable so that they can be shipped
+ * between hosts and stored. The merged statistics are turned into planner
+ * estimates by {@link #applyTo(DatabaseEstimates.TableEstimates)}.
+ */
+public class CollectedTableStatistics {
+
+    // log2 of the number of distinct-count sketch registers, about 2.3% error
+    static final int SKETCH_PRECISION = 11;
+    // number of values sampled per numeric column to build histograms from
+    static final int SAMPLE_SIZE = 512;
+    static final int HISTOGRAM_BUCKETS = 32;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final long NULL_HASH = 0x5bd1e9955bd1e995L;
+
+    static final String ITEM_COLUMN = "COLUMN";
+    static final String ITEM_INDEX = "INDEX";
+
+    /**
+     * Layout of the VoltTable produced by {@link #flattenToTable}, one row per
+     * column or index of each table.
+     */
+    public static VoltTable constructStatisticsTable() {
+        return new VoltTable(
+                new ColumnInfo("TABLE_NAME", VoltType.STRING),
+                new ColumnInfo("ROW_COUNT", VoltType.BIGINT),
+                new ColumnInfo("ITEM_TYPE", VoltType.STRING),
+                new ColumnInfo("ITEM_NAME", VoltType.STRING),
+                new ColumnInfo("STATISTICS", VoltType.VARBINARY));
+    }
+
+    static class ColumnStatistics {
+        final String m_name;
+        final VoltType m_type;
+        long m_nullCount = 0;
+        HyperLogLog m_distinct = new HyperLogLog(SKETCH_PRECISION);
+        // uniform sample of the non-null values, numeric columns only
+        double[] m_sample;
+        int m_sampleCount = 0;
+        // number of non-null values the sample was drawn from
+        long m_sampledRows = 0;
+
+        ColumnStatistics(String name, VoltType type) {
+            m_name = name;
+            m_type = type;
+            m_sample = type.isNumber() ? new double[SAMPLE_SIZE] : null;
+        }
+
+        void sample(double value, Random rand) {
+            ++m_sampledRows;
+            if (m_sampleCount < SAMPLE_SIZE) {
+                m_sample[m_sampleCount++] = value;
+            }
+            else {
+                // reservoir sampling keeps every value with equal probability
+                long slot = (long) (rand.nextDouble() * m_sampledRows);
+                if (slot < SAMPLE_SIZE) {
+                    m_sample[(int) slot] = value;
+                }
+            }
+        }
+
+        /**
+         * Merge another uniform sample into this one. Slots are filled from
+         * either side in proportion to the number of rows it was drawn from,
+         * which keeps the result a uniform sample of the union.
+         */
+        void merge(ColumnStatistics other, Random rand) {
+            m_nullCount += other.m_nullCount;
+            m_distinct.merge(other.m_distinct);
+            if (m_sample == null) {
+                return;
+            }
+            double[] mine = Arrays.copyOf(m_sample, m_sampleCount);
+            double[] theirs = Arrays.copyOf(other.m_sample, other.m_sampleCount);
+            shuffle(mine, rand);
+            shuffle(theirs, rand);
+            int total = Math.min(SAMPLE_SIZE, mine.length + theirs.length);
+            long mineLeft = m_sampledRows;
+            long theirsLeft = other.m_sampledRows;
+            int mi = 0;
+            int ti = 0;
+            for (int i = 0; i < total; ++i) {
+                boolean takeMine;
+                if (mi == mine.length) {
+                    takeMine = false;
+                }
+                else if (ti == theirs.length) {
+                    takeMine = true;
+                }
+                else {
+                    takeMine = rand.nextDouble() * (mineLeft + theirsLeft) < mineLeft;
+                }
+                if (takeMine) {
+                    m_sample[i] = mine[mi++];
+                    --mineLeft;
+                }
+                else {
+                    m_sample[i] = theirs[ti++];
+                    --theirsLeft;
+                }
+            }
+            m_sampleCount = total;
+            m_sampledRows += other.m_sampledRows;
+        }
+
+        byte[] toBytes() {
+            int size = 8 + m_distinct.getSerializedSize() + 8 + 4 + 8 * m_sampleCount;
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            buf.putLong(m_nullCount);
+            m_distinct.flattenToBuffer(buf);
+            buf.putLong(m_sampledRows);
+            buf.putInt(m_sampleCount);
+            for (int i = 0; i < m_sampleCount; ++i) {
+                buf.putDouble(m_sample[i]);
+            }
+            return buf.array();
+        }
+
+        void initFromBytes(byte[] bytes) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            m_nullCount = buf.getLong();
+            m_distinct = HyperLogLog.fromBuffer(buf);
+            m_sampledRows = buf.getLong();
+            m_sampleCount = buf.getInt();
+            if (m_sample != null) {
+                for (int i = 0; i < m_sampleCount; ++i) {
+                    m_sample[i] = buf.getDouble();
+                }
+            }
+            else {
+                m_sampleCount = 0;
+            }
+        }
+    }
+
+    static class IndexStatistics {
+        final String m_name;
+        final boolean m_unique;
+        // positions in the table of the indexed columns, in key order
+        final int[] m_columns;
+        HyperLogLog[] m_prefixes;
+
+        IndexStatistics(String name, boolean unique, int[] columns) {
+            m_name = name;
+            m_unique = unique;
+            m_columns = columns;
+            m_prefixes = new HyperLogLog[columns.length];
+            for (int i = 0; i < columns.length; ++i) {
+                m_prefixes[i] = new HyperLogLog(SKETCH_PRECISION);
+            }
+        }
+
+        void merge(IndexStatistics other) {
+            for (int i = 0; i < m_prefixes.length; ++i) {
+                m_prefixes[i].merge(other.m_prefixes[i]);
+            }
+        }
+
+        byte[] toBytes() {
+            ByteBuffer buf = ByteBuffer.allocate(4 + m_prefixes.length * m_prefixes[0].getSerializedSize());
+            buf.putInt(m_prefixes.length);
+            for (HyperLogLog prefix : m_prefixes) {
+                prefix.flattenToBuffer(buf);
+            }
+            return buf.array();
+        }
+
+        void initFromBytes(byte[] bytes) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            int count = buf.getInt();
+            if (count != m_prefixes.length) {
+                // the index changed shape since these were collected
+                return;
+            }
+            for (int i = 0; i < count; ++i) {
+                m_prefixes[i] = HyperLogLog.fromBuffer(buf);
+            }
+        }
+    }
+
+    private final String m_tableName;
+    private long m_rowCount = 0;
+    private final ColumnStatistics[] m_columns;
+    private final IndexStatistics[] m_indexes;
+    private final Random m_rand;
+    // scratch space for the per-row column hashes
+    private final long[] m_rowHashes;
+
+    public CollectedTableStatistics(Table table) {
+        m_tableName = table.getTypeName();
+        List<Column> columns = CatalogUtil.getSortedCatalogItems(table.getColumns(), "index");
+        m_columns = new ColumnStatistics[columns.size()];
+        for (Column column : columns) {
+            m_columns[column.getIndex()] =
+                    new ColumnStatistics(column.getTypeName(), VoltType.get((byte) column.getType()));
+        }
+        m_rowHashes = new long[m_columns.length];
+
+        List<IndexStatistics> indexes = new ArrayList<IndexStatistics>();
+        for (Index index : table.getIndexes()) {
+            // there are no per-row values to sketch for expression indexes
+            if ( ! index.getExpressionsjson().isEmpty()) {
+                continue;
+            }
+            List<ColumnRef> refs = CatalogUtil.getSortedCatalogItems(index.getColumns(), "index");
+            if (refs.isEmpty()) {
+                continue;
+            }
+            int[] positions = new int[refs.size()];
+            for (int i = 0; i < positions.length; ++i) {
+                positions[i] = refs.get(i).getColumn().getIndex();
+            }
+            indexes.add(new IndexStatistics(index.getTypeName(),
+                    index.getUnique() || index.getAssumeunique(), positions));
+        }
+        m_indexes = indexes.toArray(new IndexStatistics[indexes.size()]);
+        m_rand = new Random(m_tableName.hashCode());
+    }
+
+    public String getTableName() {
+        return m_tableName;
+    }
+
+    public long getRowCount() {
+        return m_rowCount;
+    }
+
+    /**
+     * Add every row of a table holding this table's columns, in catalog order.
+     */
+    public void addRows(VoltTable rows) {
+        rows.resetRowPosition();
+        while (rows.advanceRow()) {
+            addRow(rows);
+        }
+    }
+
+    private void addRow(VoltTableRow row) {
+        ++m_rowCount;
+        for (int i = 0; i < m_columns.length; ++i) {
+            ColumnStatistics column = m_columns[i];
+            long hash = hashValue(row, i, column);
+            m_rowHashes[i] = hash;
+            if (hash == NULL_HASH) {
+                ++column.m_nullCount;
+            }
+            else {
+                column.m_distinct.addHash(hash);
+            }
+        }
+        for (IndexStatistics index : m_indexes) {
+            long hash = 0;
+            for (int i = 0; i < index.m_columns.length; ++i) {
+                hash = HyperLogLog.combine(hash, m_rowHashes[index.m_columns[i]]);
+                index.m_prefixes[i].addHash(hash);
+            }
+        }
+    }
+
+    /**
+     * Hash the value of a column, sampling it along the way if it is numeric.
+     * @return the hash, or NULL_HASH if the value is null
+     */
+    private long hashValue(VoltTableRow row, int i, ColumnStatistics column) {
+        switch (column.m_type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT: {
+            long value = row.getLong(i);
+            if (row.wasNull()) {
+                return NULL_HASH;
+            }
+            column.sample(value, m_rand);
+            return HASH.hashLong(value).asLong();
+        }
+        case FLOAT: {
+            double value = row.getDouble(i);
+            if (row.wasNull()) {
+                return NULL_HASH;
+            }
+            column.sample(value, m_rand);
+            return HASH.hashLong(Double.doubleToLongBits(value)).asLong();
+        }
+        case DECIMAL: {
+            java.math.BigDecimal value = row.getDecimalAsBigDecimal(i);
+            if (row.wasNull()) {
+                return NULL_HASH;
+            }
+            column.sample(value.doubleValue(), m_rand);
+            return HASH.hashBytes(value.unscaledValue().toByteArray()).asLong();
+        }
+        case TIMESTAMP: {
+            long value = row.getTimestampAsLong(i);
+            if (row.wasNull()) {
+                return NULL_HASH;
+            }
+            return HASH.hashLong(value).asLong();
+        }
+        case STRING: {
+            byte[] value = row.getStringAsBytes(i);
+            if (row.wasNull()) {
+                return NULL_HASH;
+            }
+            return HASH.hashBytes(value).asLong();
+        }
+        case VARBINARY: {
+            byte[] value = row.getVarbinary(i);
+            if (row.wasNull()) {
+                return NULL_HASH;
+            }
+            return HASH.hashBytes(value).asLong();
+        }
+        default: {
+            Object value = row.get(i, column.m_type);
+            if (row.wasNull() || value == null) {
+                return NULL_HASH;
+            }
+            return HASH.hashBytes(value.toString().getBytes(Charsets.UTF_8)).asLong();
+        }
+        }
+    }
+
+    /**
+     * Fold statistics gathered over other rows of the same table into these.
+     */
+    public void merge(CollectedTableStatistics other) {
+        assert(m_tableName.equals(other.m_tableName));
+        m_rowCount += other.m_rowCount;
+        for (int i = 0; i < m_columns.length && i < other.m_columns.length; ++i) {
+            m_columns[i].merge(other.m_columns[i], m_rand);
+        }
+        for (int i = 0; i < m_indexes.length && i < other.m_indexes.length; ++i) {
+            m_indexes[i].merge(other.m_indexes[i]);
+        }
+    }
+
+    /**
+     * Add one row per column and per index to a table laid out by
+     * {@link #constructStatisticsTable()}.
+     */
+    public void flattenToTable(VoltTable table) {
+        for (ColumnStatistics column : m_columns) {
+            table.addRow(m_tableName, m_rowCount, ITEM_COLUMN, column.m_name, column.toBytes());
+        }
+        for (IndexStatistics index : m_indexes) {
+            table.addRow(m_tableName, m_rowCount, ITEM_INDEX, index.m_name, index.toBytes());
+        }
+    }
+
+    /**
+     * Rebuild the statistics flattened into a table by {@link #flattenToTable}.
+     * Rows naming tables, columns or indexes that are no longer in the catalog
+     * are ignored.
+     *
+     * @return the statistics by table name
+     */
+    public static Map<String, CollectedTableStatistics> fromTable(Database db, VoltTable table) {
+        Map<String, CollectedTableStatistics> result = new LinkedHashMap<String, CollectedTableStatistics>();
+        table.resetRowPosition();
+        while (table.advanceRow()) {
+            String tableName = table.getString("TABLE_NAME");
+            CollectedTableStatistics stats = result.get(tableName);
+            if (stats == null) {
+                Table catalogTable = db.getTables().getIgnoreCase(tableName);
+                if (catalogTable == null) {
+                    continue;
+                }
+                stats = new CollectedTableStatistics(catalogTable);
+                stats.m_rowCount = table.getLong("ROW_COUNT");
+                result.put(tableName, stats);
+            }
+            String itemName = table.getString("ITEM_NAME");
+            byte[] bytes = table.getVarbinary("STATISTICS");
+            if (ITEM_COLUMN.equals(table.getString("ITEM_TYPE"))) {
+                for (ColumnStatistics column : stats.m_columns) {
+                    if (column.m_name.equals(itemName)) {
+                        column.initFromBytes(bytes);
+                    }
+                }
+            }
+            else {
+                for (IndexStatistics index : stats.m_indexes) {
+                    if (index.m_name.equals(itemName)) {
+                        index.initFromBytes(bytes);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replace the table's default estimates with ones derived from these statistics.
+     */
+    public void applyTo(DatabaseEstimates.TableEstimates estimates) {
+        // keep a floor of one row so empty tables don't make every plan look free
+        long tuples = Math.max(1, m_rowCount);
+        estimates.maxTuples = tuples;
+        estimates.minTuples = tuples;
+        estimates.fromStatistics = true;
+
+        for (ColumnStatistics column : m_columns) {
+            DatabaseEstimates.ColumnEstimates columnEst = new DatabaseEstimates.ColumnEstimates();
+            long nonNull = m_rowCount - column.m_nullCount;
+            columnEst.nullCount = column.m_nullCount;
+            columnEst.distinctCount = Math.min(nonNull, column.m_distinct.cardinality());
+            if (column.m_sample != null && column.m_sampleCount > 0) {
+                double[] sorted = Arrays.copyOf(column.m_sample, column.m_sampleCount);
+                Arrays.sort(sorted);
+                columnEst.histogram = EquiDepthHistogram.fromSortedSample(sorted, HISTOGRAM_BUCKETS,
+                        nonNull, columnEst.distinctCount);
+            }
+            estimates.columns.put(column.m_name, columnEst);
+        }
+
+        for (IndexStatistics index : m_indexes) {
+            DatabaseEstimates.IndexEstimates indexEst = new DatabaseEstimates.IndexEstimates();
+            indexEst.entryCount = m_rowCount;
+            indexEst.distinctPrefixCounts = new long[index.m_prefixes.length];
+            for (int i = 0; i < index.m_prefixes.length; ++i) {
+                indexEst.distinctPrefixCounts[i] = Math.max(1, Math.min(m_rowCount, index.m_prefixes[i].cardinality()));
+            }
+            if (index.m_unique) {
+                indexEst.distinctPrefixCounts[index.m_prefixes.length - 1] = tuples;
+            }
+            estimates.indexes.put(index.m_name, indexEst);
+        }
+    }
+
+    private static void shuffle(double[] values, Random rand) {
+        for (int i = values.length - 1; i > 0; --i) {
+            int j = rand.nextInt(i + 1);
+            double tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.planner;
+
+import java.util.Arrays;
+
+/**
+ * An equi-depth (equal frequency) histogram over the values of a single
+ * numeric column. Each bucket covers roughly the same number of rows, so
+ * skewed value distributions get narrow buckets where values are dense.
+ *
+ * Bucket i covers the values in (upperBounds[i-1], upperBounds[i]], with the
+ * first bucket starting at (and including) the column minimum.
+ */
+public class EquiDepthHistogram {
+
+    private final double m_minValue;
+    private final double[] m_upperBounds;
+    private final long[] m_bucketRows;
+    private final long[] m_bucketDistincts;
+    private final long m_totalRows;
+
+    /**
+     * @param minValue smallest value seen in the column
+     * @param upperBounds inclusive upper bound of each bucket, ascending
+     * @param bucketRows number of rows that fall in each bucket
+     * @param bucketDistincts number of distinct values in each bucket
+     */
+    public EquiDepthHistogram(double minValue, double[] upperBounds, long[] bucketRows, long[] bucketDistincts) {
+        assert(upperBounds.length == bucketRows.length);
+        assert(upperBounds.length == bucketDistincts.length);
+        m_minValue = minValue;
+        m_upperBounds = upperBounds;
+        m_bucketRows = bucketRows;
+        m_bucketDistincts = bucketDistincts;
+        long total = 0;
+        for (long rows : bucketRows) {
+            total += rows;
+        }
+        m_totalRows = total;
+    }
+
+    /**
+     * Build a histogram from a uniform random sample of a column's non-null values.
+     * Bucket boundaries never split a run of equal sample values, so there may be
+     * fewer buckets than requested. Row and distinct counts are scaled up from the
+     * sample to the given totals.
+     *
+     * @param sample sampled values, sorted ascending
+     * @param bucketCount the desired number of buckets
+     * @param totalRows number of non-null rows the sample was drawn from
+     * @param distinctCount estimated number of distinct values in the column
+     * @return the histogram, or null if the sample is empty
+     */
+    public static EquiDepthHistogram fromSortedSample(double[] sample, int bucketCount,
+                                                      long totalRows, long distinctCount) {
+        if (sample.length == 0 || bucketCount < 1) {
+            return null;
+        }
+        int sampleDistincts = 1;
+        for (int i = 1; i < sample.length; ++i) {
+            if (sample[i] != sample[i - 1]) {
+                ++sampleDistincts;
+            }
+        }
+        final double rowScale = (double) totalRows / sample.length;
+        final double distinctScale = Math.max(1.0, (double) distinctCount / sampleDistincts);
+
+        double[] bounds = new double[bucketCount];
+        long[] rows = new long[bucketCount];
+        long[] distincts = new long[bucketCount];
+        int buckets = 0;
+        int bucketStart = 0;
+        int bucketDistincts = 1;
+        for (int i = 0; i < sample.length; ++i) {
+            if (i > bucketStart && sample[i] != sample[i - 1]) {
+                ++bucketDistincts;
+            }
+            boolean last = (i == sample.length - 1);
+            // close the bucket once it holds its share, but only at a change of value
+            boolean full = (i + 1) >= (long) sample.length * (buckets + 1) / bucketCount;
+            if (last || (full && sample[i + 1] != sample[i] && buckets < bucketCount - 1)) {
+                long bucketRows = Math.max(1, Math.round((i + 1 - bucketStart) * rowScale));
+                bounds[buckets] = sample[i];
+                rows[buckets] = bucketRows;
+                distincts[buckets] = Math.min(bucketRows, Math.max(1, Math.round(bucketDistincts * distinctScale)));
+                ++buckets;
+                bucketStart = i + 1;
+                bucketDistincts = 1;
+            }
+        }
+        return new EquiDepthHistogram(sample[0],
+                Arrays.copyOf(bounds, buckets),
+                Arrays.copyOf(rows, buckets),
+                Arrays.copyOf(distincts, buckets));
+    }
+
+    public double getMinValue() {
+        return m_minValue;
+    }
+
+    public int getBucketCount() {
+        return m_upperBounds.length;
+    }
+
+    public double getUpperBound(int bucket) {
+        return m_upperBounds[bucket];
+    }
+
+    public long getBucketRows(int bucket) {
+        return m_bucketRows[bucket];
+    }
+
+    public long getBucketDistincts(int bucket) {
+        return m_bucketDistincts[bucket];
+    }
+
+    public long getTotalRows() {
+        return m_totalRows;
+    }
+
+    private int findBucket(double value) {
+        if (value < m_minValue) {
+            return -1;
+        }
+        int pos = Arrays.binarySearch(m_upperBounds, value);
+        if (pos < 0) {
+            pos = -(pos + 1);
+        }
+        // binarySearch makes no promise about which of several equal bounds it finds;
+        // a value belongs to the first bucket whose upper bound reaches it.
+        while (pos > 0 && m_upperBounds[pos - 1] >= value) {
+            --pos;
+        }
+        return (pos < m_upperBounds.length) ? pos : -1;
+    }
+
+    /**
+     * Estimate the fraction of rows whose value equals the given value,
+     * assuming values are uniformly distributed within their bucket.
+     */
+    public double estimateEqualitySelectivity(double value) {
+        if (m_totalRows == 0) {
+            return 0.0;
+        }
+        int bucket = findBucket(value);
+        if (bucket < 0) {
+            return 0.0;
+        }
+        long distincts = Math.max(1, m_bucketDistincts[bucket]);
+        return ((double) m_bucketRows[bucket] / distincts) / m_totalRows;
+    }
+
+    /**
+     * Estimate the fraction of rows whose value lies in [low, high],
+     * interpolating linearly within the partially covered buckets.
+     */
+    public double estimateRangeSelectivity(double low, double high) {
+        if (m_totalRows == 0 || low > high) {
+            return 0.0;
+        }
+        double matched = 0.0;
+        double bucketLow = m_minValue;
+        for (int i = 0; i < m_upperBounds.length; ++i) {
+            double bucketHigh = m_upperBounds[i];
+            double overlapLow = Math.max(low, bucketLow);
+            double overlapHigh = Math.min(high, bucketHigh);
+            if (overlapLow <= overlapHigh) {
+                double width = bucketHigh - bucketLow;
+                if (width <= 0.0) {
+                    // a single-valued bucket is either fully in or fully out
+                    matched += m_bucketRows[i];
+                }
+                else {
+                    matched += m_bucketRows[i] * ((overlapHigh - overlapLow) / width);
+                }
+            }
+            bucketLow = bucketHigh;
+        }
+        return Math.min(1.0, matched / m_totalRows);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("EquiDepthHistogram[min=").append(m_minValue);
+        for (int i = 0; i < m_upperBounds.length; ++i) {
+            sb.append(", <=").append(m_upperBounds[i]).append(':')
+              .append(m_bucketRows[i]).append('/').append(m_bucketDistincts[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
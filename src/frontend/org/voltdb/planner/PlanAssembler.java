@@ -94,6 +94,7 @@ import org.voltdb.utils.CatalogUtil;
  */
 public class PlanAssembler {
     public static boolean HANDLE_WINDOWED_OPERATORS = Boolean.valueOf(System.getProperty("org.voltdb.handlewindowedfunctions", "False"));
+    public static boolean HANDLE_HASH_JOINS = Boolean.valueOf(System.getProperty("org.voltdb.handlehashjoins", "False"));
 
     // The convenience struct to accumulate results after parsing multiple statements
     private static class ParsedResultAccumulator {
@@ -212,6 +213,14 @@ public class PlanAssembler {
         return false;
     }
 
+    private static Set<String> tableNames(List<Table> tableList) {
+        Set<String> names = new HashSet<String>();
+        for (Table table : tableList) {
+            names.add(table.getTypeName());
+        }
+        return names;
+    }
+
     private boolean isPartitionColumnInGroupbyList(ArrayList<ParsedColInfo> groupbyColumns) {
         assert(m_parsedSelect != null);
 
@@ -296,7 +305,12 @@ public class PlanAssembler {
                 ((BranchNode)m_parsedSelect.m_joinTree).toLeftJoin();
 
             }
-            m_subAssembler = new SelectSubPlanAssembler(m_catalogDb, m_parsedSelect, m_partitioning);
+            // Without statistics a hash join never costs less than the nested loop join
+            // it would replace, so its plans are only generated when every table has them.
+            boolean considerHashJoins = HANDLE_HASH_JOINS && m_planSelector.m_estimates != null &&
+                    m_planSelector.m_estimates.hasStatistics(tableNames(m_parsedSelect.m_tableList));
+            m_subAssembler = new SelectSubPlanAssembler(m_catalogDb, m_parsedSelect, m_partitioning,
+                                                        considerHashJoins);
 
             // Process the GROUP BY information, decide whether it is group by the partition column
             if (isPartitionColumnInGroupbyList(m_parsedSelect.m_groupByColumns)) {
@@ -993,10 +1007,11 @@ public class PlanAssembler {
                         }
                         List<AbstractPlanNode> nljs = receiveNode.findAllNodesOfType(PlanNodeType.NESTLOOP);
                         List<AbstractPlanNode> nlijs = receiveNode.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX);
+                        List<AbstractPlanNode> hjs = receiveNode.findAllNodesOfType(PlanNodeType.HASHJOIN);
 
                         // outer join edge case does not have any join plan node under receive node.
                         // This is like a single table case.
-                        if (nljs.size() + nlijs.size() == 0) {
+                        if (nljs.size() + nlijs.size() + hjs.size() == 0) {
                             mvFixInfoEdgeCaseOuterJoin = true;
                         }
                         root = handleMVBasedMultiPartQuery(reAggNode, root, mvFixInfoEdgeCaseOuterJoin);
@@ -2035,7 +2050,8 @@ public class PlanAssembler {
         }
 
         // For join node, find outer sequential scan plan node
-        if (candidate.getPlanNodeType() == PlanNodeType.NESTLOOP) {
+        if (candidate.getPlanNodeType() == PlanNodeType.NESTLOOP ||
+                candidate.getPlanNodeType() == PlanNodeType.HASHJOIN) {
             assert(candidate.getChildCount() == 2);
             return findSeqScanCandidateForGroupBy(candidate.getChild(0));
         }
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.voltdb.VoltType;
 import org.voltdb.catalog.Database;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.ExpressionUtil;
@@ -37,10 +38,12 @@ import org.voltdb.planner.parseinfo.SubqueryLeafNode;
 import org.voltdb.plannodes.AbstractJoinPlanNode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.plannodes.AbstractReceivePlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
 import org.voltdb.plannodes.IndexScanPlanNode;
 import org.voltdb.plannodes.MaterializedScanPlanNode;
 import org.voltdb.plannodes.NestLoopIndexPlanNode;
 import org.voltdb.plannodes.NestLoopPlanNode;
+import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.types.PlanNodeType;
 import org.voltdb.utils.PermutationGenerator;
@@ -62,16 +65,27 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
     /** The list of all possible join orders, assembled by queueAllJoinOrders */
     private ArrayDeque<JoinNode> m_joinOrders = new ArrayDeque<JoinNode>();
 
+    /** Whether plans that hash the equi-joins of their nested loop joins are generated */
+    private final boolean m_considerHashJoins;
+    /** Set while the hash join variant of the current access paths is built */
+    private boolean m_useHashJoins = false;
+    /** Set when a join of the plan just built could have been a hash join */
+    private boolean m_hasHashJoinCandidate = false;
+
     /**
      *
      * @param db The catalog's Database object.
      * @param selectStmt The parsed and dissected statement object describing the sql to execute.
      * @param partitioning in/out param first element is partition key value, forcing a single-partition statement if non-null,
      * second may be an inferred partition key if no explicit single-partitioning was specified
+     * @param considerHashJoins also generate plans that use hash joins where a nested loop join
+     * has equality join clauses between the outer and the inner tables
      */
-    SelectSubPlanAssembler(Database db, ParsedSelectStmt selectStmt, StatementPartitioning partitioning)
+    SelectSubPlanAssembler(Database db, ParsedSelectStmt selectStmt, StatementPartitioning partitioning,
+                           boolean considerHashJoins)
     {
         super(db, selectStmt, partitioning);
+        m_considerHashJoins = considerHashJoins;
         if (selectStmt.hasJoinOrder()) {
             // If a join order was provided or large number of tables join
             m_joinOrders.addAll(selectStmt.getJoinOrder());
@@ -530,11 +544,22 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         if (nodes.size() == nextNode + 1) {
             for (AccessPath path : joinNode.m_accessPaths) {
                 joinNode.m_currentAccessPath = path;
+                m_hasHashJoinCandidate = false;
                 AbstractPlanNode plan = getSelectSubPlanForJoinNode(rootNode);
                 if (plan == null) {
                     continue;
                 }
                 m_plans.add(plan);
+                if (m_hasHashJoinCandidate) {
+                    // Offer the same access paths with every candidate join hashed,
+                    // the plan selector keeps whichever costs less.
+                    m_useHashJoins = true;
+                    plan = getSelectSubPlanForJoinNode(rootNode);
+                    m_useHashJoins = false;
+                    if (plan != null) {
+                        m_plans.add(plan);
+                    }
+                }
             }
             return;
         }
@@ -704,7 +729,6 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
 
         AbstractJoinPlanNode ajNode = null;
         if (canHaveNLJ) {
-            NestLoopPlanNode nljNode = new NestLoopPlanNode();
             // get all the clauses that join the applicable two tables
             // Copy innerAccessPath.joinExprs to leave it unchanged,
             // avoiding accumulation of redundant expressions when
@@ -745,7 +769,27 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
                 // the inner node ONLY, that can not be pushed down.
                 joinClauses.addAll(innerAccessPath.otherExprs);
             }
-            nljNode.setJoinPredicate(ExpressionUtil.combinePredicates(joinClauses));
+
+            // An equality between the outer and the inner tables lets the join hash
+            // the inner rows once instead of rescanning them for every outer row.
+            List<AbstractExpression> outerHashExprs = new ArrayList<AbstractExpression>();
+            List<AbstractExpression> innerHashExprs = new ArrayList<AbstractExpression>();
+            List<AbstractExpression> nonHashClauses = new ArrayList<AbstractExpression>();
+            boolean canHaveHashJoin = m_considerHashJoins && ! needInnerSendReceive &&
+                    splitHashJoinClauses(joinNode, joinClauses, outerHashExprs, innerHashExprs, nonHashClauses);
+            m_hasHashJoinCandidate |= canHaveHashJoin;
+
+            AbstractJoinPlanNode nljNode;
+            if (canHaveHashJoin && m_useHashJoins) {
+                HashJoinPlanNode hjNode = new HashJoinPlanNode();
+                hjNode.setHashExpressions(outerHashExprs, innerHashExprs);
+                hjNode.setJoinPredicate(ExpressionUtil.combinePredicates(nonHashClauses));
+                nljNode = hjNode;
+            }
+            else {
+                nljNode = new NestLoopPlanNode();
+                nljNode.setJoinPredicate(ExpressionUtil.combinePredicates(joinClauses));
+            }
 
             // combine the tails plan graph with the new head node
             nljNode.addAndLinkChild(outerPlan);
@@ -792,6 +836,93 @@ public class SelectSubPlanAssembler extends SubPlanAssembler {
         return ajNode;
     }
 
+    /**
+     * Split the join clauses of a nested loop join into the equalities that a hash join
+     * can match on and the clauses it still has to evaluate for each matching pair.
+     * An equality qualifies when one side only references the outer tables, the other
+     * side only references the inner tables and both sides have the same hashable type.
+     *
+     * @param joinNode The join node of the clauses.
+     * @param joinClauses The join clauses of the nested loop join.
+     * @param outerHashExprs Out param, the outer side of each qualifying equality.
+     * @param innerHashExprs Out param, the inner side of each qualifying equality.
+     * @param otherClauses Out param, the remaining clauses.
+     * @return true if at least one equality qualifies.
+     */
+    private static boolean splitHashJoinClauses(BranchNode joinNode,
+                                                List<AbstractExpression> joinClauses,
+                                                List<AbstractExpression> outerHashExprs,
+                                                List<AbstractExpression> innerHashExprs,
+                                                List<AbstractExpression> otherClauses)
+    {
+        Collection<String> outerTables = joinNode.getLeftNode().generateTableJoinOrder();
+        Collection<String> innerTables = joinNode.getRightNode().generateTableJoinOrder();
+        for (AbstractExpression clause : joinClauses) {
+            if (clause.getExpressionType() == ExpressionType.COMPARE_EQUAL) {
+                AbstractExpression left = clause.getLeft();
+                AbstractExpression right = clause.getRight();
+                if (isHashableKeyPair(left, right) && dependsOnlyOn(left, outerTables) &&
+                        dependsOnlyOn(right, innerTables)) {
+                    outerHashExprs.add(left);
+                    innerHashExprs.add(right);
+                    continue;
+                }
+                if (isHashableKeyPair(right, left) && dependsOnlyOn(right, outerTables) &&
+                        dependsOnlyOn(left, innerTables)) {
+                    outerHashExprs.add(right);
+                    innerHashExprs.add(left);
+                    continue;
+                }
+            }
+            otherClauses.add(clause);
+        }
+        return ! outerHashExprs.isEmpty();
+    }
+
+    private static boolean isHashableKeyPair(AbstractExpression outer, AbstractExpression inner)
+    {
+        if (outer.hasSubquerySubexpression() || inner.hasSubquerySubexpression()) {
+            return false;
+        }
+        // Hash keys are compared as stored, so both sides need the same type.
+        // Floating point keys are left to the nested loop join, equal values
+        // such as 0.0 and -0.0 don't hash the same.
+        VoltType type = outer.getValueType();
+        if (type == null || type != inner.getValueType()) {
+            return false;
+        }
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case DECIMAL:
+        case TIMESTAMP:
+        case STRING:
+        case VARBINARY:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the expression references at least one of the tables and no other table.
+     */
+    private static boolean dependsOnlyOn(AbstractExpression expr, Collection<String> tableAliases)
+    {
+        List<TupleValueExpression> tves = ExpressionUtil.getTupleValueExpressions(expr);
+        if (tves.isEmpty()) {
+            return false;
+        }
+        for (TupleValueExpression tve : tves) {
+            if ( ! tableAliases.contains(tve.getTableAlias())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A method to filter out single-TVE expressions.
      *
@@ -19,17 +19,21 @@ package org.voltdb.plannodes;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.json_voltpatches.JSONArray;
 import org.json_voltpatches.JSONException;
 import org.json_voltpatches.JSONObject;
 import org.json_voltpatches.JSONStringer;
 import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.AbstractSubqueryExpression;
 import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.planner.parseinfo.StmtTargetTableScan;
 import org.voltdb.types.ExpressionType;
 import org.voltdb.types.JoinType;
 import org.voltdb.types.PlanNodeType;
@@ -401,6 +405,16 @@ public abstract class AbstractJoinPlanNode extends AbstractPlanNode {
         }
     }
 
+    /**
+     * @return true if every table the join reads has collected statistics, so the
+     * row counts of its two sides are real and comparable
+     */
+    protected boolean hasStatistics(DatabaseEstimates estimates) {
+        Map<String, StmtTargetTableScan> tablesRead = new TreeMap<String, StmtTargetTableScan>();
+        getTablesAndIndexes(tablesRead, null);
+        return estimates.hasStatistics(tablesRead.keySet());
+    }
+
     /**
      * Discount join node child estimates based on the number of its filters
      *
@@ -418,8 +432,8 @@ public abstract class AbstractJoinPlanNode extends AbstractPlanNode {
         AbstractExpression predicate = null;
         if (childNode instanceof AbstractScanPlanNode) {
             predicate = ((AbstractScanPlanNode) childNode).getPredicate();
-        } else if (childNode instanceof NestLoopPlanNode) {
-            predicate = ((NestLoopPlanNode) childNode).getWherePredicate();
+        } else if (childNode instanceof NestLoopPlanNode || childNode instanceof HashJoinPlanNode) {
+            predicate = ((AbstractJoinPlanNode) childNode).getWherePredicate();
         } else if (childNode instanceof NestLoopIndexPlanNode) {
             AbstractPlanNode inlineIndexScan = ((NestLoopIndexPlanNode) childNode).getInlinePlanNode(PlanNodeType.INDEXSCAN);
             assert(inlineIndexScan != null);
@@ -0,0 +1,205 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.plannodes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.json_voltpatches.JSONException;
+import org.json_voltpatches.JSONObject;
+import org.json_voltpatches.JSONStringer;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.compiler.ScalarValueHints;
+import org.voltdb.expressions.AbstractExpression;
+import org.voltdb.expressions.ExpressionUtil;
+import org.voltdb.expressions.TupleValueExpression;
+import org.voltdb.types.PlanNodeType;
+import org.voltdb.types.SortDirectionType;
+
+/**
+ * Equi-join that builds a hash table over the inner child output keyed by
+ * the inner hash expressions and probes it with the outer hash expressions
+ * of each outer tuple. The outer tuples are streamed in order, so the output
+ * is ordered like the output of a nested loop join over the same children.
+ * The join predicate holds the join clauses that were not turned into hash
+ * keys and is evaluated for every matching pair.
+ */
+public class HashJoinPlanNode extends AbstractJoinPlanNode {
+
+    public enum Members {
+        OUTER_HASH_EXPRESSIONS,
+        INNER_HASH_EXPRESSIONS;
+    }
+
+    // Evaluated against an outer tuple, resolved with table index 0
+    private final List<AbstractExpression> m_outerHashExpressions = new ArrayList<AbstractExpression>();
+    // Evaluated against an inner tuple, also resolved with table index 0
+    private final List<AbstractExpression> m_innerHashExpressions = new ArrayList<AbstractExpression>();
+
+    public HashJoinPlanNode() {
+        super();
+    }
+
+    @Override
+    public PlanNodeType getPlanNodeType() {
+        return PlanNodeType.HASHJOIN;
+    }
+
+    @Override
+    public void validate() throws Exception {
+        super.validate();
+
+        assert(m_outerHashExpressions.size() == m_innerHashExpressions.size());
+        if (m_outerHashExpressions.isEmpty()) {
+            throw new Exception("ERROR: Hash join without hash expressions for plan node '" + this + "'");
+        }
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            expr.validate();
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            expr.validate();
+        }
+    }
+
+    /**
+     * Set the pairs of expressions the join matches on. The i-th outer
+     * expression is compared with the i-th inner expression.
+     */
+    public void setHashExpressions(List<AbstractExpression> outerExpressions,
+                                   List<AbstractExpression> innerExpressions)
+    {
+        assert(outerExpressions.size() == innerExpressions.size());
+        m_outerHashExpressions.clear();
+        m_innerHashExpressions.clear();
+        for (AbstractExpression expr : outerExpressions) {
+            m_outerHashExpressions.add((AbstractExpression) expr.clone());
+        }
+        for (AbstractExpression expr : innerExpressions) {
+            m_innerHashExpressions.add((AbstractExpression) expr.clone());
+        }
+    }
+
+    public List<AbstractExpression> getOuterHashExpressions() {
+        return m_outerHashExpressions;
+    }
+
+    public List<AbstractExpression> getInnerHashExpressions() {
+        return m_innerHashExpressions;
+    }
+
+    @Override
+    public void resolveColumnIndexes()
+    {
+        super.resolveColumnIndexes();
+        resolveHashExpressions(m_outerHashExpressions, m_children.get(0).getOutputSchema());
+        resolveHashExpressions(m_innerHashExpressions, m_children.get(1).getOutputSchema());
+    }
+
+    private static void resolveHashExpressions(List<AbstractExpression> expressions, NodeSchema schema)
+    {
+        for (AbstractExpression expr : expressions) {
+            for (TupleValueExpression tve : ExpressionUtil.getTupleValueExpressions(expr)) {
+                int index = tve.resolveColumnIndexesUsingSchema(schema);
+                if (index == -1) {
+                    throw new RuntimeException("Unable to resolve column index for hash join TVE: " +
+                                               tve.toString());
+                }
+                tve.setColumnIndex(index);
+                tve.setTableIndex(0);
+            }
+        }
+    }
+
+    @Override
+    public void computeCostEstimates(long childOutputTupleCountEstimate,
+                                     Cluster cluster,
+                                     Database db,
+                                     DatabaseEstimates estimates,
+                                     ScalarValueHints[] paramHints)
+    {
+        m_estimatedOutputTupleCount = childOutputTupleCountEstimate;
+        assert(m_children.size() == 2);
+        // Both children are read once. Every inner tuple is then inserted into
+        // the hash table and every outer tuple probes it. Without statistics this
+        // always costs more than the nested loop join, whose estimate doesn't
+        // charge for the rescans of the inner side.
+        long outerTuples = m_children.get(0).getEstimatedOutputTupleCount();
+        long innerTuples = m_children.get(1).getEstimatedOutputTupleCount();
+        m_estimatedProcessedTupleCount = discountEstimatedProcessedTupleCount(m_children.get(0)) +
+                m_children.get(1).getEstimatedProcessedTupleCount() +
+                innerTuples + outerTuples;
+    }
+
+    @Override
+    protected String explainPlanForNode(String indent) {
+        StringBuilder keys = new StringBuilder();
+        String prefix = " on ";
+        for (int i = 0; i < m_outerHashExpressions.size(); i++) {
+            keys.append(prefix)
+                .append(m_outerHashExpressions.get(i).explain("!?"))
+                .append(" = ")
+                .append(m_innerHashExpressions.get(i).explain("!?"));
+            prefix = " AND ";
+        }
+        return "HASH " + this.m_joinType.toString() + " JOIN" +
+                (m_sortDirection == SortDirectionType.INVALID ? "" : " (" + m_sortDirection + ")") +
+                keys + explainFilters(indent);
+    }
+
+    @Override
+    public void toJSONString(JSONStringer stringer) throws JSONException
+    {
+        super.toJSONString(stringer);
+        stringer.key(Members.OUTER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            stringer.value(expr);
+        }
+        stringer.endArray();
+        stringer.key(Members.INNER_HASH_EXPRESSIONS.name()).array();
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            stringer.value(expr);
+        }
+        stringer.endArray();
+    }
+
+    @Override
+    public void loadFromJSONObject(JSONObject jobj, Database db) throws JSONException
+    {
+        super.loadFromJSONObject(jobj, db);
+        m_outerHashExpressions.clear();
+        m_innerHashExpressions.clear();
+        AbstractExpression.loadFromJSONArrayChild(m_outerHashExpressions, jobj,
+                Members.OUTER_HASH_EXPRESSIONS.name(), null);
+        AbstractExpression.loadFromJSONArrayChild(m_innerHashExpressions, jobj,
+                Members.INNER_HASH_EXPRESSIONS.name(), null);
+    }
+
+    @Override
+    public void findAllExpressionsOfClass(Class< ? extends AbstractExpression> aeClass, Set<AbstractExpression> collected) {
+        super.findAllExpressionsOfClass(aeClass, collected);
+        for (AbstractExpression expr : m_outerHashExpressions) {
+            collected.addAll(expr.findAllSubexpressionsOfClass(aeClass));
+        }
+        for (AbstractExpression expr : m_innerHashExpressions) {
+            collected.addAll(expr.findAllSubexpressionsOfClass(aeClass));
+        }
+    }
+}
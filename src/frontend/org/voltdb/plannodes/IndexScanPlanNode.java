@@ -41,6 +41,7 @@ import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.compiler.ScalarValueHints;
 import org.voltdb.expressions.AbstractExpression;
 import org.voltdb.expressions.ComparisonExpression;
+import org.voltdb.expressions.ConstantValueExpression;
 import org.voltdb.expressions.ExpressionUtil;
 import org.voltdb.expressions.OperatorExpression;
 import org.voltdb.expressions.TupleValueExpression;
@@ -560,6 +561,112 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
         return keyWidth;
     }
 
+    /**
+     * Estimate how many tuples the index lookup matches, using the distinct key counts
+     * and histograms collected for the target table.
+     * @return the estimate, or -1 if there is nothing better than the default factors
+     */
+    private double estimateMatchedTuplesFromStatistics(DatabaseEstimates.TableEstimates tableEstimates) {
+        final double RANGE_SELECTIVITY = Math.sqrt(0.10);
+        final double tuples = tableEstimates.maxTuples;
+        DatabaseEstimates.IndexEstimates indexEstimates =
+                tableEstimates.getEstimatesForIndex(m_catalogIndex.getTypeName());
+
+        if (m_catalogIndex.getType() == IndexType.COVERING_CELL_INDEX.getValue()) {
+            // geo lookups aren't described by the key column value distribution
+            return -1;
+        }
+
+        // Count the key components filtered by equality. A scan on an equality-filtered
+        // prefix of a wider index is planned as GTE with the equalities repeated as
+        // end conditions, so those count as equalities too.
+        int equalityKeys;
+        boolean hasRange;
+        if (m_lookupType == IndexLookupType.EQ) {
+            equalityKeys = m_searchkeyExpressions.size();
+            hasRange = false;
+        }
+        else {
+            int endEqualities = 0;
+            boolean endRange = false;
+            if (m_endExpression != null) {
+                for (AbstractExpression endExpr : ExpressionUtil.uncombineAny(m_endExpression)) {
+                    if (endExpr.getExpressionType() == ExpressionType.COMPARE_EQUAL) {
+                        ++endEqualities;
+                    }
+                    else {
+                        endRange = true;
+                    }
+                }
+            }
+            equalityKeys = Math.min(endEqualities, m_searchkeyExpressions.size());
+            hasRange = endRange || (m_searchkeyExpressions.size() > equalityKeys);
+        }
+
+        double matched = tuples;
+        if (equalityKeys > 0) {
+            long distinct = (indexEstimates == null) ? -1 : indexEstimates.getDistinctPrefixCount(equalityKeys);
+            double leadingSelectivity = (equalityKeys == 1) ? leadingKeySelectivity(tableEstimates, true) : -1;
+            if (leadingSelectivity >= 0) {
+                matched = tuples * leadingSelectivity;
+            }
+            else if (distinct > 0) {
+                matched = tuples / distinct;
+            }
+            else {
+                matched = tuples * Math.pow(0.10, equalityKeys);
+            }
+        }
+        if (hasRange) {
+            double leadingSelectivity = (equalityKeys == 0) ? leadingKeySelectivity(tableEstimates, false) : -1;
+            matched *= (leadingSelectivity >= 0) ? leadingSelectivity : RANGE_SELECTIVITY;
+        }
+        return matched;
+    }
+
+    /**
+     * Use the histogram of the first indexed column to estimate the selectivity
+     * of a constant first search key.
+     * @return the selectivity, or -1 when the key is not a constant on a plain numeric column
+     */
+    private double leadingKeySelectivity(DatabaseEstimates.TableEstimates tableEstimates, boolean isEquality) {
+        if (m_searchkeyExpressions.isEmpty() || ! m_catalogIndex.getExpressionsjson().isEmpty()) {
+            return -1;
+        }
+        AbstractExpression key = m_searchkeyExpressions.get(0);
+        if ( ! (key instanceof ConstantValueExpression) ||
+                ! key.getValueType().isNumber() ||
+                ((ConstantValueExpression) key).getValue() == null) {
+            return -1;
+        }
+        List<ColumnRef> indexedColumns = CatalogUtil.getSortedCatalogItems(m_catalogIndex.getColumns(), "index");
+        DatabaseEstimates.ColumnEstimates columnEstimates =
+                tableEstimates.getEstimatesForColumn(indexedColumns.get(0).getColumn().getTypeName());
+        if (columnEstimates == null || columnEstimates.histogram == null) {
+            return -1;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(((ConstantValueExpression) key).getValue());
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+        if (isEquality) {
+            return columnEstimates.histogram.estimateEqualitySelectivity(value);
+        }
+        switch (m_lookupType) {
+        case GT:
+        case GTE:
+            return columnEstimates.histogram.estimateRangeSelectivity(value, Double.MAX_VALUE);
+        case LT:
+        case LTE:
+            return columnEstimates.histogram.estimateRangeSelectivity(-Double.MAX_VALUE, value);
+        default:
+            return -1;
+        }
+    }
+
     @Override
     public void computeCostEstimates(long unusedChildOutputTupleCountEstimate,
                                      Cluster unusedCluster,
@@ -634,7 +741,16 @@ public class IndexScanPlanNode extends AbstractScanPlanNode {
             // Using a factor of 0.1 per FULLY covered (equality-filtered) column,
             // the effective scale factor for a single PARTIALLY covered (range-filtered) column
             // comes to SQRT(0.1) which is just under 32% FTW!
-            tuplesToRead += (int) (tableEstimates.maxTuples * 0.90 * Math.pow(0.10, keyWidth));
+            // When statistics have been collected for the table, use them instead of
+            // the fixed per-column factors.
+            double matchedTuples = -1;
+            if (tableEstimates.fromStatistics) {
+                matchedTuples = estimateMatchedTuplesFromStatistics(tableEstimates);
+            }
+            if (matchedTuples < 0) {
+                matchedTuples = tableEstimates.maxTuples * 0.90 * Math.pow(0.10, keyWidth);
+            }
+            tuplesToRead += (int) matchedTuples;
             // "Covering cell" indexes get a special adjustment to make them look more favorable
             // than non-unique range filters in particular.
             // I can't quite justify that rationally, but it "seems reasonable". --paul
@@ -231,6 +231,15 @@ public class NestLoopIndexPlanNode extends AbstractJoinPlanNode {
                 (IndexScanPlanNode) getInlinePlanNode(PlanNodeType.INDEXSCAN);
         assert(indexScan != null);
 
+        if (hasStatistics(estimates)) {
+            // With real row counts, charge the inner index lookup once per outer tuple.
+            long outerTuples = Math.max(1, childOutputTupleCountEstimate);
+            m_estimatedOutputTupleCount = indexScan.getEstimatedOutputTupleCount() * outerTuples;
+            m_estimatedProcessedTupleCount = indexScan.getEstimatedProcessedTupleCount() * outerTuples +
+                    discountEstimatedProcessedTupleCount(m_children.get(0));
+            return;
+        }
+
         m_estimatedOutputTupleCount = indexScan.getEstimatedOutputTupleCount() + childOutputTupleCountEstimate;
         // Discount outer child estimates based on the number of its filters
         m_estimatedProcessedTupleCount = indexScan.getEstimatedProcessedTupleCount() + discountEstimatedProcessedTupleCount(m_children.get(0));
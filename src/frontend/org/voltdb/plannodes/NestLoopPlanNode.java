@@ -46,6 +46,13 @@ public class NestLoopPlanNode extends AbstractJoinPlanNode {
         m_estimatedOutputTupleCount = childOutputTupleCountEstimate;
         // Discount outer child estimates based on the number of its filters
         assert(m_children.size() == 2);
+        if (hasStatistics(estimates)) {
+            // With real row counts, the inner side is rescanned once per outer tuple.
+            long outerTuples = Math.max(1, m_children.get(0).getEstimatedOutputTupleCount());
+            m_estimatedProcessedTupleCount = discountEstimatedProcessedTupleCount(m_children.get(0)) +
+                    m_children.get(1).getEstimatedProcessedTupleCount() * outerTuples;
+            return;
+        }
         m_estimatedProcessedTupleCount = discountEstimatedProcessedTupleCount(m_children.get(0)) +
                 m_children.get(1).m_estimatedProcessedTupleCount;
     }
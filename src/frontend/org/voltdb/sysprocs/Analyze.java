@@ -0,0 +1,186 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.DependencyPair;
+import org.voltdb.ParameterSet;
+import org.voltdb.PlannerStatisticsMonitor;
+import org.voltdb.ProcInfo;
+import org.voltdb.SnapshotFormat;
+import org.voltdb.SnapshotSaveAPI;
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.VoltSystemProcedure;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.VoltType;
+import org.voltdb.dtxn.DtxnConstants;
+import org.voltdb.sysprocs.saverestore.SnapshotUtil;
+import org.voltdb.utils.VoltTableUtil;
+
+/**
+ * Collects value distribution statistics for every table so the planner can
+ * cost plans with them. Tables are scanned through the snapshot machinery
+ * with a non-blocking snapshot in the ANALYZE format, which never writes to
+ * disk: each site streams its share of the rows a block at a time between
+ * transactions, the rows are folded into histograms and distinct-count
+ * sketches off the site thread, and once every host is done the merged
+ * statistics are installed in each host's planner by
+ * {@link PlannerStatisticsMonitor}.
+ *
+ * Like a non-blocking @SnapshotSave this returns as soon as the scan has
+ * started, one row per host and table, and fails if a snapshot is already
+ * in progress.
+ */
+@ProcInfo(singlePartition = false)
+public class Analyze extends VoltSystemProcedure {
+    private static final VoltLogger SNAP_LOG = new VoltLogger("SNAPSHOT");
+
+    private static final int DEP_checkSnapshotInProgress = (int)
+            SysProcFragmentId.PF_analyzeCheckSnapshotInProgress | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    private static final int DEP_checkSnapshotInProgressResults = (int)
+            SysProcFragmentId.PF_analyzeCheckSnapshotInProgressResults;
+    private static final int DEP_startScan = (int)
+            SysProcFragmentId.PF_analyzeStartScan | DtxnConstants.MULTIPARTITION_DEPENDENCY;
+    private static final int DEP_startScanResults = (int)
+            SysProcFragmentId.PF_analyzeStartScanResults;
+
+    @Override
+    public void init() {
+        registerPlanFragment(SysProcFragmentId.PF_analyzeCheckSnapshotInProgress);
+        registerPlanFragment(SysProcFragmentId.PF_analyzeCheckSnapshotInProgressResults);
+        registerPlanFragment(SysProcFragmentId.PF_analyzeStartScan);
+        registerPlanFragment(SysProcFragmentId.PF_analyzeStartScanResults);
+    }
+
+    @Override
+    public DependencyPair executePlanFragment(Map<Integer, List<VoltTable>> dependencies,
+            long fragmentId, ParameterSet params, SystemProcedureExecutionContext context)
+    {
+        if (fragmentId == SysProcFragmentId.PF_analyzeCheckSnapshotInProgress) {
+            VoltTable result = constructInProgressTable();
+            result.addRow(context.getHostId(),
+                    CoreUtils.getSiteIdFromHSId(context.getSiteId()),
+                    SnapshotSiteProcessor.ExecutionSitesCurrentlySnapshotting.isEmpty() ? (byte)0 : (byte)1);
+            return new DependencyPair(DEP_checkSnapshotInProgress, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_analyzeCheckSnapshotInProgressResults) {
+            VoltTable result = VoltTableUtil.unionTables(dependencies.get(DEP_checkSnapshotInProgress));
+            return new DependencyPair(DEP_checkSnapshotInProgressResults, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_analyzeStartScan) {
+            final long txnId = m_runner.getTxnState().txnId;
+            SnapshotSaveAPI saveAPI = new SnapshotSaveAPI();
+            VoltTable result = saveAPI.startSnapshotting("",
+                    PlannerStatisticsMonitor.nonceForTxnId(txnId),
+                    SnapshotFormat.ANALYZE,
+                    (byte)0,
+                    txnId,
+                    context.getSpHandleForSnapshotDigest(),
+                    new long[0],
+                    null,
+                    context,
+                    CoreUtils.getHostnameOrAddress(),
+                    null,
+                    System.currentTimeMillis());
+            return new DependencyPair(DEP_startScan, result);
+        }
+        else if (fragmentId == SysProcFragmentId.PF_analyzeStartScanResults) {
+            // sites on a host without work of their own all return the host's result table
+            VoltTable result = SnapshotUtil.constructNodeResultsTable();
+            Set<String> seen = new HashSet<String>();
+            for (VoltTable siteResult : dependencies.get(DEP_startScan)) {
+                siteResult.resetRowPosition();
+                while (siteResult.advanceRow()) {
+                    if (seen.add(siteResult.getLong(0) + ":" + siteResult.getString("TABLE"))) {
+                        result.add(siteResult);
+                    }
+                }
+            }
+            return new DependencyPair(DEP_startScanResults, result);
+        }
+        assert(false);
+        return null;
+    }
+
+    private static VoltTable constructInProgressTable() {
+        return new VoltTable(
+                new ColumnInfo(CNAME_HOST_ID, CTYPE_ID),
+                new ColumnInfo(CNAME_SITE_ID, CTYPE_ID),
+                new ColumnInfo("SNAPSHOT_IN_PROGRESS", VoltType.TINYINT));
+    }
+
+    public VoltTable[] run(SystemProcedureExecutionContext ctx) {
+        final long txnId = m_runner.getTxnState().txnId;
+
+        VoltTable inProgress = executeFragment(SysProcFragmentId.PF_analyzeCheckSnapshotInProgress,
+                DEP_checkSnapshotInProgress,
+                SysProcFragmentId.PF_analyzeCheckSnapshotInProgressResults,
+                DEP_checkSnapshotInProgressResults);
+        Set<Long> hosts = new HashSet<Long>();
+        while (inProgress.advanceRow()) {
+            if (inProgress.getLong("SNAPSHOT_IN_PROGRESS") != 0) {
+                VoltTable result = SnapshotUtil.constructNodeResultsTable();
+                result.addRow(inProgress.getLong(CNAME_HOST_ID), CoreUtils.getHostnameOrAddress(), "",
+                        "FAILURE", "SNAPSHOT IN PROGRESS");
+                return new VoltTable[] { result };
+            }
+            hosts.add(inProgress.getLong(CNAME_HOST_ID));
+        }
+
+        // Every host reports completion of the scan, which is what triggers
+        // merging and installing the statistics.
+        SnapshotSaveAPI.createSnapshotCompletionNode("", PlannerStatisticsMonitor.nonceForTxnId(txnId),
+                txnId, false, null);
+        VoltTable result = executeFragment(SysProcFragmentId.PF_analyzeStartScan, DEP_startScan,
+                SysProcFragmentId.PF_analyzeStartScanResults, DEP_startScanResults);
+        SnapshotSaveAPI.logParticipatingHostCount(txnId, hosts.size());
+        SNAP_LOG.info("Started collecting planner statistics on " + hosts.size() + " hosts");
+
+        return new VoltTable[] { result };
+    }
+
+    private VoltTable executeFragment(long distributedFragment, int distributedDep,
+            long aggregateFragment, int aggregateDep)
+    {
+        SynthesizedPlanFragment[] pfs = new SynthesizedPlanFragment[2];
+
+        pfs[0] = new SynthesizedPlanFragment();
+        pfs[0].fragmentId = distributedFragment;
+        pfs[0].outputDepId = distributedDep;
+        pfs[0].inputDepIds = new int[] {};
+        pfs[0].multipartition = true;
+        pfs[0].parameters = ParameterSet.emptyParameterSet();
+
+        pfs[1] = new SynthesizedPlanFragment();
+        pfs[1].fragmentId = aggregateFragment;
+        pfs[1].outputDepId = aggregateDep;
+        pfs[1].inputDepIds = new int[] { distributedDep };
+        pfs[1].multipartition = false;
+        pfs[1].parameters = ParameterSet.emptyParameterSet();
+
+        return executeSysProcPlanFragments(pfs, aggregateDep)[0];
+    }
+}
@@ -136,19 +136,26 @@ public class SnapshotRegistry {
             public final String filename;
             public final long size;
             public final Throwable error;
+            public final String writer;
 
             private Table(String name, String filename) {
                 this.name = name;
                 this.filename = filename;
                 size = 0;
                 error = null;
+                writer = null;
             }
 
             public Table(Table t, long size, Throwable error) {
+                this(t, size, error, t.writer);
+            }
+
+            public Table(Table t, long size, Throwable error, String writer) {
                 this.name = t.name;
                 this.filename = t.filename;
                 this.size = size;
                 this.error = error;
+                this.writer = writer;
             }
         }
     }
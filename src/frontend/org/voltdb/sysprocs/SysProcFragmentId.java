@@ -199,4 +199,10 @@ public class SysProcFragmentId
     // @ExecuteTask
     public static final long PF_executeTask = 290;
     public static final long PF_executeTaskAggregate = 291;
+
+    // @Analyze
+    public static final long PF_analyzeCheckSnapshotInProgress = 300;
+    public static final long PF_analyzeCheckSnapshotInProgressResults = 301;
+    public static final long PF_analyzeStartScan = 302;
+    public static final long PF_analyzeStartScanResults = 303;
 }
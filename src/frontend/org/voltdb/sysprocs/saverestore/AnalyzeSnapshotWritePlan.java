@@ -0,0 +1,206 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json_voltpatches.JSONObject;
+import org.voltcore.utils.CoreUtils;
+import org.voltdb.AnalyzeSnapshotDataTarget;
+import org.voltdb.ExtensibleSnapshotDigestData;
+import org.voltdb.PlannerStatisticsMonitor;
+import org.voltdb.SnapshotDataFilter;
+import org.voltdb.SnapshotDataTarget;
+import org.voltdb.SnapshotFormat;
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.SnapshotTableTask;
+import org.voltdb.SystemProcedureExecutionContext;
+import org.voltdb.VoltDB;
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Table;
+import org.voltdb.dtxn.SiteTracker;
+import org.voltdb.planner.CollectedTableStatistics;
+import org.voltdb.sysprocs.SnapshotRegistry;
+
+/**
+ * Create a snapshot write plan that gathers planner statistics instead of
+ * writing table data anywhere. Tables are streamed through the regular
+ * snapshot machinery, so the work is done a block at a time between
+ * transactions on each site, and every table is scanned only once across
+ * the cluster using the same replica selection as a CSV snapshot.
+ *
+ * Once the scan is done on this host the statistics gathered here are
+ * published through {@link PlannerStatisticsMonitor}, which merges them with
+ * those of the other hosts.
+ */
+public class AnalyzeSnapshotWritePlan extends SnapshotWritePlan
+{
+    private static final Map<Long, ConcurrentLinkedQueue<CollectedTableStatistics>> m_collected =
+            new ConcurrentHashMap<Long, ConcurrentLinkedQueue<CollectedTableStatistics>>();
+
+    /**
+     * Remove and return the statistics gathered on this host by the analyze
+     * snapshot with the given txnId.
+     */
+    static List<CollectedTableStatistics> takeCollectedStatistics(long txnId)
+    {
+        ConcurrentLinkedQueue<CollectedTableStatistics> collected = m_collected.remove(txnId);
+        if (collected == null) {
+            return new ArrayList<CollectedTableStatistics>();
+        }
+        return new ArrayList<CollectedTableStatistics>(collected);
+    }
+
+    @Override
+    public Callable<Boolean> createSetup(
+            String file_path, String file_nonce,
+            long txnId, Map<Integer, Long> partitionTransactionIds,
+            JSONObject jsData, SystemProcedureExecutionContext context,
+            final VoltTable result,
+            ExtensibleSnapshotDigestData extraSnapshotData,
+            SiteTracker tracker,
+            HashinatorSnapshotData hashinatorData,
+            long timestamp)
+    {
+        assert(SnapshotSiteProcessor.ExecutionSitesCurrentlySnapshotting.isEmpty());
+
+        List<Long> sitesToInclude = CSVSnapshotWritePlan.computeDedupedLocalSites(txnId, tracker);
+        // If there's no work to do on this host, just claim success and get out:
+        if (sitesToInclude.isEmpty() && !tracker.isFirstHost()) {
+            return null;
+        }
+
+        final ConcurrentLinkedQueue<CollectedTableStatistics> collected =
+                new ConcurrentLinkedQueue<CollectedTableStatistics>();
+        m_collected.put(txnId, collected);
+
+        // Publish whatever this host gathered once all of its targets are closed,
+        // which happens before the host reports the snapshot as complete. Only hosts
+        // with work register, anything left in the static queues would outlive the run.
+        final long snapshotTxnId = txnId;
+        final int hostId = context.getHostId();
+        SnapshotSiteProcessor.m_tasksOnSnapshotCompletion.offer(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    PlannerStatisticsMonitor.publishHostStatistics(
+                            VoltDB.instance().getHostMessenger().getZK(),
+                            snapshotTxnId, hostId, takeCollectedStatistics(snapshotTxnId));
+                } catch (Exception e) {
+                    SNAP_LOG.error("Failed to publish statistics collected by @Analyze", e);
+                }
+            }
+        });
+
+        final SnapshotRequestConfig config = new SnapshotRequestConfig(jsData, context.getDatabase());
+        final AtomicInteger numTables = new AtomicInteger(config.tables.length);
+        final SnapshotRegistry.Snapshot snapshotRecord =
+            SnapshotRegistry.startSnapshot(
+                    txnId,
+                    context.getHostId(),
+                    file_path,
+                    file_nonce,
+                    SnapshotFormat.ANALYZE,
+                    config.tables);
+
+        boolean noTargetsCreated = true;
+
+        final ArrayList<SnapshotTableTask> partitionedSnapshotTasks =
+            new ArrayList<SnapshotTableTask>();
+        final ArrayList<SnapshotTableTask> replicatedSnapshotTasks =
+            new ArrayList<SnapshotTableTask>();
+        for (final Table table : config.tables)
+        {
+            // Replicated tables are identical everywhere, only scan them on the "leader" host.
+            if (table.getIsreplicated() && !tracker.isFirstHost()) {
+                snapshotRecord.removeTable(table.getTypeName());
+                numTables.decrementAndGet();
+                continue;
+            }
+
+            final SnapshotTableTask task =
+                    new SnapshotTableTask(
+                            table,
+                            new SnapshotDataFilter[0],
+                            null,
+                            false);
+
+            if (table.getIsreplicated()) {
+                replicatedSnapshotTasks.add(task);
+            } else {
+                partitionedSnapshotTasks.add(task);
+            }
+
+            noTargetsCreated = false;
+            result.addRow(context.getHostId(),
+                    CoreUtils.getHostnameOrAddress(),
+                    table.getTypeName(),
+                    "SUCCESS",
+                    "");
+        }
+
+        if (noTargetsCreated) {
+            SnapshotRegistry.discardSnapshot(snapshotRecord);
+        }
+
+        placePartitionedTasks(partitionedSnapshotTasks, sitesToInclude);
+        placeReplicatedTasks(replicatedSnapshotTasks, tracker.getSitesForHost(context.getHostId()));
+
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception
+            {
+                for (SnapshotTableTask task : replicatedSnapshotTasks) {
+                    task.setTarget(createDataTargetForTable(numTables, snapshotRecord, task.m_table, collected));
+                }
+
+                for (SnapshotTableTask task : partitionedSnapshotTasks) {
+                    task.setTarget(createDataTargetForTable(numTables, snapshotRecord, task.m_table, collected));
+                }
+
+                return true;
+            }
+        };
+    }
+
+    private SnapshotDataTarget createDataTargetForTable(AtomicInteger numTables,
+                                                        SnapshotRegistry.Snapshot snapshotRecord,
+                                                        Table table,
+                                                        final ConcurrentLinkedQueue<CollectedTableStatistics> collected)
+    {
+        SnapshotDataTarget sdt = new AnalyzeSnapshotDataTarget(table,
+                new AnalyzeSnapshotDataTarget.StatisticsConsumer() {
+                    @Override
+                    public void statisticsCollected(CollectedTableStatistics statistics) {
+                        collected.add(statistics);
+                    }
+                });
+
+        m_targets.add(sdt);
+        final Runnable onClose = new TargetStatsClosure(sdt, table.getTypeName(), numTables, snapshotRecord);
+        sdt.setOnCloseHandler(onClose);
+
+        return sdt;
+    }
+}
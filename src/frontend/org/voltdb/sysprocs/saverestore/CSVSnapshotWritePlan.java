@@ -226,7 +226,7 @@ public class CSVSnapshotWritePlan extends SnapshotWritePlan
         return sdt;
     }
 
-    static private List<Long> computeDedupedLocalSites(long txnId, SiteTracker tracker)
+    static List<Long> computeDedupedLocalSites(long txnId, SiteTracker tracker)
     {
         MessageDigest digest;
         try {
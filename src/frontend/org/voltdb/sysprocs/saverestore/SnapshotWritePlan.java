@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.json_voltpatches.JSONObject;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.CoreUtils;
+import org.voltdb.DefaultSnapshotDataTarget;
 import org.voltdb.DevNullSnapshotTarget;
 import org.voltdb.ExtensibleSnapshotDigestData;
 import org.voltdb.SnapshotDataTarget;
@@ -100,10 +101,15 @@ public abstract class SnapshotWritePlan
                         @Override
                         public SnapshotRegistry.Snapshot.Table update(
                             SnapshotRegistry.Snapshot.Table registryTable) {
+                            String writer = registryTable.writer;
+                            if (m_sdt instanceof DefaultSnapshotDataTarget) {
+                                writer = ((DefaultSnapshotDataTarget) m_sdt).getWriterName();
+                            }
                             return m_snapshotRecord.new Table(
                                 registryTable,
                                 m_sdt.getBytesWritten(),
-                                m_sdt.getLastWriteException());
+                                m_sdt.getLastWriteException(),
+                                writer);
                             }
                     });
             int tablesLeft = m_numTables.decrementAndGet();
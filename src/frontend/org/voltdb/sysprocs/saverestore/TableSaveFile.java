@@ -24,11 +24,15 @@ import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayDeque;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.zip.Checksum;
 
@@ -40,6 +44,7 @@ import org.json_voltpatches.JSONObject;
 import org.voltcore.TransactionIdManager;
 import org.voltcore.logging.VoltLogger;
 import org.voltcore.utils.Bits;
+import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DBBPool;
 import org.voltcore.utils.DBBPool.BBContainer;
 import org.voltdb.EELibraryLoader;
@@ -47,6 +52,8 @@ import org.voltdb.messaging.FastDeserializer;
 import org.voltdb.utils.CompressionService;
 import org.voltdb.utils.PosixAdvise;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+
 /**
  * An abstraction around a table's save file for restore.  Deserializes the
  * meta-data that was stored when the table was saved and makes it available
@@ -91,6 +98,12 @@ public class TableSaveFile
     private static final int DEFAULT_CHUNKSIZE =
             org.voltdb.SnapshotSiteProcessor.m_snapshotBufferLength + (1024 * 256);
 
+    /**
+     * Size of the file regions mapped at a time to read chunks from, a region is made
+     * larger when it has to hold a larger chunk. Not final so tests can shrink it.
+     */
+    static long m_mapWindowSize = Long.getLong("SNAPSHOT_RESTORE_MAP_WINDOW", 1024 * 1024 * 64);
+
     public TableSaveFile(
             FileInputStream fis,
             int readAheadChunks,
@@ -520,6 +533,22 @@ public class TableSaveFile
     private Thread m_chunkReaderThread = null;
     private IOException m_chunkReaderException = null;
 
+    /**
+     * A chunk failed validation, either just its partition or every partition
+     * in the file is corrupted.
+     */
+    private static class CorruptedChunkException extends IOException {
+        private static final long serialVersionUID = 1L;
+        final int m_partitionId;
+        final boolean m_allPartitions;
+
+        CorruptedChunkException(String message, int partitionId, boolean allPartitions) {
+            super(message);
+            m_partitionId = partitionId;
+            m_allPartitions = allPartitions;
+        }
+    }
+
     /**
      * Thread to read chunks from the disk
      */
@@ -528,77 +557,69 @@ public class TableSaveFile
         /*
          * The old method was out of hand. Going to start a new one with a different format
          * that should be easier to understand and validate.
+         *
+         * The file is memory mapped a window at a time and this thread only walks the
+         * chunk headers. Checking and decompressing the chunks is done on the computation
+         * pool so several chunks of a file are decompressed at once. Chunks are still
+         * handed out in file order and at most readAheadChunks of them are in flight or
+         * waiting to be picked up.
          */
         private void readChunksV2() {
-            //For reading the compressed input.
-            final BBContainer fileInputBufferC =
-                    DBBPool.allocateDirect(CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE));
-            final ByteBuffer fileInputBuffer = fileInputBufferC.b();
-            long sinceLastFAdvise = Long.MAX_VALUE;
-            long positionAtLastFAdvise = 0;
-            while (m_hasMoreChunks) {
-                if (sinceLastFAdvise > 1024 * 1024 * 48) {
-                    sinceLastFAdvise = 0;
-                    VoltLogger log = new VoltLogger("SNAPSHOT");
-                    try {
-                        final long position = m_saveFile.position();
-                        long retval = PosixAdvise.fadvise(
-                                m_fd,
-                                position,
-                                position + 1024 * 1024 * 64,
-                                PosixAdvise.POSIX_FADV_WILLNEED);
-                        if (retval != 0) {
-                            log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+            final ArrayDeque<ListenableFuture<Container>> inFlight = new ArrayDeque<ListenableFuture<Container>>();
+            final byte headerBytes[] = new byte[16];
+            final ByteBuffer header = ByteBuffer.wrap(headerBytes);
+            final int maxChunkLength = CompressionService.maxCompressedLength(DEFAULT_CHUNKSIZE);
+            boolean expectedAnotherChunk = false;
+            try {
+                final long fileSize = m_saveFile.size();
+                long windowStart = m_saveFile.position();
+                MappedByteBuffer window = null;
+                long positionAtLastFAdvise = 0;
+                boolean endOfFile = false;
+                while (m_hasMoreChunks) {
+                    /*
+                     * Hand out the chunks that are done, in order
+                     */
+                    while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                        publishChunk(inFlight.poll());
+                    }
+                    if (endOfFile) {
+                        if (inFlight.isEmpty()) {
+                            break;
                         }
+                        publishChunk(inFlight.poll());
+                        continue;
+                    }
 
-                        //Get aligned start and end position
-                        final long fadviseStart = positionAtLastFAdvise;
-                        //-1 because we don't want to drop the last page because
-                        //We will be reading it soon
-                        positionAtLastFAdvise = ((position / Bits.pageSize()) - 1) * Bits.pageSize();
-                        final long length = positionAtLastFAdvise - fadviseStart;
-                        if (length > 0) {
-                            retval = PosixAdvise.fadvise(
-                                    m_fd,
-                                    fadviseStart,
-                                    length,
-                                    PosixAdvise.POSIX_FADV_DONTNEED);
-                        }
-                        if (retval != 0) {
-                            log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+                    /*
+                     * Limit the number of chunk materialized into memory at one time,
+                     * if there is no room wait for the oldest chunk in flight
+                     */
+                    if (!m_chunkReads.tryAcquire()) {
+                        if (!inFlight.isEmpty()) {
+                            publishChunk(inFlight.poll());
+                            continue;
                         }
-                        positionAtLastFAdvise = position;
-                    } catch (Throwable t) {
-                        log.info("Exception attempting fadvise", t);
+                        m_chunkReads.acquire();
                     }
-                }
-
-                /*
-                 * Limit the number of chunk materialized into memory at one time
-                 */
-                try {
-                    m_chunkReads.acquire();
-                } catch (InterruptedException e) {
-                    fileInputBufferC.discard();
-                    return;
-                }
-                boolean expectedAnotherChunk = false;
-                Container c = null;
-                try {
 
                     /*
                      * Get the length of the next chunk, partition id, crc for partition id, and length prefix,
                      * and then the CRC of the compressed payload
                      */
-                    ByteBuffer chunkLengthB = ByteBuffer.allocate(16);
-                    while (chunkLengthB.hasRemaining()) {
-                        final int read = m_saveFile.read(chunkLengthB);
-                        if (read == -1) {
-                            throw new EOFException();
+                    if (window == null || window.remaining() < headerBytes.length) {
+                        final long position = window == null ? windowStart : windowStart + window.position();
+                        if (fileSize - position < headerBytes.length) {
+                            m_chunkReads.release();
+                            endOfFile = true;
+                            continue;
                         }
-                        sinceLastFAdvise += read;
+                        windowStart = position;
+                        window = mapWindow(windowStart, headerBytes.length, fileSize);
+                        positionAtLastFAdvise = adviseWindow(windowStart, window.capacity(), positionAtLastFAdvise);
                     }
-                    int nextChunkLength = chunkLengthB.getInt(0);
+                    window.get(headerBytes);
+                    int nextChunkLength = header.getInt(0);
                     expectedAnotherChunk = true;
 
                     /*
@@ -609,13 +630,12 @@ public class TableSaveFile
                      */
                     assert(m_checksumType == ChecksumType.CRC32C);
                     final Checksum partitionIdCRC = new PureJavaCrc32C();
-                    final int nextChunkPartitionId = chunkLengthB.getInt(4);
-                    final int nextChunkPartitionIdCRC = chunkLengthB.getInt(8);
+                    final int nextChunkPartitionId = header.getInt(4);
+                    final int nextChunkPartitionIdCRC = header.getInt(8);
 
-                    partitionIdCRC.update(chunkLengthB.array(), 0, 8);
+                    partitionIdCRC.update(headerBytes, 0, 8);
                     int generatedValue = (int)partitionIdCRC.getValue();
                     if (generatedValue != nextChunkPartitionIdCRC) {
-                        chunkLengthB.position(0);
                         for (int partitionId : m_partitionIds) {
                             m_corruptedPartitions.add(partitionId);
                         }
@@ -626,7 +646,7 @@ public class TableSaveFile
                     /*
                      * CRC for the data portion of the chunk
                      */
-                    final int nextChunkCRC = chunkLengthB.getInt(12);
+                    final int nextChunkCRC = header.getInt(12);
 
                     /*
                      * Sanity check the length value to ensure there isn't
@@ -636,149 +656,237 @@ public class TableSaveFile
                         throw new IOException("Corrupted TableSaveFile chunk has negative chunk length");
                     }
 
-                    if (nextChunkLength > fileInputBuffer.capacity()) {
+                    if (nextChunkLength > maxChunkLength) {
                         throw new IOException("Corrupted TableSaveFile chunk has unreasonable length " +
                                 "> DEFAULT_CHUNKSIZE bytes");
                     }
 
                     /*
-                     * Go fetch the compressed data so that the uncompressed size is known
-                     * and use that to set nextChunkLength to be the uncompressed length,
-                     * the code ahead that constructs the volt table is expecting
-                     * the uncompressed size/data since it is producing an uncompressed table
+                     * Chunks don't span windows, map a new one starting at the chunk data
+                     * that is big enough to hold it
                      */
-                    fileInputBuffer.clear();
-                    fileInputBuffer.limit(nextChunkLength);
-                    while (fileInputBuffer.hasRemaining()) {
-                        final int read = m_saveFile.read(fileInputBuffer);
-                        if (read == -1) {
+                    if (window.remaining() < nextChunkLength) {
+                        final long position = windowStart + window.position();
+                        if (fileSize - position < nextChunkLength) {
                             throw new EOFException();
                         }
-                        sinceLastFAdvise += read;
+                        windowStart = position;
+                        window = mapWindow(windowStart, nextChunkLength, fileSize);
+                        positionAtLastFAdvise = adviseWindow(windowStart, window.capacity(), positionAtLastFAdvise);
                     }
-                    fileInputBuffer.flip();
-                    nextChunkLength = CompressionService.uncompressedLength(fileInputBuffer);
+                    final ByteBuffer compressed = window.slice();
+                    compressed.limit(nextChunkLength);
+                    window.position(window.position() + nextChunkLength);
+                    expectedAnotherChunk = false;
 
-                    /*
-                     * Validate the rest of the chunk. This can fail if the data is corrupted
-                     * or the length value was corrupted.
-                     */
-                    final int calculatedCRC =
-                            DBBPool.getBufferCRC32C(fileInputBuffer, 0, fileInputBuffer.remaining());
-                    if (calculatedCRC != nextChunkCRC) {
-                        m_corruptedPartitions.add(nextChunkPartitionId);
-                        if (m_continueOnCorruptedChunk) {
-                            m_chunkReads.release();
-                            continue;
-                        } else {
-                            throw new IOException("CRC mismatch in saved table chunk");
-                        }
+                    inFlight.offer(CompressionService.submitCompressionTask(
+                            new ChunkDecompressor(compressed, nextChunkPartitionId, nextChunkCRC)));
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } catch (EOFException eof) {
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    if (expectedAnotherChunk) {
+                        m_chunkReaderException = new IOException(
+                                "Expected to find another chunk but reached end of file instead");
                     }
-
-                    /*
-                     * Now allocate space to store the chunk using the VoltTable serialization representation.
-                     * The chunk will contain an integer row count preceding it so it can
-                     * be sucked straight in. There is a little funny business to overwrite the
-                     * partition id that is not part of the serialization format
-                     */
-                    c = getOutputBuffer(nextChunkPartitionId);
-
-                    /*
-                     * If the length value is wrong or not all data made it to disk this read will
-                     * not complete correctly. There could be overflow, underflow etc.
-                     * so use a try finally block to indicate that all partitions are now corrupt.
-                     * The enclosing exception handlers will do the right thing WRT to
-                     * propagating the error and closing the file.
-                     */
-                    boolean completedRead = false;
-                    try {
-                        final ByteBuffer buf = c.b();
-                        /*
-                         * Assemble a VoltTable out of the chunk of tuples.
-                         * Put in the header that was cached in the constructor,
-                         * then copy the tuple data.
-                         */
-                        buf.clear();
-                        buf.limit(nextChunkLength  + m_tableHeader.capacity());
-                        m_tableHeader.position(0);
-                        buf.put(m_tableHeader);
-                        //Doesn't move buffer position, does change the limit
-                        CompressionService.decompressBuffer(fileInputBuffer, buf);
-                        completedRead = true;
-                    } finally {
-                        if (!completedRead) {
-                            for (int partitionId : m_partitionIds) {
-                                m_corruptedPartitions.add(partitionId);
-                            }
-                            if (m_continueOnCorruptedChunk) {
-                                m_chunkReads.release();
-                                continue;
-                            } else {
-                                throw new IOException("Failed decompression of saved table chunk");
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    m_chunkReaderException = e;
+                    TableSaveFile.this.notifyAll();
+                }
+            } catch (RuntimeException e) {
+                /*
+                 * A corrupt file can make the buffer accesses throw,
+                 * fail the restore of the file rather than the reader thread
+                 */
+                synchronized (TableSaveFile.this) {
+                    m_hasMoreChunks = false;
+                    m_chunkReaderException = new IOException(e);
+                    TableSaveFile.this.notifyAll();
+                }
+            } finally {
+                /*
+                 * Chunks nobody is going to pick up are freed as they finish
+                 */
+                for (final ListenableFuture<Container> chunk : inFlight) {
+                    chunk.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Container c = chunk.get();
+                                if (c != null) {
+                                    c.discard();
+                                }
+                            } catch (Exception e) {
                             }
                         }
-                    }
+                    }, CoreUtils.SAMETHREADEXECUTOR);
+                }
+            }
+        }
 
-                    /*
-                     * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
-                     * in case it is the length value that is corrupted
-                     */
-                    if (m_relevantPartitionIds != null) {
-                        if (!m_relevantPartitionIds.contains(nextChunkPartitionId)) {
-                            m_chunkReads.release();
-                            continue;
-                        }
-                    }
+        /*
+         * Map the next window, at least minSize bytes of it unless the file ends sooner
+         */
+        private MappedByteBuffer mapWindow(long position, int minSize, long fileSize) throws IOException {
+            final long size = Math.min(Math.max(m_mapWindowSize, minSize), fileSize - position);
+            return m_saveFile.map(MapMode.READ_ONLY, position, size);
+        }
 
-                    /*
-                     * VoltTable wants the buffer at the home position 0
-                     */
-                    c.b().position(0);
+        /*
+         * Ask the kernel to read the window ahead and drop the pages behind it,
+         * there is no need to pollute the page cache with snapshot data.
+         * Returns the new start of the pages not yet advised to be dropped.
+         */
+        private long adviseWindow(long windowStart, long windowSize, long positionAtLastFAdvise) {
+            VoltLogger log = new VoltLogger("SNAPSHOT");
+            try {
+                long retval = PosixAdvise.fadvise(
+                        m_fd,
+                        windowStart,
+                        windowSize,
+                        PosixAdvise.POSIX_FADV_WILLNEED);
+                if (retval != 0) {
+                    log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
+                }
 
-                    synchronized (TableSaveFile.this) {
-                        m_availableChunks.offer(c);
-                        c = null;
-                        TableSaveFile.this.notifyAll();
+                //Get aligned end position, chunks of the previous window may still be decompressing
+                //but dropped pages are simply read again
+                final long dropEnd = (windowStart / Bits.pageSize()) * Bits.pageSize();
+                final long length = dropEnd - positionAtLastFAdvise;
+                if (length > 0) {
+                    retval = PosixAdvise.fadvise(
+                            m_fd,
+                            positionAtLastFAdvise,
+                            length,
+                            PosixAdvise.POSIX_FADV_DONTNEED);
+                    if (retval != 0) {
+                        log.info("Failed to fadvise in TableSaveFile, this is harmless: " + retval);
                     }
-                } catch (EOFException eof) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        if (expectedAnotherChunk) {
-                            m_chunkReaderException = new IOException(
-                                    "Expected to find another chunk but reached end of file instead");
+                    return dropEnd;
+                }
+            } catch (Throwable t) {
+                log.info("Exception attempting fadvise", t);
+            }
+            return positionAtLastFAdvise;
+        }
+
+        /**
+         * Wait for a chunk to be decompressed and make it available, or note the
+         * corruption it ran into.
+         */
+        private void publishChunk(ListenableFuture<Container> chunk) throws IOException, InterruptedException {
+            final Container c;
+            try {
+                c = chunk.get();
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof CorruptedChunkException) {
+                    final CorruptedChunkException corruption = (CorruptedChunkException) cause;
+                    if (corruption.m_allPartitions) {
+                        for (int partitionId : m_partitionIds) {
+                            m_corruptedPartitions.add(partitionId);
                         }
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = e;
-                        TableSaveFile.this.notifyAll();
-                    }
-                } catch (BufferUnderflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
+                    } else {
+                        m_corruptedPartitions.add(corruption.m_partitionId);
                     }
-                } catch (BufferOverflowException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
+                    if (m_continueOnCorruptedChunk) {
+                        m_chunkReads.release();
+                        return;
                     }
-                } catch (IndexOutOfBoundsException e) {
-                    synchronized (TableSaveFile.this) {
-                        m_hasMoreChunks = false;
-                        m_chunkReaderException = new IOException(e);
-                        TableSaveFile.this.notifyAll();
+                    throw new IOException(corruption.getMessage());
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+
+            if (c == null) {
+                // Not one of the relevant partitions
+                m_chunkReads.release();
+                return;
+            }
+            synchronized (TableSaveFile.this) {
+                m_availableChunks.offer(c);
+                TableSaveFile.this.notifyAll();
+            }
+        }
+
+        /**
+         * Validates and decompresses one chunk into a VoltTable
+         */
+        private class ChunkDecompressor implements Callable<Container> {
+            private final ByteBuffer m_compressed;
+            private final int m_partitionId;
+            private final int m_crc;
+
+            ChunkDecompressor(ByteBuffer compressed, int partitionId, int crc) {
+                m_compressed = compressed;
+                m_partitionId = partitionId;
+                m_crc = crc;
+            }
+
+            @Override
+            public Container call() throws Exception {
+                /*
+                 * Validate the rest of the chunk. This can fail if the data is corrupted
+                 * or the length value was corrupted.
+                 */
+                final int calculatedCRC =
+                        DBBPool.getBufferCRC32C(m_compressed, 0, m_compressed.remaining());
+                if (calculatedCRC != m_crc) {
+                    throw new CorruptedChunkException("CRC mismatch in saved table chunk", m_partitionId, false);
+                }
+
+                /*
+                 * Skip irrelevant chunks after CRC is calculated. Always calulate the CRC
+                 * in case it is the length value that is corrupted
+                 */
+                if (m_relevantPartitionIds != null) {
+                    if (!m_relevantPartitionIds.contains(m_partitionId)) {
+                        return null;
                     }
+                }
+
+                /*
+                 * Now allocate space to store the chunk using the VoltTable serialization representation.
+                 * Put in the header that was cached in the constructor, then decompress the tuple data.
+                 * If the length value is wrong or not all data made it to disk the decompression will
+                 * fail, which corrupts all partitions in the file.
+                 */
+                final Container c = getOutputBuffer(m_partitionId);
+                boolean completedRead = false;
+                try {
+                    final int uncompressedLength = CompressionService.uncompressedLength(m_compressed);
+                    final ByteBuffer buf = c.b();
+                    final ByteBuffer tableHeader = m_tableHeader.duplicate();
+                    tableHeader.position(0);
+                    buf.clear();
+                    buf.limit(uncompressedLength + tableHeader.capacity());
+                    buf.put(tableHeader);
+                    //Doesn't move buffer position, does change the limit
+                    CompressionService.decompressBuffer(m_compressed, buf);
+                    /*
+                     * VoltTable wants the buffer at the home position 0
+                     */
+                    buf.position(0);
+                    completedRead = true;
+                } catch (IOException | RuntimeException e) {
+                    throw new CorruptedChunkException("Failed decompression of saved table chunk", m_partitionId, true);
                 } finally {
-                    if (c != null) c.discard();
+                    if (!completedRead) {
+                        c.discard();
+                    }
                 }
+                return c;
             }
-            fileInputBufferC.discard();
         }
 
         private void readChunks() {
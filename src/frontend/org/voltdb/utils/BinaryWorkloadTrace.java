@@ -0,0 +1,564 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.ParameterSet;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.WorkloadTrace;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.catalog.Statement;
+
+/**
+ * Records procedure invocations into a binary log that can be replayed with
+ * {@link WorkloadReplayer}. The log is a sequence of PersistentBinaryDeque
+ * segment files, nonce.seq.pbd, written without compression. The first entry
+ * of every segment is a header, every other entry packs as many records as fit
+ * in WORKLOAD_TRACE_ENTRY_SIZE bytes.
+ *
+ * A record is the procedure name, its serialized ParameterSet, the partition it
+ * was routed to (-1 for multi partition or unknown), when it arrived relative to
+ * the start of the trace and, if known, how long it ran. Records are serialized
+ * on the calling thread and handed to a writer thread, a caller never waits on
+ * the disk. When more than WORKLOAD_TRACE_MAX_PENDING_BYTES are waiting for the
+ * writer, records are dropped and counted instead.
+ */
+public class BinaryWorkloadTrace implements WorkloadTrace {
+    private static final VoltLogger LOG = new VoltLogger("HOST");
+
+    // Directory to trace invocations into, tracing is off when not set
+    public static final String PATH_PROPERTY = "WORKLOAD_TRACE_PATH";
+    static final int MAGIC = 0x574b4c44;
+    static final int VERSION = 1;
+    // Bytes of records packed in one deque entry
+    static final int ENTRY_SIZE = Integer.getInteger("WORKLOAD_TRACE_ENTRY_SIZE", 1024 * 1024);
+    // Bytes of records waiting for the writer before new ones are dropped
+    static final long MAX_PENDING_BYTES = Long.getLong("WORKLOAD_TRACE_MAX_PENDING_BYTES", 64L * 1024 * 1024);
+    // How long a partially filled entry waits for more records before it is written
+    static final long FLUSH_INTERVAL_MS = Long.getLong("WORKLOAD_TRACE_FLUSH_INTERVAL_MS", 100);
+    static final long SYNC_INTERVAL_MS = Long.getLong("WORKLOAD_TRACE_SYNC_INTERVAL_MS", 1000);
+
+    // length, offset, duration, partition and the length of the name
+    static final int RECORD_HEADER_BYTES = 4 + 8 + 8 + 4 + 2;
+    static final int SEGMENT_HEADER_BYTES = 4 + 4 + 8;
+
+    private static final byte[] CLOSE = new byte[0];
+
+    /**
+     * One recorded invocation
+     */
+    public static class Record {
+        public final long offsetNanos;
+        public final long durationNanos;
+        public final int partition;
+        public final String procName;
+        private final ByteBuffer m_params;
+
+        Record(long offsetNanos, long durationNanos, int partition, String procName, ByteBuffer params) {
+            this.offsetNanos = offsetNanos;
+            this.durationNanos = durationNanos;
+            this.partition = partition;
+            this.procName = procName;
+            m_params = params;
+        }
+
+        /**
+         * @return the serialized ParameterSet of the invocation
+         */
+        public ByteBuffer getSerializedParams() {
+            return m_params.duplicate();
+        }
+
+        public ParameterSet getParams() throws IOException {
+            return ParameterSet.fromByteBuffer(getSerializedParams());
+        }
+    }
+
+    private class TransactionHandle {
+        final String m_procName;
+        final Object[] m_args;
+        final long m_startNanos = System.nanoTime();
+        int m_nextBatchId = 0;
+
+        TransactionHandle(String procName, Object[] args) {
+            m_procName = procName;
+            m_args = args;
+        }
+    }
+
+    private File m_path = null;
+    private final String m_nonce;
+    private final long m_startNanos = System.nanoTime();
+    private final long m_startMillis = System.currentTimeMillis();
+    private final Set<String> m_ignoredProcedures =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final LinkedBlockingQueue<byte[]> m_pending = new LinkedBlockingQueue<byte[]>();
+    private final AtomicLong m_pendingBytes = new AtomicLong();
+    private final AtomicLong m_recorded = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+    private volatile boolean m_closed = false;
+    private Thread m_writer = null;
+
+    /**
+     * @param path directory the segments are written to, or null to set it
+     * later with {@link #setOutputPath(String)}
+     * @param nonce prefix of the segment file names
+     */
+    public BinaryWorkloadTrace(File path, String nonce) throws IOException {
+        m_nonce = nonce;
+        if (path != null) {
+            start(path);
+        }
+    }
+
+    /**
+     * Create a trace if WORKLOAD_TRACE_PATH is set.
+     *
+     * @return the trace or null if tracing is not configured or the
+     * directory can't be used
+     */
+    public static BinaryWorkloadTrace fromSystemProperties(int hostId) {
+        final String path = System.getProperty(PATH_PROPERTY);
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        try {
+            BinaryWorkloadTrace trace = new BinaryWorkloadTrace(new File(path), "workload_host" + hostId);
+            LOG.info("Recording the workload to " + path);
+            return trace;
+        } catch (IOException e) {
+            LOG.error("Unable to record the workload to " + path, e);
+            return null;
+        }
+    }
+
+    private synchronized void start(File path) throws IOException {
+        if (m_writer != null) {
+            throw new IOException("The workload trace is already writing to " + m_path);
+        }
+        if (!path.isDirectory() && !path.mkdirs()) {
+            throw new IOException("Unable to create workload trace directory " + path);
+        }
+        m_path = path;
+        final Writer writer = new Writer(path, nextSegmentIndex(path, m_nonce));
+        m_writer = new Thread(writer, "Workload trace writer");
+        m_writer.setDaemon(true);
+        m_writer.start();
+    }
+
+    /**
+     * Record an invocation as it arrives
+     *
+     * @param invocation the invocation, its parameters are copied
+     * @param partition the partition the invocation is routed to, -1 if not single partition
+     * @param nowNanos System.nanoTime() of its arrival
+     */
+    public void record(StoredProcedureInvocation invocation, int partition, long nowNanos) {
+        final String procName = invocation.getProcName();
+        if (m_closed || m_ignoredProcedures.contains(procName)) {
+            return;
+        }
+        ByteBuffer params = invocation.getSerializedParams();
+        if (params == null) {
+            params = serialize(invocation.getParams());
+        }
+        record(procName, params, partition, nowNanos, -1);
+    }
+
+    void record(String procName, ByteBuffer params, int partition, long startNanos, long durationNanos) {
+        final byte[] name = procName.getBytes(StandardCharsets.UTF_8);
+        final int size = RECORD_HEADER_BYTES + name.length + params.remaining();
+        if (m_pendingBytes.addAndGet(size) > MAX_PENDING_BYTES) {
+            m_pendingBytes.addAndGet(-size);
+            m_dropped.incrementAndGet();
+            return;
+        }
+        final ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(size - 4);
+        buf.putLong(Math.max(0, startNanos - m_startNanos));
+        buf.putLong(durationNanos);
+        buf.putInt(partition);
+        buf.putShort((short) name.length);
+        buf.put(name);
+        buf.put(params);
+        m_pending.offer(buf.array());
+        m_recorded.incrementAndGet();
+    }
+
+    private static ByteBuffer serialize(ParameterSet params) {
+        final ByteBuffer buf = ByteBuffer.allocate(params.getSerializedSize());
+        try {
+            params.flattenToBuffer(buf);
+        } catch (IOException e) {
+            // the buffer is sized for the parameters
+            throw new RuntimeException(e);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * @return the number of records accepted for writing
+     */
+    public long getRecordedCount() {
+        return m_recorded.get();
+    }
+
+    /**
+     * @return the number of records dropped because the writer fell behind
+     */
+    public long getDroppedCount() {
+        return m_dropped.get();
+    }
+
+    /**
+     * Write out the records that are waiting and close the segment being written.
+     */
+    public void close() throws InterruptedException {
+        final Thread writer;
+        synchronized (this) {
+            if (m_closed) {
+                return;
+            }
+            m_closed = true;
+            writer = m_writer;
+        }
+        if (writer != null) {
+            m_pending.offer(CLOSE);
+            writer.join();
+        }
+        if (m_dropped.get() > 0) {
+            LOG.warn("The workload trace dropped " + m_dropped.get() + " of "
+                    + (m_recorded.get() + m_dropped.get()) + " invocations because the writer fell behind");
+        }
+    }
+
+    /**
+     * Drains the records into deque entries and the entries into segments
+     */
+    private class Writer implements Runnable {
+        private final File m_dir;
+        private long m_segmentIndex;
+        private PBDRegularSegment m_segment = null;
+        private final ByteBuffer m_entry = ByteBuffer.allocateDirect(ENTRY_SIZE);
+        private long m_lastSync = System.currentTimeMillis();
+
+        Writer(File dir, long firstSegmentIndex) {
+            m_dir = dir;
+            m_segmentIndex = firstSegmentIndex;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[] record = m_pending.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (record == CLOSE) {
+                        break;
+                    }
+                    if (record == null) {
+                        flushEntry();
+                        sync(false);
+                        continue;
+                    }
+                    m_pendingBytes.addAndGet(-record.length);
+                    if (record.length > m_entry.remaining()) {
+                        flushEntry();
+                    }
+                    if (record.length > m_entry.capacity()) {
+                        write(ByteBuffer.wrap(record));
+                    } else {
+                        m_entry.put(record);
+                    }
+                }
+                byte[] record;
+                while ((record = m_pending.poll()) != null) {
+                    if (record.length > m_entry.remaining()) {
+                        flushEntry();
+                    }
+                    if (record.length > m_entry.capacity()) {
+                        write(ByteBuffer.wrap(record));
+                    } else {
+                        m_entry.put(record);
+                    }
+                }
+                flushEntry();
+                sync(true);
+                if (m_segment != null) {
+                    m_segment.close();
+                }
+            } catch (Exception e) {
+                LOG.error("The workload trace failed to write to " + m_dir + ", recording stops", e);
+                m_closed = true;
+                m_pending.clear();
+            }
+        }
+
+        private void flushEntry() throws IOException {
+            if (m_entry.position() == 0) {
+                return;
+            }
+            m_entry.flip();
+            write(m_entry);
+            m_entry.clear();
+        }
+
+        private void write(ByteBuffer entry) throws IOException {
+            if (m_segment == null || !m_segment.offer(DBBPool.dummyWrapBB(entry.duplicate()), false)) {
+                nextSegment();
+                if (!m_segment.offer(DBBPool.dummyWrapBB(entry.duplicate()), false)) {
+                    throw new IOException("A workload trace entry of " + entry.remaining()
+                            + " bytes does not fit in a segment");
+                }
+            }
+        }
+
+        private void nextSegment() throws IOException {
+            if (m_segment != null) {
+                m_segment.sync();
+                m_segment.close();
+            }
+            m_segment = new PBDRegularSegment(m_segmentIndex,
+                    new VoltFile(m_dir, m_nonce + "." + m_segmentIndex + ".pbd"));
+            m_segmentIndex++;
+            m_segment.open(true);
+            final ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(m_startMillis);
+            header.flip();
+            m_segment.offer(DBBPool.dummyWrapBB(header), false);
+        }
+
+        private void sync(boolean force) throws IOException {
+            final long now = System.currentTimeMillis();
+            if (m_segment != null && (force || now - m_lastSync >= SYNC_INTERVAL_MS)) {
+                m_segment.sync();
+                m_lastSync = now;
+            }
+        }
+    }
+
+    private static TreeMap<Long, File> segmentFiles(File dir, final String nonce) {
+        final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+        dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File pathname) {
+                final String name = pathname.getName();
+                if (name.startsWith(nonce + ".") && name.endsWith(".pbd")) {
+                    final String seq = name.substring(nonce.length() + 1, name.length() - 4);
+                    try {
+                        segments.put(Long.valueOf(seq), pathname);
+                    } catch (NumberFormatException e) {
+                        // another deque whose nonce starts with this one
+                    }
+                }
+                return false;
+            }
+        });
+        return segments;
+    }
+
+    private static long nextSegmentIndex(File dir, String nonce) {
+        final TreeMap<Long, File> segments = segmentFiles(dir, nonce);
+        return segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    }
+
+    /**
+     * Reads the records of a trace in the order they were recorded.
+     */
+    public static class Reader {
+        private final List<File> m_segments;
+        private int m_nextSegment = 0;
+        private PBDRegularSegment m_segment = null;
+        private ByteBuffer m_entry = null;
+        private long m_startMillis = -1;
+
+        private static final BinaryDeque.OutputContainerFactory HEAP_CONTAINER_FACTORY =
+                new BinaryDeque.OutputContainerFactory() {
+            @Override
+            public BBContainer getContainer(int minimumSize) {
+                return DBBPool.wrapBB(ByteBuffer.allocate(minimumSize));
+            }
+        };
+
+        public Reader(File dir, String nonce) throws IOException {
+            m_segments = new ArrayList<File>(segmentFiles(dir, nonce).values());
+            if (m_segments.isEmpty()) {
+                throw new IOException("No workload trace " + nonce + " in " + dir);
+            }
+        }
+
+        /**
+         * @return the wall clock time the trace started at, available after
+         * the first record was read
+         */
+        public long getStartMillis() {
+            return m_startMillis;
+        }
+
+        /**
+         * @return the next record or null at the end of the trace
+         */
+        public Record next() throws IOException {
+            while (m_entry == null || !m_entry.hasRemaining()) {
+                m_entry = nextEntry();
+                if (m_entry == null) {
+                    return null;
+                }
+            }
+            final int length = m_entry.getInt();
+            final int end = m_entry.position() + length;
+            final long offsetNanos = m_entry.getLong();
+            final long durationNanos = m_entry.getLong();
+            final int partition = m_entry.getInt();
+            final byte[] name = new byte[m_entry.getShort()];
+            m_entry.get(name);
+            final ByteBuffer params = m_entry.duplicate();
+            params.limit(end);
+            m_entry.position(end);
+            return new Record(offsetNanos, durationNanos, partition,
+                    new String(name, StandardCharsets.UTF_8), params.slice());
+        }
+
+        private ByteBuffer nextEntry() throws IOException {
+            while (m_segment == null || !m_segment.hasMoreEntries()) {
+                if (m_segment != null) {
+                    m_segment.close();
+                    m_segment = null;
+                }
+                if (m_nextSegment == m_segments.size()) {
+                    return null;
+                }
+                final File file = m_segments.get(m_nextSegment);
+                m_segment = new PBDRegularSegment((long) m_nextSegment++, file);
+                m_segment.open(false);
+                m_segment.getNumEntries();
+                if (!m_segment.hasMoreEntries()) {
+                    continue;
+                }
+                final ByteBuffer header = poll();
+                if (header.remaining() < SEGMENT_HEADER_BYTES || header.getInt() != MAGIC) {
+                    throw new IOException(file + " is not a workload trace segment");
+                }
+                final int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException(file + " has an unsupported workload trace version " + version);
+                }
+                m_startMillis = header.getLong();
+            }
+            return poll();
+        }
+
+        private ByteBuffer poll() throws IOException {
+            final BBContainer cont = m_segment.poll(HEAP_CONTAINER_FACTORY);
+            try {
+                // the heap buffer outlives the container
+                return cont.b();
+            } finally {
+                cont.discard();
+            }
+        }
+
+        public void close() throws IOException {
+            if (m_segment != null) {
+                m_segment.close();
+                m_segment = null;
+            }
+            m_nextSegment = m_segments.size();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // WORKLOAD TRACER INTERFACE
+    // ---------------------------------------------------------------------
+
+    @Override
+    public Object startTransaction(Object caller, Procedure catalog_proc, Object[] args) {
+        final String procName = catalog_proc.getTypeName();
+        if (m_closed || m_ignoredProcedures.contains(procName)) {
+            return null;
+        }
+        return new TransactionHandle(procName, args);
+    }
+
+    @Override
+    public void stopTransaction(Object xact_handle) {
+        if (xact_handle == null) {
+            return;
+        }
+        final TransactionHandle handle = (TransactionHandle) xact_handle;
+        record(handle.m_procName, serialize(ParameterSet.fromArrayNoCopy(handle.m_args)), -1,
+                handle.m_startNanos, System.nanoTime() - handle.m_startNanos);
+    }
+
+    @Override
+    public Object startQuery(Object xact_handle, Statement catalog_statement, Object[] args, int batch_id) {
+        // statements are not traced, a replay re-runs the procedures
+        return null;
+    }
+
+    @Override
+    public void stopQuery(Object query_handle) {
+    }
+
+    @Override
+    public int getNextBatchId(Object xact_handle) {
+        if (xact_handle == null) {
+            return 0;
+        }
+        return ((TransactionHandle) xact_handle).m_nextBatchId++;
+    }
+
+    @Override
+    public void setCatalog(Catalog catalog) {
+        // procedures are recorded by name and need no catalog
+    }
+
+    @Override
+    public void setOutputPath(String path) {
+        try {
+            start(new File(path));
+        } catch (IOException e) {
+            LOG.error("Unable to record the workload to " + path, e);
+        }
+    }
+
+    @Override
+    public void addIgnoredProcedure(String name) {
+        m_ignoredProcedures.add(name);
+    }
+}
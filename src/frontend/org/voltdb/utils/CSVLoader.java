@@ -19,10 +19,12 @@ package org.voltdb.utils;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.TimeZone;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -315,6 +317,14 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
         @Option(desc = "Use upsert instead of insert", hasArg = false)
         boolean update = DEFAULT_UPSERT_MODE;
+
+        @Option(desc = "Parse the input with the streaming tokenizer, which converts numeric columns without intermediate strings.",
+                hasArg = false)
+        boolean streamingparser = false;
+
+        @Option(desc = "Number of threads parsing a memory mapped input file, more than one implies --streamingparser (default: 1)")
+        int parserthreads = 1;
+
         /**
          * Validate command line options.
          */
@@ -341,6 +351,18 @@ public class CSVLoader implements BulkLoaderErrorHandler {
             if (batch < 0) {
                 exitWithMessageAndUsage("batch size number must be >= 0");
             }
+            if (parserthreads < 1) {
+                exitWithMessageAndUsage("parserthreads must be >= 1");
+            }
+            if (parserthreads > 1) {
+                if (file.equals("")) {
+                    exitWithMessageAndUsage("parserthreads needs an input file, standard input is read by one thread");
+                }
+                if (limitrows != Integer.MAX_VALUE) {
+                    exitWithMessageAndUsage("limitrows can't be used with more than one parser thread");
+                }
+                streamingparser = true;
+            }
             if(!customNullString.isEmpty() && !blank.equals("error")){
                 blank = "empty";
             }
@@ -408,8 +430,15 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         configuration();
         final Tokenizer tokenizer;
         ICsvListReader listReader = null;
+        InputStream input = null;
         try {
-            if (CSVLoader.standin) {
+            if (config.parserthreads > 1) {
+                if (!new File(config.file).isFile()) {
+                    throw new FileNotFoundException(config.file);
+                }
+            } else if (config.streamingparser) {
+                input = CSVLoader.standin ? System.in : new FileInputStream(config.file);
+            } else if (CSVLoader.standin) {
                 tokenizer = new Tokenizer(new BufferedReader(new InputStreamReader(System.in)), csvPreference,
                         config.strictquotes, config.escape, config.columnsizelimit,
                         config.skip, config.header);
@@ -428,7 +457,7 @@ public class CSVLoader implements BulkLoaderErrorHandler {
         final String[] serverlist = config.servers.split(",");
 
         // If we need to prompt the user for a password, do so.
-        config.password = cfg.readPasswordIfNeeded(config.user, config.password, "Enter password: ");
+        config.password = CLIConfig.readPasswordIfNeeded(config.user, config.password, "Enter password: ");
 
         // Create connection
         final ClientConfig c_config = new ClientConfig(config.user, config.password);
@@ -462,9 +491,21 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
             CSVFileReader.initializeReader(cfg, csvClient, listReader);
 
-            CSVFileReader csvReader = new CSVFileReader(dataLoader, errHandler);
-
-            Thread readerThread = new Thread(csvReader);
+            CSVFileReader csvReader = null;
+            CSVStreamingReader streamingReader = null;
+            CSVParallelReader parallelReader = null;
+            Thread readerThread;
+            if (config.parserthreads > 1) {
+                parallelReader = new CSVParallelReader(cfg, new File(config.file), dataLoader, errHandler,
+                        config.parserthreads);
+                readerThread = new Thread(parallelReader);
+            } else if (config.streamingparser) {
+                streamingReader = new CSVStreamingReader(cfg, input, dataLoader, errHandler);
+                readerThread = new Thread(streamingReader);
+            } else {
+                csvReader = new CSVFileReader(dataLoader, errHandler);
+                readerThread = new Thread(csvReader);
+            }
             readerThread.setName("CSVFileReader");
             readerThread.setDaemon(true);
 
@@ -478,14 +519,25 @@ public class CSVLoader implements BulkLoaderErrorHandler {
 
             errHandler.waitForErrorFlushComplete();
 
-            readerTime = (csvReader.m_parsingTime) / 1000000;
+            if (parallelReader != null) {
+                readerTime = parallelReader.m_parsingTime / 1000000;
+            } else if (streamingReader != null) {
+                readerTime = streamingReader.m_parsingTime / 1000000;
+            } else {
+                readerTime = csvReader.m_parsingTime / 1000000;
+            }
             insertCount = dataLoader.getProcessedRows();
             ackCount = insertCount - dataLoader.getFailedRows();
             rowsQueued = CSVFileReader.m_totalRowCount.get();
 
             //Close the reader.
             try {
-               listReader.close();
+                if (listReader != null) {
+                    listReader.close();
+                }
+                if (input != null) {
+                    input.close();
+                }
             } catch (Exception ex) {
                 m_log.error("Error closing reader: " + ex);
             } finally {
@@ -505,7 +557,8 @@ public class CSVLoader implements BulkLoaderErrorHandler {
             close_cleanup();
             //In test junit mode we let it continue for reuse
             if (!CSVLoader.testMode) {
-                System.exit(errHandler.m_errorInfo.isEmpty() ? 0 : -1);
+                final boolean readFailed = parallelReader != null && parallelReader.m_failed;
+                System.exit(errHandler.m_errorInfo.isEmpty() && !readFailed ? 0 : -1);
             }
         } catch (Exception ex) {
             m_log.error("Exception Happened while loading CSV data: " + ex);
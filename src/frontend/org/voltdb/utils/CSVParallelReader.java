@@ -0,0 +1,407 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltcore.utils.CoreUtils;
+
+import com.google_voltpatches.common.util.concurrent.ListeningExecutorService;
+
+/**
+ * Reads a CSV file with several threads. The file is memory mapped and split into
+ * ranges that start at a line boundary, and every range is tokenized by its own
+ * CSVStreamingReader. The rows go to the same CSVDataLoader, which hashes them to
+ * their partitions and batches them per partition, so the parsing threads only
+ * contend on the partition queues.
+ *
+ * A range is split at the first newline after its nominal end. That newline may be
+ * inside a quoted value, so before any record is loaded every range is scanned for the
+ * quote state it leaves behind, once as if it started at a record and once as if it
+ * started inside quotes. Chaining those from the start of the file tells which split
+ * points fall inside quotes, and a range ending at one is read on into the next. The
+ * scan follows the quoting rules of StreamingCSVTokenizer, should a reader still end
+ * past its range the load fails.
+ */
+class CSVParallelReader implements Runnable {
+    // Nominal size of the byte range one parsing task reads
+    private static final long SPLIT_SIZE = Long.getLong("CSVLOADER_SPLIT_SIZE", 64L << 20);
+    // Size of the mapped windows a parsing task reads through
+    private static final int MAP_SIZE = Integer.getInteger("CSVLOADER_MAP_SIZE", 256 << 20);
+    private static final VoltLogger m_log = new VoltLogger("CSVLOADER");
+
+    long m_parsingTime = 0;
+    private final CSVLoader.CSVConfig m_config;
+    private final File m_file;
+    private final CSVDataLoader m_loader;
+    private final BulkLoaderErrorHandler m_errHandler;
+    private final int m_threads;
+    long m_splitSize = SPLIT_SIZE;
+    volatile boolean m_failed = false;
+
+    /**
+     * Reads a part of a file through read only mappings of the file, so a range of a
+     * file larger than 2GB, or a record that runs past the end of a mapping, can be
+     * read without copying the file through a read buffer first.
+     */
+    static final class MappedInputStream extends InputStream {
+        private final FileChannel m_channel;
+        private final long m_end;
+        private long m_position;
+        private MappedByteBuffer m_window = null;
+
+        MappedInputStream(FileChannel channel, long start, long end) {
+            m_channel = channel;
+            m_position = start;
+            m_end = end;
+        }
+
+        private boolean map() throws IOException {
+            if (m_window != null && m_window.hasRemaining()) {
+                return true;
+            }
+            if (m_position >= m_end) {
+                return false;
+            }
+            final long size = Math.min(MAP_SIZE, m_end - m_position);
+            m_window = m_channel.map(FileChannel.MapMode.READ_ONLY, m_position, size);
+            m_position += size;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return map() ? m_window.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!map()) {
+                return -1;
+            }
+            final int read = Math.min(len, m_window.remaining());
+            m_window.get(b, off, read);
+            return read;
+        }
+    }
+
+    CSVParallelReader(CSVLoader.CSVConfig config, File file, CSVDataLoader loader,
+            BulkLoaderErrorHandler errorHandler, int threads) {
+        m_config = config;
+        m_file = file;
+        m_loader = loader;
+        m_errHandler = errorHandler;
+        m_threads = threads;
+    }
+
+    @Override
+    public void run() {
+        try {
+            read();
+        } catch (IOException ex) {
+            m_failed = true;
+            m_log.error("Failed to read CSV line from file: " + ex);
+        } catch (InterruptedException e) {
+            m_failed = true;
+            m_log.error("CSVLoader interrupted: " + e);
+        }
+        CSVStreamingReader.closeLoader(m_loader);
+    }
+
+    /**
+     * Follows whether the bytes fed to it are inside a quoted value, the way
+     * StreamingCSVTokenizer tokenizes them: a quote opens a value only at the start of
+     * a field, a doubled quote inside quotes stands for one, and unless it is the quote
+     * character the escape character escapes a following quote, separator or escape.
+     */
+    static final class QuoteTracker {
+        private final byte m_separator;
+        private final byte m_quote;
+        private final byte m_escape;
+        private boolean m_inQuotes;
+        // the field has been quoted, a later quote in it is part of the value
+        private boolean m_quoted;
+        // the field holds nothing but whitespace so far
+        private boolean m_blank = true;
+        private boolean m_escaped = false;
+        // a quote inside quotes, the next byte tells a closing quote from a doubled one
+        private boolean m_quotePending = false;
+
+        QuoteTracker(CSVLoader.CSVConfig config, boolean inQuotes) {
+            m_separator = (byte) config.separator;
+            m_quote = (byte) config.quotechar;
+            m_escape = (byte) config.escape;
+            m_inQuotes = inQuotes;
+            m_quoted = inQuotes;
+        }
+
+        void next(byte b) {
+            if (m_escaped) {
+                m_escaped = false;
+                if (b == m_quote || b == m_separator || b == m_escape) {
+                    m_blank = false;
+                    return;
+                }
+                // not an escape after all, it is part of the value
+                literal(m_escape);
+            }
+            if (m_quotePending) {
+                m_quotePending = false;
+                if (b == m_quote) {
+                    return;
+                }
+                m_inQuotes = false;
+            }
+            if (b == m_escape && m_escape != 0 && m_escape != m_quote) {
+                m_escaped = true;
+            } else if (m_inQuotes) {
+                m_quotePending = b == m_quote;
+            } else if (b == m_separator || b == '\n') {
+                m_quoted = false;
+                m_blank = true;
+            } else if (b == m_quote && m_quote != 0 && !m_quoted && m_blank) {
+                m_inQuotes = true;
+                m_quoted = true;
+            } else {
+                literal(b);
+            }
+        }
+
+        private void literal(byte b) {
+            if (!m_inQuotes && b != ' ' && b != '\t') {
+                m_blank = false;
+            }
+        }
+
+        boolean inQuotes() {
+            return m_inQuotes;
+        }
+    }
+
+    /**
+     * The line count of a range, and whether it ends inside quotes when it starts at a
+     * record or when it starts inside quotes.
+     */
+    static final class RangeScan {
+        final long m_lines;
+        private final boolean m_endsInQuotes;
+        private final boolean m_endsInQuotesFromQuotes;
+
+        RangeScan(long lines, boolean endsInQuotes, boolean endsInQuotesFromQuotes) {
+            m_lines = lines;
+            m_endsInQuotes = endsInQuotes;
+            m_endsInQuotesFromQuotes = endsInQuotesFromQuotes;
+        }
+
+        boolean endsInQuotes(boolean startsInQuotes) {
+            return startsInQuotes ? m_endsInQuotesFromQuotes : m_endsInQuotes;
+        }
+    }
+
+    private void read() throws IOException, InterruptedException {
+        // the skipped lines and the header are read on their own, ahead of the splitting
+        final long start;
+        final long startLines;
+        final Integer[] headerOrder;
+        InputStream head = new FileInputStream(m_file);
+        try {
+            CSVStreamingReader reader = new CSVStreamingReader(m_config, head, m_loader, m_errHandler);
+            if (!reader.readPreamble()) {
+                System.exit(-1);
+            }
+            start = reader.getOffset();
+            startLines = reader.getLineCount();
+            headerOrder = reader.getHeaderOrder();
+        } finally {
+            head.close();
+        }
+
+        RandomAccessFile file = new RandomAccessFile(m_file, "r");
+        final ListeningExecutorService es = CoreUtils.getListeningExecutorService("CSV Parser", m_threads);
+        try {
+            final FileChannel channel = file.getChannel();
+            final long[] splits = split(channel, start, channel.size(), m_splitSize);
+            final int ranges = splits.length - 1;
+
+            // count the lines of every range, so each reader knows the line numbers to
+            // report its records with before the ranges ahead of it have been parsed, and
+            // find the split points that are inside quotes
+            List<Future<RangeScan>> scans = new ArrayList<Future<RangeScan>>(ranges);
+            for (int i = 0; i < ranges; i++) {
+                final long from = splits[i];
+                final long to = splits[i + 1];
+                scans.add(es.submit(new Callable<RangeScan>() {
+                    @Override
+                    public RangeScan call() throws IOException {
+                        return scan(channel, from, to, m_config);
+                    }
+                }));
+            }
+
+            List<Future<Long>> ends = new ArrayList<Future<Long>>(ranges);
+            List<Long> limits = new ArrayList<Long>(ranges);
+            final long parsingTimes[] = new long[ranges];
+            long lines = startLines;
+            long rangeLines = 0;
+            long from = start;
+            boolean inQuotes = false;
+            for (int i = 0; i < ranges; i++) {
+                final RangeScan scan = get(scans.get(i));
+                rangeLines += scan.m_lines;
+                inQuotes = scan.endsInQuotes(inQuotes);
+                if (inQuotes && i + 1 < ranges) {
+                    // the split is inside a quoted value, the reader goes on to the next one
+                    m_log.debug("Not splitting the CSV file " + m_config.file + " inside the quoted value at byte "
+                            + splits[i + 1]);
+                    continue;
+                }
+                final int range = ends.size();
+                final long rangeStart = from;
+                final long to = splits[i + 1];
+                final long firstLines = lines;
+                ends.add(es.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException, InterruptedException {
+                        if (m_errHandler.hasReachedErrorLimit()) {
+                            return to;
+                        }
+                        CSVStreamingReader reader = new CSVStreamingReader(m_config,
+                                new MappedInputStream(channel, rangeStart, channel.size()), m_loader, m_errHandler);
+                        reader.setStart(firstLines, headerOrder);
+                        reader.readRecords(to - rangeStart, Long.MAX_VALUE);
+                        parsingTimes[range] = reader.m_parsingTime;
+                        return rangeStart + reader.getOffset();
+                    }
+                }));
+                limits.add(to);
+                lines += rangeLines;
+                rangeLines = 0;
+                from = to;
+            }
+
+            long parsingTime = 0;
+            for (int i = 0; i < ends.size(); i++) {
+                final long end = get(ends.get(i));
+                if (end > limits.get(i) && !m_errHandler.hasReachedErrorLimit()) {
+                    // the next reader did not start at a record
+                    throw new IOException("The record of the CSV file " + m_config.file + " at byte "
+                            + limits.get(i) + " runs on to byte " + end
+                            + ", the records in between have been read incorrectly.");
+                }
+                parsingTime += parsingTimes[i];
+            }
+            // the ranges are parsed side by side
+            m_parsingTime = parsingTime / Math.min(m_threads, Math.max(ends.size(), 1));
+        } finally {
+            es.shutdown();
+            file.close();
+        }
+    }
+
+    /**
+     * Split [start, end) into ranges of about splitSize bytes that begin at a line.
+     *
+     * @return the offsets the ranges start at, followed by end
+     */
+    static long[] split(FileChannel channel, long start, long end, long splitSize) throws IOException {
+        List<Long> splits = new ArrayList<Long>();
+        splits.add(start);
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long position = start + splitSize;
+        while (position < end) {
+            // move to the byte after the next newline
+            long split = -1;
+            while (split < 0 && position < end) {
+                buf.clear();
+                final int read = channel.read(buf, position);
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buf.get(i) == '\n') {
+                        split = position + i + 1;
+                        break;
+                    }
+                }
+                position += read;
+            }
+            if (split < 0 || split >= end) {
+                break;
+            }
+            splits.add(split);
+            position = split + splitSize;
+        }
+        long[] result = new long[splits.size() + 1];
+        for (int i = 0; i < splits.size(); i++) {
+            result[i] = splits.get(i);
+        }
+        result[result.length - 1] = end;
+        return result;
+    }
+
+    static RangeScan scan(FileChannel channel, long start, long end, CSVLoader.CSVConfig config)
+            throws IOException {
+        long lines = 0;
+        QuoteTracker fromRecord = new QuoteTracker(config, false);
+        QuoteTracker fromQuotes = new QuoteTracker(config, true);
+        for (long position = start; position < end; position += MAP_SIZE) {
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAP_SIZE, end - position));
+            final int limit = window.limit();
+            for (int i = 0; i < limit; i++) {
+                final byte b = window.get(i);
+                if (b == '\n') {
+                    lines++;
+                }
+                fromRecord.next(b);
+                fromQuotes.next(b);
+            }
+        }
+        return new RangeScan(lines, fromRecord.inQuotes(), fromQuotes.inQuotes());
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.VoltType;
+import org.voltdb.importer.formatter.FormatException;
+import org.voltdb.importer.formatter.builtin.StreamingCSVTokenizer;
+
+/**
+ * Single thread reader that tokenizes the input with a StreamingCSVTokenizer and feeds
+ * typed rows to CSVDataLoader. Integer and floating point columns are parsed straight
+ * from the input bytes, other columns are handed over as Strings as CSVFileReader does.
+ * Shares CSVFileReader's counters, so CSVLoader reports the same way for both readers.
+ */
+class CSVStreamingReader implements Runnable {
+    // Bytes read from the input at a time
+    private static final int CHUNK_SIZE = Integer.getInteger("CSVLOADER_CHUNK_SIZE", 1 << 20);
+    private static final VoltLogger m_log = new VoltLogger("CSVLOADER");
+
+    long m_parsingTime = 0;
+    private final CSVLoader.CSVConfig m_config;
+    private final InputStream m_input;
+    private final CSVDataLoader m_loader;
+    private final BulkLoaderErrorHandler m_errHandler;
+    private final VoltType[] m_columnTypes;
+    private final Class<?>[] m_columnClasses;
+    private final int m_columnCount;
+    private final StreamingCSVTokenizer m_tokenizer;
+    private Integer[] m_order = null;
+
+    // the chunk holding the current record, a new one is started when it runs out so rows
+    // that still point at the old one for error reporting are left alone
+    private byte[] m_chunk = new byte[CHUNK_SIZE];
+    private int m_position = 0;
+    private int m_limit = 0;
+    // where the record being tokenized starts in the chunk
+    private int m_recordStart = 0;
+    // input bytes that came before the current chunk
+    private long m_chunkOffset = 0;
+    private boolean m_endOfInput = false;
+    private long m_lineCount = 0;
+    private long m_reportedLineCount = 0;
+
+    /**
+     * A record as it appeared in the input, only turned into a String if it is reported.
+     */
+    private static final class RawRecord {
+        private final byte[] m_chunk;
+        private final int m_offset;
+        private final int m_length;
+
+        RawRecord(byte[] chunk, int offset, int length) {
+            m_chunk = chunk;
+            m_offset = offset;
+            m_length = length;
+        }
+
+        @Override
+        public String toString() {
+            int length = m_length;
+            while (length > 0 && (m_chunk[m_offset + length - 1] == '\n' || m_chunk[m_offset + length - 1] == '\r')) {
+                length--;
+            }
+            return new String(m_chunk, m_offset, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    CSVStreamingReader(CSVLoader.CSVConfig config, InputStream input, CSVDataLoader loader,
+            BulkLoaderErrorHandler errorHandler) {
+        m_config = config;
+        m_input = input;
+        m_loader = loader;
+        m_errHandler = errorHandler;
+        m_columnTypes = m_loader.getColumnTypes();
+        m_columnCount = m_columnTypes.length;
+        m_columnClasses = new Class<?>[m_columnCount];
+        for (int i = 0; i < m_columnCount; i++) {
+            m_columnClasses[i] = classForType(m_columnTypes[i]);
+        }
+        m_tokenizer = new StreamingCSVTokenizer(config.separator, config.quotechar, config.escape, config.strictquotes);
+        m_tokenizer.setTrimWhitespace(true);
+        m_tokenizer.setNullString(config.customNullString);
+        m_tokenizer.setColumnSizeLimit(config.columnsizelimit);
+    }
+
+    /**
+     * The class the tokenizer converts a column of the given type to.
+     */
+    static Class<?> classForType(VoltType type) {
+        switch (type) {
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case FLOAT:
+            return type.classFromType();
+        case TIMESTAMP:
+            // microseconds since the epoch, other spellings are parsed from the String
+            return long.class;
+        default:
+            return String.class;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (!readPreamble()) {
+                System.exit(-1);
+            }
+            readRecords(Long.MAX_VALUE, m_config.limitrows);
+        } catch (IOException ex) {
+            m_log.error("Failed to read CSV line from file: " + ex);
+        } catch (InterruptedException e) {
+            m_log.error("CSVLoader interrupted: " + e);
+        }
+        closeLoader(m_loader);
+    }
+
+    /**
+     * Wait for the loader to insert everything that was handed to it.
+     */
+    static void closeLoader(CSVDataLoader loader) {
+        //Now wait for processors to see endOfData and count down. After that drain to finish all callbacks
+        try {
+            m_log.debug("Waiting for CSVDataLoader to finish.");
+            loader.close();
+            m_log.debug("CSVDataLoader Done.");
+        } catch (Exception ex) {
+            m_log.warn("Stopped processing because of connection error. "
+                    + "A report will be generated with what we processed so far. Error: " + ex);
+        }
+    }
+
+    /**
+     * Skip the configured lines and read the header, if there is one.
+     *
+     * @return false if the header does not match the table
+     */
+    boolean readPreamble() throws IOException {
+        skipLines(m_config.skip);
+        final boolean matches = !m_config.header || readHeader();
+        reportLines();
+        return matches;
+    }
+
+    /**
+     * Start reading in the middle of the input, as the reader that read the preamble
+     * would have after reading the given number of lines.
+     */
+    void setStart(long lineCount, Integer[] headerOrder) {
+        m_lineCount = lineCount;
+        m_reportedLineCount = lineCount;
+        m_order = headerOrder;
+    }
+
+    /**
+     * @return the column each field of the input goes to, null without a header
+     */
+    Integer[] getHeaderOrder() {
+        return m_order;
+    }
+
+    /**
+     * @return the input lines read so far
+     */
+    long getLineCount() {
+        return m_lineCount;
+    }
+
+    /**
+     * @return the input bytes consumed so far
+     */
+    long getOffset() {
+        return m_chunkOffset + m_position;
+    }
+
+    /**
+     * Hand the records that start before the given input offset to the loader. The last
+     * of them may end past it.
+     */
+    void readRecords(long byteLimit, long rowLimit) throws IOException, InterruptedException {
+        while (rowLimit-- > 0 && getOffset() < byteLimit) {
+            if (m_errHandler.hasReachedErrorLimit()) {
+                break;
+            }
+            final long firstLine = m_lineCount + 1;
+            final long st = System.nanoTime();
+            String error = null;
+            RawRecord raw;
+            try {
+                if (!nextRecord()) {
+                    break;
+                }
+                raw = new RawRecord(m_chunk, m_recordStart, m_position - m_recordStart);
+            } catch (FormatException e) {
+                // skip past the record the tokenizer gave up on, reporting it up to where
+                // the skipped line ends or the chunk it started in runs out
+                error = e.getMessage();
+                final byte[] chunk = m_chunk;
+                final int limit = m_limit;
+                skipLines(1);
+                final int end = chunk == m_chunk ? m_position : limit;
+                raw = new RawRecord(chunk, m_recordStart, end - m_recordStart);
+            }
+            m_parsingTime += System.nanoTime() - st;
+            reportLines();
+            CSVFileReader.m_totalRowCount.incrementAndGet();
+
+            Object[] values = null;
+            if (error == null) {
+                if (m_tokenizer.getFieldCount() == 1 && m_tokenizer.isBlank(0)) {
+                    // an empty line
+                    continue;
+                }
+                values = new Object[m_columnCount];
+                error = convert(values);
+            }
+            if (error != null) {
+                if (m_errHandler.handleError(new RowWithMetaData(raw, firstLine), null, error)) {
+                    break;
+                }
+                continue;
+            }
+            m_loader.insertRow(new RowWithMetaData(raw, firstLine), values);
+        }
+    }
+
+    /**
+     * Tokenize the next record, reading more input as needed.
+     *
+     * @return false at the end of the input
+     */
+    private boolean nextRecord() throws IOException {
+        while (true) {
+            if (m_position == m_limit && m_endOfInput) {
+                return false;
+            }
+            m_recordStart = m_position;
+            final int next = m_tokenizer.parseRecord(m_chunk, m_position, m_limit, m_endOfInput);
+            if (next >= 0) {
+                m_lineCount += m_tokenizer.getRecordLines();
+                if (next == m_limit && m_endOfInput && m_chunk[next - 1] != '\n') {
+                    // the last line has no newline
+                    m_lineCount++;
+                }
+                m_position = next;
+                return true;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Move what is left of the current chunk to the start of a new one, bigger if the
+     * current record fills it, and read as much input as fits after it.
+     */
+    private void fill() throws IOException {
+        final int remaining = m_limit - m_position;
+        byte[] chunk = new byte[Math.max(CHUNK_SIZE, remaining * 2)];
+        System.arraycopy(m_chunk, m_position, chunk, 0, remaining);
+        m_chunk = chunk;
+        m_chunkOffset += m_position;
+        m_position = 0;
+        m_limit = remaining;
+        while (m_limit < m_chunk.length) {
+            final int read = m_input.read(m_chunk, m_limit, m_chunk.length - m_limit);
+            if (read < 0) {
+                m_endOfInput = true;
+                break;
+            }
+            m_limit += read;
+        }
+    }
+
+    private void reportLines() {
+        CSVFileReader.m_totalLineCount.addAndGet(m_lineCount - m_reportedLineCount);
+        m_reportedLineCount = m_lineCount;
+    }
+
+    private void skipLines(long lines) throws IOException {
+        while (lines > 0) {
+            if (m_position == m_limit) {
+                if (m_endOfInput) {
+                    return;
+                }
+                fill();
+                continue;
+            }
+            if (m_chunk[m_position++] == '\n') {
+                lines--;
+                m_lineCount++;
+            }
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        if (!nextRecord()) {
+            return false;
+        }
+        String[] header = new String[m_tokenizer.getFieldCount()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = m_tokenizer.isBlank(i) ? null : m_tokenizer.getString(i);
+        }
+        m_order = CSVFileReader.mapHeader(header, m_loader.getColumnNames(), m_columnCount);
+        if (m_order == null) {
+            m_log.error("In the CSV file " + m_config.file + ", the header does not match "
+                    + "an existing column in the table " + m_config.table + ".");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Convert the fields of the record into the table's columns, applying the blank,
+     * whitespace and null settings as CSVFileReader does.
+     *
+     * @return null, or the error that makes the record invalid
+     */
+    private String convert(Object[] values) {
+        final int fieldCount = m_tokenizer.getFieldCount();
+        if (m_order == null && fieldCount != m_columnCount) {
+            return String.format(CSVFileReader.COLUMN_COUNT_ERROR, fieldCount, m_columnCount);
+        }
+        if (m_order != null && fieldCount != m_order.length) {
+            return String.format(CSVFileReader.HEADER_COUNT_ERROR, fieldCount, m_order.length);
+        }
+        for (int fileCol = 0; fileCol < fieldCount; fileCol++) {
+            int i = fileCol;
+            if (m_order != null) {
+                if (m_order[fileCol] == null) {
+                    continue;
+                }
+                i = m_order[fileCol];
+            }
+            if (m_tokenizer.isBlank(fileCol)) {
+                if (m_config.blank.equalsIgnoreCase("error")) {
+                    return String.format(CSVFileReader.BLANK_ERROR, i + 1);
+                } else if (m_config.blank.equalsIgnoreCase("empty")) {
+                    values[i] = CSVFileReader.m_blankStrings.get(m_columnTypes[i]);
+                }
+                continue;
+            }
+            if (m_config.nowhitespace && m_tokenizer.isPadded(fileCol)) {
+                return String.format(CSVFileReader.WHITESPACE_ERROR, i + 1);
+            }
+            values[i] = m_tokenizer.getValue(fileCol, m_columnClasses[i]);
+        }
+        return null;
+    }
+}
@@ -911,7 +911,8 @@ public abstract class CatalogUtil {
             paths.setDroverflow(droverflow);
         }
 
-        //Command log info
+        //Command log info, the edition decides only when there is no <commandlog>,
+        //a configured one is enabled unless it says otherwise
         if (deployment.getCommandlog() == null) {
             boolean enabled = false;
             if (MiscUtils.isPro()) {
@@ -959,6 +960,11 @@ public abstract class CatalogUtil {
             mem = new ResourceMonitorType.Memorylimit();
             rm.setMemorylimit(mem);
         }
+        SystemSettingsType.Sitequeue sq = ss.getSitequeue();
+        if (sq == null) {
+            sq = new SystemSettingsType.Sitequeue();
+            ss.setSitequeue(sq);
+        }
     }
 
     /**
@@ -1772,11 +1778,6 @@ public abstract class CatalogUtil {
     }
 
     public static File getCommandLog(PathsType.Commandlog paths, File voltDbRoot) {
-        if (!VoltDB.instance().getConfig().m_isEnterprise) {
-            // dumb defaults if you ask for logging in community version
-            File commandlogPath =  new VoltFile(voltDbRoot, "command_log");
-            return commandlogPath;
-        }
         File commandlogPath;
         commandlogPath = new File(paths.getPath());
         if (!commandlogPath.isAbsolute())
@@ -1799,12 +1800,6 @@ public abstract class CatalogUtil {
     }
 
     public static File getCommandLogSnapshot(PathsType.Commandlogsnapshot paths, File voltDbRoot) {
-        if (!VoltDB.instance().getConfig().m_isEnterprise) {
-            // dumb defaults if you ask for logging in community version
-            File commandlogSnapshotPath = new VoltFile(voltDbRoot, "command_log_snapshot");
-            return commandlogSnapshotPath;
-        }
-
         File commandlogSnapshotPath;
         commandlogSnapshotPath = new File(paths.getPath());
         if (!commandlogSnapshotPath.isAbsolute())
@@ -95,6 +95,10 @@ public class HTTPAdminListener {
     private static final VoltLogger m_log = new VoltLogger("HOST");
     public static final String REALM = "VoltDBRealm";
     static final String jsonContentType = ContentType.APPLICATION_JSON.toString();
+    // Bytes of a response buffered before Jetty sends them as a chunk
+    static final int OUTPUT_BUFFER_SIZE = Integer.getInteger("HTTP_OUTPUT_BUFFER_SIZE", 32 * 1024);
+    // How long an idle keep-alive connection is held open, in milliseconds
+    static final int IDLE_TIMEOUT = Integer.getInteger("HTTP_IDLE_TIMEOUT", 30 * 1000);
 
     Server m_server;
     HTTPClientInterface httpClientInterface = new HTTPClientInterface();
@@ -928,7 +932,10 @@ public class HTTPAdminListener {
             if (httpsType==null || !httpsType.isEnabled()) { // basic HTTP
                 // The socket channel connector seems to be faster for our use
                 //SelectChannelConnector connector = new SelectChannelConnector();
-                connector = new ServerConnector(m_server);
+                HttpConfiguration httpConfig = new HttpConfiguration();
+                httpConfig.setOutputBufferSize(OUTPUT_BUFFER_SIZE);
+                connector = new ServerConnector(m_server, new HttpConnectionFactory(httpConfig));
+                connector.setIdleTimeout(IDLE_TIMEOUT);
 
                 if (intf != null && intf.length() > 0) {
                     connector.setHost(intf);
@@ -1042,6 +1049,7 @@ public class HTTPAdminListener {
         HttpConfiguration httpsConfig = new HttpConfiguration();
         httpsConfig.setSecureScheme("https");
         httpsConfig.setSecurePort(port);
+        httpsConfig.setOutputBufferSize(OUTPUT_BUFFER_SIZE);
         //Add this customizer to indicate we are in https land
         httpsConfig.addCustomizer(new SecureRequestCustomizer());
         HttpConnectionFactory factory = new HttpConnectionFactory(httpsConfig);
@@ -1054,6 +1062,7 @@ public class HTTPAdminListener {
             connector.setHost(intf);
         }
         connector.setPort(port);
+        connector.setIdleTimeout(IDLE_TIMEOUT);
         connector.setName("VoltDB-HTTPS");
         connector.open();
 
@@ -0,0 +1,132 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HyperLogLog distinct-count sketch. Callers supply well mixed 64-bit hashes
+ * of the values they count. Sketches built with the same precision merge
+ * losslessly, so per-partition sketches can be combined into a table-wide
+ * estimate.
+ */
+public class HyperLogLog {
+
+    private final int m_precision;
+    private final byte[] m_registers;
+
+    /**
+     * @param precision log2 of the number of registers, between 4 and 16.
+     * The standard error of the estimate is about 1.04 / sqrt(2^precision).
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 16");
+        }
+        m_precision = precision;
+        m_registers = new byte[1 << precision];
+    }
+
+    private HyperLogLog(int precision, byte[] registers) {
+        m_precision = precision;
+        m_registers = registers;
+    }
+
+    public int getPrecision() {
+        return m_precision;
+    }
+
+    public void addHash(long hash) {
+        final int index = (int) (hash >>> (64 - m_precision));
+        // rank of the first set bit in the remaining bits, capped past the end of them
+        final long rest = (hash << m_precision) | (1L << (m_precision - 1));
+        final byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (m_registers[index] < rank) {
+            m_registers[index] = rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.m_precision != m_precision) {
+            throw new IllegalArgumentException("Can't merge HyperLogLog sketches of different precision");
+        }
+        for (int i = 0; i < m_registers.length; ++i) {
+            if (m_registers[i] < other.m_registers[i]) {
+                m_registers[i] = other.m_registers[i];
+            }
+        }
+    }
+
+    public long cardinality() {
+        final int m = m_registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte register : m_registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                ++zeros;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        // small cardinalities are better served by linear counting
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+        case 16: return 0.673;
+        case 32: return 0.697;
+        case 64: return 0.709;
+        default: return 0.7213 / (1.0 + 1.079 / m);
+        }
+    }
+
+    public int getSerializedSize() {
+        return 1 + m_registers.length;
+    }
+
+    public void flattenToBuffer(ByteBuffer buf) {
+        buf.put((byte) m_precision);
+        buf.put(m_registers);
+    }
+
+    public static HyperLogLog fromBuffer(ByteBuffer buf) {
+        final int precision = buf.get();
+        byte[] registers = new byte[1 << precision];
+        buf.get(registers);
+        return new HyperLogLog(precision, registers);
+    }
+
+    /**
+     * Mix two hashes into one, for sketching composite values such as
+     * multi-column keys one component at a time.
+     */
+    public static long combine(long hash, long componentHash) {
+        long h = (hash * 0x9E3779B97F4A7C15L) ^ componentHash;
+        // murmur3 fmix64 finalizer
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -49,6 +49,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.voltdb.CLIConfig;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 import org.voltdb.client.BatchTimeoutOverrideType;
@@ -859,6 +861,8 @@ public class SQLCommand
     // Output generation
     private static SQLCommandOutputFormatter m_outputFormatter = new SQLCommandOutputFormatterDefault();
     private static boolean m_outputShowMetadata = true;
+    // ask for and print results in the columnar format
+    private static boolean m_columnarResults = false;
 
     private static boolean isUpdateResult(VoltTable table)
     {
@@ -866,6 +870,12 @@ public class SQLCommand
                  table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
     }
 
+    private static boolean isUpdateResult(ColumnarVoltTable table)
+    {
+        return ((table.getColumnName(0).isEmpty() || table.getColumnName(0).equals("modified_tuples")) &&
+                 table.getRowCount() == 1 && table.getColumnCount() == 1 && table.getColumnType(0) == VoltType.BIGINT);
+    }
+
     private static void printResponse(ClientResponse response) throws Exception
     {
         if (response.getStatus() != ClientResponse.SUCCESS) {
@@ -873,6 +883,24 @@ public class SQLCommand
         }
 
         long elapsedTime = System.nanoTime() - m_startTime;
+        if (response instanceof ClientResponseImpl && ((ClientResponseImpl) response).hasColumnarResults()) {
+            // print the tables as they arrived, without building their rows
+            for (ColumnarVoltTable t : ((ClientResponseImpl) response).getColumnarResults()) {
+                long rowCount;
+                if (!isUpdateResult(t)) {
+                    rowCount = t.getRowCount();
+                    m_outputFormatter.printTable(System.out, t, m_outputShowMetadata);
+                }
+                else {
+                    rowCount = t.getLongColumn(0)[0];
+                }
+                if (m_outputShowMetadata) {
+                    System.out.printf("(Returned %d rows in %.2fs)\n",
+                            rowCount, elapsedTime / 1000000000.0);
+                }
+            }
+            return;
+        }
         for (VoltTable t : response.getResults()) {
             long rowCount;
             if (!isUpdateResult(t)) {
@@ -909,6 +937,8 @@ public class SQLCommand
         Collections.synchronizedMap(new HashMap<String, List<Boolean>>());
     private static void loadSystemProcedures()
     {
+        Procedures.put("@Analyze",
+                ImmutableMap.<Integer, List<String>>builder().put( 0, new ArrayList<String>()).build());
         Procedures.put("@Pause",
                 ImmutableMap.<Integer, List<String>>builder().put( 0, new ArrayList<String>()).build());
         Procedures.put("@Quiesce",
@@ -1009,6 +1039,7 @@ public class SQLCommand
         + "              [--output-skip-metadata]\n"
         + "              [--stop-on-error=(true|false)]\n"
         + "              [--query-timeout=number_of_milliseconds]\n"
+        + "              [--columnar-results]\n"
         + "\n"
         + "[--servers=comma_separated_server_list]\n"
         + "  List of servers to connect to.\n"
@@ -1051,6 +1082,10 @@ public class SQLCommand
         + "[--query-timeout=millisecond_number]\n"
         + "  Read-only queries that take longer than this number of milliseconds will abort. Default: " + BatchTimeoutOverrideType.DEFAULT_TIMEOUT/1000.0 + " seconds.\n"
         + "\n"
+        + "[--columnar-results]\n"
+        + "  Receive large query results in the columnar format, which is more compact\n"
+        + "  for columns of repeated strings or increasing numbers. Default: disabled.\n"
+        + "\n"
         );
         System.exit(exitCode);
     }
@@ -1318,6 +1353,9 @@ public class SQLCommand
             else if (arg.equals("--output-skip-metadata")) {
                 m_outputShowMetadata = false;
             }
+            else if (arg.equals("--columnar-results")) {
+                m_columnarResults = true;
+            }
             else if (arg.equals("--debug")) {
                 m_debug = true;
             }
@@ -1353,6 +1391,7 @@ public class SQLCommand
         // Create connection
         ClientConfig config = new ClientConfig(user, password);
         config.setProcedureCallTimeout(0);  // Set procedure all to infinite timeout, see ENG-2670
+        config.setColumnarResults(m_columnarResults);
 
         try {
             // if specified enable kerberos
@@ -20,6 +20,7 @@ package org.voltdb.utils;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltTable;
 
 /**
@@ -30,4 +31,7 @@ interface SQLCommandOutputFormatter
 {
     public abstract void printTable(PrintStream stream, VoltTable t, boolean includeColumnNames)
             throws IOException;
+
+    public abstract void printTable(PrintStream stream, ColumnarVoltTable t, boolean includeColumnNames)
+            throws IOException;
 }
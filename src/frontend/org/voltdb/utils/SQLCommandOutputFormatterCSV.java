@@ -24,6 +24,7 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 
@@ -81,4 +82,20 @@ class SQLCommandOutputFormatterCSV implements SQLCommandOutputFormatter
         }
         VoltTableUtil.toCSVWriter(csvWriter, t, columnTypes);
     }
+
+    @Override
+    public void printTable(PrintStream stream, ColumnarVoltTable t, boolean includeColumnNames)
+            throws IOException
+    {
+        final int columnCount = t.getColumnCount();
+        CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(stream));
+        if (includeColumnNames) {
+            String[] columnNames = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnNames[i] = t.getColumnName(i);
+            }
+            csvWriter.writeNext(columnNames);
+        }
+        VoltTableUtil.toCSVWriter(csvWriter, t);
+    }
 }
@@ -20,6 +20,7 @@ package org.voltdb.utils;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltTable;
 
 /**
@@ -40,4 +41,16 @@ class SQLCommandOutputFormatterDefault implements SQLCommandOutputFormatter
             stream.print(t.toFormattedString(includeMetaData));
         }
     }
+
+    @Override
+    public void printTable(PrintStream stream, ColumnarVoltTable t, boolean includeMetaData)
+            throws IOException
+    {
+        if (includeMetaData) {
+            stream.println(t.toFormattedString(includeMetaData));
+        }
+        else {
+            stream.print(t.toFormattedString(includeMetaData));
+        }
+    }
 }
\ No newline at end of file
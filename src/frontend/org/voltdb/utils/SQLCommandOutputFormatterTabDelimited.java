@@ -20,6 +20,7 @@ package org.voltdb.utils;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 
@@ -61,4 +62,37 @@ class SQLCommandOutputFormatterTabDelimited implements SQLCommandOutputFormatter
             stream.print("\n");
         }
     }
+
+    @Override
+    public void printTable(PrintStream stream, ColumnarVoltTable t, boolean addMetadata)
+            throws IOException
+    {
+        int columnCount = t.getColumnCount();
+        if (addMetadata) {
+            for (int i = 0; i < columnCount; i++) {
+                if (i > 0) stream.print("\t");
+                stream.print(t.getColumnName(i));
+            }
+            stream.print("\n");
+        }
+        t.resetRowPosition();
+        while(t.advanceRow())
+        {
+            for (int i = 0; i < columnCount; i++)
+            {
+                if (i > 0) stream.print("\t");
+                Object v = t.get(i, t.getColumnType(i));
+                if (t.wasNull())
+                    v = "NULL";
+                else if (t.getColumnType(i) == VoltType.VARBINARY) {
+                    v = Encoder.hexEncode((byte[])v);
+                }
+                else {
+                    v = v.toString();
+                }
+                stream.print(v);
+            }
+            stream.print("\n");
+        }
+    }
 }
\ No newline at end of file
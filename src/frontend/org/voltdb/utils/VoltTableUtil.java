@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.TimeZone;
 
 import org.voltcore.utils.Pair;
+import org.voltdb.ColumnarVoltTable;
 import org.voltdb.VoltDB;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
@@ -142,6 +143,72 @@ public class VoltTableUtil {
         csv.flush();
     }
 
+    /**
+     * Same output as {@link #toCSVWriter(CSVWriter, VoltTable, List)}, converting
+     * the values of a columnar table to text a column at a time.
+     */
+    public static void toCSVWriter(CSVWriter csv, ColumnarVoltTable vt) throws IOException {
+        final SimpleDateFormat sdf = m_sdf.get();
+        final int columnCount = vt.getColumnCount();
+        final int rowCount = vt.getRowCount();
+        final String[][] columns = new String[columnCount][rowCount];
+        for (int ii = 0; ii < columnCount; ii++) {
+            final VoltType type = vt.getColumnType(ii);
+            final String[] column = columns[ii];
+            if (type == VoltType.BIGINT
+                    || type == VoltType.INTEGER
+                    || type == VoltType.SMALLINT
+                    || type == VoltType.TINYINT) {
+                final long[] values = vt.getLongColumn(ii);
+                for (int r = 0; r < rowCount; r++) {
+                    column[r] = vt.isNull(ii, r) ? Constants.CSV_NULL : Long.toString(values[r]);
+                }
+            } else if (type == VoltType.FLOAT) {
+                final double[] values = vt.getDoubleColumn(ii);
+                for (int r = 0; r < rowCount; r++) {
+                    column[r] = vt.isNull(ii, r) ? Constants.CSV_NULL : Double.toString(values[r]);
+                }
+            } else if (type == VoltType.TIMESTAMP) {
+                final long[] values = vt.getLongColumn(ii);
+                for (int r = 0; r < rowCount; r++) {
+                    if (vt.isNull(ii, r)) {
+                        column[r] = Constants.CSV_NULL;
+                    } else {
+                        final TimestampType timestamp = new TimestampType(values[r]);
+                        column[r] = sdf.format(timestamp.asApproximateJavaDate()) +
+                                String.format("%03d", timestamp.getUSec());
+                    }
+                }
+            } else if (type == VoltType.STRING) {
+                final String[] values = vt.getStringColumn(ii);
+                for (int r = 0; r < rowCount; r++) {
+                    column[r] = values[r] == null ? Constants.CSV_NULL : values[r];
+                }
+            } else if (type == VoltType.VARBINARY) {
+                final byte[][] values = vt.getVarbinaryColumn(ii);
+                for (int r = 0; r < rowCount; r++) {
+                    column[r] = values[r] == null ? Constants.CSV_NULL : Encoder.hexEncode(values[r]);
+                }
+            } else {
+                // DECIMAL and the geo types print their toString()
+                final Object[] values = type == VoltType.DECIMAL ? vt.getDecimalColumn(ii)
+                        : type == VoltType.GEOGRAPHY_POINT ? vt.getGeographyPointColumn(ii)
+                        : vt.getGeographyColumn(ii);
+                for (int r = 0; r < rowCount; r++) {
+                    column[r] = values[r] == null ? Constants.CSV_NULL : values[r].toString();
+                }
+            }
+        }
+        final String[] fields = new String[columnCount];
+        for (int r = 0; r < rowCount; r++) {
+            for (int ii = 0; ii < columnCount; ii++) {
+                fields[ii] = columns[ii][r];
+            }
+            csv.writeNext(fields);
+        }
+        csv.flush();
+    }
+
     public static Pair<Integer,byte[]>  toCSV(
             VoltTable vt,
             char delimiter,
@@ -0,0 +1,222 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with VoltDB.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.voltcore.logging.VoltLogger;
+import org.voltdb.CLIConfig;
+import org.voltdb.client.Client;
+import org.voltdb.client.ClientConfig;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ClientStats;
+import org.voltdb.client.ClientStatsContext;
+import org.voltdb.client.ProcedureCallback;
+
+/**
+ * Replays a workload recorded by {@link BinaryWorkloadTrace} against a database.
+ * Invocations are sent asynchronously at the pace they were recorded at, divided
+ * by --speed, or as fast as the client can send them with --speed 0. The replay
+ * doesn't compare results, it reports how many invocations failed and the
+ * latencies the client saw, so runs against different builds can be compared.
+ */
+public class WorkloadReplayer {
+    private static final VoltLogger m_log = new VoltLogger("WORKLOADREPLAYER");
+
+    public static class ReplayConfig extends CLIConfig {
+        @Option(shortOpt = "s", desc = "list of servers to connect to (default: localhost)")
+        String servers = "localhost";
+
+        @Option(desc = "port to use when connecting to database (default: 21212)")
+        int port = Client.VOLTDB_SERVER_PORT;
+
+        @Option(desc = "username when connecting to the servers")
+        String user = "";
+
+        @Option(desc = "password to use when connecting to servers")
+        String password = "";
+
+        @Option(desc = "nonce of the trace files, workload_host<id> for the trace of a host (default: workload_host0)")
+        String nonce = "workload_host0";
+
+        @Option(desc = "speed up factor of the replay, 0 sends as fast as possible (default: 1)")
+        double speed = 1.0;
+
+        @Option(desc = "maximum number of invocations to replay")
+        long limit = Long.MAX_VALUE;
+
+        @AdditionalArgs(desc = "directory of the trace files")
+        String dir = "";
+
+        @Override
+        public void validate() {
+            if (dir.equals("")) {
+                exitWithMessageAndUsage("trace directory required");
+            }
+            if (speed < 0) {
+                exitWithMessageAndUsage("speed must be >= 0");
+            }
+            if (port < 0) {
+                exitWithMessageAndUsage("port number must be >= 0");
+            }
+            if (limit < 0) {
+                exitWithMessageAndUsage("limit must be >= 0");
+            }
+        }
+    }
+
+    private final Client m_client;
+    private final double m_speed;
+    private final AtomicLong m_sent = new AtomicLong();
+    private final AtomicLong m_succeeded = new AtomicLong();
+    private final Map<String, AtomicLong> m_failures = new TreeMap<String, AtomicLong>();
+
+    private class ReplayCallback implements ProcedureCallback {
+        @Override
+        public void clientCallback(ClientResponse response) {
+            if (response.getStatus() == ClientResponse.SUCCESS) {
+                m_succeeded.incrementAndGet();
+            } else {
+                synchronized (m_failures) {
+                    final String status = statusName(response.getStatus());
+                    AtomicLong count = m_failures.get(status);
+                    if (count == null) {
+                        count = new AtomicLong();
+                        m_failures.put(status, count);
+                    }
+                    count.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    WorkloadReplayer(Client client, double speed) {
+        m_client = client;
+        m_speed = speed;
+    }
+
+    /**
+     * Send the records of the trace and wait for their responses.
+     *
+     * @return the number of invocations sent
+     */
+    long replay(BinaryWorkloadTrace.Reader reader, long limit) throws IOException, InterruptedException {
+        final ReplayCallback callback = new ReplayCallback();
+        final long startNanos = System.nanoTime();
+        // the trace may start well after recording began, pace from its first record
+        long firstOffsetNanos = -1;
+        BinaryWorkloadTrace.Record record;
+        while (m_sent.get() < limit && (record = reader.next()) != null) {
+            if (firstOffsetNanos < 0) {
+                firstOffsetNanos = record.offsetNanos;
+            }
+            if (m_speed > 0) {
+                final long due = startNanos + (long) ((record.offsetNanos - firstOffsetNanos) / m_speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            if (!m_client.callProcedure(callback, record.procName, record.getParams().toArray())) {
+                m_log.warn("Unable to queue an invocation of " + record.procName);
+            }
+            m_sent.incrementAndGet();
+        }
+        m_client.drain();
+        return m_sent.get();
+    }
+
+    private static String statusName(byte status) {
+        switch (status) {
+        case ClientResponse.USER_ABORT:
+            return "USER_ABORT";
+        case ClientResponse.GRACEFUL_FAILURE:
+            return "GRACEFUL_FAILURE";
+        case ClientResponse.UNEXPECTED_FAILURE:
+            return "UNEXPECTED_FAILURE";
+        case ClientResponse.CONNECTION_LOST:
+            return "CONNECTION_LOST";
+        case ClientResponse.SERVER_UNAVAILABLE:
+            return "SERVER_UNAVAILABLE";
+        case ClientResponse.CONNECTION_TIMEOUT:
+            return "CONNECTION_TIMEOUT";
+        case ClientResponse.RESPONSE_UNKNOWN:
+            return "RESPONSE_UNKNOWN";
+        case ClientResponse.TXN_RESTART:
+            return "TXN_RESTART";
+        case ClientResponse.OPERATIONAL_FAILURE:
+            return "OPERATIONAL_FAILURE";
+        default:
+            return "STATUS_" + status;
+        }
+    }
+
+    private void report(ClientStats stats, long elapsedMillis) {
+        m_log.info("Replayed " + m_sent.get() + " invocations in " + elapsedMillis / 1000F + " seconds, "
+                + m_succeeded.get() + " succeeded");
+        synchronized (m_failures) {
+            for (Map.Entry<String, AtomicLong> e : m_failures.entrySet()) {
+                m_log.info("Failed with " + e.getKey() + ": " + e.getValue().get());
+            }
+        }
+        m_log.info(String.format("Throughput %d/s, average latency %.2f ms, 95th %.2f ms, 99th %.2f ms, 99.9th %.2f ms",
+                stats.getTxnThroughput(), stats.getAverageLatency(),
+                stats.kPercentileLatencyAsDouble(.95), stats.kPercentileLatencyAsDouble(.99),
+                stats.kPercentileLatencyAsDouble(.999)));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final ReplayConfig config = new ReplayConfig();
+        config.parse(WorkloadReplayer.class.getName(), args);
+
+        BinaryWorkloadTrace.Reader reader = null;
+        try {
+            reader = new BinaryWorkloadTrace.Reader(new File(config.dir), config.nonce);
+        } catch (IOException e) {
+            m_log.error(e.getMessage());
+            System.exit(-1);
+        }
+
+        config.password = CLIConfig.readPasswordIfNeeded(config.user, config.password, "Enter password: ");
+        final ClientConfig c_config = new ClientConfig(config.user, config.password);
+        c_config.setProcedureCallTimeout(0);
+        Client client = null;
+        try {
+            client = CSVLoader.getClient(c_config, config.servers.split(","), config.port);
+        } catch (Exception e) {
+            m_log.error("Error connecting to the servers: " + config.servers);
+            System.exit(-1);
+        }
+
+        try {
+            final ClientStatsContext stats = client.createStatsContext();
+            final long start = System.currentTimeMillis();
+            final WorkloadReplayer replayer = new WorkloadReplayer(client, config.speed);
+            replayer.replay(reader, config.limit);
+            replayer.report(stats.fetch().getStats(), System.currentTimeMillis() - start);
+        } finally {
+            reader.close();
+            client.close();
+        }
+    }
+}
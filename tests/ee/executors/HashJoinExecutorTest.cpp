@@ -0,0 +1,287 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+#include "harness.h"
+
+#include "common/NValue.hpp"
+#include "common/Topend.h"
+#include "common/ValueFactory.hpp"
+#include "common/ValuePeeker.hpp"
+#include "common/tabletuple.h"
+#include "execution/VoltDBEngine.h"
+#include "storage/persistenttable.h"
+#include "storage/tableiterator.h"
+#include "storage/temptable.h"
+
+#include "test_utils/LoadTableFrom.hpp"
+
+#include "boost/scoped_ptr.hpp"
+#include "boost/scoped_array.hpp"
+
+#include <algorithm>
+#include <map>
+#include <sstream>
+#include <string>
+#include <utility>
+#include <vector>
+
+using namespace voltdb;
+
+namespace {
+
+const int32_t NULL_ID = -1;
+const size_t BUFFER_SIZE = 1024 * 1024;
+
+typedef std::pair<int32_t, int32_t> IdPair;
+
+/**
+ * Hands out the plans of the test by fragment id.
+ */
+class HashJoinTestTopend : public DummyTopend {
+public:
+    void addPlan(int64_t fragmentId, const std::string &plan) {
+        m_fragments[fragmentId] = plan;
+    }
+    std::string planForFragmentId(int64_t fragmentId) {
+        std::map<int64_t, std::string>::iterator it = m_fragments.find(fragmentId);
+        return it == m_fragments.end() ? "" : it->second;
+    }
+private:
+    std::map<int64_t, std::string> m_fragments;
+};
+
+// Two replicated tables L and R, both (ID INTEGER NOT NULL, K INTEGER)
+std::string tableCatalog(const std::string &name) {
+    std::string path = "/clusters#cluster/databases#database/tables#" + name;
+    std::string catalog =
+        "add /clusters#cluster/databases#database tables " + name + "\n"
+        "set " + path + " isreplicated true\n"
+        "set $PREV partitioncolumn null\n"
+        "set $PREV estimatedtuplecount 0\n"
+        "set $PREV materializer null\n"
+        "set $PREV signature \"" + name + "|ii\"\n"
+        "set $PREV tuplelimit 2147483647\n"
+        "set $PREV isDRed false\n";
+    const char *columns[] = { "ID", "K" };
+    for (int i = 0; i < 2; i++) {
+        std::string column(columns[i]);
+        catalog +=
+            "add " + path + " columns " + column + "\n"
+            "set " + path + "/columns#" + column + " index " + (i == 0 ? "0" : "1") + "\n"
+            "set $PREV type 5\n"
+            "set $PREV size 4\n"
+            "set $PREV nullable " + (i == 0 ? "false" : "true") + "\n"
+            "set $PREV name \"" + column + "\"\n"
+            "set $PREV defaultvalue null\n"
+            "set $PREV defaulttype 0\n"
+            "set $PREV matview null\n"
+            "set $PREV aggregatetype 0\n"
+            "set $PREV matviewsource null\n"
+            "set $PREV inbytes false\n";
+    }
+    return catalog;
+}
+
+std::string catalogPayload() {
+    return
+        "add / clusters cluster\n"
+        "set /clusters#cluster localepoch 1199145600\n"
+        "add /clusters#cluster databases database\n"
+        "set /clusters#cluster/databases#database schema \"\"\n"
+        "set $PREV isActiveActiveDRed false\n"
+        + tableCatalog("L") + tableCatalog("R");
+}
+
+std::string column(int idx) {
+    std::ostringstream json;
+    json << "{\"TYPE\":32,\"VALUE_TYPE\":5,\"COLUMN_IDX\":" << idx << "}";
+    return json.str();
+}
+
+std::string scan(int id, const std::string &table) {
+    std::ostringstream json;
+    json << "{\"ID\":" << id << ",\"PLAN_NODE_TYPE\":\"SEQSCAN\","
+         << "\"INLINE_NODES\":[{\"ID\":" << id + 1 << ",\"PLAN_NODE_TYPE\":\"PROJECTION\","
+         << "\"OUTPUT_SCHEMA\":[{\"COLUMN_NAME\":\"ID\",\"EXPRESSION\":" << column(0) << "},"
+         << "{\"COLUMN_NAME\":\"K\",\"EXPRESSION\":" << column(1) << "}]}],"
+         << "\"TARGET_TABLE_NAME\":\"" << table << "\",\"TARGET_TABLE_ALIAS\":\"" << table << "\"}";
+    return json.str();
+}
+
+// SELECT * FROM L <joinType> JOIN R ON L.K = R.K, as the planner builds it
+std::string hashJoinPlan(const std::string &joinType) {
+    std::ostringstream json;
+    json << "{\"PLAN_NODES\":["
+         << "{\"ID\":1,\"PLAN_NODE_TYPE\":\"SEND\",\"CHILDREN_IDS\":[2]},"
+         << "{\"ID\":2,\"PLAN_NODE_TYPE\":\"HASHJOIN\",\"CHILDREN_IDS\":[3,5],"
+         << "\"OUTPUT_SCHEMA\":["
+         << "{\"COLUMN_NAME\":\"ID\",\"EXPRESSION\":" << column(0) << "},"
+         << "{\"COLUMN_NAME\":\"K\",\"EXPRESSION\":" << column(1) << "},"
+         << "{\"COLUMN_NAME\":\"ID\",\"EXPRESSION\":" << column(0) << "},"
+         << "{\"COLUMN_NAME\":\"K\",\"EXPRESSION\":" << column(1) << "}],"
+         << "\"JOIN_TYPE\":\"" << joinType << "\","
+         << "\"PRE_JOIN_PREDICATE\":null,\"JOIN_PREDICATE\":null,\"WHERE_PREDICATE\":null,"
+         << "\"OUTER_HASH_EXPRESSIONS\":[" << column(1) << "],"
+         << "\"INNER_HASH_EXPRESSIONS\":[" << column(1) << "]},"
+         << scan(3, "L") << ","
+         << scan(5, "R")
+         << "],\"EXECUTE_LIST\":[3,5,2,1]}";
+    return json.str();
+}
+
+} // namespace
+
+class HashJoinExecutorTest : public Test {
+public:
+    HashJoinExecutorTest()
+        : m_topend(new HashJoinTestTopend())
+        , m_engine(new VoltDBEngine(m_topend.get()))
+        , m_parameterBuffer(new char[BUFFER_SIZE])
+        , m_resultBuffer(new char[BUFFER_SIZE])
+        , m_exceptionBuffer(new char[BUFFER_SIZE])
+        , m_txnId(0)
+    {
+        m_engine->setBuffers(m_parameterBuffer.get(), BUFFER_SIZE,
+                             m_resultBuffer.get(), BUFFER_SIZE,
+                             m_exceptionBuffer.get(), BUFFER_SIZE);
+        m_engine->initialize(1,     // clusterIndex
+                             1,     // siteId
+                             0,     // partitionId
+                             0,     // hostId
+                             "",    // hostname
+                             0,     // drClusterId
+                             1024,  // defaultDrBufferSize
+                             voltdb::DEFAULT_TEMP_TABLE_MEMORY,
+                             false);
+        m_engine->loadCatalog(0, catalogPayload());
+
+        // L.K and R.K both have duplicates, a NULL and a value the other side lacks
+        const int32_t lRows[][2] = { {1, 1}, {2, 2}, {3, NULL_ID}, {4, 4}, {5, 2} };
+        const int32_t rRows[][2] = { {10, 1}, {20, 2}, {30, NULL_ID}, {40, 5}, {50, 2} };
+        beginWork();
+        insertRows("L", lRows, 5);
+        insertRows("R", rRows, 5);
+        m_engine->releaseUndoToken(m_txnId);
+    }
+
+protected:
+    void beginWork() {
+        ++m_txnId;
+        m_engine->setUndoToken(m_txnId);
+        ExecutorContext::getExecutorContext()->setupForPlanFragments(
+            m_engine->getCurrentUndoQuantum(), m_txnId, m_txnId, m_txnId - 1, m_txnId);
+    }
+
+    void insertRows(const char *name, const int32_t rows[][2], int count) {
+        PersistentTable *table = dynamic_cast<PersistentTable*>(m_engine->getTable(name));
+        ASSERT_TRUE(table != NULL);
+        TableTuple tuple = table->tempTuple();
+        for (int i = 0; i < count; i++) {
+            tuple.setNValue(0, ValueFactory::getIntegerValue(rows[i][0]));
+            tuple.setNValue(1, rows[i][1] == NULL_ID ?
+                               NValue::getNullValue(VALUE_TYPE_INTEGER) :
+                               ValueFactory::getIntegerValue(rows[i][1]));
+            table->insertTuple(tuple);
+        }
+    }
+
+    // Runs the plan and returns the (L.ID, R.ID) pairs it produced, sorted
+    std::vector<IdPair> execute(int64_t fragmentId, const std::string &joinType) {
+        m_topend->addPlan(fragmentId, hashJoinPlan(joinType));
+        memset(m_parameterBuffer.get(), 0, BUFFER_SIZE);
+        ReferenceSerializeInputBE params(m_parameterBuffer.get(), BUFFER_SIZE);
+        m_engine->resetReusedResultOutputBuffer();
+
+        ++m_txnId;
+        int rc = m_engine->executePlanFragments(1, &fragmentId, NULL, params,
+                                                m_txnId, m_txnId, m_txnId - 1, m_txnId, m_txnId);
+        EXPECT_EQ(0, rc);
+
+        boost::scoped_ptr<TempTable> result(loadTableFrom(m_resultBuffer.get(),
+                                                          m_engine->getResultsSize()));
+        EXPECT_EQ(4, result->columnCount());
+        std::vector<IdPair> ids;
+        TableTuple tuple(result->schema());
+        TableIterator iterator = result->iterator();
+        while (iterator.next(tuple)) {
+            ids.push_back(IdPair(idOf(tuple.getNValue(0)), idOf(tuple.getNValue(2))));
+        }
+        std::sort(ids.begin(), ids.end());
+        return ids;
+    }
+
+    static int32_t idOf(const NValue &value) {
+        return value.isNull() ? NULL_ID : ValuePeeker::peekAsInteger(value);
+    }
+
+    static std::vector<IdPair> pairs(const int32_t expected[][2], int count) {
+        std::vector<IdPair> ids;
+        for (int i = 0; i < count; i++) {
+            ids.push_back(IdPair(expected[i][0], expected[i][1]));
+        }
+        std::sort(ids.begin(), ids.end());
+        return ids;
+    }
+
+private:
+    boost::scoped_ptr<HashJoinTestTopend> m_topend;
+    boost::scoped_ptr<VoltDBEngine> m_engine;
+    boost::scoped_array<char> m_parameterBuffer;
+    boost::scoped_array<char> m_resultBuffer;
+    boost::scoped_array<char> m_exceptionBuffer;
+    int64_t m_txnId;
+};
+
+TEST_F(HashJoinExecutorTest, InnerJoin) {
+    // NULL keys match nothing, duplicate keys match each other
+    const int32_t expected[][2] = { {1, 10}, {2, 20}, {2, 50}, {5, 20}, {5, 50} };
+    EXPECT_TRUE(pairs(expected, 5) == execute(100, "INNER"));
+}
+
+TEST_F(HashJoinExecutorTest, LeftJoin) {
+    // The outer row with a NULL key and the one without a match are padded with NULLs
+    const int32_t expected[][2] = { {1, 10}, {2, 20}, {2, 50}, {5, 20}, {5, 50},
+                                    {3, NULL_ID}, {4, NULL_ID} };
+    EXPECT_TRUE(pairs(expected, 7) == execute(101, "LEFT"));
+}
+
+TEST_F(HashJoinExecutorTest, FullJoin) {
+    // Unmatched inner rows, including the one with a NULL key, come out once each
+    const int32_t expected[][2] = { {1, 10}, {2, 20}, {2, 50}, {5, 20}, {5, 50},
+                                    {3, NULL_ID}, {4, NULL_ID},
+                                    {NULL_ID, 30}, {NULL_ID, 40} };
+    EXPECT_TRUE(pairs(expected, 9) == execute(102, "FULL"));
+}
+
+TEST_F(HashJoinExecutorTest, RepeatedExecution) {
+    // The hash table and its key pool are released between executions
+    const int32_t expected[][2] = { {1, 10}, {2, 20}, {2, 50}, {5, 20}, {5, 50} };
+    for (int i = 0; i < 3; i++) {
+        EXPECT_TRUE(pairs(expected, 5) == execute(103, "INNER"));
+    }
+}
+
+int main()
+{
+    return TestSuite::globalInstance()->runAll();
+}
@@ -212,6 +212,71 @@ public class TestNIOReadStream extends TestCase {
         assertEquals(-1, stream.fillFrom(channel, 42));
     }*/
 
+    public void testPeekInt() throws IOException {
+        // spans several pooled buffers and ends part way into the write buffer
+        final int SIZE = 4096*10 + 7;
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < SIZE; ++i) {
+            data[i] = (byte) (i * 31);
+        }
+        channel.nextRead = data;
+        assertEquals(SIZE, stream.read(channel, SIZE, pool));
+
+        ByteBuffer expected = ByteBuffer.wrap(data);
+        for (int offset = 0; offset <= SIZE - 4; ++offset) {
+            assertEquals(expected.getInt(offset), stream.peekInt(offset));
+        }
+        assertEquals(SIZE, stream.dataAvailable());
+        try {
+            stream.peekInt(SIZE - 3);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {}
+
+        byte[] all = new byte[SIZE];
+        stream.getBytes(all);
+        assertEquals(expected, ByteBuffer.wrap(all));
+    }
+
+    public void testRetrieveBatchedMessages() throws IOException {
+        VoltProtocolHandler handler = new VoltProtocolHandler() {
+            @Override
+            public int getMaxRead() { return Integer.MAX_VALUE; }
+            @Override
+            public void handleMessage(ByteBuffer message, Connection c) {}
+            @Override
+            public Runnable onBackPressure() { return null; }
+            @Override
+            public Runnable offBackPressure() { return null; }
+            @Override
+            public QueueMonitor writestreamMonitor() { return null; }
+            @Override
+            protected boolean batchMessages() { return true; }
+        };
+
+        // three complete messages followed by the first part of a fourth
+        ByteBuffer wire = ByteBuffer.allocate(4 + 3 + 4 + 5 + 4 + 1 + 4 + 2);
+        wire.putInt(3).put(new byte[] { 1, 2, 3 });
+        wire.putInt(5).put(new byte[] { 4, 5, 6, 7, 8 });
+        wire.putInt(1).put((byte) 9);
+        wire.putInt(4).put(new byte[] { 10, 11 });
+        channel.nextRead = wire.array();
+        assertEquals(wire.capacity(), stream.read(channel, wire.capacity(), pool));
+
+        assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), handler.retrieveNextMessage(stream));
+        // the complete messages were all copied out together
+        assertEquals(6, stream.dataAvailable());
+        assertEquals(ByteBuffer.wrap(new byte[] { 4, 5, 6, 7, 8 }), handler.retrieveNextMessage(stream));
+        assertEquals(ByteBuffer.wrap(new byte[] { 9 }), handler.retrieveNextMessage(stream));
+        assertNull(handler.retrieveNextMessage(stream));
+
+        channel.nextRead = new byte[] { 12, 13 };
+        assertEquals(2, stream.read(channel, 2, pool));
+        assertEquals(ByteBuffer.wrap(new byte[] { 10, 11, 12, 13 }), handler.retrieveNextMessage(stream));
+        assertNull(handler.retrieveNextMessage(stream));
+        assertEquals(4, handler.sequenceId());
+        assertStreamIsEmpty();
+    }
+
     private void assertStreamIsEmpty() throws IOException {
         assertEquals(0, stream.read(channel, Integer.MAX_VALUE, pool));
         assertEquals(0, stream.dataAvailable());
@@ -335,6 +335,11 @@ public class MockVoltDB implements VoltDBInterface
         return null;
     }
 
+    @Override
+    public StatementLatencyStats getStatementLatencyStats() {
+        return null;
+    }
+
     @Override
     public String getVersionString()
     {
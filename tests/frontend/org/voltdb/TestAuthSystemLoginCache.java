@@ -0,0 +1,91 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb;
+
+import junit.framework.TestCase;
+
+import org.mindrot.BCrypt;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Cluster;
+import org.voltdb.catalog.Database;
+import org.voltdb.catalog.User;
+import org.voltdb.client.ClientAuthScheme;
+import org.voltdb.client.ConnectionUtil;
+import org.voltdb.utils.Encoder;
+
+public class TestAuthSystemLoginCache extends TestCase {
+
+    private AuthSystem m_authSystem;
+
+    @Override
+    public void setUp() {
+        Catalog catalog = new Catalog();
+        Cluster cluster = catalog.getClusters().add("cluster");
+        Database db = cluster.getDatabases().add("database");
+        db.setSecurityprovider("hash");
+        addUser(db, "joe", "secret");
+        addUser(db, "jane", "hidden");
+        m_authSystem = new AuthSystem(db, true);
+    }
+
+    private static void addUser(Database db, String name, String password) {
+        final String salt = BCrypt.gensalt(4);
+        User user = db.getUsers().add(name);
+        user.setShadowpassword(BCrypt.hashpw(
+                Encoder.hexEncode(ConnectionUtil.getHashedPassword(ClientAuthScheme.HASH_SHA1, password)), salt));
+        user.setSha256shadowpassword(BCrypt.hashpw(
+                Encoder.hexEncode(ConnectionUtil.getHashedPassword(ClientAuthScheme.HASH_SHA256, password)), salt));
+    }
+
+    private boolean login(String user, String password, ClientAuthScheme scheme) {
+        return m_authSystem.new HashAuthenticationRequest(user, ConnectionUtil.getHashedPassword(scheme, password))
+                .authenticate(scheme);
+    }
+
+    public void testRepeatedLoginIsRemembered() {
+        assertEquals(0, m_authSystem.getVerifiedLoginCount());
+        assertTrue(login("joe", "secret", ClientAuthScheme.HASH_SHA256));
+        assertEquals(1, m_authSystem.getVerifiedLoginCount());
+        assertTrue(login("joe", "secret", ClientAuthScheme.HASH_SHA256));
+        assertEquals(1, m_authSystem.getVerifiedLoginCount());
+
+        // each hash scheme is remembered on its own
+        assertTrue(login("joe", "secret", ClientAuthScheme.HASH_SHA1));
+        assertEquals(2, m_authSystem.getVerifiedLoginCount());
+    }
+
+    public void testWrongPasswordIsNotLetIn() {
+        assertFalse(login("joe", "guess", ClientAuthScheme.HASH_SHA256));
+        assertEquals(0, m_authSystem.getVerifiedLoginCount());
+
+        assertTrue(login("joe", "secret", ClientAuthScheme.HASH_SHA256));
+        // a remembered login doesn't match another password or user
+        assertFalse(login("joe", "guess", ClientAuthScheme.HASH_SHA256));
+        assertFalse(login("jane", "secret", ClientAuthScheme.HASH_SHA256));
+        assertFalse(login("nobody", "secret", ClientAuthScheme.HASH_SHA256));
+        assertTrue(login("jane", "hidden", ClientAuthScheme.HASH_SHA256));
+        assertEquals(2, m_authSystem.getVerifiedLoginCount());
+    }
+}
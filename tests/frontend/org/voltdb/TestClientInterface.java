@@ -28,6 +28,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
@@ -43,9 +44,14 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -55,6 +61,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -72,14 +79,17 @@ import org.voltcore.messaging.HostMessenger;
 import org.voltcore.messaging.LocalObjectMessage;
 import org.voltcore.messaging.VoltMessage;
 import org.voltcore.network.Connection;
+import org.voltcore.network.ReverseDNSPolicy;
 import org.voltcore.network.VoltNetworkPool;
 import org.voltcore.utils.CoreUtils;
 import org.voltcore.utils.DeferredSerialization;
+import org.voltcore.utils.InstanceId;
 import org.voltcore.utils.Pair;
 import org.voltdb.ClientInterface.ClientInputHandler;
 import org.voltdb.VoltDB.Configuration;
 import org.voltdb.VoltTable.ColumnInfo;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.client.ClientAuthScheme;
 import org.voltdb.client.ClientResponse;
 import org.voltdb.client.ProcedureInvocationType;
 import org.voltdb.common.Constants;
@@ -96,6 +106,8 @@ import org.voltdb.utils.CatalogUtil;
 import org.voltdb.utils.Encoder;
 import org.voltdb.utils.MiscUtils;
 
+import com.google_voltpatches.common.base.Charsets;
+
 public class TestClientInterface {
     // mocked objects that CI requires
     private VoltDBInterface m_volt;
@@ -891,4 +903,163 @@ public class TestClientInterface {
         buf.flip();
         return buf;
     }
+
+    /**
+     * Runs login handshakes against a real network, registering connections the
+     * way the acceptor does before they authenticate.
+     */
+    private class LoginServer {
+        private final VoltNetworkPool m_network = new VoltNetworkPool(1, 0, null, "Test");
+        private final ServerSocketChannel m_server = ServerSocketChannel.open();
+
+        LoginServer() throws Exception {
+            doAnswer(new Answer<ScheduledFuture<?>>() {
+                @Override
+                public ScheduledFuture<?> answer(InvocationOnMock invocation) {
+                    Object args[] = invocation.getArguments();
+                    return ses.schedule((Runnable) args[0], (long) args[1], (TimeUnit) args[3]);
+                }
+            }).when(m_volt).schedulePriorityWork(any(Runnable.class), anyLong(), anyLong(), (TimeUnit)anyObject());
+            doReturn("test build").when(m_volt).getBuildString();
+            doReturn(new InstanceId(0, 0)).when(m_messenger).getInstanceId();
+            m_server.bind(new InetSocketAddress("localhost", 0));
+            m_network.start();
+        }
+
+        SocketChannel connect() throws Exception {
+            SocketChannel client = SocketChannel.open(m_server.getLocalAddress());
+            client.socket().setSoTimeout(10000);
+            m_network.registerChannel(m_server.accept(), m_ci.new ClientInputHandler(false), 0, ReverseDNSPolicy.NONE);
+            return client;
+        }
+
+        void shutdown() throws Exception {
+            m_server.close();
+            m_network.shutdown();
+        }
+    }
+
+    private static ByteBuffer loginMessage(int hashScheme, String username, int digestLength) {
+        byte service[] = "database".getBytes(Charsets.UTF_8);
+        byte name[] = username.getBytes(Charsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(4 + 2 + 4 + service.length + 4 + name.length + digestLength);
+        buf.putInt(buf.capacity() - 4);
+        buf.put((byte) 1); // version
+        buf.put((byte) hashScheme);
+        buf.putInt(service.length);
+        buf.put(service);
+        buf.putInt(name.length);
+        buf.put(name);
+        buf.put(new byte[digestLength]);
+        buf.flip();
+        return buf;
+    }
+
+    private static ByteBuffer loginMessage() {
+        return loginMessage(ClientAuthScheme.HASH_SHA256.getValue(), "user",
+                            ClientAuthScheme.getDigestLength(ClientAuthScheme.HASH_SHA256));
+    }
+
+    /**
+     * @return the result code of the login response
+     */
+    private static byte readLoginResult(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(client.socket().getInputStream());
+        byte response[] = new byte[in.readInt()];
+        in.readFully(response);
+        assertEquals(0, response[0]); // version
+        return response[1];
+    }
+
+    private static void assertClosed(SocketChannel client) throws IOException {
+        try {
+            new DataInputStream(client.socket().getInputStream()).readByte();
+            fail("Connection is still open after a rejected login");
+        } catch (EOFException expected) {
+        }
+    }
+
+    private static void assertRejected(byte reason, SocketChannel client) throws IOException {
+        assertEquals(reason, readLoginResult(client));
+        assertClosed(client);
+    }
+
+    @Test
+    public void testLoginReadInPieces() throws Exception {
+        LoginServer server = new LoginServer();
+        try {
+            SocketChannel client = server.connect();
+            ByteBuffer login = loginMessage();
+            // the length prefix and the message both arrive over several reads
+            while (login.hasRemaining()) {
+                ByteBuffer piece = login.slice();
+                piece.limit(Math.min(3, piece.remaining()));
+                login.position(login.position() + client.write(piece));
+                Thread.sleep(2);
+            }
+            assertEquals(0, readLoginResult(client));
+            client.close();
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoginWithInvalidHashScheme() throws Exception {
+        LoginServer server = new LoginServer();
+        try {
+            SocketChannel client = server.connect();
+            client.write(loginMessage(ClientAuthScheme.values().length, "user", 32));
+            assertRejected(ClientInterface.WIRE_PROTOCOL_FORMAT_ERROR, client);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoginLengthOutOfRange() throws Exception {
+        LoginServer server = new LoginServer();
+        try {
+            for (int length : new int[] { 1024 * 1024 * 2 + 1, 0, -1 }) {
+                SocketChannel client = server.connect();
+                ByteBuffer prefix = ByteBuffer.allocate(4);
+                prefix.putInt(length).flip();
+                client.write(prefix);
+                assertRejected(ClientInterface.WIRE_PROTOCOL_FORMAT_ERROR, client);
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoginAuthenticationFailure() throws Exception {
+        LoginServer server = new LoginServer();
+        try {
+            SocketChannel client = server.connect();
+            // a SHA-1 sized password hash for a SHA-256 login
+            client.write(loginMessage(ClientAuthScheme.HASH_SHA256.getValue(), "user",
+                                      ClientAuthScheme.getDigestLength(ClientAuthScheme.HASH_SHA1)));
+            assertRejected(ClientInterface.AUTHENTICATION_FAILURE, client);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoginTimeout() throws Exception {
+        final long timeout = ClientInterface.AUTH_TIMEOUT_MS;
+        ClientInterface.AUTH_TIMEOUT_MS = 100;
+        LoginServer server = new LoginServer();
+        try {
+            SocketChannel client = server.connect();
+            ByteBuffer login = loginMessage();
+            login.limit(2);
+            client.write(login);
+            assertRejected(ClientInterface.WIRE_PROTOCOL_TIMEOUT_ERROR, client);
+        } finally {
+            ClientInterface.AUTH_TIMEOUT_MS = timeout;
+            server.shutdown();
+        }
+    }
 }
@@ -0,0 +1,226 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureInvocationType;
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.GeographyValue;
+import org.voltdb.types.TimestampType;
+
+public class TestColumnarVoltTable extends TestCase {
+
+    private static VoltTable allTypes(int rows) {
+        VoltTable table = new VoltTable(
+                new ColumnInfo("TINY", VoltType.TINYINT),
+                new ColumnInfo("SMALL", VoltType.SMALLINT),
+                new ColumnInfo("INT", VoltType.INTEGER),
+                new ColumnInfo("ID", VoltType.BIGINT),
+                new ColumnInfo("RANDOM", VoltType.BIGINT),
+                new ColumnInfo("TS", VoltType.TIMESTAMP),
+                new ColumnInfo("F", VoltType.FLOAT),
+                new ColumnInfo("DEC", VoltType.DECIMAL),
+                new ColumnInfo("STATE", VoltType.STRING),
+                new ColumnInfo("NAME", VoltType.STRING),
+                new ColumnInfo("BIN", VoltType.VARBINARY),
+                new ColumnInfo("PT", VoltType.GEOGRAPHY_POINT),
+                new ColumnInfo("POLY", VoltType.GEOGRAPHY));
+        table.setStatusCode((byte) 7);
+        Random rand = new Random(42);
+        String states[] = { "MA", "NH", "ÉTÉ" };
+        GeographyValue poly = new GeographyValue("POLYGON((0 0, 1 0, 1 1, 0 1, 0 0))");
+        for (int i = 0; i < rows; i++) {
+            boolean nulls = i % 10 == 3;
+            table.addRow(
+                    nulls ? null : (byte) i,
+                    nulls ? null : (short) (i * 3),
+                    nulls ? null : i * 1000,
+                    nulls ? null : 1000000000000L + i,
+                    nulls ? null : rand.nextLong(),
+                    nulls ? null : new TimestampType(1400000000000000L + i * 1000L),
+                    nulls ? null : rand.nextDouble(),
+                    nulls ? null : new BigDecimal(i).movePointLeft(3),
+                    nulls ? null : states[i % states.length],
+                    nulls ? null : "name " + rand.nextInt(),
+                    nulls ? null : new byte[] { (byte) i, 1, 2, 3 },
+                    nulls ? null : new GeographyPointValue(i % 90, -i % 90),
+                    nulls ? null : poly);
+        }
+        return table;
+    }
+
+    private static ColumnarVoltTable roundTrip(VoltTable table) {
+        ByteBuffer buf = ColumnarVoltTable.encode(table);
+        assertEquals(buf.remaining() - 4, buf.getInt());
+        ColumnarVoltTable columnar = ColumnarVoltTable.fromBuffer(buf);
+        assertFalse(buf.hasRemaining());
+        return columnar;
+    }
+
+    public void testRoundTrip() {
+        for (int rows : new int[] { 0, 1, 100 }) {
+            VoltTable table = allTypes(rows);
+            ColumnarVoltTable columnar = roundTrip(table);
+            assertEquals(rows, columnar.getRowCount());
+            assertEquals(table.getColumnCount(), columnar.getColumnCount());
+            assertEquals(7, columnar.getStatusCode());
+            VoltTable converted = columnar.toVoltTable();
+            assertEquals(7, converted.getStatusCode());
+            assertTrue(table.hasSameContents(converted));
+        }
+    }
+
+    public void testEncodings() {
+        VoltTable table = allTypes(100);
+        ColumnarVoltTable columnar = roundTrip(table);
+        assertEquals(ColumnarVoltTable.DELTA, columnar.getColumnEncoding(columnar.getColumnIndex("id")));
+        assertEquals(ColumnarVoltTable.DELTA, columnar.getColumnEncoding(columnar.getColumnIndex("TS")));
+        assertEquals(ColumnarVoltTable.PLAIN, columnar.getColumnEncoding(columnar.getColumnIndex("RANDOM")));
+        assertEquals(ColumnarVoltTable.DICTIONARY, columnar.getColumnEncoding(columnar.getColumnIndex("STATE")));
+        assertEquals(ColumnarVoltTable.PLAIN, columnar.getColumnEncoding(columnar.getColumnIndex("NAME")));
+
+        // the encodings make the table smaller than the row format
+        assertTrue(ColumnarVoltTable.encode(table).remaining() < table.getSerializedSize());
+    }
+
+    public void testBulkAccessors() {
+        VoltTable table = allTypes(100);
+        ColumnarVoltTable columnar = roundTrip(table);
+        long ids[] = columnar.getLongColumn(3);
+        double floats[] = columnar.getDoubleColumn(6);
+        String states[] = columnar.getStringColumn(8);
+        BigDecimal decimals[] = columnar.getDecimalColumn(7);
+        table.resetRowPosition();
+        for (int i = 0; table.advanceRow(); i++) {
+            assertEquals(table.getLong(3), ids[i]);
+            assertEquals(table.wasNull(), columnar.isNull(3, i));
+            assertEquals(table.getDouble(6), floats[i]);
+            assertEquals(table.wasNull(), columnar.isNull(6, i));
+            assertEquals(table.getString(8), states[i]);
+            assertEquals(table.getDecimalAsBigDecimal(7), decimals[i]);
+        }
+
+        try {
+            columnar.getLongColumn(6);
+            fail();
+        } catch (IllegalArgumentException expected) {}
+
+        ColumnarVoltTable head = columnar.head(5);
+        assertEquals(5, head.getRowCount());
+        assertEquals(ids[4], head.getLongColumn(3)[4]);
+    }
+
+    public void testCursorMatchesVoltTable() {
+        VoltTable table = allTypes(30);
+        ColumnarVoltTable columnar = roundTrip(table);
+        table.resetRowPosition();
+        columnar.resetRowPosition();
+        while (table.advanceRow()) {
+            assertTrue(columnar.advanceRow());
+            assertEquals(table.getActiveRowIndex(), columnar.getActiveRowIndex());
+            for (int i = 0; i < table.getColumnCount(); i++) {
+                VoltType type = table.getColumnType(i);
+                Object expected = table.get(i, type);
+                boolean wasNull = table.wasNull();
+                Object actual = columnar.get(i, type);
+                assertEquals(wasNull, columnar.wasNull());
+                if (type == VoltType.VARBINARY && !wasNull) {
+                    assertTrue(Arrays.equals((byte[]) expected, (byte[]) actual));
+                } else if (!wasNull) {
+                    assertEquals(expected, actual);
+                }
+            }
+            assertEquals(table.getTimestampAsSqlTimestamp(5), columnar.getTimestampAsSqlTimestamp(5));
+        }
+        assertFalse(columnar.advanceRow());
+    }
+
+    public void testFormattedOutputMatchesVoltTable() {
+        VoltTable table = allTypes(25);
+        ColumnarVoltTable columnar = roundTrip(table);
+        assertEquals(table.toFormattedString(true), columnar.toFormattedString(true));
+        assertEquals(table.toFormattedString(false), columnar.toFormattedString(false));
+    }
+
+    public void testClientResponse() throws Exception {
+        VoltTable small = new VoltTable(new ColumnInfo("modified_tuples", VoltType.BIGINT));
+        small.addRow(1);
+        for (VoltTable table : new VoltTable[] { allTypes(200), small }) {
+            ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS,
+                    new VoltTable[] { table }, "ok", 12);
+            response.encodeColumnarResults();
+            // sizing and serializing don't change the encoding
+            final int size = response.getSerializedSize();
+            assertEquals(size, response.getSerializedSize());
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            response.flattenToBuffer(buf);
+            assertFalse(buf.hasRemaining());
+            buf.flip();
+            ByteBuffer again = ByteBuffer.allocate(response.getSerializedSize());
+            response.flattenToBuffer(again);
+            again.flip();
+            assertEquals(buf, again);
+
+            ClientResponseImpl received = new ClientResponseImpl();
+            received.initFromBuffer(buf);
+            assertEquals(12, received.getClientHandle());
+            assertEquals("ok", received.getStatusString());
+            // small results stay in the row format
+            assertEquals(table != small, received.hasColumnarResults());
+            assertEquals(table.getRowCount(), received.getColumnarResults()[0].getRowCount());
+            assertTrue(table.hasSameContents(received.getResults()[0]));
+        }
+    }
+
+    public void testInvocationFlags() throws Exception {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("Foo");
+        invocation.setParams(1, "two");
+        assertEquals(ProcedureInvocationType.ORIGINAL, invocation.getType());
+        invocation.setColumnarResults(true);
+        assertEquals(ProcedureInvocationType.VERSION2, invocation.getType());
+        invocation.setBatchTimeout(500);
+
+        ByteBuffer buf = ByteBuffer.allocate(invocation.getSerializedSize());
+        invocation.flattenToBuffer(buf);
+        assertFalse(buf.hasRemaining());
+        buf.flip();
+        StoredProcedureInvocation received = new StoredProcedureInvocation();
+        received.initFromBuffer(buf);
+        assertTrue(received.getColumnarResults());
+        assertEquals(500, received.getBatchTimeout());
+        assertEquals("Foo", received.getProcName());
+        assertEquals("two", received.getParams().toArray()[1]);
+        assertTrue(received.getShallowCopy().getColumnarResults());
+    }
+}
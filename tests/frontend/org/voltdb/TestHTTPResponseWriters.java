@@ -0,0 +1,172 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.types.GeographyPointValue;
+import org.voltdb.types.TimestampType;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+public class TestHTTPResponseWriters extends TestCase {
+
+    private static ClientResponseImpl makeResponse(int rows) {
+        VoltTable table = new VoltTable(
+                new ColumnInfo("ID", VoltType.BIGINT),
+                new ColumnInfo("SMALL", VoltType.TINYINT),
+                new ColumnInfo("NAME", VoltType.STRING),
+                new ColumnInfo("PRICE", VoltType.FLOAT),
+                new ColumnInfo("AMOUNT", VoltType.DECIMAL),
+                new ColumnInfo("WHEN", VoltType.TIMESTAMP),
+                new ColumnInfo("BLOB", VoltType.VARBINARY),
+                new ColumnInfo("PLACE", VoltType.GEOGRAPHY_POINT));
+        for (int i = 0; i < rows; i++) {
+            if (i % 10 == 9) {
+                table.addRow(null, null, null, null, null, null, null, null);
+            } else {
+                table.addRow(i - 5000000000L, i % 100 - 50, "name \u00e9 \"" + i + "\"", i / 4.0,
+                        new BigDecimal(i).movePointLeft(3), new TimestampType(i * 1000L),
+                        new byte[] { (byte) i, 0, (byte) 0xff }, new GeographyPointValue(i % 90, -45));
+            }
+        }
+        VoltTable second = new VoltTable(new ColumnInfo("C", VoltType.INTEGER));
+        second.addRow(7);
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, (byte) 3, "app status",
+                new VoltTable[] { table, second }, null);
+        return response;
+    }
+
+    private static class BufferOutputStream extends ServletOutputStream {
+        final ByteArrayOutputStream m_bytes = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) throws IOException {
+            m_bytes.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {}
+    }
+
+    private static String streamJSON(ClientResponseImpl response, String jsonp) throws Exception {
+        StringWriter text = new StringWriter();
+        HttpServletResponse rsp = mock(HttpServletResponse.class);
+        doReturn(new PrintWriter(text)).when(rsp).getWriter();
+        HTTPClientInterface.writeResponse(response, jsonp, false, rsp);
+        return text.toString();
+    }
+
+    public void testStreamedJSONMatchesString() throws Exception {
+        ClientResponseImpl response = makeResponse(1000);
+        String expected = response.toJSONString();
+        assertEquals(expected, streamJSON(response, null));
+        assertEquals(HTTPClientInterface.asJsonp("callback", expected), streamJSON(response, "callback"));
+        // streaming leaves the tables where they were
+        assertEquals(expected, response.toJSONString());
+    }
+
+    public void testJSONFormat() throws Exception {
+        VoltTable table = new VoltTable(new ColumnInfo("A", VoltType.INTEGER), new ColumnInfo("B", VoltType.STRING));
+        table.addRow(1, "x");
+        table.addRow(null, null);
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table }, null);
+        assertEquals("{\"status\":1,\"appstatus\":-128,\"statusstring\":null,\"appstatusstring\":null,\"results\":"
+                + "[{\"status\":-128,\"schema\":[{\"name\":\"A\",\"type\":5},{\"name\":\"B\",\"type\":9}],"
+                + "\"data\":[[1,\"x\"],[null,null]]}]}",
+                streamJSON(response, null));
+    }
+
+    public void testCBOR() throws Exception {
+        ClientResponseImpl response = makeResponse(5000);
+        BufferOutputStream out = new BufferOutputStream();
+        HttpServletResponse rsp = mock(HttpServletResponse.class);
+        doReturn(out).when(rsp).getOutputStream();
+        HTTPClientInterface.writeResponse(response, "ignored", true, rsp);
+        verify(rsp).setContentType(CBORResponseWriter.CONTENT_TYPE);
+
+        JsonNode root = new ObjectMapper(new CBORFactory()).readTree(out.m_bytes.toByteArray());
+        assertEquals(ClientResponse.SUCCESS, root.get("status").asInt());
+        assertEquals(3, root.get("appstatus").asInt());
+        assertTrue(root.get("statusstring").isNull());
+        assertEquals("app status", root.get("appstatusstring").asText());
+        assertEquals(2, root.get("results").size());
+
+        JsonNode table = root.get("results").get(0);
+        VoltTable expected = response.getResults()[0];
+        assertEquals(expected.getStatusCode(), table.get("status").asInt());
+        assertEquals(expected.getColumnCount(), table.get("schema").size());
+        for (int i = 0; i < expected.getColumnCount(); i++) {
+            assertEquals(expected.getColumnName(i), table.get("schema").get(i).get("name").asText());
+            assertEquals(expected.getColumnType(i).getValue(), table.get("schema").get(i).get("type").asInt());
+        }
+        JsonNode data = table.get("data");
+        assertEquals(expected.getRowCount(), data.size());
+        expected.resetRowPosition();
+        for (int r = 0; expected.advanceRow(); r++) {
+            JsonNode row = data.get(r);
+            assertEquals(expected.getColumnCount(), row.size());
+            if (r % 10 == 9) {
+                for (int i = 0; i < row.size(); i++) {
+                    assertTrue(row.get(i).isNull());
+                }
+                continue;
+            }
+            assertEquals(expected.getLong(0), row.get(0).asLong());
+            assertEquals(expected.getLong(1), row.get(1).asLong());
+            assertEquals(expected.getString(2), row.get(2).asText());
+            assertEquals(expected.getDouble(3), row.get(3).asDouble());
+            assertEquals(expected.getDecimalAsBigDecimal(4).toString(), row.get(4).asText());
+            assertEquals(expected.getTimestampAsLong(5), row.get(5).asLong());
+            assertTrue(row.get(6).isBinary());
+            assertTrue(java.util.Arrays.equals(expected.getVarbinary(6), row.get(6).binaryValue()));
+            assertEquals(expected.getGeographyPointValue(7).toString(), row.get(7).asText());
+        }
+        assertEquals(7, root.get("results").get(1).get("data").get(0).get(0).asInt());
+    }
+}
@@ -0,0 +1,69 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestPlannerStatsCollector extends TestCase {
+
+    private static VoltTable collect(PlannerStatsCollector stats, boolean interval) {
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : stats.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        table.advanceRow();
+        return table;
+    }
+
+    private static void plan(PlannerStatsCollector stats, Object cache, long evictions, long notAdmitted) {
+        stats.startStatsCollection();
+        stats.endStatsCollection(0, 0, PlannerStatsCollector.CacheUse.MISS, -1);
+        stats.updateCacheEvictions(cache, evictions, notAdmitted);
+    }
+
+    public void testEvictionsAcrossCatalogUpdates() {
+        PlannerStatsCollector stats = new PlannerStatsCollector(0);
+        Object oldCache = new Object();
+        plan(stats, oldCache, 5, 2);
+        plan(stats, oldCache, 8, 3);
+        VoltTable table = collect(stats, true);
+        assertEquals(8, table.getLong("CACHE_EVICTIONS"));
+        assertEquals(3, table.getLong("CACHE_NOT_ADMITTED"));
+
+        // a catalog update starts a new cache with its counts at zero
+        Object newCache = new Object();
+        plan(stats, newCache, 1, 0);
+        // a statement planned against the old catalog can still finish
+        plan(stats, oldCache, 9, 3);
+        table = collect(stats, true);
+        assertEquals(2, table.getLong("CACHE_EVICTIONS"));
+        assertEquals(0, table.getLong("CACHE_NOT_ADMITTED"));
+
+        table = collect(stats, false);
+        assertEquals(10, table.getLong("CACHE_EVICTIONS"));
+        assertEquals(3, table.getLong("CACHE_NOT_ADMITTED"));
+    }
+}
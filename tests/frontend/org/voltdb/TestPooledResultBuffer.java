@@ -0,0 +1,124 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.nio.ByteBuffer;
+
+import org.voltcore.utils.DBBPool;
+import org.voltdb.client.ClientResponse;
+
+import junit.framework.TestCase;
+
+public class TestPooledResultBuffer extends TestCase {
+
+    private static VoltTable makeTable(long value) {
+        VoltTable t = new VoltTable(new VoltTable.ColumnInfo("C", VoltType.BIGINT));
+        t.addRow(value);
+        return t;
+    }
+
+    /**
+     * Serialize the tables back to back into a pooled buffer and create
+     * tables over it the way the EE result path does.
+     */
+    private static VoltTable[] makePooledTables(VoltTable... sources) {
+        int size = 0;
+        for (VoltTable source : sources) {
+            size += source.getSerializedSize();
+        }
+        PooledResultBuffer pooled = new PooledResultBuffer(DBBPool.allocateDirectAndPool(size));
+        ByteBuffer buf = pooled.b();
+        VoltTable[] tables = new VoltTable[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i].flattenToBuffer(buf);
+        }
+        buf.flip();
+        for (int i = 0; i < sources.length; i++) {
+            int tableSize = buf.getInt();
+            ByteBuffer tableBacking = buf.slice();
+            tableBacking.limit(tableSize);
+            buf.position(buf.position() + tableSize);
+            tables[i] = PrivateVoltTableFactory.createVoltTableFromPooledBuffer(tableBacking, pooled);
+        }
+        // drop the creator's reference, the tables keep the buffer alive
+        pooled.release();
+        return tables;
+    }
+
+    public void testReleasedWithLastTable() {
+        PooledResultBuffer.reclaimAbandoned();
+        final int before = PooledResultBuffer.getOutstandingCount();
+
+        VoltTable[] tables = makePooledTables(makeTable(1), makeTable(2));
+        assertEquals(before + 1, PooledResultBuffer.getOutstandingCount());
+        assertTrue(PrivateVoltTableFactory.isBackedByPooledBuffer(tables[0]));
+        assertEquals(1, tables[0].asScalarLong());
+        assertEquals(2, tables[1].asScalarLong());
+
+        PrivateVoltTableFactory.releasePooledBuffer(tables[0]);
+        assertFalse(PrivateVoltTableFactory.isBackedByPooledBuffer(tables[0]));
+        // releasing the same table again must not drop the other table's reference
+        PrivateVoltTableFactory.releasePooledBuffer(tables[0]);
+        assertEquals(before + 1, PooledResultBuffer.getOutstandingCount());
+        assertEquals(2, tables[1].asScalarLong());
+
+        PrivateVoltTableFactory.releasePooledBuffer(tables[1]);
+        assertEquals(before, PooledResultBuffer.getOutstandingCount());
+    }
+
+    public void testResponseReleasesOnlyOwnedResults() {
+        PooledResultBuffer.reclaimAbandoned();
+        final int before = PooledResultBuffer.getOutstandingCount();
+
+        VoltTable[] tables = makePooledTables(makeTable(3));
+        ClientResponseImpl response = new ClientResponseImpl(ClientResponse.SUCCESS, tables, null);
+        response.releasePooledResults();
+        assertEquals(before + 1, PooledResultBuffer.getOutstandingCount());
+
+        response.setOwnsPooledResults(true);
+        ByteBuffer serialized = ByteBuffer.allocate(response.getSerializedSize());
+        response.flattenToBuffer(serialized);
+        response.releasePooledResults();
+        assertEquals(before, PooledResultBuffer.getOutstandingCount());
+        // a second release is harmless
+        response.releasePooledResults();
+        assertEquals(before, PooledResultBuffer.getOutstandingCount());
+    }
+
+    public void testAbandonedTablesAreReclaimed() throws Exception {
+        PooledResultBuffer.reclaimAbandoned();
+        final int before = PooledResultBuffer.getOutstandingCount();
+
+        VoltTable[] tables = makePooledTables(makeTable(4));
+        assertEquals(before + 1, PooledResultBuffer.getOutstandingCount());
+        tables = null;
+
+        for (int i = 0; i < 100 && PooledResultBuffer.getOutstandingCount() > before; i++) {
+            System.gc();
+            Thread.sleep(10);
+            PooledResultBuffer.reclaimAbandoned();
+        }
+        assertEquals(before, PooledResultBuffer.getOutstandingCount());
+    }
+}
@@ -0,0 +1,149 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class TestSnapshotWriterPool extends TestCase {
+
+    private static class Write implements SnapshotWriterPool.PendingWrite {
+        final ByteBuffer m_buf;
+        final CountDownLatch m_done;
+        final AtomicReference<Throwable> m_failure;
+        final AtomicInteger m_written;
+        final boolean m_fail;
+
+        Write(int value, CountDownLatch done, AtomicReference<Throwable> failure,
+              AtomicInteger written, boolean fail) {
+            m_buf = ByteBuffer.allocate(4);
+            m_buf.putInt(value).flip();
+            m_done = done;
+            m_failure = failure;
+            m_written = written;
+            m_fail = fail;
+        }
+
+        @Override
+        public ByteBuffer prepare() throws Exception {
+            if (m_fail) {
+                throw new IOException("Disk full");
+            }
+            return m_buf;
+        }
+
+        @Override
+        public void complete(int written, Throwable failure) {
+            if (failure != null) {
+                m_failure.compareAndSet(null, failure);
+            }
+            m_written.addAndGet(written);
+            m_done.countDown();
+        }
+    }
+
+    public void testTargetsKeepTheirOrder() throws Exception {
+        final int targets = 4;
+        final int writes = 10000;
+        File files[] = new File[targets];
+        FileOutputStream streams[] = new FileOutputStream[targets];
+        SnapshotWriterPool.TargetQueue queues[] = new SnapshotWriterPool.TargetQueue[targets];
+        for (int i = 0; i < targets; i++) {
+            files[i] = File.createTempFile("TestSnapshotWriterPool", ".vpt");
+            files[i].deleteOnExit();
+            streams[i] = new FileOutputStream(files[i]);
+            queues[i] = SnapshotWriterPool.createQueue(files[i], streams[i].getChannel());
+        }
+
+        CountDownLatch done = new CountDownLatch(targets * writes);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        AtomicInteger written = new AtomicInteger(0);
+        for (int ii = 0; ii < writes; ii++) {
+            for (int i = 0; i < targets; i++) {
+                queues[i].offer(new Write(ii, done, failure, written, false));
+            }
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertEquals(targets * writes * 4, written.get());
+
+        for (int i = 0; i < targets; i++) {
+            streams[i].close();
+            assertEquals(writes * 4, files[i].length());
+            FileChannel channel = new RandomAccessFile(files[i], "r").getChannel();
+            try {
+                ByteBuffer contents = ByteBuffer.allocate(writes * 4);
+                while (contents.hasRemaining() && channel.read(contents) > 0) {}
+                contents.flip();
+                for (int ii = 0; ii < writes; ii++) {
+                    assertEquals(ii, contents.getInt());
+                }
+            } finally {
+                channel.close();
+            }
+            files[i].delete();
+        }
+
+        boolean found = false;
+        for (SnapshotWriterPool.DiskWriter writer : SnapshotWriterPool.getWriters()) {
+            if (writer == queues[0].getWriter()) {
+                found = true;
+                assertTrue(writer.getBytesWritten() >= targets * writes * 4);
+                // writes were aggregated
+                assertTrue(writer.getWriteCount() < targets * writes);
+            }
+        }
+        assertTrue(found);
+    }
+
+    public void testFailureIsReported() throws Exception {
+        File file = File.createTempFile("TestSnapshotWriterPool", ".vpt");
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            SnapshotWriterPool.TargetQueue queue = SnapshotWriterPool.createQueue(file, stream.getChannel());
+            CountDownLatch done = new CountDownLatch(3);
+            AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            AtomicInteger written = new AtomicInteger(0);
+            queue.offer(new Write(1, done, failure, written, false));
+            queue.offer(new Write(2, done, failure, written, true));
+            queue.offer(new Write(3, done, failure, written, false));
+            assertTrue(done.await(60, TimeUnit.SECONDS));
+            assertTrue(failure.get() instanceof IOException);
+        } finally {
+            stream.close();
+            file.delete();
+        }
+    }
+}
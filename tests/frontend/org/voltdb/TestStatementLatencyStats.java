@@ -0,0 +1,159 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltTable.ColumnInfo;
+
+public class TestStatementLatencyStats extends TestCase {
+
+    private static VoltTable collect(StatementLatencyStats stats, boolean interval) {
+        VoltTable table = new VoltTable(stats.getColumnSchema().toArray(new ColumnInfo[0]));
+        for (Object[] row : stats.getStatsRows(interval, System.currentTimeMillis())) {
+            table.addRow(row);
+        }
+        return table;
+    }
+
+    private static long[] phases(long parameters, long execution, long results) {
+        long phaseTimes[] = new long[StatementLatencyStats.PHASES];
+        phaseTimes[StatementLatencyStats.PARAMETERS] = parameters;
+        phaseTimes[StatementLatencyStats.EXECUTION] = execution;
+        phaseTimes[StatementLatencyStats.RESULTS] = results;
+        phaseTimes[StatementLatencyStats.TOTAL] = parameters + execution + results;
+        return phaseTimes;
+    }
+
+    public void testPercentilesPerStatement() {
+        StatementLatencyStats stats = new StatementLatencyStats();
+        StatementLatencyStats.Timings select = stats.getTimings("Vote", "checkContestant");
+        StatementLatencyStats.Timings insert = stats.getTimings("Vote", "insertVote");
+        // every site gets the same timings for a statement
+        assertSame(select, stats.getTimings("Vote", "checkContestant"));
+        // nothing is reported for statements that weren't sampled
+        stats.getTimings("Vote", "neverRun");
+
+        for (int i = 1; i <= 100; i++) {
+            select.record(phases(1000, i * 10000, 2000));
+        }
+        insert.record(phases(500, 5000, 100));
+
+        VoltTable table = collect(stats, false);
+        assertEquals(2, table.getRowCount());
+        table.advanceRow();
+        assertEquals("Vote", table.getString("PROCEDURE"));
+        assertEquals("checkContestant", table.getString("STATEMENT"));
+        assertEquals(100, table.getLong("TIMED_INVOCATIONS"));
+        // two significant digits
+        assertEquals(500000, table.getLong("P50_EE_TIME"), 5000);
+        assertEquals(990000, table.getLong("P99_EE_TIME"), 10000);
+        assertEquals(1000000, table.getLong("MAX_EE_TIME"), 10000);
+        assertEquals(1000, table.getLong("P99_PARAMETER_TIME"), 10);
+        assertEquals(2000, table.getLong("MAX_RESULT_TIME"), 20);
+        assertEquals(508000, table.getLong("AVG_TOTAL_TIME"), 10000);
+        table.advanceRow();
+        assertEquals("insertVote", table.getString("STATEMENT"));
+        assertEquals(1, table.getLong("TIMED_INVOCATIONS"));
+        assertEquals(5600, table.getLong("MAX_TOTAL_TIME"), 60);
+    }
+
+    public void testIntervals() {
+        StatementLatencyStats stats = new StatementLatencyStats();
+        StatementLatencyStats.Timings timings = stats.getTimings("Proc", "stmt");
+        timings.record(phases(10, 100000, 10));
+        timings.record(phases(10, 200000, 10));
+
+        VoltTable table = collect(stats, true);
+        assertEquals(1, table.getRowCount());
+        table.advanceRow();
+        assertEquals(2, table.getLong("TIMED_INVOCATIONS"));
+
+        // nothing recorded since the last interval
+        assertEquals(0, collect(stats, true).getRowCount());
+
+        timings.record(phases(10, 50000, 10));
+        table = collect(stats, true);
+        table.advanceRow();
+        assertEquals(1, table.getLong("TIMED_INVOCATIONS"));
+        assertEquals(50000, table.getLong("MAX_EE_TIME"), 500);
+
+        // the totals still cover everything
+        table = collect(stats, false);
+        table.advanceRow();
+        assertEquals(3, table.getLong("TIMED_INVOCATIONS"));
+        assertEquals(200000, table.getLong("MAX_EE_TIME"), 2000);
+    }
+
+    public void testConcurrentIntervals() throws Exception {
+        final StatementLatencyStats stats = new StatementLatencyStats();
+        final StatementLatencyStats.Timings timings = stats.getTimings("Proc", "stmt");
+        final int records = 20000;
+        final AtomicLong collected = new AtomicLong();
+        Thread threads[] = new Thread[3];
+        for (int t = 0; t < threads.length; t++) {
+            final boolean recorder = t == 0;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    if (recorder) {
+                        for (int i = 0; i < records; i++) {
+                            timings.record(phases(10, 1000, 10));
+                        }
+                        return;
+                    }
+                    for (int i = 0; i < 200; i++) {
+                        VoltTable table = collect(stats, true);
+                        if (table.advanceRow()) {
+                            collected.addAndGet(table.getLong("TIMED_INVOCATIONS"));
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        VoltTable table = collect(stats, true);
+        if (table.advanceRow()) {
+            collected.addAndGet(table.getLong("TIMED_INVOCATIONS"));
+        }
+        // every record is reported by exactly one interval
+        assertEquals(records, collected.get());
+    }
+
+    public void testLongTimesAreCapped() {
+        StatementLatencyStats stats = new StatementLatencyStats();
+        StatementLatencyStats.Timings timings = stats.getTimings("Proc", "stmt");
+        timings.record(phases(-5, StatementLatencyStats.HIGHEST_TRACKABLE_TIME * 2, 0));
+        VoltTable table = collect(stats, false);
+        table.advanceRow();
+        assertEquals(0, table.getLong("MAX_PARAMETER_TIME"));
+        assertTrue(table.getLong("MAX_EE_TIME") >= StatementLatencyStats.HIGHEST_TRACKABLE_TIME);
+    }
+}
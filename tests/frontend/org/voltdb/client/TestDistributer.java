@@ -30,11 +30,16 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -48,6 +53,9 @@ import org.voltdb.StoredProcedureInvocation;
 import org.voltdb.VoltTable;
 import org.voltdb.VoltType;
 
+import com.google_voltpatches.common.util.concurrent.ListenableFuture;
+import com.google_voltpatches.common.util.concurrent.MoreExecutors;
+
 public class TestDistributer extends TestCase {
 
     class MockInputHandler extends VoltProtocolHandler {
@@ -820,6 +828,129 @@ public class TestDistributer extends TestCase {
        }
     }
 
+    @Test
+    public void testClientAsync() throws Exception {
+        MockVolt volt = null;
+        Client clt = null;
+        final ExecutorService completion = Executors.newSingleThreadExecutor();
+
+        try {
+            volt = new MockVolt(20000);
+            volt.start();
+
+            ClientConfig config = new ClientConfig();
+            config.setCompletionExecutor(completion);
+            clt = ClientFactory.createClient(config);
+            clt.createConnection("localhost", 20000);
+
+            // listeners without an executor of their own run where the future was completed
+            final Thread completionThread = completion.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            // hold the completion thread until the listener is attached
+            final CountDownLatch attached = new CountDownLatch(1);
+            completion.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        attached.await();
+                    } catch (InterruptedException ignored) {}
+                }
+            });
+            final AtomicReference<Thread> listenerThread = new AtomicReference<Thread>();
+            final CountDownLatch listened = new CountDownLatch(1);
+            ListenableFuture<ClientResponse> future = clt.callProcedureAsync("Foo", new Integer(1));
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    listenerThread.set(Thread.currentThread());
+                    listened.countDown();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+            attached.countDown();
+
+            ClientResponse response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(ClientResponse.SUCCESS, response.getStatus());
+            assertEquals(1, response.getResults()[0].asScalarLong());
+            assertTrue(listened.await(10, TimeUnit.SECONDS));
+            assertEquals(completionThread, listenerThread.get());
+
+            // failed responses fail the future the way the synchronous call throws
+            volt.handler.sendProcTimeout.set(true);
+            future = clt.callProcedureWithTimeoutAsync(1000, "Bar", new Integer(2));
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ProcCallException);
+                ClientResponse failed = ((ProcCallException) e.getCause()).getClientResponse();
+                assertEquals(ClientResponse.CONNECTION_TIMEOUT, failed.getStatus());
+            }
+        }
+        finally {
+            if (clt != null) {
+                clt.close();
+            }
+            if (volt != null) {
+                volt.shutdown();
+            }
+            completion.shutdown();
+        }
+    }
+
+    @Test
+    public void testClientInvocationBatching() throws Exception {
+        MockVolt volt = null;
+        Client clt = null;
+
+        try {
+            volt = new MockVolt(20000);
+            volt.start();
+
+            ClientConfig config = new ClientConfig();
+            // small enough that the invocations below fill several batches
+            config.setInvocationBatching(1024, 20, TimeUnit.MILLISECONDS);
+            clt = ClientFactory.createClient(config);
+            clt.createConnection("localhost", 20000);
+            // let the subscription and topology calls made on connect go through
+            clt.drain();
+            final int baseline = volt.handler.roundTrips.get();
+
+            final AtomicInteger responses = new AtomicInteger();
+            for (int i = 0; i < 200; i++) {
+                clt.callProcedure(new ProcedureCallback() {
+                    @Override
+                    public void clientCallback(ClientResponse clientResponse) {
+                        if (clientResponse.getStatus() == ClientResponse.SUCCESS) {
+                            responses.incrementAndGet();
+                        }
+                    }
+                }, "Foo", i);
+            }
+            // an invocation too large to share a batch still goes out after the earlier ones
+            clt.callProcedure(new ProcCallback(), "Bar", new byte[4096]);
+            clt.drain();
+            assertEquals(200, responses.get());
+            assertEquals(baseline + 201, volt.handler.roundTrips.get());
+
+            // a lone synchronous call is written when the batch delay passes
+            ClientResponse response = clt.callProcedure("Foo", 1);
+            assertEquals(ClientResponse.SUCCESS, response.getStatus());
+            assertEquals(baseline + 202, volt.handler.roundTrips.get());
+        }
+        finally {
+            if (clt != null) {
+                clt.close();
+            }
+            if (volt != null) {
+                volt.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testClientBlockedOnMaxOutstanding() throws Exception {
         // create a fake server and connect to it.
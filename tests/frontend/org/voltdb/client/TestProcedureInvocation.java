@@ -210,6 +210,21 @@ public class TestProcedureInvocation extends TestCase{
         verifySpi(spi);
     }
 
+    /** Invocations read off the wire in a batch don't pin the rest of the batch */
+    public void testRoundTripFromBatch() throws Exception {
+        ByteBuffer batch = ByteBuffer.allocate(pi.getSerializedSize() + 64);
+        batch.position(32);
+        pi.flattenToBuffer(batch);
+        batch.limit(batch.position());
+        batch.position(32);
+        ByteBuffer message = batch.slice();
+
+        StoredProcedureInvocation spi = new StoredProcedureInvocation();
+        spi.initFromBuffer(message);
+        verifySpi(spi);
+        assertNotSame(batch.array(), spi.getSerializedParams().array());
+    }
+
     /**
      * Test de/ser a replicated procedure invocation.
      * @throws IOException
@@ -0,0 +1,331 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.commandlog;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.voltdb.CommandLog.CompletionChecks;
+import org.voltdb.CommandLog.DurabilityListener;
+import org.voltdb.CommandLogStats;
+import org.voltdb.SnapshotCompletionInterest.SnapshotCompletionEvent;
+import org.voltdb.StartAction;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.iv2.SpScheduler.DurableUniqueIdListener;
+import org.voltdb.iv2.TransactionTask;
+import org.voltdb.iv2.TxnEgo;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+import org.voltdb.messaging.VoltDbMessageFactory;
+import org.voltdb.utils.VoltFile;
+
+import junit.framework.TestCase;
+
+public class TestFileCommandLog extends TestCase {
+
+    private File m_dir;
+
+    /**
+     * Stands in for a scheduler's listener, counting the transactions
+     * handed back as durable and the batches they came in.
+     */
+    private static class CountingListener implements DurabilityListener {
+        int m_current = 0;
+        final AtomicInteger m_durable = new AtomicInteger(0);
+        final AtomicInteger m_batches = new AtomicInteger(0);
+
+        private class Checks implements CompletionChecks {
+            final int m_count;
+            Checks(int count) { m_count = count; }
+            @Override public CompletionChecks startNewCheckList(int startSize) { return new Checks(0); }
+            @Override public void addTask(TransactionTask task) {}
+            @Override public void setLastDurableUniqueId(long uniqueId) {}
+            @Override public boolean isChanged() { return m_count > 0; }
+            @Override public int getTaskListSize() { return m_count; }
+            @Override public void processChecks() {}
+        }
+
+        @Override public void setUniqueIdListener(DurableUniqueIdListener listener) {}
+        @Override public void createFirstCompletionCheck(boolean isSyncLogging, boolean commandLoggingEnabled) {}
+        @Override public boolean completionCheckInitialized() { return true; }
+        @Override public void addTransaction(TransactionTask pendingTask) { m_current++; }
+        @Override public void initializeLastDurableUniqueId(long uniqueId) {}
+        @Override public int getNumberOfTasks() { return m_current; }
+
+        @Override
+        public CompletionChecks startNewTaskList(int nextMaxRowCnt) {
+            Checks checks = new Checks(m_current);
+            m_current = 0;
+            return checks;
+        }
+
+        @Override
+        public void processDurabilityChecks(CompletionChecks completionChecks) {
+            if (completionChecks.isChanged()) {
+                m_durable.addAndGet(completionChecks.getTaskListSize());
+                m_batches.incrementAndGet();
+            }
+        }
+
+        void awaitDurable(int count) throws InterruptedException {
+            for (int i = 0; i < 1000 && m_durable.get() < count; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, m_durable.get());
+        }
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        m_dir = new File(System.getProperty("java.io.tmpdir"), "TestFileCommandLog-" + System.getProperty("user.name"));
+        VoltFile.recursivelyDelete(m_dir);
+        m_dir.mkdirs();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        VoltFile.recursivelyDelete(m_dir);
+    }
+
+    private static Iv2InitiateTaskMessage makeMessage(long spHandle, long uniqueId, boolean isSinglePartition) {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName(isSinglePartition ? "Insert" : "Summarize");
+        invocation.setParams(spHandle, "value " + uniqueId);
+        Iv2InitiateTaskMessage msg = new Iv2InitiateTaskMessage(0, 0, Iv2InitiateTaskMessage.UNUSED_TRUNC_HANDLE,
+                spHandle, uniqueId, false, isSinglePartition, invocation, 0, 0, false);
+        msg.setSpHandle(spHandle);
+        return msg;
+    }
+
+    private static List<Iv2InitiateTaskMessage> readBack(File dir, int partitionId) throws Exception {
+        List<Iv2InitiateTaskMessage> messages = new ArrayList<Iv2InitiateTaskMessage>();
+        VoltDbMessageFactory factory = new VoltDbMessageFactory();
+        for (CommandLogSegment segment : CommandLogSegment.findSegments(dir)) {
+            if (segment.getPartitionId() != partitionId) {
+                continue;
+            }
+            CommandLogSegment.EntryReader reader = segment.reader();
+            while (reader.next()) {
+                if (reader.type() != CommandLogSegment.INVOCATION_ENTRY) {
+                    continue;
+                }
+                ByteBuffer body = reader.body();
+                final int partitions = body.getInt();
+                body.position(body.position() + 4 * partitions);
+                Iv2InitiateTaskMessage msg = (Iv2InitiateTaskMessage) factory.createMessageFromBuffer(body, -1);
+                assertEquals(reader.spHandle(), msg.getSpHandle());
+                messages.add(msg);
+            }
+        }
+        return messages;
+    }
+
+    public void testSynchronousGroupCommit() throws Exception {
+        FileCommandLog log = new FileCommandLog(true, 5, 100, m_dir.getPath(), 1024 * 1024);
+        CountingListener listener = new CountingListener();
+        log.registerDurabilityListener(listener);
+
+        // nothing is written before the log is initialized, everything is durable right away
+        TxnEgo ego = TxnEgo.makeZero(0);
+        assertNull(log.log(makeMessage(ego.getTxnId(), 1, true), ego.getTxnId(), null, listener, null));
+        assertEquals(1, listener.m_durable.get());
+
+        log.init(1024, Long.MIN_VALUE, 2, null, null);
+        assertFalse(log.needsInitialization());
+        assertFalse(log.canOfferTask());
+
+        TxnEgo ego0 = TxnEgo.makeZero(0);
+        TxnEgo ego1 = TxnEgo.makeZero(1);
+        for (int i = 0; i < 300; i++) {
+            ego0 = ego0.makeNext();
+            assertNull(log.log(makeMessage(ego0.getTxnId(), i, true), ego0.getTxnId(), null, listener, null));
+            if (i % 3 == 0) {
+                ego1 = ego1.makeNext();
+                log.log(makeMessage(ego1.getTxnId(), i, false), ego1.getTxnId(), new int[] {0, 1}, listener, null);
+            }
+        }
+        listener.awaitDurable(401);
+        // several transactions share each sync
+        assertTrue(listener.m_batches.get() < 400);
+        log.shutdown();
+
+        List<Iv2InitiateTaskMessage> partition0 = readBack(m_dir, 0);
+        assertEquals(300, partition0.size());
+        for (int i = 0; i < 300; i++) {
+            assertEquals(i, partition0.get(i).getUniqueId());
+            assertTrue(partition0.get(i).isSinglePartition());
+            assertEquals("Insert", partition0.get(i).getStoredProcedureName());
+        }
+        List<Iv2InitiateTaskMessage> partition1 = readBack(m_dir, 1);
+        assertEquals(100, partition1.size());
+        assertFalse(partition1.get(0).isSinglePartition());
+        assertEquals("value 297", partition1.get(99).getParameters()[1]);
+
+        Map<String, Integer> columns = new HashMap<String, Integer>();
+        int index = 0;
+        for (CommandLogStats.StatName name : CommandLogStats.StatName.values()) {
+            columns.put(name.name(), index++);
+        }
+        Object[] row = new Object[index];
+        log.populateCommandLogStats(columns, row);
+        assertTrue((Long) row[columns.get(CommandLogStats.StatName.FSYNC_COUNT.name())] > 0);
+        assertTrue((Long) row[columns.get(CommandLogStats.StatName.BYTES_WRITTEN.name())] > 0);
+        assertEquals(0L, row[columns.get(CommandLogStats.StatName.OUTSTANDING_TXNS.name())]);
+    }
+
+    public void testAsynchronousLogging() throws Exception {
+        FileCommandLog log = new FileCommandLog(false, 5, Integer.MAX_VALUE, m_dir.getPath(), 1024 * 1024);
+        CountingListener listener = new CountingListener();
+        log.registerDurabilityListener(listener);
+        log.init(1024, Long.MIN_VALUE, 1, null, null);
+        assertTrue(log.canOfferTask());
+
+        TxnEgo ego = TxnEgo.makeZero(0);
+        for (int i = 0; i < 50; i++) {
+            ego = ego.makeNext();
+            // not behind, so the transaction may run right away
+            assertTrue(log.log(makeMessage(ego.getTxnId(), i, true), ego.getTxnId(), null, listener, null).isDone());
+        }
+        listener.awaitDurable(50);
+        log.shutdown();
+        assertEquals(50, readBack(m_dir, 0).size());
+    }
+
+    public void testSegmentRolloverAndTruncation() throws Exception {
+        FileCommandLog log = new FileCommandLog(true, 1, 10, m_dir.getPath(), 4096);
+        CountingListener listener = new CountingListener();
+        log.registerDurabilityListener(listener);
+        log.init(1024, Long.MIN_VALUE, 1, null, null);
+
+        TxnEgo ego = TxnEgo.makeZero(0);
+        long truncationPoint = 0;
+        for (int i = 0; i < 200; i++) {
+            ego = ego.makeNext();
+            log.log(makeMessage(ego.getTxnId(), i, true), ego.getTxnId(), null, listener, null);
+            if (i == 99) {
+                truncationPoint = ego.getTxnId();
+                listener.awaitDurable(100);
+            }
+        }
+        listener.awaitDurable(200);
+        assertEquals(200, readBack(m_dir, 0).size());
+        int segmentsBefore = CommandLogSegment.findSegments(m_dir).size();
+        assertTrue(segmentsBefore > 2);
+
+        Map<Integer, Long> partitionTxnIds = new HashMap<Integer, Long>();
+        partitionTxnIds.put(0, truncationPoint);
+        log.snapshotCompleted(SnapshotCompletionEvent.newInstanceForTest(
+                m_dir.getPath(), "truncation", 0, partitionTxnIds, true, 0, 0));
+        // the writer deletes segments while we look, so only count the files
+        for (int i = 0; i < 100 && m_dir.list().length == segmentsBefore; i++) {
+            Thread.sleep(10);
+        }
+        log.shutdown();
+
+        // only whole segments before the truncation point go away
+        List<Iv2InitiateTaskMessage> remaining = readBack(m_dir, 0);
+        assertTrue(remaining.size() < 200);
+        assertEquals(199, remaining.get(remaining.size() - 1).getUniqueId());
+        for (Iv2InitiateTaskMessage msg : remaining) {
+            if (msg.getUniqueId() == 100) {
+                return;
+            }
+        }
+        fail("Entries after the truncation point were deleted");
+    }
+
+    public void testReplayChecksPartitionCount() throws Exception {
+        FileCommandLog log = new FileCommandLog(true, 1, 1, m_dir.getPath(), 1024 * 1024);
+        CountingListener listener = new CountingListener();
+        log.registerDurabilityListener(listener);
+        log.init(1024, Long.MIN_VALUE, 2, null, null);
+        TxnEgo ego0 = TxnEgo.makeZero(0).makeNext();
+        TxnEgo ego1 = TxnEgo.makeZero(1).makeNext();
+        log.log(makeMessage(ego0.getTxnId(), 1, true), ego0.getTxnId(), null, listener, null);
+        log.log(makeMessage(ego1.getTxnId(), 2, true), ego1.getTxnId(), null, listener, null);
+        listener.awaitDurable(2);
+        log.shutdown();
+
+        for (CommandLogSegment segment : CommandLogSegment.findSegments(m_dir)) {
+            assertEquals(2, segment.getPartitionCount());
+        }
+        FileCommandLogReinitiator reinitiator =
+                new FileCommandLogReinitiator(0, StartAction.RECOVER, null, m_dir.getPath(), null, 2);
+        assertTrue(reinitiator.hasReplayedSegments());
+        assertEquals(2, reinitiator.getLoggedPartitionCount());
+        assertTrue(reinitiator.matchesPartitionCount(2));
+        assertFalse(reinitiator.matchesPartitionCount(3));
+        assertFalse(reinitiator.matchesPartitionCount(1));
+
+        // without a log any partition count will do
+        VoltFile.recursivelyDelete(m_dir);
+        m_dir.mkdirs();
+        reinitiator = new FileCommandLogReinitiator(0, StartAction.RECOVER, null, m_dir.getPath(), null, 2);
+        assertTrue(reinitiator.matchesPartitionCount(3));
+    }
+
+    public void testTornEntryEndsSegment() throws Exception {
+        FileCommandLog log = new FileCommandLog(true, 1, 1, m_dir.getPath(), 1024 * 1024);
+        CountingListener listener = new CountingListener();
+        log.registerDurabilityListener(listener);
+        log.init(1024, Long.MIN_VALUE, 1, null, null);
+        TxnEgo ego = TxnEgo.makeZero(0);
+        for (int i = 0; i < 3; i++) {
+            ego = ego.makeNext();
+            log.log(makeMessage(ego.getTxnId(), i, true), ego.getTxnId(), null, listener, null);
+        }
+        listener.awaitDurable(3);
+        log.shutdown();
+
+        // corrupt the last byte of the last entry
+        CommandLogSegment segment = CommandLogSegment.findSegments(m_dir).get(0);
+        CommandLogSegment.EntryReader reader = segment.reader();
+        int entries = 0;
+        long end = CommandLogSegment.HEADER_SIZE;
+        while (reader.next()) {
+            entries++;
+            end += CommandLogSegment.ENTRY_PREFIX_SIZE + CommandLogSegment.ENTRY_HEADER_SIZE +
+                   reader.body().remaining();
+        }
+        assertEquals(3, entries);
+        RandomAccessFile raf = new RandomAccessFile(segment.getFile(), "rw");
+        try {
+            raf.seek(end - 1);
+            byte last = raf.readByte();
+            raf.seek(end - 1);
+            raf.writeByte(last ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        List<Iv2InitiateTaskMessage> intact = readBack(m_dir, 0);
+        assertEquals(2, intact.size());
+        assertEquals(1, intact.get(1).getUniqueId());
+    }
+}
@@ -25,11 +25,14 @@ package org.voltdb.compiler;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -91,15 +94,16 @@ public class TestAsyncCompilerAgent {
         m_agent.m_mailbox = spy(m_agent.m_mailbox);
 
         /*
-         * send max + 2 messages to the agent. The first one will be executed
-         * immediately so it doesn't consume queue capacity, the next max number
-         * of messages will use up all the capacity, the last one will be
-         * rejected.
+         * send (max + 1) * threads + 1 messages to the agent. The first one for
+         * each planner thread will be executed immediately so it doesn't consume
+         * queue capacity, the next max number of messages per thread will use up
+         * all the capacity, the last one will be rejected.
          */
+        final int requests = (AsyncCompilerAgent.MAX_QUEUE_DEPTH + 1) * AsyncCompilerAgent.PLANNER_THREADS + 1;
         final AtomicInteger completedRequests = new AtomicInteger();
         final AtomicReference<AsyncCompilerResult> result = new AtomicReference<AsyncCompilerResult>();
         final long threadId = Thread.currentThread().getId();
-        for (int i = 0; i < AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2; ++i) {
+        for (int i = 0; i < requests; ++i) {
             AsyncCompilerWorkCompletionHandler handler = new AsyncCompilerWorkCompletionHandler() {
                 @Override
                 public void onCompletion(AsyncCompilerResult compilerResult) {
@@ -127,10 +131,43 @@ public class TestAsyncCompilerAgent {
         assertNotNull(result.get().errorMsg);
 
         // let all requests return
-        blockingAnswer.flag.release(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 5);
+        blockingAnswer.flag.release(requests + 5);
 
         // check if all previous requests finish
         m_agent.shutdown();
-        assertEquals(AsyncCompilerAgent.MAX_QUEUE_DEPTH + 2, completedRequests.get());
+        assertEquals(requests, completedRequests.get());
+    }
+
+    /**
+     * Ad hoc DDL changes the catalog, so it has to be prepared on the catalog
+     * thread in the order it arrived instead of racing on the planner threads.
+     */
+    @Test
+    public void testAdHocDDLOnCatalogThread() throws InterruptedException {
+        final Map<String, String> threads = new ConcurrentHashMap<String, String>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                AdHocPlannerWork work = (AdHocPlannerWork) invocation.getArguments()[0];
+                threads.put(work.sqlStatements[0], Thread.currentThread().getName());
+                return null;
+            }
+        }).when(m_agent).handleAdHocPlannerWork(any(AdHocPlannerWork.class));
+
+        m_agent.createMailbox(mock(HostMessenger.class), 100);
+        final String[] sqls = { "create table t (a integer);", "-- comment", "select * from a" };
+        final AsyncCompilerWorkCompletionHandler handler = mock(AsyncCompilerWorkCompletionHandler.class);
+        for (String sql : sqls) {
+            AdHocPlannerWork work = AdHocPlannerWork.makeStoredProcAdHocPlannerWork(100, sql,
+                                                                                    null, false, null, handler);
+            LocalObjectMessage msg = new LocalObjectMessage(work);
+            msg.m_sourceHSId = 100;
+            m_agent.m_mailbox.deliver(msg);
+        }
+        m_agent.shutdown();
+
+        assertTrue(threads.get(sqls[0]).startsWith("Ad Hoc Catalog Compiler"));
+        assertTrue(threads.get(sqls[1]).startsWith("Ad Hoc Planner"));
+        assertTrue(threads.get(sqls[2]).startsWith("Ad Hoc Planner"));
     }
 }
@@ -0,0 +1,164 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestShardedPlanCache extends TestCase {
+
+    static final ShardedPlanCache.Weigher<String> LENGTH = new ShardedPlanCache.Weigher<String>() {
+        @Override
+        public int weigh(String value) {
+            return value.length();
+        }
+    };
+
+    public void testHitsAndMisses() {
+        ShardedPlanCache<String, String> cache = new ShardedPlanCache<String, String>(100, 1000, 4, LENGTH);
+        assertEquals(4, cache.shardCount());
+        assertNull(cache.get("a"));
+        assertTrue(cache.put("a", "plan a"));
+        assertEquals("plan a", cache.get("a"));
+        assertEquals("plan a", cache.peek("a"));
+        assertNull(cache.peek("b"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.weightedSize());
+
+        // replacing a value updates its weight
+        assertTrue(cache.put("a", "a"));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.weightedSize());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+        assertNull(cache.get("a"));
+    }
+
+    public void testOneOffQueriesDontEvictHotPlans() {
+        ShardedPlanCache<String, String> cache = new ShardedPlanCache<String, String>(4, 1000, 1, LENGTH);
+        for (int i = 0; i < 4; i++) {
+            String key = "hot" + i;
+            assertNull(cache.get(key));
+            assertTrue(cache.put(key, key));
+            cache.get(key);
+            cache.get(key);
+        }
+
+        // looked up once each, they are less popular than any cached plan
+        for (int i = 0; i < 20; i++) {
+            String key = "once" + i;
+            assertNull(cache.get(key));
+            assertFalse(cache.put(key, key));
+        }
+        assertEquals(20, cache.rejections());
+        assertEquals(0, cache.evictions());
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(cache.peek("hot" + i));
+        }
+
+        // a query that keeps coming back is admitted in place of the least recently used plan
+        for (int i = 0; i < 5; i++) {
+            cache.get("popular");
+        }
+        assertTrue(cache.put("popular", "popular"));
+        assertEquals(1, cache.evictions());
+        assertNull(cache.peek("hot0"));
+        assertEquals(4, cache.size());
+    }
+
+    public void testMemoryBudget() {
+        ShardedPlanCache<String, String> cache = new ShardedPlanCache<String, String>(100, 10, 1, LENGTH);
+        // heavier than the whole cache
+        assertFalse(cache.put("big", "0123456789a"));
+
+        cache.get("a");
+        assertTrue(cache.put("a", "aaaa"));
+        cache.get("b");
+        assertTrue(cache.put("b", "bbbb"));
+        assertEquals(8, cache.weightedSize());
+
+        cache.get("c");
+        cache.get("c");
+        assertTrue(cache.put("c", "cccc"));
+        assertEquals(1, cache.evictions());
+        assertNull(cache.peek("a"));
+        assertEquals(8, cache.weightedSize());
+
+        // an oversized replacement keeps the cached value
+        assertFalse(cache.put("c", "0123456789a"));
+        assertEquals("cccc", cache.peek("c"));
+        assertEquals(8, cache.weightedSize());
+    }
+
+    public void testConcurrentUse() throws InterruptedException {
+        final ShardedPlanCache<String, String> cache = new ShardedPlanCache<String, String>(64, 100000, 8, LENGTH);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            final Random rand = new Random(t);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            // skewed, a few keys are much more popular than the others
+                            String key = "select " + (int) Math.abs(rand.nextGaussian() * 50);
+                            String value = cache.get(key);
+                            if (value == null) {
+                                cache.put(key, key);
+                            }
+                            else {
+                                assertEquals(key, value);
+                            }
+                        }
+                    }
+                    catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(80000, cache.hits() + cache.misses());
+        assertTrue(cache.size() <= 64);
+        // the popular keys stay cached
+        assertTrue(cache.hits() + " hits, " + cache.misses() + " misses", cache.hits() > 3 * cache.misses());
+    }
+}
@@ -0,0 +1,115 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.importclient.kafka;
+
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class TestKafkaImportBatch extends TestCase {
+
+    public void testReadyWhenFull() {
+        KafkaImportBatch batch = new KafkaImportBatch(3, 1000);
+        assertTrue(batch.isEmpty());
+        assertFalse(batch.isReady(0));
+
+        batch.offer(11, new Object[] { 1 }, 0);
+        batch.offer(12, new Object[] { 2 }, 0);
+        assertFalse(batch.isReady(0));
+        batch.offer(13, new Object[] { 3 }, 0);
+        assertTrue(batch.isReady(0));
+        assertEquals(11, batch.getFirstOffset());
+        assertEquals(13, batch.getLastOffset());
+        assertEquals(3, batch.getRows().size());
+    }
+
+    public void testReadyAfterLinger() {
+        KafkaImportBatch batch = new KafkaImportBatch(100, 10);
+        batch.offer(5, new Object[] { 1 }, 1000);
+        assertFalse(batch.isReady(1009));
+        assertTrue(batch.isReady(1010));
+
+        // the linger starts with the first message of each batch
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        assertFalse(batch.isReady(5000));
+        batch.offer(6, new Object[] { 2 }, 5000);
+        assertFalse(batch.isReady(5005));
+        assertTrue(batch.isReady(5010));
+    }
+
+    public void testUnformattedMessagesAreCovered() {
+        KafkaImportBatch batch = new KafkaImportBatch(2, 1000);
+        batch.offer(21, null, 0);
+        batch.offer(22, new Object[] { 1 }, 0);
+        batch.offer(23, null, 0);
+        assertFalse(batch.isReady(0));
+        assertEquals(21, batch.getFirstOffset());
+        assertEquals(23, batch.getLastOffset());
+        assertEquals(1, batch.getRows().size());
+
+        // rows handed off for loading are left alone by the next batch
+        List<Object[]> loading = batch.getRows();
+        batch.clear();
+        batch.offer(24, new Object[] { 2 }, 0);
+        assertEquals(1, loading.size());
+        assertEquals(24, batch.getFirstOffset());
+    }
+
+    public void testBatchingNeedsDefaultProcedure() {
+        Properties props = new Properties();
+        props.setProperty("brokers", "localhost:9092");
+        props.setProperty("topics", "T");
+        props.setProperty("procedure", "InsertImport");
+        props.setProperty("batch.size", "100");
+        try {
+            KafkaStreamImporterConfig.createConfigEntries(props, null);
+            fail("batching with a user procedure should be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("batch.size"));
+        }
+
+        props.setProperty("procedure", "T.insert");
+        for (int size : new int[] { 0, KafkaStreamImporterConfig.GAP_LEAD / 2 + 1 }) {
+            props.setProperty("batch.size", Integer.toString(size));
+            try {
+                KafkaStreamImporterConfig.createConfigEntries(props, null);
+                fail("batch.size " + size + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage().contains("KAFKA_IMPORT_GAP_LEAD"));
+            }
+        }
+
+        props.setProperty("batch.size", "100");
+        props.setProperty("batch.linger.ms", "-1");
+        try {
+            KafkaStreamImporterConfig.createConfigEntries(props, null);
+            fail("negative linger should be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("batch.linger.ms"));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.importer.formatter.builtin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.voltdb.importer.formatter.FormatException;
+
+public class TestStreamingCSVTokenizer extends TestCase {
+
+    private static StreamingCSVTokenizer csv() {
+        return new StreamingCSVTokenizer(',', '"', '\\', false);
+    }
+
+    public void testFields() {
+        StreamingCSVTokenizer tokenizer = csv();
+        assertEquals(5, tokenizer.parseLine("1,\"a,b\",\"say \"\"hi\"\"\",\\,x,"));
+        assertEquals("1", tokenizer.getString(0));
+        assertEquals("a,b", tokenizer.getString(1));
+        assertEquals("say \"hi\"", tokenizer.getString(2));
+        assertEquals(",x", tokenizer.getString(3));
+        assertTrue(tokenizer.isBlank(4));
+        assertFalse(tokenizer.isBlank(1));
+
+        // quoted empty fields are not blank
+        assertEquals(2, tokenizer.parseLine("\"\",x"));
+        assertFalse(tokenizer.isBlank(0));
+        assertEquals("", tokenizer.getString(0));
+
+        // multi-byte characters survive
+        assertEquals(2, tokenizer.parseLine("caf\u00e9,\u00fcber"));
+        assertEquals("caf\u00e9", tokenizer.getString(0));
+        assertEquals("\u00fcber", tokenizer.getString(1));
+    }
+
+    public void testNulls() {
+        StreamingCSVTokenizer tokenizer = csv();
+        tokenizer.parseLine("NULL,\\N,\"\\N\",null,x");
+        assertTrue(tokenizer.isNull(0));
+        assertTrue(tokenizer.isNull(1));
+        assertTrue(tokenizer.isNull(2));
+        assertFalse(tokenizer.isNull(3));
+        assertNull(tokenizer.getValue(0, long.class));
+
+        tokenizer.setNullString("nil");
+        tokenizer.parseLine("nil,NULL");
+        assertTrue(tokenizer.isNull(0));
+        assertFalse(tokenizer.isNull(1));
+    }
+
+    public void testTypedValues() {
+        StreamingCSVTokenizer tokenizer = csv();
+        tokenizer.parseLine("42,-7,300,-128,3.25,-0.1,1e3,12345678901234567890,abc,9223372036854775807");
+        assertEquals(Long.valueOf(42), tokenizer.getValue(0, long.class));
+        assertEquals(Integer.valueOf(-7), tokenizer.getValue(1, int.class));
+        // out of range for a byte, or the TINYINT null, is left to the caller
+        assertEquals("300", tokenizer.getValue(2, byte.class));
+        assertEquals("-128", tokenizer.getValue(3, byte.class));
+        assertEquals(Double.valueOf(3.25), tokenizer.getValue(4, double.class));
+        assertEquals(Double.valueOf(-0.1), tokenizer.getValue(5, double.class));
+        assertEquals("1e3", tokenizer.getValue(6, double.class));
+        assertEquals(1000.0, tokenizer.getDouble(6));
+        assertEquals("12345678901234567890", tokenizer.getValue(7, long.class));
+        assertEquals("abc", tokenizer.getValue(8, long.class));
+        assertEquals(Long.MAX_VALUE, tokenizer.getLong(9));
+        try {
+            tokenizer.getLong(8);
+            fail();
+        } catch (NumberFormatException expected) {
+        }
+
+        // the fast path agrees with Double.parseDouble
+        String[] doubles = { "0.3", "123456.789", "-99999999999.9999", "0.000000000000001", "7" };
+        for (String d : doubles) {
+            tokenizer.parseLine(d);
+            assertEquals(Double.parseDouble(d), tokenizer.getDouble(0));
+        }
+    }
+
+    public void testTrimAndPadding() {
+        StreamingCSVTokenizer tokenizer = csv();
+        tokenizer.setTrimWhitespace(true);
+        tokenizer.parseLine(" 12 ,  \"q\" ,x");
+        assertEquals(Long.valueOf(12), tokenizer.getValue(0, long.class));
+        assertTrue(tokenizer.isPadded(0));
+        assertEquals("q", tokenizer.getString(1));
+        assertFalse(tokenizer.isPadded(2));
+    }
+
+    public void testRecordsAcrossBuffers() {
+        StreamingCSVTokenizer tokenizer = csv();
+        byte[] input = "1,\"two\nlines\"\r\n3,x\n4,\"y\"\"\"".getBytes(StandardCharsets.UTF_8);
+
+        int next = tokenizer.parseRecord(input, 0, input.length, false);
+        assertEquals(2, tokenizer.getFieldCount());
+        assertEquals("two\nlines", tokenizer.getString(1));
+        assertEquals(2, tokenizer.getRecordLines());
+
+        // a record cut short asks for more input
+        assertEquals(-1, tokenizer.parseRecord(input, next, next + 3, false));
+        next = tokenizer.parseRecord(input, next, input.length, false);
+        assertEquals("x", tokenizer.getString(1));
+
+        // the last record has no newline, and ends on a quote that could start a doubled one
+        assertEquals(-1, tokenizer.parseRecord(input, next, input.length, false));
+        assertEquals(input.length, tokenizer.parseRecord(input, next, input.length, true));
+        assertEquals("y\"", tokenizer.getString(1));
+    }
+
+    public void testMalformed() {
+        StreamingCSVTokenizer tokenizer = csv();
+        try {
+            tokenizer.parseLine("1,\"open");
+            fail();
+        } catch (FormatException expected) {
+        }
+
+        StreamingCSVTokenizer strict = new StreamingCSVTokenizer(',', '"', '\\', true);
+        strict.parseLine("\"1\",\"2\"");
+        try {
+            strict.parseLine("\"1\",2");
+            fail();
+        } catch (FormatException expected) {
+        }
+
+        tokenizer.setColumnSizeLimit(4);
+        tokenizer.parseLine("abcd");
+        try {
+            tokenizer.parseLine("abcde");
+            fail();
+        } catch (FormatException expected) {
+        }
+    }
+
+    public void testFormatter() {
+        Properties props = new Properties();
+        props.setProperty("columntypes", "bigint, varchar, float, smallint");
+        VoltStreamingCSVFormatter formatter = new VoltStreamingCSVFormatter("csv", props);
+        Object[] row = formatter.transform("7,hello,2.5,NULL");
+        assertEquals(4, row.length);
+        assertEquals(Long.valueOf(7), row[0]);
+        assertEquals("hello", row[1]);
+        assertEquals(Double.valueOf(2.5), row[2]);
+        assertNull(row[3]);
+        // each row is a new array, rows are queued asynchronously
+        assertNotSame(row, formatter.transform("8,bye,1,2"));
+
+        // without types, values are strings like VoltCSVFormatter gives
+        formatter = new VoltStreamingCSVFormatter("tsv", new Properties());
+        row = formatter.transform("7\t\\N\t");
+        assertEquals("7", row[0]);
+        assertNull(row[1]);
+        assertEquals("", row[2]);
+
+        props.setProperty("columntypes", "bigint,blob");
+        try {
+            new VoltStreamingCSVFormatter("csv", props);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
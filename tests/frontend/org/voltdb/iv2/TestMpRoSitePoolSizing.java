@@ -0,0 +1,82 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.iv2;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestMpRoSitePoolSizing extends TestCase
+{
+    static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static long steadyLoad(MpRoSitePool.LoadTracker load, long start, int reads,
+                                   long interarrival, long service)
+    {
+        long now = start;
+        for (int i = 0; i < reads; i++) {
+            load.arrival(now);
+            load.completion(service);
+            now += interarrival;
+        }
+        return now - interarrival;
+    }
+
+    public void testNoLoadKeepsMinimum()
+    {
+        MpRoSitePool.LoadTracker load = new MpRoSitePool.LoadTracker();
+        assertEquals(2, load.targetSize(0, 2, 16));
+        assertEquals(0.0, load.getArrivalRate(0));
+        load.arrival(0);
+        assertEquals(2, load.targetSize(0, 2, 16));
+    }
+
+    public void testTargetFollowsLittlesLaw()
+    {
+        MpRoSitePool.LoadTracker load = new MpRoSitePool.LoadTracker();
+        // a read every millisecond holding a site for 4 ms keeps 4 in flight
+        long now = steadyLoad(load, 0, 200, MS, 4 * MS);
+        assertEquals(1000.0, load.getArrivalRate(now), 1.0);
+        assertEquals(4 * MS, load.getServiceNanos());
+        assertEquals(8, load.targetSize(now, 1, 16));
+        // bounded by the maximum size
+        assertEquals(6, load.targetSize(now, 1, 6));
+
+        // twice the arrival rate needs twice the sites
+        now = steadyLoad(load, now + MS / 2, 400, MS / 2, 4 * MS);
+        assertEquals(16, load.targetSize(now, 1, 32));
+    }
+
+    public void testTargetDecaysWhenIdle()
+    {
+        MpRoSitePool.LoadTracker load = new MpRoSitePool.LoadTracker();
+        long now = steadyLoad(load, 0, 200, MS, 4 * MS);
+        assertEquals(8, load.targetSize(now, 1, 16));
+        // nothing arrived for 4 ms, at most one read was in flight
+        assertEquals(2, load.targetSize(now + 4 * MS, 1, 16));
+        assertEquals(1, load.targetSize(now + TimeUnit.SECONDS.toNanos(10), 1, 16));
+        assertEquals(0.1, load.getArrivalRate(now + TimeUnit.SECONDS.toNanos(10)), 0.001);
+    }
+}
@@ -0,0 +1,165 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltTable.ColumnInfo;
+import org.voltdb.rejoin.TaskLog;
+
+public class TestSiteWaitStrategy extends TestCase {
+
+    static class NoopTask extends SiteTasker {
+        @Override
+        public void run(SiteProcedureConnection siteConnection) {}
+
+        @Override
+        public void runForRejoin(SiteProcedureConnection siteConnection, TaskLog rejoinTaskLog) {}
+    }
+
+    private static long column(StarvationTracker tracker, boolean interval, String name) {
+        Object rows[][] = tracker.getStatsRows(interval, System.currentTimeMillis());
+        assertEquals(1, rows.length);
+        VoltTable table = new VoltTable(tracker.getColumnSchema().toArray(new ColumnInfo[0]));
+        table.addRow(rows[0]);
+        table.advanceRow();
+        return table.getLong(name);
+    }
+
+    /**
+     * Take one task that is offered by another thread after a delay
+     */
+    private static void takeDelayed(final SiteTaskerQueue queue, final long delayMillis) throws Exception {
+        final SiteTasker task = new NoopTask();
+        Thread offerer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {}
+                queue.offer(task);
+            }
+        };
+        offerer.start();
+        assertSame(task, queue.take());
+        offerer.join();
+    }
+
+    public void testCountersPerStrategy() throws Exception {
+        for (SiteWaitStrategy.Type type : SiteWaitStrategy.Type.values()) {
+            SiteTaskerQueue queue = new SiteTaskerQueue(SiteWaitStrategy.create(type));
+            assertEquals(type, queue.getWaitStrategy().getType());
+            StarvationTracker tracker = new StarvationTracker(0);
+            queue.setStarvationTracker(tracker);
+
+            // a task that is already queued is handed out without waiting
+            queue.offer(new NoopTask());
+            assertNotNull(queue.take());
+            assertEquals(0, column(tracker, false, "SPINS") + column(tracker, false, "PARKS"));
+
+            takeDelayed(queue, 50);
+            assertEquals(1, column(tracker, false, "COUNT"));
+            final long spins = column(tracker, false, "SPINS");
+            final long yields = column(tracker, false, "YIELDS");
+            final long parks = column(tracker, false, "PARKS");
+            switch (type) {
+            case BLOCK:
+                assertEquals(1, parks);
+                assertEquals(0, yields);
+                break;
+            case BUSYSPIN:
+                assertTrue(spins > 0);
+                assertEquals(0, yields);
+                assertEquals(0, parks);
+                break;
+            case SPINYIELD:
+                assertTrue(spins > 0);
+                assertTrue(yields > 0);
+                assertEquals(0, parks);
+                break;
+            case ADAPTIVE:
+                // 50ms is well past the spin and yield budget
+                assertTrue(spins > 0);
+                assertEquals(SiteWaitStrategy.YIELD_TRIES, yields);
+                assertEquals(1, parks);
+                break;
+            }
+
+            // interval stats report what happened since the last interval read
+            column(tracker, true, "SPINS");
+            assertEquals(0, column(tracker, true, "SPINS"));
+            assertEquals(0, column(tracker, true, "PARKS"));
+            assertEquals(spins, column(tracker, false, "SPINS"));
+        }
+    }
+
+    public void testAdaptiveBudget() throws Exception {
+        SiteWaitStrategy.Adaptive adaptive = new SiteWaitStrategy.Adaptive();
+        SiteTaskerQueue queue = new SiteTaskerQueue(adaptive);
+        queue.setStarvationTracker(new StarvationTracker(0));
+        final int initial = adaptive.getSpinBudget();
+
+        // blocking shrinks the budget, but never below the floor
+        takeDelayed(queue, 50);
+        assertEquals(Math.max(SiteWaitStrategy.SPIN_TRIES, initial / 2), adaptive.getSpinBudget());
+
+        // work arriving while spinning grows it
+        final int before = adaptive.getSpinBudget();
+        LinkedTransferQueue<SiteTasker> tasks = new LinkedTransferQueue<SiteTasker>();
+        SiteTasker task = new NoopTask();
+        tasks.offer(task);
+        assertSame(task, adaptive.take(tasks, new StarvationTracker(0)));
+        assertEquals(before * 2, adaptive.getSpinBudget());
+    }
+
+    public void testSpinningIsInterruptible() throws Exception {
+        for (SiteWaitStrategy.Type type : SiteWaitStrategy.Type.values()) {
+            final SiteTaskerQueue queue = new SiteTaskerQueue(SiteWaitStrategy.create(type));
+            queue.setStarvationTracker(new StarvationTracker(0));
+            final AtomicReference<Throwable> thrown = new AtomicReference<Throwable>();
+            Thread site = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        queue.take();
+                    } catch (Throwable t) {
+                        thrown.set(t);
+                    }
+                }
+            };
+            site.start();
+            Thread.sleep(20);
+            site.interrupt();
+            site.join(10000);
+            assertFalse(site.isAlive());
+            assertTrue(type.name(), thrown.get() instanceof InterruptedException);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.iv2;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.mockito.InOrder;
+import org.voltcore.messaging.Mailbox;
+import org.voltcore.messaging.VoltMessage;
+import org.voltdb.SiteProcedureConnection;
+import org.voltdb.StarvationTracker;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+public class TestSpProcedureBatchTask extends TestCase {
+
+    private long m_spHandle = 0;
+
+    private SpProcedureTask makeSpTask(Mailbox initiator, String procName) {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName(procName);
+        invocation.setParams();
+        final long spHandle = ++m_spHandle;
+        Iv2InitiateTaskMessage msg = new Iv2InitiateTaskMessage(0, 0, Iv2InitiateTaskMessage.UNUSED_TRUNC_HANDLE,
+                Iv2InitiateTaskMessage.UNUSED_MP_TXNID, spHandle, true, true, invocation, 0, 0, false);
+        msg.setSpHandle(spHandle);
+        return new SpProcedureTask(initiator, procName, null, msg, null);
+    }
+
+    private FragmentTask makeFragmentTask() {
+        final long spHandle = ++m_spHandle;
+        FragmentTaskMessage msg = new FragmentTaskMessage(0, 0, spHandle, spHandle, false, true, false);
+        msg.setSpHandle(spHandle);
+        return new FragmentTask(null, new ParticipantTransactionState(spHandle, msg), null, msg, null);
+    }
+
+    private static SiteTaskerQueue makeQueue(int maxBatchSize) {
+        SiteTaskerQueue queue = new SiteTaskerQueue();
+        queue.setStarvationTracker(new StarvationTracker(0));
+        queue.setMaxBatchSize(maxBatchSize);
+        return queue;
+    }
+
+    public void testCoalescesConsecutiveUserProcedures() throws Exception {
+        SiteTaskerQueue queue = makeQueue(3);
+        SpProcedureTask sp[] = new SpProcedureTask[5];
+        for (int i = 0; i < 4; i++) {
+            sp[i] = makeSpTask(null, "Put");
+            queue.offer(sp[i]);
+        }
+        SpProcedureTask sysproc = makeSpTask(null, "@LoadSinglepartitionTable");
+        queue.offer(sysproc);
+        sp[4] = makeSpTask(null, "Get");
+        queue.offer(sp[4]);
+        FragmentTask fragment = makeFragmentTask();
+        queue.offer(fragment);
+
+        // no more than the batch size, in queue order
+        SiteTasker task = queue.take();
+        assertTrue(task instanceof SpProcedureBatchTask);
+        List<SpProcedureTask> batch = ((SpProcedureBatchTask) task).getTasks();
+        assertEquals(3, batch.size());
+        for (int i = 0; i < 3; i++) {
+            assertSame(sp[i], batch.get(i));
+        }
+        // a task with nothing batchable behind it runs on its own
+        assertSame(sp[3], queue.take());
+        // system procedures and fragments are never batched
+        assertSame(sysproc, queue.take());
+        assertSame(sp[4], queue.take());
+        assertSame(fragment, queue.take());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testBatchingOff() throws Exception {
+        SiteTaskerQueue queue = makeQueue(1);
+        SpProcedureTask first = makeSpTask(null, "Put");
+        SpProcedureTask second = makeSpTask(null, "Put");
+        queue.offer(first);
+        queue.offer(second);
+        assertSame(first, queue.take());
+        assertSame(second, queue.take());
+    }
+
+    public void testResponsesAfterUndoRelease() throws Exception {
+        Mailbox initiator = mock(Mailbox.class);
+        SiteProcedureConnection site = mock(SiteProcedureConnection.class);
+        doReturn(null).when(site).getProcedureRunner(anyString());
+
+        SpProcedureBatchTask batch = new SpProcedureBatchTask(makeSpTask(initiator, "Put"));
+        batch.add(makeSpTask(initiator, "Put"));
+        batch.add(makeSpTask(initiator, "Put"));
+        batch.run(site);
+
+        // every transaction completed before the deferred undo log release,
+        // and nobody heard about any of them before it
+        InOrder order = inOrder(site, initiator);
+        order.verify(site).setDeferUndoRelease(true);
+        order.verify(site, times(3)).getProcedureRunner("Put");
+        order.verify(site).setDeferUndoRelease(false);
+        order.verify(initiator, times(3)).deliver(any(VoltMessage.class));
+        for (SpProcedureTask task : batch.getTasks()) {
+            assertTrue(task.getTransactionState().isDone());
+        }
+    }
+
+    public void testIsBatchable() throws Exception {
+        assertTrue(SpProcedureBatchTask.isBatchable(makeSpTask(null, "Put")));
+        assertFalse(SpProcedureBatchTask.isBatchable(makeSpTask(null, "@AdHoc_RO_SP")));
+        assertFalse(SpProcedureBatchTask.isBatchable(makeFragmentTask()));
+        assertFalse(SpProcedureBatchTask.isBatchable(new SpProcedureBatchTask(makeSpTask(null, "Put"))));
+        assertFalse(SpProcedureBatchTask.isBatchable(null));
+    }
+}
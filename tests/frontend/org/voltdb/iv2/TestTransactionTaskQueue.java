@@ -27,7 +27,17 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.TestCase;
 
@@ -196,4 +206,124 @@ public class TestTransactionTaskQueue extends TestCase
             assertEquals(expected.getTxnId(), next_poll.getTxnId());
         }
     }
+
+    /*
+     * Several network threads offer while the site thread completes the
+     * multi-parts and flushes. Every task must come out exactly once, and
+     * nothing an offerer placed behind a multi-part may run before it is done.
+     * The work comes in short rounds that must each drain on their own, so an
+     * offer or flush left behind by the last thread out isn't rescued by the
+     * traffic that follows it.
+     */
+    @Test
+    public void testConcurrentOfferAndFlush() throws Exception
+    {
+        final int offerers = 4;
+        final int rounds = 500;
+        final int tasksPerRound = 6;
+        final int mpEvery = 3;
+        final SiteTaskerQueue task_queue = getSiteTaskerQueue();
+        final TransactionTaskQueue dut = new TransactionTaskQueue(task_queue, 0);
+
+        // Mock everything up front, stubbing isn't meant to race
+        final List<List<TransactionTask>> perOfferer = new ArrayList<List<TransactionTask>>();
+        final Map<TransactionTask, TransactionState> blockedBy =
+            new IdentityHashMap<TransactionTask, TransactionState>();
+        long localTxnId = 0;
+        long mpTxnId = 0;
+        for (int i = 0; i < offerers; i++) {
+            List<TransactionTask> tasks = new ArrayList<TransactionTask>();
+            TransactionState lastMp = null;
+            for (int j = 0; j < rounds * tasksPerRound; j++) {
+                TransactionTask next;
+                if (j % mpEvery == mpEvery - 1) {
+                    next = createFrag(localTxnId++, mpTxnId++, dut);
+                }
+                else {
+                    next = createSpProc(localTxnId++, dut);
+                }
+                if (lastMp != null) {
+                    blockedBy.put(next, lastMp);
+                }
+                if (!next.getTransactionState().isSinglePartition()) {
+                    lastMp = next.getTransactionState();
+                }
+                tasks.add(next);
+            }
+            perOfferer.add(tasks);
+        }
+
+        final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<String>();
+        final Set<TransactionTask> delivered = Collections.newSetFromMap(
+                Collections.synchronizedMap(new IdentityHashMap<TransactionTask, Boolean>()));
+        final AtomicBoolean shutdown = new AtomicBoolean(false);
+        Thread site = new Thread() {
+            @Override
+            public void run() {
+                while (!shutdown.get()) {
+                    TransactionTask task = (TransactionTask)task_queue.poll();
+                    if (task == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    if (!delivered.add(task)) {
+                        failures.add("delivered twice: " + task);
+                    }
+                    TransactionState barrier = blockedBy.get(task);
+                    if (barrier != null && !barrier.isDone()) {
+                        failures.add(task + " ran before the multi-part ahead of it completed");
+                    }
+                    if (!task.getTransactionState().isSinglePartition()) {
+                        task.getTransactionState().setDone();
+                    }
+                    dut.flush(task.getTxnId());
+                }
+            }
+        };
+        site.start();
+        try {
+            for (int round = 0; round < rounds; round++) {
+                final int from = round * tasksPerRound;
+                final CountDownLatch start = new CountDownLatch(1);
+                List<Thread> threads = new ArrayList<Thread>();
+                for (final List<TransactionTask> tasks : perOfferer) {
+                    Thread t = new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                start.await();
+                            }
+                            catch (InterruptedException e) {
+                                failures.add("offerer interrupted");
+                                return;
+                            }
+                            for (TransactionTask task : tasks.subList(from, from + tasksPerRound)) {
+                                dut.offer(task);
+                            }
+                        }
+                    };
+                    t.start();
+                    threads.add(t);
+                }
+                start.countDown();
+                for (Thread t : threads) {
+                    t.join();
+                }
+
+                int expected = (round + 1) * tasksPerRound * offerers;
+                long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+                while (delivered.size() < expected && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+                assertEquals("stranded offers or flushes in round " + round, expected, delivered.size());
+                assertTrue(failures.toString(), failures.isEmpty());
+            }
+        }
+        finally {
+            shutdown.set(true);
+            site.join();
+        }
+        assertEquals(0, dut.size());
+        assertNull(task_queue.poll());
+    }
 }
@@ -0,0 +1,206 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.iv2;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import org.voltdb.StarvationTracker;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.messaging.FragmentTaskMessage;
+import org.voltdb.messaging.Iv2InitiateTaskMessage;
+
+/**
+ * Measures how many tasks per second get through a TransactionTaskQueue when
+ * one thread offers a mix of single and multi-partition tasks, the way the
+ * initiator mailbox does, and another thread plays the site, completing each
+ * task it takes and flushing the queue.
+ *
+ * Compares the queue against the monitor based implementation it replaced.
+ *
+ * Usage: TransactionTaskQueueBenchmark [tasks] [one multi-part every n tasks] [rounds]
+ */
+public class TransactionTaskQueueBenchmark {
+
+    /**
+     * The previous implementation, every operation holds the queue's monitor
+     */
+    static class LockingTransactionTaskQueue extends TransactionTaskQueue {
+        private final Deque<TransactionTask> m_backlog = new ArrayDeque<TransactionTask>();
+
+        LockingTransactionTaskQueue(SiteTaskerQueue queue) {
+            super(queue, 0);
+        }
+
+        @Override
+        synchronized boolean offer(TransactionTask task) {
+            boolean retval = false;
+            if (!m_backlog.isEmpty()) {
+                if (task.getTxnId() != m_backlog.getFirst().getTxnId()) {
+                    m_backlog.addLast(task);
+                    retval = true;
+                } else {
+                    m_taskQueue.offer(task);
+                }
+            } else {
+                if (!task.getTransactionState().isSinglePartition()) {
+                    m_backlog.addLast(task);
+                    retval = true;
+                }
+                m_taskQueue.offer(task);
+            }
+            return retval;
+        }
+
+        @Override
+        synchronized int flush(long txnId) {
+            int offered = 0;
+            if (m_backlog.isEmpty() || !m_backlog.getFirst().getTransactionState().isDone()) {
+                return offered;
+            }
+            m_backlog.removeFirst();
+            Iterator<TransactionTask> iter = m_backlog.iterator();
+            while (iter.hasNext()) {
+                TransactionTask task = iter.next();
+                long lastQueuedTxnId = task.getTxnId();
+                m_taskQueue.offer(task);
+                ++offered;
+                if (task.getTransactionState().isSinglePartition()) {
+                    iter.remove();
+                    continue;
+                } else {
+                    while (iter.hasNext()) {
+                        task = iter.next();
+                        if (task.getTxnId() == lastQueuedTxnId) {
+                            iter.remove();
+                            m_taskQueue.offer(task);
+                            ++offered;
+                        }
+                    }
+                    break;
+                }
+            }
+            return offered;
+        }
+
+        @Override
+        synchronized int size() {
+            return m_backlog.size();
+        }
+    }
+
+    interface QueueFactory {
+        TransactionTaskQueue create(SiteTaskerQueue siteQueue);
+    }
+
+    private static TransactionTask[] createTasks(int count, int mpInterval, TransactionTaskQueue queue) {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName("Benchmark");
+        TransactionTask tasks[] = new TransactionTask[count];
+        long mpTxnId = 0;
+        for (int i = 0; i < count; i++) {
+            final long spHandle = i + 1;
+            if (mpInterval > 0 && i % mpInterval == 0) {
+                FragmentTaskMessage msg = new FragmentTaskMessage(0, 0, ++mpTxnId, spHandle, false, true, false);
+                msg.setSpHandle(spHandle);
+                tasks[i] = new FragmentTask(null, new ParticipantTransactionState(spHandle, msg), queue, msg, null);
+            } else {
+                Iv2InitiateTaskMessage msg = new Iv2InitiateTaskMessage(0, 0, Iv2InitiateTaskMessage.UNUSED_TRUNC_HANDLE,
+                        Iv2InitiateTaskMessage.UNUSED_MP_TXNID, spHandle, false, true, invocation, 0, 0, false);
+                msg.setSpHandle(spHandle);
+                tasks[i] = new SpProcedureTask(null, "Benchmark", queue, msg, null);
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * @return tasks per second
+     */
+    private static double run(QueueFactory factory, int count, int mpInterval) throws Exception {
+        final SiteTaskerQueue siteQueue = new SiteTaskerQueue();
+        siteQueue.setStarvationTracker(new StarvationTracker(0));
+        final TransactionTaskQueue queue = factory.create(siteQueue);
+        final TransactionTask tasks[] = createTasks(count, mpInterval, queue);
+
+        Thread site = new Thread("Benchmark site") {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < tasks.length; i++) {
+                        TransactionTask task = (TransactionTask) siteQueue.take();
+                        task.getTransactionState().setDone();
+                        queue.flush(task.getTxnId());
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        final long start = System.nanoTime();
+        site.start();
+        for (TransactionTask task : tasks) {
+            queue.offer(task);
+        }
+        site.join();
+        final long elapsed = System.nanoTime() - start;
+        if (queue.size() != 0) {
+            throw new RuntimeException("Backlog not drained, " + queue.size() + " tasks left");
+        }
+        return count / (elapsed / 1000000000.0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int mpInterval = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        QueueFactory locking = new QueueFactory() {
+            @Override
+            public TransactionTaskQueue create(SiteTaskerQueue siteQueue) {
+                return new LockingTransactionTaskQueue(siteQueue);
+            }
+        };
+        QueueFactory current = new QueueFactory() {
+            @Override
+            public TransactionTaskQueue create(SiteTaskerQueue siteQueue) {
+                return new TransactionTaskQueue(siteQueue, 0);
+            }
+        };
+
+        // warm up both so the JIT has compiled the paths being compared
+        run(locking, count / 10, mpInterval);
+        run(current, count / 10, mpInterval);
+
+        System.out.printf("%d tasks, one multi-part every %d%n", count, mpInterval);
+        for (int i = 0; i < rounds; i++) {
+            double lockingRate = run(locking, count, mpInterval);
+            double currentRate = run(current, count, mpInterval);
+            System.out.printf("round %d: synchronized %,.0f tasks/s, lock-free %,.0f tasks/s (%.2fx)%n",
+                    i, lockingRate, currentRate, currentRate / lockingRate);
+        }
+    }
+}
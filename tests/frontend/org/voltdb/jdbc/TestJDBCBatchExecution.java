@@ -0,0 +1,216 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.voltdb.ClientResponseImpl;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+import org.voltdb.client.ProcedureCallback;
+import org.voltdb.jdbc.JDBC4Statement.BatchExecution;
+import org.voltdb.jdbc.JDBC4Statement.VoltSQL;
+
+public class TestJDBCBatchExecution {
+
+    private static List<VoltSQL> batch(int size) throws Exception {
+        List<VoltSQL> batch = new ArrayList<VoltSQL>();
+        for (int i = 0; i < size; i++) {
+            batch.add(VoltSQL.parseSQL("update t set value = 'x' where id = " + i));
+        }
+        return batch;
+    }
+
+    private static ClientResponse updated(long count) {
+        VoltTable table = new VoltTable(new VoltTable.ColumnInfo("modified_tuples", VoltType.BIGINT));
+        table.addRow(count);
+        return new ClientResponseImpl(ClientResponse.SUCCESS, new VoltTable[] { table }, "");
+    }
+
+    /**
+     * Stands in for the database, the statement with the given SQL text is
+     * answered with the response the test picked for it.
+     */
+    private static abstract class FakeDatabase implements Answer<Boolean> {
+        final AtomicInteger submitted = new AtomicInteger();
+
+        abstract void respond(int index, ProcedureCallback callback) throws Exception;
+
+        @Override
+        public Boolean answer(InvocationOnMock invocation) throws Throwable {
+            final Object[] args = invocation.getArguments();
+            final ProcedureCallback callback = (ProcedureCallback) args[0];
+            final String sql = (String) args[4];
+            final int index = Integer.parseInt(sql.substring(sql.lastIndexOf(' ') + 1, sql.length() - 1));
+            submitted.incrementAndGet();
+            respond(index, callback);
+            return true;
+        }
+    }
+
+    private static JDBC4ClientConnection connection(FakeDatabase database) throws Exception {
+        JDBC4ClientConnection connection = mock(JDBC4ClientConnection.class);
+        doAnswer(database).when(connection).executeAsyncWithClientTimeout(
+                any(ProcedureCallback.class), anyString(), anyLong(), any(TimeUnit.class), (Object[]) anyVararg());
+        return connection;
+    }
+
+    @Test
+    public void testUpdateCountsInOrder() throws Exception {
+        final int maxInFlight = 3;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxSeen = new AtomicInteger();
+        final Random random = new Random();
+        FakeDatabase database = new FakeDatabase() {
+            @Override
+            void respond(final int index, final ProcedureCallback callback) {
+                final int outstanding = inFlight.incrementAndGet();
+                synchronized (maxSeen) {
+                    maxSeen.set(Math.max(maxSeen.get(), outstanding));
+                }
+                final long delay = random.nextInt(5);
+                // answer from another thread after a while so responses arrive out of order
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(delay);
+                            inFlight.decrementAndGet();
+                            callback.clientCallback(updated(index + 1));
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }.start();
+            }
+        };
+
+        BatchExecution execution = new BatchExecution(50, maxInFlight);
+        execution.execute(batch(50), connection(database), 10, TimeUnit.SECONDS);
+        int[] counts = execution.getUpdateCounts();
+        assertEquals(50, counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            assertEquals(i + 1, counts[i]);
+        }
+        assertEquals(50, database.submitted.get());
+        assertTrue(maxSeen.get() <= maxInFlight);
+    }
+
+    @Test
+    public void testDefaultKeepsStatementOrder() throws Exception {
+        final List<Integer> executed = new ArrayList<Integer>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxSeen = new AtomicInteger();
+        final Random random = new Random();
+        FakeDatabase database = new FakeDatabase() {
+            @Override
+            void respond(final int index, final ProcedureCallback callback) {
+                final int outstanding = inFlight.incrementAndGet();
+                synchronized (maxSeen) {
+                    maxSeen.set(Math.max(maxSeen.get(), outstanding));
+                }
+                final long delay = random.nextInt(3);
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(delay);
+                            synchronized (executed) {
+                                executed.add(index);
+                            }
+                            inFlight.decrementAndGet();
+                            callback.clientCallback(updated(1));
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }.start();
+            }
+        };
+
+        // a connection without the property runs one statement at a time
+        JDBC4ClientConnection client = connection(database);
+        JDBC4Connection connection = new JDBC4Connection(client, new Properties());
+        assertEquals(1, connection.batchMaxInFlight);
+
+        BatchExecution execution = new BatchExecution(20, connection.batchMaxInFlight);
+        execution.execute(batch(20), client, 10, TimeUnit.SECONDS);
+        assertEquals(20, execution.getUpdateCounts().length);
+        assertEquals(1, maxSeen.get());
+        synchronized (executed) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, executed.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void testFailureStopsTheBatch() throws Exception {
+        FakeDatabase database = new FakeDatabase() {
+            @Override
+            void respond(int index, ProcedureCallback callback) throws Exception {
+                if (index == 2) {
+                    callback.clientCallback(new ClientResponseImpl(ClientResponse.GRACEFUL_FAILURE,
+                                                                   new VoltTable[0], "constraint violation"));
+                } else {
+                    callback.clientCallback(updated(1));
+                }
+            }
+        };
+
+        BatchExecution execution = new BatchExecution(5, 1);
+        execution.execute(batch(5), connection(database), 10, TimeUnit.SECONDS);
+        try {
+            execution.getUpdateCounts();
+            fail("the failed statement should fail the batch");
+        } catch (BatchUpdateException e) {
+            assertArrayEquals(new int[] { 1, 1, Statement.EXECUTE_FAILED }, e.getUpdateCounts());
+        }
+        // nothing is sent after the failure was seen
+        assertEquals(3, database.submitted.get());
+    }
+}
@@ -35,6 +35,7 @@ import org.mockito.Mockito;
 import org.voltcore.logging.VoltLogger;
 import org.voltdb.LegacyHashinator;
 import org.voltdb.ParameterSet;
+import org.voltdb.StatementLatencyStats;
 import org.voltdb.TheHashinator.HashinatorConfig;
 import org.voltdb.TheHashinator.HashinatorType;
 import org.voltdb.VoltDB;
@@ -301,6 +302,62 @@ public class TestFragmentProgressUpdate extends TestCase {
         assertTrue(m_ee.m_peakMemoryInBytes > m_ee.m_currMemoryInBytes);
     }
 
+    public void testFragmentPhaseTimes() throws Exception {
+        m_ee.loadCatalog( 0, m_catalog.serialize());
+
+        m_warehousedata.clearRowData();
+        for (int i = 0; i < 1000; ++i) {
+            m_warehousedata.addRow(i, "name" + i, "st1", "st2", "city", "ST", "zip", 0, 0);
+        }
+        m_ee.loadTable(WAREHOUSE_TABLEID, m_warehousedata, 0, 0, 0, 0, false, false, WRITE_TOKEN);
+
+        Statement selectStmt = m_testProc.getStatements().getIgnoreCase("warehouse_select");
+        PlanFragment selectBottomFrag = null;
+        int i = 0;
+        for (PlanFragment f : selectStmt.getFragments()) {
+            if (i != 0) selectBottomFrag = f;
+            i++;
+        }
+        long fragId = CatalogUtil.getUniqueIdForFragment(selectBottomFrag);
+        ActivePlanRepository.clear();
+        ActivePlanRepository.addFragmentForTest(
+                fragId,
+                Encoder.decodeBase64AndDecompressToBytes(selectBottomFrag.getPlannodetree()),
+                selectStmt.getSqltext());
+        ParameterSet params = ParameterSet.emptyParameterSet();
+
+        // Both statements of the batch go to the EE in one call and each gets its own times
+        long[] phaseTimes = new long[2 * StatementLatencyStats.PHASES];
+        m_ee.setPhaseTimes(phaseTimes);
+        m_ee.executePlanFragments(
+                2,
+                new long[] { fragId, fragId },
+                null,
+                new ParameterSet[] { params, params },
+                new String[] { selectStmt.getSqltext(), selectStmt.getSqltext() },
+                3, 3, 2, 42, Long.MAX_VALUE);
+        m_ee.setPhaseTimes(null);
+        for (int stmt = 0; stmt < 2; stmt++) {
+            int base = stmt * StatementLatencyStats.PHASES;
+            assertTrue(phaseTimes[base + StatementLatencyStats.EXECUTION] > 0);
+            assertEquals(phaseTimes[base + StatementLatencyStats.PARAMETERS] +
+                         phaseTimes[base + StatementLatencyStats.EXECUTION] +
+                         phaseTimes[base + StatementLatencyStats.RESULTS],
+                         phaseTimes[base + StatementLatencyStats.TOTAL]);
+        }
+
+        // Nothing is timed once the array is taken away
+        long[] previous = Arrays.copyOf(phaseTimes, phaseTimes.length);
+        m_ee.executePlanFragments(
+                1,
+                new long[] { fragId },
+                null,
+                new ParameterSet[] { params },
+                new String[] { selectStmt.getSqltext() },
+                3, 3, 2, 43, Long.MAX_VALUE);
+        assertTrue(Arrays.equals(previous, phaseTimes));
+    }
+
     public void testProgressUpdateLogSqlStmt() throws Exception {
         verifyLongRunningQueries(50, 0, "item_crazy_join", 5, true, SqlTextExpectation.SQL_STATEMENT);
     }
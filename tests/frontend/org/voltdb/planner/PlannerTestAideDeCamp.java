@@ -61,6 +61,8 @@ public class PlannerTestAideDeCamp {
 
     private CompiledPlan m_currentPlan = null;
 
+    private DatabaseEstimates m_estimates = new DatabaseEstimates();
+
     /**
      * Loads the schema at ddlurl and setups a voltcompiler / hsql instance.
      * @param ddlurl URL to the schema/ddl file.
@@ -84,6 +86,10 @@ public class PlannerTestAideDeCamp {
         return db;
     }
 
+    public void setEstimates(DatabaseEstimates estimates) {
+        m_estimates = estimates;
+    }
+
     /**
      * Compile a statement and return the head of the plan.
      * @param sql
@@ -133,7 +139,7 @@ public class PlannerTestAideDeCamp {
         // name will look like "basename-stmt-#"
         String name = catalogStmt.getParent().getTypeName() + "-" + catalogStmt.getTypeName();
 
-        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates estimates = m_estimates;
         TrivialCostModel costModel = new TrivialCostModel();
         StatementPartitioning partitioning;
         if (inferPartitioning) {
@@ -28,6 +28,7 @@ import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
 import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
 import org.voltdb.compiler.DeterminismMode;
 import org.voltdb.plannodes.AbstractPlanNode;
 import org.voltdb.types.PlanNodeType;
@@ -266,6 +267,10 @@ public class PlannerTestCase extends TestCase {
         return m_aide.getDatabase();
     }
 
+    protected void setEstimates(DatabaseEstimates estimates) {
+        m_aide.setEstimates(estimates);
+    }
+
     protected void printExplainPlan(List<AbstractPlanNode> planNodes) {
         for (AbstractPlanNode apn: planNodes) {
             System.out.println(apn.toExplainPlanString());
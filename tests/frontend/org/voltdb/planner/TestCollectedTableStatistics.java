@@ -0,0 +1,137 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.util.Map;
+
+import org.voltdb.VoltTable;
+import org.voltdb.catalog.Table;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+import org.voltdb.utils.CatalogUtil;
+import org.voltdb.utils.HyperLogLog;
+
+public class TestCollectedTableStatistics extends PlannerTestCase {
+
+    private static final int ROWS = 20000;
+
+    @Override
+    protected void setUp() throws Exception {
+        final boolean planForSinglePartitionFalse = false;
+        setupSchema(TestCollectedTableStatistics.class.getResource("testplans-indexselection-ddl.sql"),
+                    "testcollectedtablestatistics",
+                    planForSinglePartitionFalse);
+    }
+
+    // a is unique, b has 10 values, c has 100, d has 1 and e has 2
+    private VoltTable makeRows(Table table, int first, int last) {
+        VoltTable rows = CatalogUtil.getVoltTable(table);
+        for (long i = first; i < last; ++i) {
+            rows.addRow(i, i % 10, i % 100, 0, i % 2);
+        }
+        return rows;
+    }
+
+    private CollectedTableStatistics collectInTwoPartitions() {
+        Table table = getDatabase().getTables().get("T");
+        CollectedTableStatistics partition0 = new CollectedTableStatistics(table);
+        partition0.addRows(makeRows(table, 0, ROWS / 4));
+        CollectedTableStatistics partition1 = new CollectedTableStatistics(table);
+        partition1.addRows(makeRows(table, ROWS / 4, ROWS));
+        partition0.merge(partition1);
+        return partition0;
+    }
+
+    private static void assertWithin(double expected, double actual, double tolerance) {
+        assertTrue("expected " + expected + " but got " + actual,
+                   Math.abs(expected - actual) <= expected * tolerance);
+    }
+
+    public void testSketchMerge() {
+        HyperLogLog left = new HyperLogLog(11);
+        HyperLogLog right = new HyperLogLog(11);
+        for (long i = 0; i < 50000; ++i) {
+            left.addHash(HyperLogLog.combine(0, i));
+            right.addHash(HyperLogLog.combine(0, i + 25000));
+        }
+        assertWithin(50000, left.cardinality(), 0.05);
+        left.merge(right);
+        assertWithin(75000, left.cardinality(), 0.05);
+
+        HyperLogLog small = new HyperLogLog(11);
+        for (int i = 0; i < 3; ++i) {
+            small.addHash(HyperLogLog.combine(0, i));
+            small.addHash(HyperLogLog.combine(0, i));
+        }
+        assertEquals(3, small.cardinality());
+    }
+
+    public void testMergedEstimates() {
+        CollectedTableStatistics stats = collectInTwoPartitions();
+
+        // ship the statistics around as they would be between hosts
+        VoltTable flattened = CollectedTableStatistics.constructStatisticsTable();
+        stats.flattenToTable(flattened);
+        Map<String, CollectedTableStatistics> rebuilt =
+                CollectedTableStatistics.fromTable(getDatabase(), flattened);
+        assertEquals(1, rebuilt.size());
+        assertEquals(ROWS, rebuilt.get("T").getRowCount());
+
+        DatabaseEstimates estimates = DatabaseEstimates.fromCollectedStatistics(rebuilt.values());
+        DatabaseEstimates.TableEstimates tableEst = estimates.getEstimatesForTable("T");
+        assertTrue(tableEst.fromStatistics);
+        assertEquals(ROWS, tableEst.maxTuples);
+
+        assertWithin(ROWS, tableEst.getEstimatesForColumn("A").distinctCount, 0.05);
+        assertEquals(10, tableEst.getEstimatesForColumn("B").distinctCount);
+        assertEquals(1, tableEst.getEstimatesForColumn("D").distinctCount);
+        assertEquals(2, tableEst.getEstimatesForColumn("E").distinctCount);
+
+        EquiDepthHistogram histogram = tableEst.getEstimatesForColumn("A").histogram;
+        assertNotNull(histogram);
+        assertWithin(0.5, histogram.estimateRangeSelectivity(-Double.MAX_VALUE, ROWS / 2), 0.15);
+        assertEquals(0.0, histogram.estimateRangeSelectivity(ROWS * 2, ROWS * 3));
+
+        DatabaseEstimates.IndexEstimates wide = tableEst.getEstimatesForIndex("IDX_2_TREE");
+        assertEquals(2, wide.getDistinctPrefixCount(1));
+        assertWithin(ROWS, wide.getDistinctPrefixCount(2), 0.05);
+        DatabaseEstimates.IndexEstimates cover = tableEst.getEstimatesForIndex("COVER2_TREE");
+        assertWithin(ROWS, cover.getDistinctPrefixCount(1), 0.05);
+    }
+
+    public void testCollectedStatisticsDriveIndexChoice() {
+        final String sql = "select * from t where a = ? and e = ?;";
+        CollectedTableStatistics stats = collectInTwoPartitions();
+        java.util.List<CollectedTableStatistics> all = java.util.Collections.singletonList(stats);
+        setEstimates(DatabaseEstimates.fromCollectedStatistics(all));
+
+        AbstractPlanNode pn = compile(sql);
+        while ( ! (pn instanceof IndexScanPlanNode)) {
+            pn = pn.getChild(0);
+        }
+        // e only has two values, so the index leading with the unique column wins
+        assertEquals("COVER2_TREE", ((IndexScanPlanNode) pn).getTargetIndexName());
+    }
+}
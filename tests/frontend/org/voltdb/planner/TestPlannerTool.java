@@ -25,12 +25,19 @@ package org.voltdb.planner;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.TestCase;
 
 import org.voltdb.CatalogContext;
 import org.voltdb.benchmark.tpcc.TPCCProjectBuilder;
 import org.voltdb.catalog.Catalog;
+import org.voltdb.compiler.AdHocCompilerCache;
 import org.voltdb.compiler.AdHocPlannedStatement;
 import org.voltdb.compiler.PlannerTool;
 import org.voltdb.compiler.VoltProjectBuilder;
@@ -163,4 +170,65 @@ public class TestPlannerTool extends TestCase {
         // would return a Stream Closed error
         m_pt.planSqlForTest("select * from A;");
     }
+
+    public void testConcurrentPlanning() throws Exception {
+        TPCCProjectBuilder builder = new TPCCProjectBuilder();
+        builder.addAllDefaults();
+        final File jar = new File("tpcc-oop.jar");
+        jar.deleteOnExit();
+        builder.compile("tpcc-oop.jar");
+        byte[] bytes = MiscUtils.fileToBytes(new File("tpcc-oop.jar"));
+        String serializedCatalog = CatalogUtil.getSerializedCatalogStringFromJar(CatalogUtil.loadAndUpgradeCatalogFromJar(bytes).getFirst());
+        Catalog catalog = new Catalog();
+        catalog.execute(serializedCatalog);
+        CatalogContext context = new CatalogContext(0, 0, catalog, bytes, new byte[] {}, 0);
+
+        final String[] queries = new String[] {
+            "select * from warehouse where w_id = 1;",
+            "select c_last, count(*) from customer group by c_last order by c_last;",
+            "select * from orders, order_line where o_w_id = ol_w_id and o_id = ol_o_id and o_w_id = 2;",
+            "select i_id from item where i_price < (select avg(i_price) from item) order by i_id limit 10;",
+            "select no_o_id from new_order where no_w_id = 3 union select o_id from orders where o_w_id = 3;",
+            "select * from district where d_w_id in (1, 2, 3) order by d_id;",
+        };
+
+        // The plans of the statements planned one at a time
+        m_pt = new PlannerTool(context.cluster, context.database, context.getCatalogHash());
+        final List<String> expected = new ArrayList<String>();
+        for (String query : queries) {
+            expected.add(m_pt.planSqlForTest(query).toString());
+        }
+
+        // plan them again on several threads at once, with an empty plan cache
+        AdHocCompilerCache.clearHashCache();
+        m_pt = new PlannerTool(context.cluster, context.database, context.getCatalogHash());
+        final int threads = 4;
+        ExecutorService es = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                results.add(es.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        List<String> plans = new ArrayList<String>();
+                        for (int i = 0; i < queries.length; i++) {
+                            plans.add(null);
+                        }
+                        for (int i = 0; i < queries.length; i++) {
+                            int q = (i + offset) % queries.length;
+                            plans.set(q, m_pt.planSqlForTest(queries[q]).toString());
+                        }
+                        return plans;
+                    }
+                }));
+            }
+            for (Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        }
+        finally {
+            es.shutdown();
+        }
+    }
 }
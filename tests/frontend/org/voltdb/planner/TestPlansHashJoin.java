@@ -0,0 +1,203 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.planner;
+
+import java.util.List;
+
+import org.json_voltpatches.JSONObject;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.HashJoinPlanNode;
+import org.voltdb.plannodes.PlanNodeTree;
+import org.voltdb.types.JoinType;
+import org.voltdb.types.PlanNodeType;
+
+public class TestPlansHashJoin extends PlannerTestCase {
+
+    private boolean m_savedGuard;
+
+    @Override
+    protected void setUp() throws Exception {
+        setupSchema(TestPlansHashJoin.class.getResource("testplans-join-ddl.sql"),
+                    "testplanshashjoin", false);
+        m_savedGuard = PlanAssembler.HANDLE_HASH_JOINS;
+        PlanAssembler.HANDLE_HASH_JOINS = true;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PlanAssembler.HANDLE_HASH_JOINS = m_savedGuard;
+        super.tearDown();
+    }
+
+    private void setTableSizes(long r1Tuples, long r2Tuples) {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates.TableEstimates r1 = estimates.getEstimatesForTable("R1");
+        r1.maxTuples = r1.minTuples = r1Tuples;
+        r1.fromStatistics = true;
+        DatabaseEstimates.TableEstimates r2 = estimates.getEstimatesForTable("R2");
+        r2.maxTuples = r2.minTuples = r2Tuples;
+        r2.fromStatistics = true;
+        setEstimates(estimates);
+    }
+
+    private HashJoinPlanNode findHashJoin(AbstractPlanNode pn) {
+        List<AbstractPlanNode> joins = pn.findAllNodesOfType(PlanNodeType.HASHJOIN);
+        if (joins.isEmpty()) {
+            return null;
+        }
+        assertEquals(1, joins.size());
+        return (HashJoinPlanNode) joins.get(0);
+    }
+
+    public void testNoHashJoinWithoutStatistics() {
+        AbstractPlanNode pn = compile("select * from R1, R2 where R1.C = R2.A;");
+        assertNull(findHashJoin(pn));
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+    }
+
+    public void testNoHashJoinWhenDisabled() {
+        setTableSizes(100000, 100000);
+        PlanAssembler.HANDLE_HASH_JOINS = false;
+        AbstractPlanNode pn = compile("select * from R1, R2 where R1.C = R2.A;");
+        assertNull(findHashJoin(pn));
+        assertFalse(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+    }
+
+    public void testLargeUnindexedEquiJoin() throws Exception {
+        setTableSizes(100000, 100000);
+        AbstractPlanNode pn = compile("select * from R1, R2 where R1.C = R2.A;");
+        HashJoinPlanNode hj = findHashJoin(pn);
+        assertNotNull(hj);
+        assertEquals(JoinType.INNER, hj.getJoinType());
+        assertEquals(1, hj.getOuterHashExpressions().size());
+        assertEquals(1, hj.getInnerHashExpressions().size());
+        // The equality is matched through the hash table only
+        assertNull(hj.getJoinPredicate());
+        assertTrue(pn.toExplainPlanString().contains("HASH INNER JOIN"));
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+
+        // The hash expressions survive the trip to the EE
+        String json = new PlanNodeTree(pn).toJSONString();
+        PlanNodeTree loaded = new PlanNodeTree();
+        loaded.loadFromJSONPlan(new JSONObject(json), getDatabase());
+        HashJoinPlanNode loadedHj = findHashJoin(loaded.getRootPlanNode());
+        assertEquals(1, loadedHj.getOuterHashExpressions().size());
+        assertEquals(1, loadedHj.getInnerHashExpressions().size());
+        assertEquals(json, loaded.toJSONString());
+    }
+
+    public void testLeftJoinKeepsNonEqualityClauses() {
+        setTableSizes(100000, 100000);
+        AbstractPlanNode pn = compile("select * from R1 left join R2 on R1.C = R2.A and R1.D > R2.C;");
+        HashJoinPlanNode hj = findHashJoin(pn);
+        assertNotNull(hj);
+        assertEquals(JoinType.LEFT, hj.getJoinType());
+        assertEquals(1, hj.getOuterHashExpressions().size());
+        assertEquals(PlanNodeType.SEQSCAN, hj.getChild(0).getPlanNodeType());
+        assertNotNull(hj.getJoinPredicate());
+    }
+
+    public void testFullJoin() {
+        setTableSizes(100000, 100000);
+        AbstractPlanNode pn = compile("select * from R1 full join R2 on R1.C = R2.A where R2.C is null;");
+        HashJoinPlanNode hj = findHashJoin(pn);
+        assertNotNull(hj);
+        assertEquals(JoinType.FULL, hj.getJoinType());
+        assertNotNull(hj.getWherePredicate());
+    }
+
+    public void testSingleOuterRowKeepsNestLoop() {
+        setTableSizes(1, 100000);
+        AbstractPlanNode pn = compile("select * from R1, R2 where R1.C = R2.A;");
+        assertNull(findHashJoin(pn));
+    }
+
+    public void testNestLoopCostsInnerScanPerOuterRow() {
+        PlanAssembler.HANDLE_HASH_JOINS = false;
+        setTableSizes(1000, 2000);
+        AbstractPlanNode pn = compile("select * from R1, R2 where R1.C = R2.A;");
+        List<AbstractPlanNode> joins = pn.findAllNodesOfType(PlanNodeType.NESTLOOP);
+        assertEquals(1, joins.size());
+        AbstractPlanNode nlj = joins.get(0);
+        // with statistics the inner table is scanned once per outer tuple
+        long outerTuples = nlj.getChild(0).getEstimatedOutputTupleCount();
+        long innerScan = nlj.getChild(1).getEstimatedProcessedTupleCount();
+        assertTrue(outerTuples > 1);
+        assertTrue(nlj.getEstimatedProcessedTupleCount() >= outerTuples * innerScan);
+    }
+
+    public void testStatisticsOnOneTableOnly() {
+        // R2 keeps the default estimates, so the join sides can't be compared
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates.TableEstimates r1 = estimates.getEstimatesForTable("R1");
+        r1.maxTuples = r1.minTuples = 100000;
+        r1.fromStatistics = true;
+        setEstimates(estimates);
+
+        AbstractPlanNode pn = compile("select * from R1, R2 where R1.C = R2.A;");
+        assertNull(findHashJoin(pn));
+        List<AbstractPlanNode> joins = pn.findAllNodesOfType(PlanNodeType.NESTLOOP);
+        assertEquals(1, joins.size());
+        // and the nested loop join keeps the cost it has without statistics
+        AbstractPlanNode nlj = joins.get(0);
+        assertTrue(nlj.getEstimatedProcessedTupleCount() <=
+                nlj.getChild(0).getEstimatedProcessedTupleCount() +
+                nlj.getChild(1).getEstimatedProcessedTupleCount());
+    }
+
+    private void setJoinIndexTableSizes(long r1Tuples, long r3Tuples) {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates.TableEstimates r1 = estimates.getEstimatesForTable("R1");
+        r1.maxTuples = r1.minTuples = r1Tuples;
+        r1.fromStatistics = true;
+        DatabaseEstimates.TableEstimates r3 = estimates.getEstimatesForTable("R3");
+        r3.maxTuples = r3.minTuples = r3Tuples;
+        r3.fromStatistics = true;
+        setEstimates(estimates);
+    }
+
+    public void testIndexJoinWinsWithStatistics() {
+        // charging the rescans keeps the index on R3.A ahead of the nested loop join
+        PlanAssembler.HANDLE_HASH_JOINS = false;
+        setJoinIndexTableSizes(100000, 100000);
+        AbstractPlanNode pn = compile("select * from R1, R3 where R1.C = R3.A;");
+        assertEquals(1, pn.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX).size());
+        assertTrue(pn.findAllNodesOfType(PlanNodeType.NESTLOOP).isEmpty());
+
+        // and ahead of a hash join that would have to read all of R3 for a few outer rows
+        PlanAssembler.HANDLE_HASH_JOINS = true;
+        setJoinIndexTableSizes(10, 100000);
+        pn = compile("select * from R1, R3 where R1.C = R3.A;");
+        assertEquals(1, pn.findAllNodesOfType(PlanNodeType.NESTLOOPINDEX).size());
+        assertNull(findHashJoin(pn));
+    }
+
+    public void testNoHashJoinWithoutEquality() {
+        setTableSizes(100000, 100000);
+        AbstractPlanNode pn = compile("select * from R1, R2 where R1.C > R2.A;");
+        assertNull(findHashJoin(pn));
+    }
+}
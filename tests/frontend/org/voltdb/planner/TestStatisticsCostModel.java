@@ -0,0 +1,130 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.planner;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.voltdb.VoltType;
+import org.voltdb.catalog.Column;
+import org.voltdb.catalog.Database;
+import org.voltdb.compiler.DatabaseEstimates;
+import org.voltdb.plannodes.AbstractPlanNode;
+import org.voltdb.plannodes.IndexScanPlanNode;
+
+public class TestStatisticsCostModel extends PlannerTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        final boolean planForSinglePartitionFalse = false;
+        setupSchema(TestStatisticsCostModel.class.getResource("testplans-indexselection-ddl.sql"),
+                    "teststatisticscostmodel",
+                    planForSinglePartitionFalse);
+    }
+
+    private String scannedIndex(String sql) {
+        AbstractPlanNode pn = compile(sql);
+        while ( ! (pn instanceof IndexScanPlanNode)) {
+            assertEquals(1, pn.getChildCount());
+            pn = pn.getChild(0);
+        }
+        return ((IndexScanPlanNode) pn).getTargetIndexName();
+    }
+
+    public void testDistinctCountsDriveIndexChoice() {
+        final String sql = "select * from t where a = ? and e = ?;";
+
+        // Without statistics, the index covering more columns wins.
+        assertEquals("IDX_2_TREE", scannedIndex(sql));
+
+        // With statistics showing that the wider index barely narrows the scan,
+        // the index on the highly selective leading column wins.
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        DatabaseEstimates.TableEstimates tableEst = estimates.getEstimatesForTable("T");
+        tableEst.maxTuples = tableEst.minTuples = 1000000;
+        tableEst.fromStatistics = true;
+        DatabaseEstimates.IndexEstimates wide = new DatabaseEstimates.IndexEstimates();
+        wide.distinctPrefixCounts = new long[] { 2, 4, 8, 16, 32 };
+        tableEst.indexes.put("IDX_2_TREE", wide);
+        DatabaseEstimates.IndexEstimates narrow = new DatabaseEstimates.IndexEstimates();
+        narrow.distinctPrefixCounts = new long[] { 1000000, 1000000 };
+        tableEst.indexes.put("COVER2_TREE", narrow);
+        setEstimates(estimates);
+
+        assertEquals("COVER2_TREE", scannedIndex(sql));
+    }
+
+    public void testStatisticsArePerTable() {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        estimates.getEstimatesForTable("T").fromStatistics = true;
+        estimates.getEstimatesForTable("L");
+        assertTrue(estimates.hasStatistics(Arrays.asList("T")));
+        assertFalse(estimates.hasStatistics(Arrays.asList("T", "L")));
+        assertFalse(estimates.hasStatistics(Arrays.asList("T", "A")));
+        assertFalse(estimates.hasStatistics(Collections.<String>emptyList()));
+    }
+
+    public void testCatalogUpdateDropsChangedEstimates() {
+        DatabaseEstimates estimates = new DatabaseEstimates();
+        for (String tableName : new String[] { "T", "L", "A" }) {
+            DatabaseEstimates.TableEstimates tableEst = estimates.getEstimatesForTable(tableName);
+            tableEst.maxTuples = tableEst.minTuples = 1234;
+            tableEst.fromStatistics = true;
+        }
+        estimates.getEstimatesForTable("T").indexes.put("IDX_2_TREE", new DatabaseEstimates.IndexEstimates());
+        estimates.getEstimatesForTable("T").indexes.put("COVER2_TREE", new DatabaseEstimates.IndexEstimates());
+
+        Database before = getDatabase();
+        Database after = before.getCatalog().deepCopy().getClusters().get("cluster")
+                               .getDatabases().get("database");
+        // a column of L changes type, A is dropped and T loses an index
+        Column column = after.getTables().get("L").getColumns().get("A");
+        column.setType(column.getType() == VoltType.BIGINT.getValue() ?
+                       VoltType.INTEGER.getValue() : VoltType.BIGINT.getValue());
+        after.getTables().delete("A");
+        after.getTables().get("T").getIndexes().delete("COVER2_TREE");
+
+        DatabaseEstimates retained = estimates.retainUnchanged(before, after);
+        assertTrue(retained.hasStatistics(Arrays.asList("T")));
+        assertEquals(1234, retained.getEstimatesForTable("T").maxTuples);
+        assertNotNull(retained.getEstimatesForTable("T").getEstimatesForIndex("IDX_2_TREE"));
+        assertNull(retained.getEstimatesForTable("T").getEstimatesForIndex("COVER2_TREE"));
+        assertFalse(retained.hasStatistics(Arrays.asList("L")));
+        assertFalse(retained.hasStatistics(Arrays.asList("A")));
+    }
+
+    public void testHistogramSelectivity() {
+        // 100 rows: 50 of them equal to 1, the rest spread evenly over (1, 100]
+        EquiDepthHistogram histogram = new EquiDepthHistogram(1,
+                new double[] { 1, 50, 100 },
+                new long[] { 50, 25, 25 },
+                new long[] { 1, 25, 25 });
+        assertEquals(100, histogram.getTotalRows());
+        assertEquals(0.5, histogram.estimateEqualitySelectivity(1), 0.0001);
+        assertEquals(0.01, histogram.estimateEqualitySelectivity(75), 0.0001);
+        assertEquals(0.0, histogram.estimateEqualitySelectivity(500), 0.0001);
+        assertEquals(1.0, histogram.estimateRangeSelectivity(-Double.MAX_VALUE, Double.MAX_VALUE), 0.0001);
+        assertEquals(0.25, histogram.estimateRangeSelectivity(51, 100), 0.01);
+    }
+}
@@ -164,6 +164,16 @@ public class TestSystemProcedureSuite extends RegressionSuite {
         assertEquals(results[0].get(0, VoltType.BIGINT), new Long(0));
     }
 
+    public void testAnalyze() throws IOException, ProcCallException {
+        Client client = getClient();
+        VoltTable results[] = client.callProcedure("@Analyze").getResults();
+        assertEquals(1, results.length);
+        assertTrue(results[0].getRowCount() > 0);
+        while (results[0].advanceRow()) {
+            assertEquals("SUCCESS", results[0].getString("RESULT"));
+        }
+    }
+
     public void testLoadMultipartitionTableProceduresUpsertWithNoPrimaryKey() throws Exception{
         // using insert for @Load*Table
         byte upsertMode = (byte) 1;
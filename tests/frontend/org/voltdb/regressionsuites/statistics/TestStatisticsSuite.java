@@ -459,7 +459,7 @@ public class TestStatisticsSuite extends StatisticsTestSuiteBase {
         System.out.println("\n\nTESTING STARVATION STATS\n\n\n");
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[10];
+        ColumnInfo[] expectedSchema = new ColumnInfo[13];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -470,6 +470,9 @@ public class TestStatisticsSuite extends StatisticsTestSuiteBase {
         expectedSchema[7] = new ColumnInfo("MIN", VoltType.BIGINT);
         expectedSchema[8] = new ColumnInfo("MAX", VoltType.BIGINT);
         expectedSchema[9] = new ColumnInfo("STDDEV", VoltType.BIGINT);
+        expectedSchema[10] = new ColumnInfo("SPINS", VoltType.BIGINT);
+        expectedSchema[11] = new ColumnInfo("YIELDS", VoltType.BIGINT);
+        expectedSchema[12] = new ColumnInfo("PARKS", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
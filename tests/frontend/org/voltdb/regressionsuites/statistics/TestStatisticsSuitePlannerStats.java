@@ -48,7 +48,7 @@ public class TestStatisticsSuitePlannerStats extends StatisticsTestSuiteBase {
         System.out.println("\n\nTESTING PLANNER STATS\n\n\n");
         Client client  = getClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[14];
+        ColumnInfo[] expectedSchema = new ColumnInfo[20];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -63,6 +63,12 @@ public class TestStatisticsSuitePlannerStats extends StatisticsTestSuiteBase {
         expectedSchema[11] = new ColumnInfo("PLAN_TIME_MAX", VoltType.BIGINT);
         expectedSchema[12] = new ColumnInfo("PLAN_TIME_AVG", VoltType.BIGINT);
         expectedSchema[13] = new ColumnInfo("FAILURES", VoltType.BIGINT);
+        expectedSchema[14] = new ColumnInfo("QUEUE_DEPTH", VoltType.INTEGER);
+        expectedSchema[15] = new ColumnInfo("QUEUE_TIME_AVG", VoltType.BIGINT);
+        expectedSchema[16] = new ColumnInfo("QUEUE_TIME_MAX", VoltType.BIGINT);
+        expectedSchema[17] = new ColumnInfo("REJECTED", VoltType.BIGINT);
+        expectedSchema[18] = new ColumnInfo("CACHE_EVICTIONS", VoltType.BIGINT);
+        expectedSchema[19] = new ColumnInfo("CACHE_NOT_ADMITTED", VoltType.BIGINT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         VoltTable[] results = null;
@@ -103,6 +109,7 @@ public class TestStatisticsSuitePlannerStats extends StatisticsTestSuiteBase {
         long plan_time_max_max = Long.MIN_VALUE;
         long plan_time_avg_tot = 0;
         int failures = 0;
+        long rejected = 0;
         while (stats.advanceRow()) {
             cache1_level += (Integer)stats.get("CACHE1_LEVEL", VoltType.INTEGER);
             cache2_level += (Integer)stats.get("CACHE2_LEVEL", VoltType.INTEGER);
@@ -113,6 +120,7 @@ public class TestStatisticsSuitePlannerStats extends StatisticsTestSuiteBase {
             plan_time_max_max = Math.max(plan_time_max_max, (Long)stats.get("PLAN_TIME_MAX", VoltType.BIGINT));
             plan_time_avg_tot += (Long)stats.get("PLAN_TIME_AVG", VoltType.BIGINT);
             failures += (Integer)stats.get("FAILURES", VoltType.INTEGER);
+            rejected += (Long)stats.get("REJECTED", VoltType.BIGINT);
             siteIds.add((Long)stats.get("SITE_ID", VoltType.BIGINT));
         }
 
@@ -141,6 +149,7 @@ public class TestStatisticsSuitePlannerStats extends StatisticsTestSuiteBase {
         assertTrue("Failed total PLAN_TIME_MAX < 100,000,000,000, value was: " + plan_time_max_max, plan_time_max_max < 100000000000L);
         assertTrue("Failed total PLAN_TIME_AVG > 0, value was: " + plan_time_avg_tot, plan_time_avg_tot > 0);
         assertTrue("Failed total FAILURES == 0, value was: " + failures, failures == 0);
+        assertEquals(0, rejected);
     }
 
     //
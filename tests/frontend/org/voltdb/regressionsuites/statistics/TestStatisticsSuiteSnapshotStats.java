@@ -50,7 +50,7 @@ public class TestStatisticsSuiteSnapshotStats extends StatisticsTestSuiteBase {
 
         Client client  = getFullyConnectedClient();
 
-        ColumnInfo[] expectedSchema = new ColumnInfo[15];
+        ColumnInfo[] expectedSchema = new ColumnInfo[17];
         expectedSchema[0] = new ColumnInfo("TIMESTAMP", VoltType.BIGINT);
         expectedSchema[1] = new ColumnInfo("HOST_ID", VoltType.INTEGER);
         expectedSchema[2] = new ColumnInfo("HOSTNAME", VoltType.STRING);
@@ -66,6 +66,8 @@ public class TestStatisticsSuiteSnapshotStats extends StatisticsTestSuiteBase {
         expectedSchema[12] = new ColumnInfo("THROUGHPUT", VoltType.FLOAT);
         expectedSchema[13] = new ColumnInfo("RESULT", VoltType.STRING);
         expectedSchema[14] = new ColumnInfo("TYPE", VoltType.STRING);
+        expectedSchema[15] = new ColumnInfo("WRITER", VoltType.STRING);
+        expectedSchema[16] = new ColumnInfo("WRITER_THROUGHPUT", VoltType.FLOAT);
         VoltTable expectedTable = new VoltTable(expectedSchema);
 
         // Finagle a snapshot
@@ -0,0 +1,176 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.voltdb.sysprocs.saverestore;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+import org.voltcore.utils.DBBPool;
+import org.voltcore.utils.DBBPool.BBContainer;
+import org.voltdb.DefaultSnapshotDataTarget;
+import org.voltdb.EELibraryLoader;
+import org.voltdb.PrivateVoltTableFactory;
+import org.voltdb.SnapshotSiteProcessor;
+import org.voltdb.VoltTable;
+import org.voltdb.VoltType;
+
+public class TestTableSaveFile extends TestCase {
+
+    private static final int ROWS_PER_CHUNK = 100;
+    private static final int VALUE_LENGTH = 1000;
+
+    private File m_file;
+    private long m_savedMapWindowSize;
+
+    @Override
+    public void setUp() throws Exception {
+        // the CRCs of the chunks are computed by the native library
+        EELibraryLoader.loadExecutionEngineLibrary(true);
+        m_file = File.createTempFile("TestTableSaveFile", ".vpt");
+        m_file.deleteOnExit();
+        m_savedMapWindowSize = TableSaveFile.m_mapWindowSize;
+    }
+
+    @Override
+    public void tearDown() {
+        TableSaveFile.m_mapWindowSize = m_savedMapWindowSize;
+        m_file.delete();
+    }
+
+    private static VoltTable schema() {
+        return new VoltTable(new VoltTable.ColumnInfo("ID", VoltType.BIGINT),
+                             new VoltTable.ColumnInfo("VALUE", VoltType.STRING));
+    }
+
+    private static String value(long id) {
+        // random letters compress poorly, so the chunks stay large
+        Random random = new Random(id);
+        char chars[] = new char[VALUE_LENGTH];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Write a compressed snapshot file of one partition the way a snapshot does,
+     * a chunk is the tuple data of a VoltTable behind the partition id.
+     */
+    private void writeFile(int chunks) throws Exception {
+        DefaultSnapshotDataTarget target = new DefaultSnapshotDataTarget(m_file, 0, "cluster", "database",
+                "T", 1, false, Arrays.asList(0), schema(), 1, System.currentTimeMillis());
+        long id = 0;
+        for (int i = 0; i < chunks; i++) {
+            VoltTable rows = schema();
+            for (int j = 0; j < ROWS_PER_CHUNK; j++, id++) {
+                rows.addRow(id, value(id));
+            }
+            ByteBuffer table = PrivateVoltTableFactory.getTableDataReference(rows);
+            table.position(4 + table.getInt(0));
+
+            final BBContainer chunk = DBBPool.allocateDirect(SnapshotSiteProcessor.m_snapshotBufferLength);
+            chunk.b().putInt(0);
+            chunk.b().put(table);
+            chunk.b().flip();
+            target.write(new Callable<BBContainer>() {
+                @Override
+                public BBContainer call() {
+                    return chunk;
+                }
+            }, 0).get();
+        }
+        target.close();
+    }
+
+    /**
+     * Read the rows back, checking their order and values.
+     *
+     * @return the number of rows read
+     */
+    private long readFile() throws IOException {
+        FileInputStream fis = new FileInputStream(m_file);
+        TableSaveFile saveFile = new TableSaveFile(fis, 3, null);
+        long id = 0;
+        try {
+            assertTrue(saveFile.getCompleted());
+            while (saveFile.hasMoreChunks()) {
+                BBContainer c = saveFile.getNextChunk();
+                if (c == null) {
+                    break;
+                }
+                try {
+                    VoltTable rows = PrivateVoltTableFactory.createVoltTableFromBuffer(c.b(), true);
+                    assertEquals(ROWS_PER_CHUNK, rows.getRowCount());
+                    while (rows.advanceRow()) {
+                        assertEquals(id, rows.getLong(0));
+                        assertEquals(value(id), rows.getString(1));
+                        id++;
+                    }
+                } finally {
+                    c.discard();
+                }
+            }
+        } finally {
+            saveFile.close();
+            fis.close();
+        }
+        return id;
+    }
+
+    public void testReadChunks() throws Exception {
+        writeFile(10);
+        assertEquals(10 * ROWS_PER_CHUNK, readFile());
+    }
+
+    public void testChunksLargerThanTheMapWindow() throws Exception {
+        writeFile(10);
+        // every chunk is ~100KB, none of them fits in a window
+        TableSaveFile.m_mapWindowSize = 4096;
+        assertEquals(10 * ROWS_PER_CHUNK, readFile());
+    }
+
+    public void testTruncatedFileFailsTheRead() throws Exception {
+        writeFile(10);
+        RandomAccessFile file = new RandomAccessFile(m_file, "rw");
+        try {
+            file.setLength(file.length() - 1000);
+        } finally {
+            file.close();
+        }
+        try {
+            readFile();
+            fail("Read a truncated file");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("Expected to find another chunk"));
+        }
+    }
+}
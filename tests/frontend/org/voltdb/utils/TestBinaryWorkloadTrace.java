@@ -0,0 +1,191 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import junit.framework.TestCase;
+
+import org.voltdb.ParameterSet;
+import org.voltdb.StoredProcedureInvocation;
+import org.voltdb.catalog.Catalog;
+import org.voltdb.catalog.Procedure;
+import org.voltdb.client.Client;
+import org.voltdb.client.ProcedureCallback;
+
+public class TestBinaryWorkloadTrace extends TestCase {
+
+    private File m_dir;
+
+    @Override
+    public void setUp() throws Exception {
+        m_dir = File.createTempFile("TestBinaryWorkloadTrace", "");
+        m_dir.delete();
+        assertTrue(m_dir.mkdir());
+    }
+
+    @Override
+    public void tearDown() {
+        for (File f : m_dir.listFiles()) {
+            f.delete();
+        }
+        m_dir.delete();
+    }
+
+    private static StoredProcedureInvocation invocation(String procName, Object... params) {
+        StoredProcedureInvocation invocation = new StoredProcedureInvocation();
+        invocation.setProcName(procName);
+        invocation.setParams(params);
+        return invocation;
+    }
+
+    public void testRoundTrip() throws Exception {
+        BinaryWorkloadTrace trace = new BinaryWorkloadTrace(m_dir, "trace");
+        final long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            trace.record(invocation("Insert", i, "value " + i, 1.5 * i), i % 4, start + i * 1000L);
+        }
+        // a parameter set that is still serialized is copied as is
+        ParameterSet params = ParameterSet.fromArrayNoCopy("select * from t where a = ?;", 7);
+        ByteBuffer buf = ByteBuffer.allocate(params.getSerializedSize());
+        params.flattenToBuffer(buf);
+        buf.flip();
+        StoredProcedureInvocation adhoc = new StoredProcedureInvocation();
+        adhoc.setProcName("@AdHoc");
+        adhoc.setSerializedParams(buf);
+        trace.record(adhoc, -1, start + 2000000L);
+        trace.close();
+        assertEquals(1001, trace.getRecordedCount());
+        assertEquals(0, trace.getDroppedCount());
+
+        BinaryWorkloadTrace.Reader reader = new BinaryWorkloadTrace.Reader(m_dir, "trace");
+        long lastOffset = -1;
+        for (int i = 0; i < 1000; i++) {
+            BinaryWorkloadTrace.Record record = reader.next();
+            assertNotNull(record);
+            assertEquals("Insert", record.procName);
+            assertEquals(i % 4, record.partition);
+            assertEquals(-1, record.durationNanos);
+            assertTrue(record.offsetNanos >= lastOffset);
+            lastOffset = record.offsetNanos;
+            Object[] values = record.getParams().toArray();
+            assertEquals(i, ((Number) values[0]).intValue());
+            assertEquals("value " + i, values[1]);
+            assertEquals(1.5 * i, values[2]);
+        }
+        BinaryWorkloadTrace.Record record = reader.next();
+        assertEquals("@AdHoc", record.procName);
+        assertEquals(-1, record.partition);
+        assertTrue(Arrays.equals(params.toArray(), record.getParams().toArray()));
+        assertNull(reader.next());
+        assertTrue(reader.getStartMillis() > 0);
+        reader.close();
+    }
+
+    public void testLargeRecordsAndAppend() throws Exception {
+        // records larger than an entry get an entry of their own
+        final String large = new String(new char[BinaryWorkloadTrace.ENTRY_SIZE + 10]).replace('\0', 'x');
+        BinaryWorkloadTrace trace = new BinaryWorkloadTrace(m_dir, "trace");
+        trace.record(invocation("Small", 1), 0, System.nanoTime());
+        trace.record(invocation("Large", large), 1, System.nanoTime());
+        trace.record(invocation("Small", 2), 0, System.nanoTime());
+        trace.close();
+
+        // a new trace with the same nonce continues after the existing segments
+        trace = new BinaryWorkloadTrace(m_dir, "trace");
+        trace.record(invocation("Small", 3), 0, System.nanoTime());
+        trace.close();
+        assertEquals(2, m_dir.listFiles().length);
+        assertTrue(new File(m_dir, "trace.1.pbd").exists());
+
+        BinaryWorkloadTrace.Reader reader = new BinaryWorkloadTrace.Reader(m_dir, "trace");
+        assertEquals(1, ((Number) reader.next().getParams().toArray()[0]).intValue());
+        assertEquals(large, reader.next().getParams().toArray()[0]);
+        assertEquals(2, ((Number) reader.next().getParams().toArray()[0]).intValue());
+        assertEquals(3, ((Number) reader.next().getParams().toArray()[0]).intValue());
+        assertNull(reader.next());
+        reader.close();
+    }
+
+    public void testWorkloadTraceInterface() throws Exception {
+        Catalog catalog = new Catalog();
+        catalog.execute("add / clusters cluster\nadd /clusters#cluster databases database\n"
+                + "add /clusters#cluster/databases#database procedures Traced\n"
+                + "add /clusters#cluster/databases#database procedures Ignored");
+        Procedure traced = catalog.getClusters().get("cluster").getDatabases().get("database").getProcedures().get("Traced");
+        Procedure ignored = catalog.getClusters().get("cluster").getDatabases().get("database").getProcedures().get("Ignored");
+
+        BinaryWorkloadTrace trace = new BinaryWorkloadTrace(null, "trace");
+        trace.setCatalog(catalog);
+        trace.setOutputPath(m_dir.getPath());
+        trace.addIgnoredProcedure("Ignored");
+        assertNull(trace.startTransaction(this, ignored, new Object[] { 1 }));
+        Object handle = trace.startTransaction(this, traced, new Object[] { 5L, "five" });
+        assertEquals(0, trace.getNextBatchId(handle));
+        assertEquals(1, trace.getNextBatchId(handle));
+        Thread.sleep(5);
+        trace.stopTransaction(handle);
+        trace.close();
+
+        BinaryWorkloadTrace.Reader reader = new BinaryWorkloadTrace.Reader(m_dir, "trace");
+        BinaryWorkloadTrace.Record record = reader.next();
+        assertEquals("Traced", record.procName);
+        assertTrue(record.durationNanos >= 5000000L);
+        assertEquals(5L, record.getParams().toArray()[0]);
+        assertNull(reader.next());
+        reader.close();
+    }
+
+    public void testReplayStartsAtTheFirstRecord() throws Exception {
+        BinaryWorkloadTrace trace = new BinaryWorkloadTrace(m_dir, "trace");
+        // the first invocation came in long after the trace was opened
+        final long start = System.nanoTime() + 10000000000L;
+        for (int i = 0; i < 10; i++) {
+            trace.record(invocation("Insert", i), 0, start + i * 1000000L);
+        }
+        trace.close();
+
+        Client client = mock(Client.class);
+        when(client.callProcedure(any(ProcedureCallback.class), anyString(), any(Object[].class))).thenReturn(true);
+        BinaryWorkloadTrace.Reader reader = new BinaryWorkloadTrace.Reader(m_dir, "trace");
+        final long replayStart = System.nanoTime();
+        assertEquals(10, new WorkloadReplayer(client, 1.0).replay(reader, Long.MAX_VALUE));
+        reader.close();
+        // paced by the 9ms between the records, not the 10s before the first one
+        final long elapsed = System.nanoTime() - replayStart;
+        assertTrue(elapsed >= 9000000L);
+        assertTrue(elapsed < 5000000000L);
+        verify(client, times(10)).callProcedure(any(ProcedureCallback.class), anyString(), any(Object[].class));
+    }
+}
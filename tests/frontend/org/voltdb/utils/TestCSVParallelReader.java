@@ -0,0 +1,252 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package org.voltdb.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.voltdb.VoltType;
+import org.voltdb.client.ClientResponse;
+
+public class TestCSVParallelReader extends TestCase {
+
+    /**
+     * Collects the rows and errors by the line they start at.
+     */
+    static class Collector implements CSVDataLoader, BulkLoaderErrorHandler {
+        final Map<Long, String> m_rows = new TreeMap<Long, String>();
+        final Map<Long, String> m_errors = new TreeMap<Long, String>();
+
+        @Override
+        public VoltType[] getColumnTypes() {
+            return new VoltType[] { VoltType.BIGINT, VoltType.STRING, VoltType.FLOAT };
+        }
+
+        @Override
+        public synchronized void insertRow(RowWithMetaData metaData, Object[] values) {
+            assertNull(m_rows.put(metaData.lineNumber, Arrays.toString(values)));
+        }
+
+        @Override
+        public synchronized boolean handleError(RowWithMetaData metaData, ClientResponse response, String error) {
+            assertNull(m_errors.put(metaData.lineNumber, metaData.rawLine + ": " + error));
+            return false;
+        }
+
+        @Override
+        public boolean hasReachedErrorLimit() {
+            return false;
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public long getProcessedRows() {
+            return m_rows.size();
+        }
+
+        @Override
+        public long getFailedRows() {
+            return 0;
+        }
+
+        @Override
+        public void setFlushInterval(int delay, int seconds) {}
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public Map<Integer, String> getColumnNames() {
+            Map<Integer, String> names = new HashMap<Integer, String>();
+            names.put(0, "ID");
+            names.put(1, "NAME");
+            names.put(2, "VALUE");
+            return names;
+        }
+    }
+
+    private File m_file;
+
+    @Override
+    public void setUp() throws Exception {
+        m_file = File.createTempFile("TestCSVParallelReader", ".csv");
+        m_file.deleteOnExit();
+        StringBuilder sb = new StringBuilder("a line to skip\nvalue,id,name\n");
+        for (int i = 0; i < 20000; i++) {
+            if (i % 1000 == 17) {
+                sb.append("1.5,").append(i).append('\n');
+            } else if (i % 1000 == 99) {
+                sb.append('\n');
+            } else {
+                sb.append(i).append(".25,").append(i).append(",\"name ").append(i).append("\"\n");
+            }
+        }
+        // no newline after the last line
+        sb.append("0.5,20000,last");
+        write(sb.toString());
+    }
+
+    private void write(String contents) throws Exception {
+        FileOutputStream out = new FileOutputStream(m_file);
+        out.write(contents.getBytes(StandardCharsets.UTF_8));
+        out.close();
+    }
+
+    @Override
+    public void tearDown() {
+        m_file.delete();
+    }
+
+    private static CSVLoader.CSVConfig config() {
+        CSVLoader.CSVConfig config = new CSVLoader.CSVConfig();
+        config.table = "T";
+        config.skip = 1;
+        config.header = true;
+        return config;
+    }
+
+    public void testSplitsStartAtLines() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(m_file, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long[] splits = CSVParallelReader.split(channel, 0, channel.size(), 4096);
+            assertTrue(splits.length > 10);
+            assertEquals(0, splits[0]);
+            assertEquals(channel.size(), splits[splits.length - 1]);
+            long lines = 0;
+            ByteBuffer buf = ByteBuffer.allocate(1);
+            for (int i = 0; i < splits.length - 1; i++) {
+                assertTrue(splits[i + 1] - splits[i] >= 4096 || i == splits.length - 2);
+                if (i > 0) {
+                    buf.clear();
+                    channel.read(buf, splits[i] - 1);
+                    assertEquals('\n', buf.get(0));
+                }
+                lines += CSVParallelReader.scan(channel, splits[i], splits[i + 1], config()).m_lines;
+            }
+            assertEquals(20002, lines);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static boolean endsInQuotes(String text, boolean inQuotes) {
+        CSVParallelReader.QuoteTracker tracker = new CSVParallelReader.QuoteTracker(config(), inQuotes);
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            tracker.next(b);
+        }
+        return tracker.inQuotes();
+    }
+
+    public void testQuoteTracker() throws Exception {
+        assertFalse(endsInQuotes("1,\"a\",b\n", false));
+        assertTrue(endsInQuotes("1,\"a\n", false));
+        assertTrue(endsInQuotes("1,  \"a\n", false));
+        // doubled and escaped quotes do not close the value
+        assertTrue(endsInQuotes("1,\"a\"\"\n", false));
+        assertTrue(endsInQuotes("1,\"a\\\"\n", false));
+        // a quote that does not start a field is part of the value
+        assertFalse(endsInQuotes("1,a\"b\n", false));
+        assertFalse(endsInQuotes("1,\"a\"b\"c\n", false));
+        assertFalse(endsInQuotes("1,\\\"a\n", false));
+        // starting inside quotes
+        assertTrue(endsInQuotes("a\nb\n", true));
+        assertFalse(endsInQuotes("a\",2\n", true));
+        assertTrue(endsInQuotes("a\",\"b\n", true));
+    }
+
+    public void testQuotedLineBreaksAcrossSplits() throws Exception {
+        StringBuilder sb = new StringBuilder("a line to skip\nvalue,id,name\n");
+        for (int i = 0; i < 5000; i++) {
+            sb.append(i).append(".25,").append(i).append(",\"name\n").append(i);
+            // long enough for some splits to fall inside the quotes
+            for (int j = 0; j < i % 7; j++) {
+                sb.append("\n\"\", more lines");
+            }
+            sb.append("\"\n");
+        }
+        write(sb.toString());
+
+        Collector sequential = new Collector();
+        FileInputStream input = new FileInputStream(m_file);
+        try {
+            new CSVStreamingReader(config(), input, sequential, sequential).run();
+        } finally {
+            input.close();
+        }
+        assertEquals(5000, sequential.m_rows.size());
+        assertTrue(sequential.m_errors.isEmpty());
+
+        Collector parallel = new Collector();
+        CSVParallelReader reader = new CSVParallelReader(config(), m_file, parallel, parallel, 4);
+        reader.m_splitSize = 1024;
+        reader.run();
+        assertFalse(reader.m_failed);
+        assertEquals(sequential.m_rows, parallel.m_rows);
+        assertTrue(parallel.m_errors.isEmpty());
+    }
+
+    public void testParallelReadMatchesSequentialRead() throws Exception {
+        Collector sequential = new Collector();
+        CSVFileReader.m_totalRowCount.set(0);
+        CSVFileReader.m_totalLineCount.set(0);
+        FileInputStream input = new FileInputStream(m_file);
+        try {
+            new CSVStreamingReader(config(), input, sequential, sequential).run();
+        } finally {
+            input.close();
+        }
+        final long rowCount = CSVFileReader.m_totalRowCount.get();
+        final long lineCount = CSVFileReader.m_totalLineCount.get();
+        assertEquals(20003, lineCount);
+        assertEquals(20000 - 40 + 1, sequential.m_rows.size());
+        assertEquals(20, sequential.m_errors.size());
+        assertEquals("[20000, last, 0.5]", sequential.m_rows.get(20003L));
+
+        Collector parallel = new Collector();
+        CSVFileReader.m_totalRowCount.set(0);
+        CSVFileReader.m_totalLineCount.set(0);
+        CSVParallelReader reader = new CSVParallelReader(config(), m_file, parallel, parallel, 4);
+        reader.m_splitSize = 4096;
+        reader.run();
+        assertEquals(rowCount, CSVFileReader.m_totalRowCount.get());
+        assertEquals(lineCount, CSVFileReader.m_totalLineCount.get());
+        assertEquals(sequential.m_rows, parallel.m_rows);
+        assertEquals(sequential.m_errors, parallel.m_errors);
+    }
+}
@@ -229,6 +229,35 @@ public class TestCatalogUtil extends TestCase {
         assertEquals(10, db.getSnapshotschedule().get("default").getRetain());
     }
 
+    public void testCommandLogEnabledDefault() throws Exception
+    {
+        final String depConfigured =
+            "<?xml version='1.0' encoding='UTF-8' standalone='no'?>" +
+            "<deployment>" +
+            "   <cluster hostcount='3' kfactor='1' sitesperhost='2'/>" +
+            "   <paths><voltdbroot path=\"/tmp/" + System.getProperty("user.name") + "\" /></paths>" +
+            "   <commandlog synchronous=\"true\" logsize=\"3\"/>" +
+            "</deployment>";
+
+        final String depAbsent =
+            "<?xml version='1.0' encoding='UTF-8' standalone='no'?>" +
+            "<deployment>" +
+            "   <cluster hostcount='3' kfactor='1' sitesperhost='2'/>" +
+            "   <paths><voltdbroot path=\"/tmp/" + System.getProperty("user.name") + "\" /></paths>" +
+            "</deployment>";
+
+        // a configured command log is enabled unless it says otherwise
+        final File tmpConfigured = VoltProjectBuilder.writeStringToTempFile(depConfigured);
+        CatalogUtil.compileDeployment(catalog, tmpConfigured.getPath(), false);
+        assertTrue(catalog.getClusters().get("cluster").getLogconfig().get("log").getEnabled());
+
+        // without one the edition's default applies
+        setUp();
+        final File tmpAbsent = VoltProjectBuilder.writeStringToTempFile(depAbsent);
+        CatalogUtil.compileDeployment(catalog, tmpAbsent.getPath(), false);
+        assertEquals(MiscUtils.isPro(), catalog.getClusters().get("cluster").getLogconfig().get("log").getEnabled());
+    }
+
     public void testSecurityEnabledFlag() throws Exception
     {
         final String secOff =
@@ -518,8 +547,6 @@ public class TestCatalogUtil extends TestCase {
     }
 
 
-    // XXX Need to add command log paths here when command logging
-    // gets tweaked to create directories if they don't exist
     public void testRelativePathsToVoltDBRoot() throws Exception
     {
         final String voltdbroot = "/tmp/" + System.getProperty("user.name");
@@ -560,21 +587,18 @@ public class TestCatalogUtil extends TestCase {
                    exportdir.exists());
         assertTrue("export overflow directory: " + exportdir.getAbsolutePath() + " is not a directory",
                    exportdir.isDirectory());
-        if (VoltDB.instance().getConfig().m_isEnterprise)
-        {
-            File commandlogdir = new File(voltdbroot, commandlogpath);
-            assertTrue("command log directory: " + commandlogdir.getAbsolutePath() + " does not exist",
-                       commandlogdir.exists());
-            assertTrue("command log directory: " + commandlogdir.getAbsolutePath() + " is not a directory",
-                       commandlogdir.isDirectory());
-            File commandlogsnapshotdir = new File(voltdbroot, commandlogsnapshotpath);
-            assertTrue("command log snapshot directory: " +
-                       commandlogsnapshotdir.getAbsolutePath() + " does not exist",
-                       commandlogsnapshotdir.exists());
-            assertTrue("command log snapshot directory: " +
-                       commandlogsnapshotdir.getAbsolutePath() + " is not a directory",
-                       commandlogsnapshotdir.isDirectory());
-        }
+        File commandlogdir = new File(voltdbroot, commandlogpath);
+        assertTrue("command log directory: " + commandlogdir.getAbsolutePath() + " does not exist",
+                   commandlogdir.exists());
+        assertTrue("command log directory: " + commandlogdir.getAbsolutePath() + " is not a directory",
+                   commandlogdir.isDirectory());
+        File commandlogsnapshotdir = new File(voltdbroot, commandlogsnapshotpath);
+        assertTrue("command log snapshot directory: " +
+                   commandlogsnapshotdir.getAbsolutePath() + " does not exist",
+                   commandlogsnapshotdir.exists());
+        assertTrue("command log snapshot directory: " +
+                   commandlogsnapshotdir.getAbsolutePath() + " is not a directory",
+                   commandlogsnapshotdir.isDirectory());
     }
 
     public void testCheckLicenseConstraint() {
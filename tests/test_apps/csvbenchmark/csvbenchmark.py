@@ -163,6 +163,8 @@ def run_csvloader(schema, data_file):
         cmd = "%s --servers=%s" % (os.path.join(home, CSVLOADER), ','.join(options.servers))
         if options.csvoptions:
             cmd += " -o " + ",".join(options.csvoptions)
+        if options.streaming:
+            cmd += " --streamingparser"
         cmd += " %s -f %s" % (schema, data_file)
         if options.VERBOSE:
             print "starting csvloader with command: " + cmd
@@ -272,6 +274,11 @@ def parse_cmdline():
                             default=None,
                             help ="comma separated list of options to be passed to the csvloader")
 
+    parser.add_option ("--streaming",
+                            action = "store_true",
+                            dest = "streaming",
+                            default = False,
+                            help = "parse with the csvloader streaming tokenizer")
     parser.add_option ("-v", "--verbose",
                             dest = "VERBOSE",
                             action="store_true", default=False,
@@ -80,8 +80,23 @@ function benchmark() {
     PYTHONPATH=$VOLTDB_LIB/python VOLTDB_HOME=$VOLTDB_BIN/.. $PYTHON $APPNAME.py -v --servers=$SERVERS --rows=1000 --tries=1 /tmp/csvbenchmark
 }
 
+# compare csvloader's Super CSV parser with the streaming tokenizer, no server needed
+function parserbenchmark() {
+    mkdir -p obj
+    javac -classpath $CLASSPATH -d obj src/${APPNAME}/ParserBenchmark.java
+    # stop if compilation fails
+    if [ $? != 0 ]; then exit; fi
+    java -classpath obj:$CLASSPATH -Dlog4j.configuration=file://$LOG4J ${APPNAME}.ParserBenchmark 1000000 5
+}
+
+# the benchmark, loading with csvloader's streaming tokenizer
+function benchmark-streaming() {
+    mkdir -p /tmp/csvbenchmark
+    PYTHONPATH=$VOLTDB_LIB/python VOLTDB_HOME=$VOLTDB_BIN/.. $PYTHON $APPNAME.py -v --servers=$SERVERS --rows=1000 --tries=1 --streaming /tmp/csvbenchmark
+}
+
 function help() {
-    echo "Usage: ./run.sh {clean|catalog|server|benchmark}"
+    echo "Usage: ./run.sh {clean|catalog|server|benchmark|benchmark-streaming|parserbenchmark}"
 }
 
 # Run the target passed as the first arg on the command line
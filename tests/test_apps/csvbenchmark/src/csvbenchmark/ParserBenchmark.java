@@ -0,0 +1,138 @@
+/* This file is part of VoltDB.
+ * Copyright (C) 2008-2016 VoltDB Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package csvbenchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+import org.supercsv.io.CsvListReader;
+import org.supercsv.prefs.CsvPreference;
+import org.supercsv_voltpatches.tokenizer.Tokenizer;
+import org.voltdb.ParameterConverter;
+import org.voltdb.VoltType;
+import org.voltdb.importer.formatter.builtin.StreamingCSVTokenizer;
+
+/**
+ * Compares how many rows per second csvloader's two parsers turn into typed column values,
+ * without a database: the Super CSV reader it uses by default, and the streaming tokenizer
+ * behind --streamingparser. Both feed their values through ParameterConverter, as the bulk
+ * loader does before it builds a VoltTable.
+ *
+ * Usage: ParserBenchmark [rows] [rounds] [csv file with the narrow_short schema]
+ */
+public class ParserBenchmark {
+
+    // a, b, c, d, e of the narrow_short tables
+    static final VoltType[] TYPES = {
+        VoltType.INTEGER, VoltType.SMALLINT, VoltType.TINYINT, VoltType.BIGINT, VoltType.STRING
+    };
+
+    static byte[] generate(int rows) {
+        Random random = new Random(0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',')
+              .append(random.nextInt(Short.MAX_VALUE)).append(',')
+              .append(random.nextInt(Byte.MAX_VALUE)).append(',')
+              .append(random.nextLong() >> 1).append(',');
+            for (int j = 0; j < 60; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a checksum of the values, so nothing is optimized away
+     */
+    static long superCsv(byte[] data) throws Exception {
+        CsvPreference preference = new CsvPreference.Builder('"', ',', "\n").build();
+        Tokenizer tokenizer = new Tokenizer(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8),
+                preference, false, '\\', 16777216, 0, false);
+        CsvListReader reader = new CsvListReader(tokenizer, preference);
+        long checksum = 0;
+        List<String> line;
+        while ((line = reader.read()) != null) {
+            for (int i = 0; i < TYPES.length; i++) {
+                Object value = ParameterConverter.tryToMakeCompatible(TYPES[i].classFromType(), line.get(i).trim());
+                checksum += value.hashCode();
+            }
+        }
+        reader.close();
+        return checksum;
+    }
+
+    static long streaming(byte[] data) {
+        StreamingCSVTokenizer tokenizer = new StreamingCSVTokenizer(',', '"', '\\', false);
+        tokenizer.setTrimWhitespace(true);
+        Class<?>[] classes = new Class<?>[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            classes[i] = TYPES[i].classFromType();
+        }
+        long checksum = 0;
+        int position = 0;
+        while (position < data.length) {
+            position = tokenizer.parseRecord(data, position, data.length, true);
+            for (int i = 0; i < TYPES.length; i++) {
+                Object value = ParameterConverter.tryToMakeCompatible(classes[i], tokenizer.getValue(i, classes[i]));
+                checksum += value.hashCode();
+            }
+        }
+        return checksum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final byte[] data = args.length > 2 ? Files.readAllBytes(Paths.get(args[2])) : generate(rows);
+        int rowCount = 0;
+        for (byte b : data) {
+            if (b == '\n') {
+                rowCount++;
+            }
+        }
+
+        // warm up both so the JIT has compiled the paths being compared
+        if (superCsv(data) != streaming(data)) {
+            throw new RuntimeException("The parsers disagree on the values");
+        }
+
+        System.out.printf("%d rows, %d bytes%n", rowCount, data.length);
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            superCsv(data);
+            double superCsvRate = rowCount / ((System.nanoTime() - start) / 1000000000.0);
+            start = System.nanoTime();
+            streaming(data);
+            double streamingRate = rowCount / ((System.nanoTime() - start) / 1000000000.0);
+            System.out.printf("round %d: Super CSV %,.0f rows/s, streaming %,.0f rows/s (%.2fx)%n",
+                    i, superCsvRate, streamingRate, streamingRate / superCsvRate);
+        }
+    }
+}